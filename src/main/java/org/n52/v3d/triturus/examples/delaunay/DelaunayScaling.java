@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.examples.delaunay;
+
+import java.util.Random;
+
+import org.n52.v3d.triturus.t3dutil.Delaunay;
+import org.n52.v3d.triturus.t3dutil.ParallelDelaunay;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+
+/**
+ * Triturus example application: Measures the scaling of the parallel Delaunay 
+ * triangulation. A set of uniformly distributed random points is triangulated
+ * sequentially and by {@link ParallelDelaunay} using 1, 2, 4, ... up to the 
+ * given number of threads; the computation times and the numbers of 
+ * non-Delaunay edges are printed to the console.<p>
+ * Usage: <tt>DelaunayScaling [numberOfPoints [maxNumberOfThreads]]</tt>; by 
+ * default, 10 million points and all available processors will be used (for 
+ * 10 million points, about 4 GB of heap space are required).
+ * 
+ * @author Benno Schmidt
+ */
+public class DelaunayScaling 
+{
+    private int numberOfPoints = 10000000;
+    private int maxNumberOfThreads = T3dParallelExecutor.availableProcessors();
+
+
+    public static void main(String args[])
+    {
+        DelaunayScaling app = new DelaunayScaling();
+        if (args.length > 0)
+            app.setNumberOfPoints(Integer.parseInt(args[0]));
+        if (args.length > 1)
+            app.setMaxNumberOfThreads(Integer.parseInt(args[1]));
+        app.run();
+    }
+
+    /**
+     * sets the number of random points.
+     * 
+     * @param numberOfPoints Number of points
+     */
+    public void setNumberOfPoints(int numberOfPoints) {
+        this.numberOfPoints = numberOfPoints;
+    }
+
+    /**
+     * sets the maximal number of threads to be used.
+     * 
+     * @param maxNumberOfThreads Number of threads
+     */
+    public void setMaxNumberOfThreads(int maxNumberOfThreads) {
+        this.maxNumberOfThreads = Math.max(1, maxNumberOfThreads);
+    }
+
+    public void run() 
+    {
+        double[] p = new double[2 * numberOfPoints];
+        Random rnd = new Random(1);
+        for (int i = 0; i < p.length; i++) {
+            p[i] = 100000. * rnd.nextDouble();
+        }
+        System.out.println(numberOfPoints + " points, " 
+            + T3dParallelExecutor.availableProcessors() + " processors available");
+
+        long t0 = System.currentTimeMillis();
+        Delaunay seq = new Delaunay(p.clone());
+        long t1 = System.currentTimeMillis();
+        System.out.println("sequential: " + (t1 - t0) + " ms, " 
+            + seq.getNumFaces() + " triangles, " 
+            + seq.getNumNonDelaunayEdges() + " non-Delaunay edges");
+        seq = null;
+
+        long tRef = 0;
+        for (int n = 1; ; n = Math.min(2 * n, maxNumberOfThreads)) {
+            t0 = System.currentTimeMillis();
+            ParallelDelaunay par = new ParallelDelaunay(p.clone(), n);
+            t1 = System.currentTimeMillis();
+            if (n == 1)
+                tRef = t1 - t0;
+            System.out.println(n + " thread(s): " + (t1 - t0) + " ms (speed-up " 
+                + Math.round(100. * tRef / Math.max(1, t1 - t0)) / 100. + "), " 
+                + par.getNumCells() + " cells, " 
+                + par.getNumFaces() + " triangles, " 
+                + par.getNumFlips() + " flips, " 
+                + par.getNumNonDelaunayEdges() + " non-Delaunay edges");
+            if (n >= maxNumberOfThreads)
+                break;
+        }
+    }
+}
@@ -31,23 +31,28 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.n52.v3d.triturus.vgis.*;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 
 /**
- * Filter to calculate cross-sections for equidistant elevation-grids that are parallel to the x- and y-axis.
+ * Filter to calculate cross-sections for equidistant elevation-grids that are parallel to the x- and y-axis.<p>
+ * Besides the single cross-section computation, a batch mode is provided that computes many cross-sections against
+ * the same grid (e.g. cross-sections along a river). Here, the results are returned as packed primitive arrays
+ * <tt>{t0, z0, t1, z1, ...}</tt>, the cross-sections are processed in parallel, and optionally the stations may be
+ * resampled to a fixed spacing (see {@link #setStationSpacing(double)}).
  * @author Benno Schmidt
  */
 public class FltElevationGrid2Profile extends T3dProcFilter
 {
     private String mLogString = "";
 
-    private GmSimpleElevationGrid mGrid = null;
-    private double xll, yll, xur, yur;
-    private int nx, ny;
-
-    private VgProfile mRes = null;
+    private int mNumberOfThreads = T3dParallelExecutor.availableProcessors();
+    private double mStationSpacing = 0.;
     
     public FltElevationGrid2Profile() {
         mLogString = this.getClass().getName();
@@ -65,215 +70,320 @@ public class FltElevationGrid2Profile extends T3dProcFilter
      */
     public VgProfile transform(GmSimpleElevationGrid pGrid, VgLineString pDefLine) throws T3dException
     {
-        mRes = new GmProfile(pDefLine);
-        
-        // Gitterparameter setzen (Member-Variable):
-    	xll = pGrid.getGeometry().envelope().getXMin();
-    	yll = pGrid.getGeometry().envelope().getYMin();
-    	xur = pGrid.getGeometry().envelope().getXMax();
-    	yur = pGrid.getGeometry().envelope().getYMax();
-        nx = ((GmSimple2dGridGeometry) pGrid.getGeometry()).numberOfColumns();
-    	ny = ((GmSimple2dGridGeometry) pGrid.getGeometry()).numberOfRows();
-        mGrid = pGrid;
-
-        // 1. z-Wert f�r Startpunkt des ersten Segments ermitteln
         if (pDefLine.numberOfVertices() <= 0)
             return null;
-        VgPoint ip = this.grdProject(pDefLine.getVertex(0));
-        if (ip != null)
-            this.registerVertex(ip, 0.);
-
-    	double iFromFp, jFromFp, iToFp, jToFp;
-    	int iFrom, jFrom, iTo, jTo;
-
-        double t = 0.;
-        for (int k = 0; k < pDefLine.numberOfVertices() - 1; k++) 
-        {    
-            // Bearbeitung des k-ten Liniensegments:
-            
-            VgLineSegment seg = new GmLineSegment(pDefLine.getVertex(k), pDefLine.getVertex(k + 1));
-
-            // 2. Definitionsliniensegment mit Gitter verschneiden und z-Werte ermitteln
-            jFromFp = this.grdIndexX(seg.getStartPoint());
-            iFromFp = this.grdIndexY(seg.getStartPoint());
-            jToFp = this.grdIndexX(seg.getEndPoint());
-            iToFp = this.grdIndexY(seg.getEndPoint());
-            if (jFromFp < 0.) jFromFp = 0.;
-            if (jFromFp > (double)(nx - 1)) jFromFp = (double)(nx - 1);
-            if (iFromFp < 0.) iFromFp = 0.;
-            if (iFromFp > (double)(ny - 1)) iFromFp = (double)(ny - 1);
-            if (jToFp < 0.) jToFp = 0.;
-            if (jToFp > (double)(nx - 1)) jToFp = (double)(nx - 1);
-            if (iToFp < 0.) iToFp = 0.;
-            if (iToFp > (double)(ny - 1)) iToFp = (double)(ny - 1);
-            if (jFromFp > jToFp) { double x = jFromFp; jFromFp = jToFp; jToFp = x; } // swap
-            if (iFromFp > iToFp) { double x = iFromFp; iFromFp = iToFp; iToFp = x; }
-            jFrom = (int) Math.round(Math.ceil(jFromFp));
-            iFrom = (int) Math.round(Math.ceil(iFromFp));
-            jTo = (int) Math.round(Math.floor(jToFp));
-            iTo = (int) Math.round(Math.floor(iToFp));
-            for (int jj = jFrom; jj <= jTo; jj++) {
-                ip = this.grdIntersectVert(seg, jj);
-                if (ip != null)
-                    this.registerVertex(ip, t + ip.distanceXY(seg.getStartPoint()));
-            }
-            for (int ii = iFrom; ii <= iTo; ii++) {
-                ip = this.grdIntersectHoriz(seg, ii);
-                if (ip != null)
-                    this.registerVertex(ip, t + ip.distanceXY(seg.getStartPoint()));
-            }
-            
-            // 3. z-Wert f�r Endpunkt des Segments ermitteln
-            ip = this.grdProject(seg.getEndPoint());
-            if (ip != null)
-                this.registerVertex(ip, t + ((VgLineSegment) seg.footprint()).length());
-            
-            t += seg.length();
 
-        }
-        
-        return mRes;
+        // Die Schnittpunkte mit den Gitterlinien werden wie im Batch-Modus ber Ursprung und Gitterweiten 
+        // bestimmt, so dass sie auch bei negativen Gitterweiten zur Hhenwert-Interpolation passen:
+        ProfileBuffer buf = new ProfileBuffer();
+        buf.setLine(pDefLine);
+        buf.intersect(new GridView(pGrid));
+
+        GmProfile res = new GmProfile(pDefLine);
+        res.addTZPairs(buf.toArray());
+        return res;
     }
     
-    // Berechnung der (reellen) Gitterindizes eines Punktes: 
-    private double grdIndexX(VgPoint pt) {
-        return (pt.getX() - xll) / (xur - xll) * (double)(nx - 1);
-    }    
-
-    private double grdIndexY(VgPoint pt) {
-        return (pt.getY() - yll) / (yur - yll) * (double)(ny - 1);
-    }    
-    
-    // Berechnung Schnittpunkt zwischen Liniensegment und vertikaler Gitterlinie:
-    private VgPoint grdIntersectVert(VgLineSegment seg, int jj) 
-    {
-        if (jj < 0 || jj >= nx) return null;
-        
-        double x, y, z;
-        
-        if (Math.abs(seg.getEndPoint().getX() - seg.getStartPoint().getX()) <= 0.000001) {
-            // Segment parallel zu Gitterlinie
-            return null; // todo: geht das okay?
-        }
-        
-        // Parameter der Geradengleichung von seg:
-        double m = (seg.getEndPoint().getY() - seg.getStartPoint().getY()) 
-            / (seg.getEndPoint().getX() - seg.getStartPoint().getX());
-        double b = seg.getStartPoint().getY() - m * seg.getStartPoint().getX();
-
-        x = xll + ((double)jj) / ((double)(nx - 1)) * (xur - xll);
-        y = m * x + b;
-        double iiFp = ((double)(ny - 1)) * (y - yll) / (yur - yll); 
-        if (iiFp < 0 || iiFp > (double)(ny - 1)) return null; // Schnittpunkt au�erhalb Gitter
-        int ii1 = (int) Math.round(Math.floor(iiFp));
-        int ii2 = ii1 + 1;
-        if (ii2 >= ny - 1) ii2 = ny - 1; // Sonderfall oberer Gitterrand ber�cksichtigen
-        double z1 = this.grdElevation(ii1, jj);
-        double z2 = this.grdElevation(ii2, jj);
-        z = z1 + (iiFp - (int) Math.floor(iiFp)) * (z2 - z1);
-            
-        return new GmPoint(x, y, z);
+    /**
+     * sets the number of threads to be used for batch processing. By default, all available processors will be used.
+     * @param pNumberOfThreads Number of threads
+     * @see T3dParallelExecutor#availableProcessors
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /**
+     * sets the station spacing for batch processing. If a positive spacing is given, the cross-sections will be
+     * resampled to the stations <tt>0, d, 2 d, ...</tt> and the end of the base-line; else (default) the stations
+     * are given by the base-line's vertices and its intersections with the grid lines.
+     * @param pSpacing Station spacing d (referring to the grid's reference system), or 0 to disable resampling
+     */
+    public void setStationSpacing(double pSpacing) {
+        mStationSpacing = (pSpacing > 0.) ? pSpacing : 0.;
     }
 
-    // Berechnung Schnittpunkt zwischen Liniensegment und horizontaler Gitterlinie:
-    private VgPoint grdIntersectHoriz(VgLineSegment seg, int ii) 
+    /**
+     * returns the station spacing used for batch processing.
+     * @return Station spacing, 0 if resampling is disabled
+     */
+    public double getStationSpacing() {
+        return mStationSpacing;
+    }
+
+    /**
+     * calculates cross-sections for multiple base-lines. The grid parameters will be determined only once, and the
+     * base-lines will be processed in parallel. For the i-th base-line, the result array element i holds the
+     * packed t-z-pairs <tt>{t0, z0, t1, z1, ...}</tt> ordered by increasing station t, where t is given by the 2D
+     * length along the base-line.<p>
+     * Without resampling, stations outside the grid or inside unset grid cells will be omitted (as for
+     * {@link #transform(GmSimpleElevationGrid, VgLineString)}). If a station spacing has been set, all stations will
+     * be present and the z-value <tt>Double.NaN</tt> marks stations without elevation.
+     * @param pGrid Elevation grid
+     * @param pDefLines 2D base-lines
+     * @return Packed t-z-arrays, one per base-line
+     * @throws T3dException
+     */
+    public double[][] transform(GmSimpleElevationGrid pGrid, final VgLineString[] pDefLines) throws T3dException
     {
-        if (ii < 0 || ii >= ny) return null;
+        if (pGrid == null)
+            throw new T3dException("Elevation grid is missing.");
 
-        double x, y, z;
-        
-        if (Math.abs(seg.getEndPoint().getY() - seg.getStartPoint().getY()) <= 0.000001) {
-            // Segment parallel zu Gitterlinie
-            return null; // todo: geht das okay?
-        }
-                    
-        // Parameter der Geradengleichung von seg:
-        double m2 = (seg.getEndPoint().getX() - seg.getStartPoint().getX()) 
-            / (seg.getEndPoint().getY() - seg.getStartPoint().getY());
-        double b2 = seg.getStartPoint().getX() - m2 * seg.getStartPoint().getY();
-
-        y = yll + ((double)ii) / ((double)(ny - 1)) * (yur - yll);
-        x = m2 * y + b2;
-        double jjFp = ((double)(nx - 1)) * (x - xll) / (xur - xll); 
-        if (jjFp < 0 || jjFp > (double)(nx - 1)) return null; // Schnittpunkt au�erhalb Gitter
-        int jj1 = (int) Math.round(Math.floor(jjFp));
-        int jj2 = jj1 + 1;
-        if (jj2 >= nx - 1) jj2 = nx - 1; // Sonderfall oberer Gitterrand ber�cksichtigen
-        double z1 = this.grdElevation(ii, jj1);
-        double z2 = this.grdElevation(ii, jj2);
-        z = z1 + (jjFp - Math.floor(jjFp)) * (z2 - z1);
-            
-        return new GmPoint(x, y, z);
+        final GridView view = new GridView(pGrid);
+        final double spacing = mStationSpacing;
+        final double[][] res = new double[pDefLines.length][];
+        final AtomicInteger next = new AtomicInteger(0);
+
+        // Die Profile sind unterschiedlich lang, daher werden sie einzeln an die Threads verteilt:
+        int nThreads = Math.max(1, Math.min(mNumberOfThreads, pDefLines.length));
+        T3dParallelExecutor.execute(0, nThreads, nThreads,
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    ProfileBuffer buf = new ProfileBuffer();
+                    int i;
+                    while ((i = next.getAndIncrement()) < pDefLines.length) {
+                        buf.clear();
+                        if (pDefLines[i] != null) {
+                            buf.setLine(pDefLines[i]);
+                            if (spacing > 0.)
+                                buf.resample(view, spacing);
+                            else
+                                buf.intersect(view);
+                        }
+                        res[i] = buf.toArray();
+                    }
+                }
+            });
+        return res;
     }
- 
-    // Projektion eines Punktes auf das Gel�ndeoberfl�che:
-    private VgPoint grdProject(VgPoint pt) 
+
+    /**
+     * calculates cross-sections for multiple base-lines and returns them as <tt>GmProfile</tt>-objects.
+     * @param pGrid Elevation grid
+     * @param pDefLines 2D base-lines
+     * @return Cross-sections, one per base-line
+     * @throws T3dException
+     * @see FltElevationGrid2Profile#transform(GmSimpleElevationGrid, VgLineString[])
+     */
+    public GmProfile[] transformToProfiles(GmSimpleElevationGrid pGrid, VgLineString[] pDefLines)
+        throws T3dException
     {
-        // Reelle Indizes von pt im Gitter ermitteln:
-        double jFp = this.grdIndexX(pt);
-        double iFp = this.grdIndexY(pt);
-        if (jFp < 0. || jFp > (double)nx - 1 || iFp < 0. || iFp > (double)ny - 1)
-            return null;
-  
-        // Indizes der Ecken der zugeh�rigen rechteckigen Gitterzelle ermitteln:
-        int jl = (int) Math.round(Math.floor(jFp));
-        int jr = jl + 1;
-        int il = (int) Math.round(Math.floor(iFp)); 
-        int iu = il + 1;      
-        double jrem = jFp - (double)jl; // Nachkommaanteil von jFp 
-        double irem = iFp - (double)il;
-        if (jr >= nx - 1 && jrem < 0.000001) { jr--; jl--; } // Sonderfall oberer Gitterrand ber�cksichtigen
-        if (iu >= ny - 1 && irem < 0.000001) { iu--; il--; }
-
-        // Pr�fen, ob Gitterzelle belegt ist:
-        if (!(this.grdIsSet(il, jl) && this.grdIsSet(iu, jl) && this.grdIsSet(il, jr) && this.grdIsSet(iu, jr)))
-            return null;
-    
-        // F�r die H�henwert-Interpolation wird die Gitterzelle in vier Dreiecke unterteilt. Die Dreiecksecken sind dabei
-        // durch die Gitterzellenecken und den (2D-)Schwerpunkt der Gitterzelle gegeben.
-        VgPoint pll, plr, pul, pur, pm; // Ecken u. Schwerpkt., hier nicht georeferenziert
-        pll = new GmPoint(0., 0., this.grdElevation(il, jl));
-        plr = new GmPoint(0., 1., this.grdElevation(il, jr));
-        pul = new GmPoint(1., 0., this.grdElevation(iu, jl));
-        pur = new GmPoint(1., 1., this.grdElevation(iu, jr));
-//System.out.println("pll = " + pll);
-//System.out.println("plr = " + plr);
-//System.out.println("pul = " + pul);
-//System.out.println("pur = " + pur);
-        pm = new GmPoint(0.5, 0.5, 0.25 * (pll.getZ() + plr.getZ() + pul.getZ() + pur.getZ()));
-  
-        VgTriangle tri;
-        if (jrem > 1. - 0.5 * irem) {
-            if (irem > jrem) // rechtes Dreieck
-                tri = new GmTriangle(pm, plr, pur);
-            else // oberes Dreieck 
-                tri = new GmTriangle(pm, pur, pul);
-        } 
-        else {
-            if (irem > jrem) // unteres Dreieck 
-                tri = new GmTriangle(pm, pll, plr);
-            else // linkes Dreieck
-                tri = new GmTriangle(pm, pul, pll);
+        double[][] tz = this.transform(pGrid, pDefLines);
+        GmProfile[] res = new GmProfile[tz.length];
+        for (int i = 0; i < tz.length; i++) {
+            res[i] = new GmProfile(pDefLines[i], tz[i].length / 2);
+            for (int k = 0; k + 1 < tz[i].length; k += 2) {
+                if (!Double.isNaN(tz[i][k + 1]))
+                    res[i].addTZPair(tz[i][k], tz[i][k + 1]);
+            }
         }
-        return new GmPoint(pt.getX(), pt.getY(), tri.interpolateZ(new GmPoint(irem, jrem, 0. /*dummy*/)));
-    }
-    
-    private boolean grdIsSet(int i, int j) {
-        return mGrid.isSet(i, j);
+        return res;
     }
 
-    private double grdElevation(int i, int j) {
-        return mGrid.getValue(i, j);
+    // Gitterparameter, einmalig fr alle Profile ermittelt:
+    private static class GridView
+    {
+        private GmGridStorage mSt;
+        private double mX0, mY0, mDx, mDy;
+        private int mRows, mCols;
+
+        GridView(GmSimpleElevationGrid pGrid)
+        {
+            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) pGrid.getGeometry();
+            mSt = pGrid.getStorage();
+            mX0 = geom.getOrigin().getX();
+            mY0 = geom.getOrigin().getY();
+            mDx = geom.getDeltaX();
+            mDy = geom.getDeltaY();
+            mRows = mSt.numberOfRows();
+            mCols = mSt.numberOfColumns();
+        }
+
+        double col(double x) { return (x - mX0) / mDx; }
+
+        double row(double y) { return (y - mY0) / mDy; }
+
+        // Hhe auf der vertikalen Gitterlinie j an der reellen Zeilenposition row:
+        double elevationOnColumn(int j, double row)
+        {
+            if (!(row >= 0. && row <= mRows - 1))
+                return Double.NaN;
+            int i = (int) row;
+            if (i >= mRows - 1) 
+                return mSt.get(mRows - 1, j);
+            double z1 = mSt.get(i, j), z2 = mSt.get(i + 1, j);
+            return z1 + (row - i) * (z2 - z1);
+        }
+
+        // Hhe auf der horizontalen Gitterlinie i an der reellen Spaltenposition col:
+        double elevationOnRow(int i, double col)
+        {
+            if (!(col >= 0. && col <= mCols - 1))
+                return Double.NaN;
+            int j = (int) col;
+            if (j >= mCols - 1) 
+                return mSt.get(i, mCols - 1);
+            double z1 = mSt.get(i, j), z2 = mSt.get(i, j + 1);
+            return z1 + (col - j) * (z2 - z1);
+        }
+
+        // Hhe an beliebiger Position; NaN auerhalb des Gitters oder in nicht belegten Gitterzellen:
+        double elevation(double x, double y)
+        {
+            double col = this.col(x), row = this.row(y);
+            if (!(col >= 0. && col <= mCols - 1 && row >= 0. && row <= mRows - 1))
+                return Double.NaN;
+
+            // Zelle links unten; Positionen auf der letzten Zeile bzw. Spalte gehren zur vorhergehenden Zelle:
+            int i = (int) row, j = (int) col;
+            if (i >= mRows - 1 && i > 0) i--;
+            if (j >= mCols - 1 && j > 0) j--;
+            int i1 = Math.min(i + 1, mRows - 1), j1 = Math.min(j + 1, mCols - 1);
+            double u = row - i, v = col - j;
+
+            // Fr die Hhenwert-Interpolation wird die Gitterzelle in vier Dreiecke unterteilt. Die Dreiecksecken
+            // sind dabei durch die Gitterzellenecken und den (2D-)Schwerpunkt der Gitterzelle gegeben. Nicht belegte
+            // Gitterelemente (NaN) pflanzen sich in das Ergebnis fort.
+            double z00 = mSt.get(i, j), z01 = mSt.get(i, j1), z10 = mSt.get(i1, j), z11 = mSt.get(i1, j1);
+            double zm = 0.25 * (z00 + z01 + z10 + z11);
+            if (u <= v && u <= 1. - v) // Dreieck an der unteren Zellkante
+                return z00 + v * (z01 - z00) + u * (2. * zm - z00 - z01);
+            if (1. - u <= v && 1. - u <= 1. - v) // Dreieck an der oberen Zellkante
+                return z10 + v * (z11 - z10) + (1. - u) * (2. * zm - z10 - z11);
+            if (v <= 1. - v) // Dreieck an der linken Zellkante
+                return z00 + u * (z10 - z00) + v * (2. * zm - z00 - z10);
+            return z01 + u * (z11 - z01) + (1. - v) * (2. * zm - z01 - z11); // rechte Zellkante
+        }
     }
-    
-    private void registerVertex(VgPoint pt, double t) 
+
+    // Ergebnispuffer fr ein einzelnes Profil (wird je Thread wiederverwendet):
+    private static class ProfileBuffer
     {
-//System.out.println("register vertex t = " + t + ", " + pt);
-        double[] tzp = new double[2];
-        tzp[0] = t;
-        tzp[1] = pt.getZ();
-        ((GmProfile) mRes).addTZPair(tzp);
+        private double[] mLx = new double[16], mLy = new double[16];
+        private int mNumberOfVertices = 0;
+        private double[] mTZ = new double[64];
+        private int mSize = 0;
+
+        void clear() {
+            mNumberOfVertices = 0;
+            mSize = 0;
+        }
+
+        void setLine(VgLineString pLine)
+        {
+            int n = pLine.numberOfVertices();
+            if (mLx.length < n) {
+                mLx = new double[n];
+                mLy = new double[n];
+            }
+            for (int k = 0; k < n; k++) {
+                VgPoint p = pLine.getVertex(k);
+                mLx[k] = p.getX();
+                mLy[k] = p.getY();
+            }
+            mNumberOfVertices = n;
+        }
+
+        double[] toArray() {
+            return T3dArrays.copyOf(mTZ, 2 * mSize);
+        }
+
+        private void add(double t, double z, boolean pSkipNaN)
+        {
+            if (pSkipNaN && Double.isNaN(z))
+                return;
+            if (mSize > 0 && t <= mTZ[2 * mSize - 2])
+                return; // Station bereits belegt (z.B. Schnittpunkt an einem Gitterpunkt)
+            if (2 * mSize + 2 > mTZ.length)
+                mTZ = T3dArrays.copyOf(mTZ, 2 * mTZ.length);
+            mTZ[2 * mSize] = t;
+            mTZ[2 * mSize + 1] = z;
+            mSize++;
+        }
+
+        // Stationen an den Sttzpunkten und den Schnittpunkten mit den Gitterlinien:
+        void intersect(GridView pView)
+        {
+            if (mNumberOfVertices <= 0)
+                return;
+            this.add(0., pView.elevation(mLx[0], mLy[0]), true);
+
+            double t = 0.;
+            for (int k = 0; k < mNumberOfVertices - 1; k++)
+            {
+                double xa = mLx[k], ya = mLy[k], xb = mLx[k + 1], yb = mLy[k + 1];
+                double len = Math.sqrt((xb - xa) * (xb - xa) + (yb - ya) * (yb - ya));
+                double ca = pView.col(xa), cb = pView.col(xb), ra = pView.row(ya), rb = pView.row(yb);
+
+                // Spalten- und Zeilenindizes der geschnittenen Gitterlinien in Laufrichtung:
+                int jFirst = 0, jLast = -1, jStep = 1, iFirst = 0, iLast = -1, iStep = 1;
+                if (ca != cb) {
+                    jStep = (cb > ca) ? 1 : -1;
+                    jFirst = (jStep > 0) ? (int) Math.ceil(ca) : (int) Math.floor(ca);
+                    jLast = (jStep > 0) ? (int) Math.floor(cb) : (int) Math.ceil(cb);
+                    jFirst = clamp(jFirst, pView.mCols - 1);
+                    jLast = clamp(jLast, pView.mCols - 1);
+                }
+                if (ra != rb) {
+                    iStep = (rb > ra) ? 1 : -1;
+                    iFirst = (iStep > 0) ? (int) Math.ceil(ra) : (int) Math.floor(ra);
+                    iLast = (iStep > 0) ? (int) Math.floor(rb) : (int) Math.ceil(rb);
+                    iFirst = clamp(iFirst, pView.mRows - 1);
+                    iLast = clamp(iLast, pView.mRows - 1);
+                }
+                boolean jDone = (ca == cb) || (jLast - jFirst) * jStep < 0;
+                boolean iDone = (ra == rb) || (iLast - iFirst) * iStep < 0;
+                int j = jFirst, i = iFirst;
+
+                // Schnittpunkte beider Scharen nach dem Segmentparameter s gemischt ablegen:
+                while (!jDone || !iDone) {
+                    double sj = jDone ? Double.MAX_VALUE : (j - ca) / (cb - ca);
+                    double si = iDone ? Double.MAX_VALUE : (i - ra) / (rb - ra);
+                    if (sj <= si) {
+                        if (sj >= 0. && sj <= 1.)
+                            this.add(t + sj * len, pView.elevationOnColumn(j, ra + sj * (rb - ra)), true);
+                        jDone = (j == jLast);
+                        j += jStep;
+                    }
+                    else {
+                        if (si >= 0. && si <= 1.)
+                            this.add(t + si * len, pView.elevationOnRow(i, ca + si * (cb - ca)), true);
+                        iDone = (i == iLast);
+                        i += iStep;
+                    }
+                }
+
+                t += len;
+                this.add(t, pView.elevation(xb, yb), true);
+            }
+        }
+
+        // Stationen im festen Abstand pSpacing:
+        void resample(GridView pView, double pSpacing)
+        {
+            if (mNumberOfVertices <= 0)
+                return;
+            double t0 = 0., tNext = 0.;
+            long m = 0;
+            for (int k = 0; k < mNumberOfVertices - 1; k++)
+            {
+                double xa = mLx[k], ya = mLy[k], xb = mLx[k + 1], yb = mLy[k + 1];
+                double len = Math.sqrt((xb - xa) * (xb - xa) + (yb - ya) * (yb - ya));
+                while (tNext < t0 + len) {
+                    double s = (tNext - t0) / len;
+                    this.add(tNext, pView.elevation(xa + s * (xb - xa), ya + s * (yb - ya)), false);
+                    tNext = (++m) * pSpacing; // Multiplikation statt Summation vermeidet Rundungsdrift
+                }
+                t0 += len;
+            }
+            // Endpunkt der Definitionslinie:
+            int n = mNumberOfVertices - 1;
+            if (mSize == 0 || t0 - mTZ[2 * mSize - 2] > 1.e-9 * pSpacing)
+                this.add(t0, pView.elevation(mLx[n], mLy[n]), false);
+        }
+
+        private static int clamp(int pIndex, int pMax) {
+            return (pIndex < 0) ? 0 : ((pIndex > pMax) ? pMax : pIndex);
+        }
     }
-    
-    // TODO: und jetzt noch alles in GmProfile packen!
 }
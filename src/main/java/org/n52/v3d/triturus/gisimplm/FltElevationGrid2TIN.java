@@ -33,29 +33,559 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
+
+import java.util.BitSet;
 
 /** 
- * Filter to transform a <tt>GmSimpleElevationGrid</tt>-object into a <tt>GmSimpleTINFeature</tt>.
+ * Filter to transform a <tt>GmSimpleElevationGrid</tt>-object into a <tt>GmSimpleTINFeature</tt>.<br />
+ * The filter performs an adaptive simplification by greedy insertion (see M. Garland, P. S. Heckbert: 
+ * <i>Fast Polygonal Approximation of Terrains and Height Fields</i>, 1995): Starting with the grid's 
+ * four corners, the grid point with the largest vertical error with respect to the current TIN is 
+ * inserted into a Delaunay triangulation, until the maximal vertical error falls below a given 
+ * tolerance or a given number of vertices has been reached.<br />
+ * Unset grid elements will be ignored. If a grid corner is unset, the corresponding TIN vertex will
+ * be assigned the grid's mean elevation.
  * @author Benno Schmidt
  */
 public class FltElevationGrid2TIN extends T3dProcFilter
 {
     private String mLogString = "";
 
+    private double mMaxError = 0.;
+    private int mMaxNumberOfVertices = Integer.MAX_VALUE;
+    private double mAchievedError = 0.;
+
+    /**
+     * Constructor. By default, all grid points will be inserted that are not located on the 
+     * planes given by the surrounding TIN triangles, i.e. the grid will be triangulated without
+     * loss of information. 
+     */
     public FltElevationGrid2TIN() {
         mLogString = this.getClass().getName();
     }
 
+    /**
+     * Constructor.
+     * @param pMaxError Maximal vertical error (see {@link #setMaximalError(double)})
+     */
+    public FltElevationGrid2TIN(double pMaxError) {
+        mLogString = this.getClass().getName();
+        this.setMaximalError(pMaxError);
+    }
+
     public String log() {
         return mLogString;
     }
 
+    /**
+     * sets the tolerated maximal vertical error. The simplification stops as soon as all grid 
+     * points have a vertical distance less than or equal to this value from the TIN.
+     * @param pMaxError Maximal vertical error (referring to the grid's z-unit)
+     */
+    public void setMaximalError(double pMaxError) {
+        mMaxError = Math.max(0., pMaxError);
+    }
+
+    /**
+     * sets the maximal number of TIN vertices. The simplification stops as soon as this number 
+     * of vertices has been reached, even if the maximal vertical error specified by 
+     * {@link #setMaximalError(double)} is still exceeded. By default, the number of vertices 
+     * is unlimited.
+     * @param pMaxNumberOfVertices Maximal number of vertices (at least 4, the grid corners)
+     */
+    public void setMaximalNumberOfVertices(int pMaxNumberOfVertices) {
+        mMaxNumberOfVertices = Math.max(4, pMaxNumberOfVertices);
+    }
+
+    /**
+     * returns the maximal vertical error of the TIN that has been generated by the last 
+     * <tt>transform()</tt>-call.
+     * @return Vertical error (referring to the grid's z-unit)
+     */
+    public double achievedError() {
+        return mAchievedError;
+    }
+
     /**
      * performs the described filter operation.
+     * @param pGrid Elevation grid consisting of at least 2 x 2 grid points
+     * @return TIN with vertices that are a subset of the grid points
+     * @throws T3dException
      */
     public GmSimpleTINFeature transform(GmSimpleElevationGrid pGrid) throws T3dException
     {
-    	throw new T3dNotYetImplException();
+        int nx = pGrid.numberOfColumns(), ny = pGrid.numberOfRows();
+        if (nx < 2 || ny < 2) {
+            throw new T3dException("Grid must consist of at least 2 x 2 points.");
+        }
+
+        double[] lZ = new double[nx * ny];
+        pGrid.getBlock(0, 0, ny, nx, lZ);
+
+        Builder b = new Builder(nx, ny, lZ, this.cornerElevation(pGrid));
+        b.run(mMaxError, mMaxNumberOfVertices);
+        mAchievedError = b.maximalError();
+
+        GmSimple2dGridGeometry lGeom = (GmSimple2dGridGeometry) pGrid.getGeometry();
+        double x0 = lGeom.getOrigin().getX(), dx = lGeom.getDeltaX();
+        double y0 = lGeom.getOrigin().getY(), dy = lGeom.getDeltaY();
+
+        int nv = b.mNumberOfVertices;
+        double[] lXYZ = new double[3 * nv];
+        for (int i = 0; i < nv; i++) {
+            int c = b.mVertexCell[i];
+            int row = c / nx, col = c % nx;
+            lXYZ[3 * i] = x0 + col * dx;
+            lXYZ[3 * i + 1] = y0 + row * dy;
+            lXYZ[3 * i + 2] = b.elevation(c);
+        }
+
+        int nt = b.mNumberOfTriangles;
+        int[] lTri = T3dArrays.copyOf(b.mTv, 3 * nt);
+        if (dx * dy < 0.) {
+            // keep the triangles' counter-clockwise orientation in the x-y-plane
+            for (int k = 0; k < 3 * nt; k += 3) {
+                int h = lTri[k + 1];
+                lTri[k + 1] = lTri[k + 2];
+                lTri[k + 2] = h;
+            }
+        }
+
+        GmSimpleTINGeometry lTINGeom = new GmSimpleTINGeometry(lXYZ, nv, lTri, nt);
+        lTINGeom.setSRS(lGeom.getSRS());
+        GmSimpleTINFeature lTIN = new GmSimpleTINFeature();
+        lTIN.setGeometry(lTINGeom);
+        return lTIN;
+    }
+
+    private double cornerElevation(GmSimpleElevationGrid pGrid) 
+    {
+        int nx = pGrid.numberOfColumns(), ny = pGrid.numberOfRows();
+        if (pGrid.isSet(0, 0) && pGrid.isSet(0, nx - 1) 
+            && pGrid.isSet(ny - 1, 0) && pGrid.isSet(ny - 1, nx - 1)) {
+            return 0.; // will not be used
+        }
+        GmElevationGridStatistics lStat = pGrid.getStatistics();
+        if (lStat.numberOfSetElements() <= 0) {
+            throw new T3dException("Grid does not contain any elevation values.");
+        }
+        return lStat.getMean();
+    }
+
+    /*
+     * Incremental Delaunay triangulation of the grid points. The vertices are given by grid
+     * indices (column = x, row = y), thus orientation and in-circle tests are computed exactly 
+     * by integer arithmetic. Every triangle keeps the grid point with the largest vertical 
+     * error inside the triangle as candidate; the triangles are held inside a max-heap ordered
+     * by these errors.
+     */
+    private static class Builder
+    {
+        private final int mNX, mNY;
+        private final double[] mZ; // grid elevations, NaN for unset elements
+        private final double mCornerZ;
+        private final boolean mExactInCircle;
+        private final BitSet mInserted;
+
+        int mNumberOfVertices = 0;
+        int[] mVertexCell = new int[64];
+
+        int mNumberOfTriangles = 0;
+        int[] mTv = new int[3 * 64]; // vertex indices (counter-clockwise)
+        int[] mTn = new int[3 * 64]; // neighbour across the edge opposite to the i-th vertex, or -1
+        private double[] mErr = new double[64]; // candidate error, or -1 if there is no candidate
+        private int[] mCand = new int[64]; // candidate grid index
+        private int[] mStamp = new int[64];
+        private int mCurrentStamp = 0;
+
+        private int[] mHeap = new int[64];
+        private int[] mHeapPos = new int[64]; // position inside mHeap, or -1
+        private int mHeapSize = 0;
+
+        private int[] mStack = new int[64]; // triangles to be legalized (new vertex at index 0)
+        private int mStackSize = 0;
+        private int[] mChanged = new int[64]; // triangles to be re-scanned
+        private int mChangedSize = 0;
+
+        Builder(int pNX, int pNY, double[] pZ, double pCornerZ) 
+        {
+            mNX = pNX;
+            mNY = pNY;
+            mZ = pZ;
+            mCornerZ = pCornerZ;
+            // 12 * n^4 must not exceed the long range
+            mExactInCircle = Math.max(pNX, pNY) <= 29000;
+            mInserted = new BitSet(pNX * pNY);
+
+            int v0 = this.addVertex(0);
+            int v1 = this.addVertex(pNX - 1);
+            int v2 = this.addVertex(pNX * pNY - 1);
+            int v3 = this.addVertex((pNY - 1) * pNX);
+            int t0 = this.newTriangle(), t1 = this.newTriangle();
+            this.setTriangle(t0, v0, v1, v2, -1, t1, -1);
+            this.setTriangle(t1, v0, v2, v3, -1, -1, t0);
+            this.scan(t0);
+            this.scan(t1);
+        }
+
+        double elevation(int pCell) {
+            double z = mZ[pCell];
+            return Double.isNaN(z) ? mCornerZ : z;
+        }
+
+        double maximalError() {
+            return mHeapSize > 0 ? mErr[mHeap[0]] : 0.;
+        }
+
+        void run(double pMaxError, int pMaxNumberOfVertices)
+        {
+            while (mHeapSize > 0 && mNumberOfVertices < pMaxNumberOfVertices) {
+                int t = mHeap[0];
+                if (mErr[t] <= pMaxError) {
+                    break;
+                }
+                this.insert(t, mCand[t]);
+            }
+        }
+
+        private int addVertex(int pCell) 
+        {
+            if (mNumberOfVertices == mVertexCell.length) {
+                mVertexCell = T3dArrays.copyOf(mVertexCell, 2 * mVertexCell.length);
+            }
+            mInserted.set(pCell);
+            mVertexCell[mNumberOfVertices] = pCell;
+            return mNumberOfVertices++;
+        }
+
+        private int newTriangle() 
+        {
+            if (mNumberOfTriangles == mErr.length) {
+                int n = 2 * mErr.length;
+                mTv = T3dArrays.copyOf(mTv, 3 * n);
+                mTn = T3dArrays.copyOf(mTn, 3 * n);
+                mErr = T3dArrays.copyOf(mErr, n);
+                mCand = T3dArrays.copyOf(mCand, n);
+                mStamp = T3dArrays.copyOf(mStamp, n);
+                mHeapPos = T3dArrays.copyOf(mHeapPos, n);
+                mHeap = T3dArrays.copyOf(mHeap, n);
+            }
+            int t = mNumberOfTriangles++;
+            mErr[t] = -1.;
+            mHeapPos[t] = -1;
+            mStamp[t] = 0;
+            return t;
+        }
+
+        private void setTriangle(int t, int a, int b, int c, int na, int nb, int nc) 
+        {
+            int k = 3 * t;
+            mTv[k] = a; mTv[k + 1] = b; mTv[k + 2] = c;
+            mTn[k] = na; mTn[k + 1] = nb; mTn[k + 2] = nc;
+        }
+
+        private void replaceNeighbor(int t, int pOld, int pNew) 
+        {
+            if (t < 0) {
+                return;
+            }
+            for (int k = 3 * t; k < 3 * t + 3; k++) {
+                if (mTn[k] == pOld) {
+                    mTn[k] = pNew;
+                    return;
+                }
+            }
+        }
+
+        private void insert(int t, int pCell)
+        {
+            int p = this.addVertex(pCell);
+            mCurrentStamp++;
+            mChangedSize = 0;
+            mStackSize = 0;
+
+            long px = pCell % mNX, py = pCell / mNX;
+            int e = -1;
+            for (int i = 0; i < 3; i++) {
+                int u = mVertexCell[mTv[3 * t + (i + 1) % 3]], w = mVertexCell[mTv[3 * t + (i + 2) % 3]];
+                if (this.orient(u % mNX, u / mNX, w % mNX, w / mNX, px, py) == 0) {
+                    e = i;
+                }
+            }
+            if (e < 0) {
+                this.splitTriangle(t, p);
+            } else {
+                this.splitEdge(t, e, p);
+            }
+
+            while (mStackSize > 0) {
+                this.legalize(mStack[--mStackSize]);
+            }
+            for (int i = 0; i < mChangedSize; i++) {
+                this.scan(mChanged[i]);
+            }
+        }
+
+        // inserts vertex p located inside triangle t
+        private void splitTriangle(int t, int p) 
+        {
+            int k = 3 * t;
+            int a = mTv[k], b = mTv[k + 1], c = mTv[k + 2];
+            int na = mTn[k], nb = mTn[k + 1], nc = mTn[k + 2];
+            int t1 = this.newTriangle(), t2 = this.newTriangle();
+            this.setTriangle(t, p, a, b, nc, t1, t2);
+            this.setTriangle(t1, p, b, c, na, t2, t);
+            this.setTriangle(t2, p, c, a, nb, t, t1);
+            this.replaceNeighbor(na, t, t1);
+            this.replaceNeighbor(nb, t, t2);
+            this.push(t);
+            this.push(t1);
+            this.push(t2);
+        }
+
+        // inserts vertex p located on the edge opposite to the e-th vertex of triangle t
+        private void splitEdge(int t, int e, int p) 
+        {
+            int k = 3 * t;
+            int a = mTv[k + e], b = mTv[k + (e + 1) % 3], c = mTv[k + (e + 2) % 3];
+            int n = mTn[k + e], tb = mTn[k + (e + 1) % 3], tc = mTn[k + (e + 2) % 3];
+
+            int t1 = this.newTriangle();
+            if (n < 0) {
+                this.setTriangle(t, p, a, b, tc, -1, t1);
+                this.setTriangle(t1, p, c, a, tb, t, -1);
+                this.replaceNeighbor(tb, t, t1);
+                this.push(t);
+                this.push(t1);
+                return;
+            }
+
+            int f = this.indexOfNeighbor(n, t);
+            int l = 3 * n;
+            int d = mTv[l + f];
+            int nc = mTn[l + (f + 1) % 3], nb = mTn[l + (f + 2) % 3];
+            int t3 = this.newTriangle();
+            this.setTriangle(t, p, a, b, tc, t3, t1);
+            this.setTriangle(t1, p, c, a, tb, t, n);
+            this.setTriangle(n, p, d, c, nb, t1, t3);
+            this.setTriangle(t3, p, b, d, nc, n, t);
+            this.replaceNeighbor(tb, t, t1);
+            this.replaceNeighbor(nc, n, t3);
+            this.push(t);
+            this.push(t1);
+            this.push(n);
+            this.push(t3);
+        }
+
+        private int indexOfNeighbor(int t, int n) 
+        {
+            int k = 3 * t;
+            return mTn[k] == n ? 0 : (mTn[k + 1] == n ? 1 : 2);
+        }
+
+        private void push(int t) 
+        {
+            if (mStackSize == mStack.length) {
+                mStack = T3dArrays.copyOf(mStack, 2 * mStack.length);
+            }
+            mStack[mStackSize++] = t;
+            if (mStamp[t] != mCurrentStamp) {
+                mStamp[t] = mCurrentStamp;
+                if (mChangedSize == mChanged.length) {
+                    mChanged = T3dArrays.copyOf(mChanged, 2 * mChanged.length);
+                }
+                mChanged[mChangedSize++] = t;
+            }
+        }
+
+        // Lawson flip of the edge opposite to the new vertex p = mTv[3 * t]
+        private void legalize(int t)
+        {
+            int k = 3 * t;
+            int n = mTn[k];
+            if (n < 0) {
+                return;
+            }
+            int f = this.indexOfNeighbor(n, t);
+            int l = 3 * n;
+            int p = mTv[k], x = mTv[k + 1], y = mTv[k + 2], q = mTv[l + f];
+            if (!this.inCircle(p, x, y, q)) {
+                return;
+            }
+            int a = mTn[k + 1], b = mTn[k + 2];
+            int c = mTn[l + (f + 1) % 3], d = mTn[l + (f + 2) % 3];
+            this.setTriangle(t, p, x, q, c, n, b);
+            this.setTriangle(n, p, q, y, d, a, t);
+            this.replaceNeighbor(c, n, t);
+            this.replaceNeighbor(a, t, n);
+            this.push(t);
+            this.push(n);
+        }
+
+        private long orient(long ax, long ay, long bx, long by, long cx, long cy) {
+            return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        }
+
+        // true, if vertex d lies strictly inside the circumcircle of the triangle (a, b, c), and
+        // if the quadrilateral (a, b, d, c) is convex
+        private boolean inCircle(int a, int b, int c, int d) 
+        {
+            int ca = mVertexCell[a], cb = mVertexCell[b], cc = mVertexCell[c], cd = mVertexCell[d];
+            long dx = cd % mNX, dy = cd / mNX;
+            long adx = ca % mNX - dx, ady = ca / mNX - dy;
+            long bdx = cb % mNX - dx, bdy = cb / mNX - dy;
+            long cdx = cc % mNX - dx, cdy = cc / mNX - dy;
+            // the flip must not produce inverted triangles
+            if (adx * bdy - ady * bdx <= 0 || cdx * ady - cdy * adx <= 0) {
+                return false;
+            }
+            if (mExactInCircle) {
+                long det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+                    + (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy)
+                    + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+                return det > 0;
+            }
+            double det = ((double) (adx * adx + ady * ady)) * (bdx * cdy - cdx * bdy)
+                + ((double) (bdx * bdx + bdy * bdy)) * (cdx * ady - adx * cdy)
+                + ((double) (cdx * cdx + cdy * cdy)) * (adx * bdy - bdx * ady);
+            return det > 0.;
+        }
+
+        // determines the candidate of triangle t by scan-conversion
+        private void scan(int t)
+        {
+            int k = 3 * t;
+            int c0 = mVertexCell[mTv[k]], c1 = mVertexCell[mTv[k + 1]], c2 = mVertexCell[mTv[k + 2]];
+            long x0 = c0 % mNX, y0 = c0 / mNX;
+            long x1 = c1 % mNX, y1 = c1 / mNX;
+            long x2 = c2 % mNX, y2 = c2 / mNX;
+            double z0 = this.elevation(c0), z1 = this.elevation(c1), z2 = this.elevation(c2);
+
+            double lBestErr = -1.;
+            int lBest = -1;
+            long det = this.orient(x0, y0, x1, y1, x2, y2);
+            if (det > 0) {
+                // plane z = z0 + gx * (x - x0) + gy * (y - y0)
+                double gx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) / det;
+                double gy = ((x1 - x0) * (z2 - z0) - (x2 - x0) * (z1 - z0)) / det;
+
+                long yMin = Math.min(y0, Math.min(y1, y2)), yMax = Math.max(y0, Math.max(y1, y2));
+                long xMin = Math.min(x0, Math.min(x1, x2)), xMax = Math.max(x0, Math.max(x1, x2));
+                for (long y = yMin; y <= yMax; y++) {
+                    long lo = xMin, hi = xMax;
+                    // edge functions a * x + b >= 0 for all three edges
+                    for (int i = 0; i < 3 && lo <= hi; i++) {
+                        long px = i == 0 ? x0 : (i == 1 ? x1 : x2), py = i == 0 ? y0 : (i == 1 ? y1 : y2);
+                        long qx = i == 0 ? x1 : (i == 1 ? x2 : x0), qy = i == 0 ? y1 : (i == 1 ? y2 : y0);
+                        long a = py - qy;
+                        long b = (qx - px) * (y - py) + (qy - py) * px;
+                        if (a > 0) {
+                            lo = Math.max(lo, -floorDiv(b, a));
+                        } else if (a < 0) {
+                            hi = Math.min(hi, floorDiv(b, -a));
+                        } else if (b < 0) {
+                            hi = lo - 1;
+                        }
+                    }
+                    int lRow = (int) y * mNX;
+                    double zRow = z0 + gy * (y - y0);
+                    for (long x = lo; x <= hi; x++) {
+                        int c = lRow + (int) x;
+                        double z = mZ[c];
+                        if (Double.isNaN(z) || mInserted.get(c)) {
+                            continue;
+                        }
+                        double err = Math.abs(z - (zRow + gx * (x - x0)));
+                        if (err > lBestErr) {
+                            lBestErr = err;
+                            lBest = c;
+                        }
+                    }
+                }
+            }
+
+            mErr[t] = lBestErr;
+            mCand[t] = lBest;
+            if (lBest < 0) {
+                this.heapRemove(t);
+            } else if (mHeapPos[t] < 0) {
+                this.heapInsert(t);
+            } else {
+                this.heapUpdate(t);
+            }
+        }
+
+        private static long floorDiv(long a, long b) {
+            long q = a / b;
+            return (a % b != 0 && ((a ^ b) < 0)) ? q - 1 : q;
+        }
+
+        // max-heap on mErr
+
+        private void heapInsert(int t) {
+            mHeap[mHeapSize] = t;
+            mHeapPos[t] = mHeapSize++;
+            this.siftUp(mHeapPos[t]);
+        }
+
+        private void heapRemove(int t) 
+        {
+            int i = mHeapPos[t];
+            if (i < 0) {
+                return;
+            }
+            mHeapPos[t] = -1;
+            int lLast = mHeap[--mHeapSize];
+            if (i < mHeapSize) {
+                mHeap[i] = lLast;
+                mHeapPos[lLast] = i;
+                this.siftUp(i);
+                this.siftDown(mHeapPos[lLast]);
+            }
+        }
+
+        private void heapUpdate(int t) {
+            this.siftUp(mHeapPos[t]);
+            this.siftDown(mHeapPos[t]);
+        }
+
+        private void siftUp(int i) 
+        {
+            int t = mHeap[i];
+            while (i > 0) {
+                int j = (i - 1) >> 1;
+                if (mErr[mHeap[j]] >= mErr[t]) {
+                    break;
+                }
+                mHeap[i] = mHeap[j];
+                mHeapPos[mHeap[i]] = i;
+                i = j;
+            }
+            mHeap[i] = t;
+            mHeapPos[t] = i;
+        }
+
+        private void siftDown(int i) 
+        {
+            int t = mHeap[i];
+            while (true) {
+                int j = 2 * i + 1;
+                if (j >= mHeapSize) {
+                    break;
+                }
+                if (j + 1 < mHeapSize && mErr[mHeap[j + 1]] > mErr[mHeap[j]]) {
+                    j++;
+                }
+                if (mErr[mHeap[j]] <= mErr[t]) {
+                    break;
+                }
+                mHeap[i] = mHeap[j];
+                mHeapPos[mHeap[i]] = i;
+                i = j;
+            }
+            mHeap[i] = t;
+            mHeapPos[t] = i;
+        }
     }
 }
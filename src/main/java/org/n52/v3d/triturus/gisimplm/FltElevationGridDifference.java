@@ -71,14 +71,17 @@ public class FltElevationGridDifference extends T3dProcFilter
              ((GmSimple2dGridGeometry) pGrid1.getGeometry()).getDeltaX(),
              ((GmSimple2dGridGeometry) pGrid1.getGeometry()).getDeltaY());
 
+        // Row-wise processing; since unset elements are given as NaN, their
+        // differences will be NaN (i.e. unset), too:
+        int nCols = lGridRes.numberOfColumns();
+        double[] row1 = new double[nCols], row2 = new double[nCols];
         for (int i = 0; i < lGridRes.numberOfRows(); i++) {
-            for (int j = 0; j < lGridRes.numberOfColumns(); j++) {
-                if (pGrid1.isSet(i, j) && pGrid2.isSet(i, j)) {
-                    lGridRes.setValue(i, j, pGrid2.getValue(i, j) - pGrid1.getValue(i, j));
-                } else {
-                    lGridRes.unset(i, j);
-                }
+            pGrid1.getRow(i, row1);
+            pGrid2.getRow(i, row2);
+            for (int j = 0; j < nCols; j++) {
+                row2[j] -= row1[j];
             }
+            lGridRes.setBlock(i, 0, 1, nCols, row2);
         }
 
         return lGridRes;
@@ -71,6 +71,28 @@ public class FltElevationGridFloodFill extends T3dProcFilter
      */
     public VgElevationGrid transform(VgElevationGrid pElevationGrid, VgPoint pSeedPoint) 
     	throws T3dException
+    {
+        return this.transform(pElevationGrid, pSeedPoint, null);
+    }
+
+    /** 
+     * performs the flood fill. The Seed-point gives the water-level z' for 
+     * the position (x, y). The resulting grid's values will be held by the 
+     * given storage engine, e.g. a {@link GmMappedGridStorage}, which allows 
+     * to process elevation grids that exceed the available heap space. The
+     * storage's elements are expected to be unset.
+     * 
+     * @param pElevationGrid Elevation-grid
+     * @param pSeedPoint Seed-point 
+     * @param pResultStorage Storage for the result grid (if <i>null</i>, a 
+     * 		new in-memory storage will be used)
+     * @throws T3dException
+     */
+    public VgElevationGrid transform(
+    		VgElevationGrid pElevationGrid, 
+    		VgPoint pSeedPoint, 
+    		GmGridStorage pResultStorage) 
+    	throws T3dException
     {   	
         if (pElevationGrid == null) {
             throw new T3dException("Source grid is missing.");
@@ -81,8 +103,13 @@ public class FltElevationGridFloodFill extends T3dProcFilter
             throw new T3dException("Unexpected grid geometry.");        	
         }
         
-        GmSimpleElevationGrid lResultGrid = 
-        	this.setUpResultGrid((GmSimple2dGridGeometry) lGeom);
+        GmSimpleElevationGrid lResultGrid; 
+        if (pResultStorage == null) {
+        	lResultGrid = this.setUpResultGrid((GmSimple2dGridGeometry) lGeom);
+        } else {
+        	lResultGrid = new GmSimpleElevationGrid(
+        		(GmSimple2dGridGeometry) lGeom, pResultStorage);
+        }
         
         try {
         	int[] indices = 
@@ -92,7 +119,6 @@ public class FltElevationGridFloodFill extends T3dProcFilter
         	}
         	int row = indices[0], col = indices[1];
         	
-        	// Start recursion:
         	this.fillElement(
         			lResultGrid, pElevationGrid, 
         			row, col, 
@@ -119,30 +145,45 @@ public class FltElevationGridFloodFill extends T3dProcFilter
     	return lResultGrid;
     }
 
+	// Note that an explicit stack is used instead of recursive calls, since 
+	// large flooded areas would lead to a stack overflow otherwise. Grid 
+	// elements are pushed as pairs of row and column index.
 	private void fillElement(
 			GmSimpleElevationGrid targetGrd, 
 			VgElevationGrid srcGrd,
-			int i, 
-			int j,
+			int i0, 
+			int j0,
 			double zFlood) 
 	{
-		if (
-			i < 0 || i >= srcGrd.numberOfRows() || 
-			j < 0 || j >= srcGrd.numberOfColumns()) 
-		{
-			return;
-		}
-		if (targetGrd.isSet(i, j)) {
-			return;
-		}
-		// else:
-		double z = srcGrd.getValue(i, j);
-		if (z < zFlood) {
-			targetGrd.setValue(i, j, zFlood);
-			fillElement(targetGrd, srcGrd, i - 1, j, zFlood);
-			fillElement(targetGrd, srcGrd, i + 1, j, zFlood);
-			fillElement(targetGrd, srcGrd, i, j - 1, zFlood);
-			fillElement(targetGrd, srcGrd, i, j + 1, zFlood);
+		int nRows = srcGrd.numberOfRows(), nCols = srcGrd.numberOfColumns();
+		int[] stack = new int[256];
+		int top = 0;
+		stack[top++] = i0; 
+		stack[top++] = j0;
+		
+		while (top > 0) {
+			int j = stack[--top];
+			int i = stack[--top];
+			if (i < 0 || i >= nRows || j < 0 || j >= nCols) {
+				continue;
+			}
+			if (targetGrd.isSet(i, j)) {
+				continue;
+			}
+			// else:
+			double z = srcGrd.getValue(i, j);
+			if (z < zFlood) {
+				targetGrd.setValue(i, j, zFlood);
+				if (top + 8 > stack.length) {
+					int[] tmp = new int[2 * stack.length];
+					System.arraycopy(stack, 0, tmp, 0, top);
+					stack = tmp;
+				}
+				stack[top++] = i - 1; stack[top++] = j;
+				stack[top++] = i + 1; stack[top++] = j;
+				stack[top++] = i; stack[top++] = j - 1;
+				stack[top++] = i; stack[top++] = j + 1;
+			}
 		}
 	}
 }
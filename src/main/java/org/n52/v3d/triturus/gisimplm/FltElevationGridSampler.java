@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dProcFilter;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+
+/**
+ * Filter to sample elevation values from an elevation grid for large 
+ * batches of positions, e.g. to drape markers or GPS track points onto the 
+ * terrain. The positions are given as packed coordinate array 
+ * <tt>{x0, y0, x1, y1, ...}</tt>, the results are written to a 
+ * caller-supplied array. No objects will be allocated per position.<p>
+ * For positions outside the grid or next to unset grid elements, the result 
+ * will be <tt>Double.NaN</tt>. As for 
+ * {@link GmSimpleElevationGrid#getValue(org.n52.v3d.triturus.vgis.VgPoint)}, 
+ * the coordinates are interpreted with respect to the grid's vertices 
+ * (&quot;lattice&quot; view) and must refer to the grid's coordinate 
+ * reference system.<p>
+ * Large batches may be processed by multiple threads.
+ *
+ * @author Benno Schmidt
+ */
+public class FltElevationGridSampler extends T3dProcFilter
+{
+    private String mLogString = "";
+
+    /**
+     * Identifier for bilinear interpolation.
+     */
+    public final static short cBilinear = 1;
+
+    /**
+     * Identifier for bicubic interpolation (cubic convolution).
+     */
+    public final static short cBicubic = 2;
+
+    private short mMode = cBilinear;
+    private int mNumberOfThreads = 1;
+    private int mMinBatchPerThread = 16384;
+
+    /**
+     * Constructor. Bilinear interpolation will be used.
+     */
+    public FltElevationGridSampler() {
+        mLogString = this.getClass().getName();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pMode Interpolation mode, <tt>cBilinear</tt> or <tt>cBicubic</tt>
+     * @see FltElevationGridSampler#cBilinear
+     * @see FltElevationGridSampler#cBicubic
+     */
+    public FltElevationGridSampler(short pMode) {
+        mLogString = this.getClass().getName();
+        this.setInterpolationMode(pMode);
+    }
+
+    public String log() {
+        return mLogString;
+    }
+
+    /**
+     * sets the interpolation mode.
+     *
+     * @param pMode <tt>cBilinear</tt> or <tt>cBicubic</tt>
+     * @throws T3dException for unknown modes
+     */
+    public void setInterpolationMode(short pMode) throws T3dException 
+    {
+        if (pMode != cBilinear && pMode != cBicubic) {
+            throw new T3dException("Unknown interpolation mode " + pMode + ".");
+        }
+        mMode = pMode;
+    }
+
+    /**
+     * sets the number of threads to be used for large batches. The default 
+     * value is 1 (sequential processing).
+     *
+     * @param pNumberOfThreads Number of threads
+     * @see T3dParallelExecutor#availableProcessors
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /**
+     * samples the elevation grid for the given positions.
+     *
+     * @param pGrid Elevation grid
+     * @param pXY Packed positions <tt>{x0, y0, x1, y1, ...}</tt>
+     * @param pZ Result array; at least <tt>pXY.length / 2</tt> elements
+     * @throws T3dException
+     */
+    public void transform(GmSimpleElevationGrid pGrid, double[] pXY, double[] pZ)
+        throws T3dException
+    {
+        if (pGrid == null) {
+            throw new T3dException("Elevation grid is missing.");
+        }
+        final int n = pXY.length / 2;
+        if (pZ.length < n) {
+            throw new T3dException("Result array too small.");
+        }
+
+        final GmSimple2dGridGeometry geom = 
+            (GmSimple2dGridGeometry) pGrid.getGeometry();
+        final GmGridStorage st = pGrid.getStorage();
+        final double[] xy = pXY, z = pZ;
+
+        int nThreads = Math.min(
+            mNumberOfThreads, Math.max(1, n / mMinBatchPerThread));
+        T3dParallelExecutor.execute(0, n, nThreads, 
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    sample(geom, st, xy, z, pFrom, pTo);
+                }
+            });
+    }
+
+    private void sample(
+        GmSimple2dGridGeometry pGeom, GmGridStorage pSt, 
+        double[] pXY, double[] pZ, int pFrom, int pTo)
+    {
+        double x0 = pGeom.getOrigin().getX(), y0 = pGeom.getOrigin().getY();
+        double dx = pGeom.getDeltaX(), dy = pGeom.getDeltaY();
+        int nRows = pSt.numberOfRows(), nCols = pSt.numberOfColumns();
+        double rowMax = nRows - 1, colMax = nCols - 1;
+
+        for (int k = pFrom; k < pTo; k++) 
+        {
+            double col = (pXY[2 * k] - x0) / dx;
+            double row = (pXY[2 * k + 1] - y0) / dy;
+            if (!(col >= 0. && col <= colMax && row >= 0. && row <= rowMax)) {
+                pZ[k] = Double.NaN; // also for NaN coordinates
+                continue;
+            }
+
+            // Lower left corner of the grid cell; positions on the last row 
+            // or column refer to the preceding cell:
+            int i = (int) row, j = (int) col;
+            if (i >= nRows - 1 && i > 0) i--;
+            if (j >= nCols - 1 && j > 0) j--;
+            double my = row - i, lambda = col - j;
+            int i1 = Math.min(i + 1, nRows - 1), j1 = Math.min(j + 1, nCols - 1);
+
+            // Note that unset elements (NaN) propagate to the result:
+            double z = 
+                pSt.get(i, j) * (1. - my) * (1. - lambda) +
+                pSt.get(i1, j) * my * (1. - lambda) +
+                pSt.get(i, j1) * (1. - my) * lambda + 
+                pSt.get(i1, j1) * my * lambda;
+
+            if (mMode == cBicubic && !Double.isNaN(z)) {
+                double zc = this.bicubic(pSt, i, j, my, lambda, nRows, nCols);
+                if (!Double.isNaN(zc)) 
+                    z = zc; // else keep bilinear value next to unset elements
+            }
+            pZ[k] = z;
+        }
+    }
+
+    // Cubic convolution (Keys, a = -0.5) on the 4x4 neighborhood of the 
+    // cell (i, j):
+    private double bicubic(
+        GmGridStorage pSt, int i, int j, double my, double lambda, 
+        int nRows, int nCols)
+    {
+        double res = 0.;
+        for (int m = -1; m <= 2; m++) {
+            double rowVal = 0.;
+            for (int n = -1; n <= 2; n++) {
+                rowVal += 
+                    this.value(pSt, i + m, j + n, nRows, nCols) 
+                    * this.kernel(lambda - n);
+            }
+            res += rowVal * this.kernel(my - m);
+        }
+        return res;
+    }
+
+    // Grid value access; values one step outside the grid are extrapolated 
+    // linearly, so that planar surfaces are reproduced exactly at the border:
+    private double value(GmGridStorage pSt, int i, int j, int nRows, int nCols)
+    {
+        if (i < 0 || i >= nRows) {
+            int b = (i < 0) ? 0 : nRows - 1, c = (i < 0) ? 1 : nRows - 2;
+            if (c < 0 || c >= nRows) 
+                return this.value(pSt, b, j, nRows, nCols);
+            return 
+                2. * this.value(pSt, b, j, nRows, nCols) 
+                - this.value(pSt, c, j, nRows, nCols);
+        }
+        if (j < 0 || j >= nCols) {
+            int b = (j < 0) ? 0 : nCols - 1, c = (j < 0) ? 1 : nCols - 2;
+            if (c < 0 || c >= nCols) 
+                return pSt.get(i, b);
+            return 2. * pSt.get(i, b) - pSt.get(i, c);
+        }
+        return pSt.get(i, j);
+    }
+
+    private double kernel(double t)
+    {
+        final double a = -0.5;
+        t = Math.abs(t);
+        if (t <= 1.) 
+            return ((a + 2.) * t - (a + 3.)) * t * t + 1.;
+        if (t < 2.) 
+            return ((a * t - 5. * a) * t + 8. * a) * t - 4. * a;
+        return 0.;
+    }
+}
@@ -34,8 +34,10 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
 import org.n52.v3d.triturus.vgis.VgPoint;
 
+import java.util.Iterator;
 import java.util.List;
 
 /** 
@@ -43,8 +45,15 @@ import java.util.List;
  * collection of scattered (3-D) data points. The result will be given as 
  * {@link GmSimpleElevationGrid}-object. Various sampling-methods can be used 
  * to determine the grid-vertices' z-values.
+ * <p>
+ * Besides processing a point list by <tt>transform()</tt>, points may be 
+ * passed incrementally (e.g. while reading them from a file) in between calls 
+ * of {@link #beginTransform()} and {@link #endTransform()}. Then, the memory 
+ * demand depends on the target grid size only, not on the number of input 
+ * points.
  * 
  * @author Benno Schmidt
+ * @see FltPointSet2ElevationGridKNearest
  */
 public class FltPointSet2ElevationGrid extends T3dProcFilter
 {
@@ -80,12 +89,24 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
 
     private double mRadius; // search radius (given in geo-coordinates)
 
+    private boolean mUseWeightTable = false;
+    private double mWeightTableAccuracy = 1.e-4;
+
+    private int mNumberOfThreads = 1;
+
     // The value of a grid-cell/vertex will be given by the weighted sum of the values 
     // of the points inside the search-circle (mSumN[i]) divided by the sum of the 
     // weights (mSumZ[i]):
     private double mSumZ[];
     private double mSumN[];
 
+    // Buffer for incrementally added points (packed x, y, z) that will be 
+    // processed in parallel mode:
+    private final static int cChunkSize = 65536;
+    private double mChunk[] = null;
+    private int mChunkCount = 0;
+    private boolean mTransformActive = false;
+
     
     /**
      * Constructor. Target geometry and search-radius have to be given as input 
@@ -161,6 +182,55 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
         mRadius = pRadius;
     }
 
+    /**
+     * sets the number of threads to be used for the gridding process. The 
+     * target grid will be divided into bands of rows that are processed in 
+     * parallel. The results will be identical to sequential processing. The 
+     * default value is 1 (sequential processing).
+     * 
+     * @param pNumberOfThreads Number of threads
+     * @see T3dParallelExecutor#availableProcessors
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /**
+     * enables or disables the use of a precomputed weight table. If enabled, 
+     * the weights for the inverse distance, triangle and Franke/Little weight 
+     * functions will be interpolated from a table over the squared distances 
+     * inside the search-circle instead of being computed exactly for every 
+     * point/grid-vertex pair. This will speed up the gridding process 
+     * considerably, especially for large search-radii. When setting up the 
+     * table, the interpolated weights will be checked against the exact 
+     * weights; the table will be used only where the relative error stays 
+     * below the bound given by {@link #setWeightTableAccuracy(double)}. 
+     * Elsewhere (e.g. close to the singularity at distance 0), weights will 
+     * still be computed exactly. For the nearest neighbor method, the table 
+     * will not be used. By default, the weight table is disabled.
+     * 
+     * @param pUseTable <i>true</i> to enable the weight table
+     */
+    public void setWeightTableMode(boolean pUseTable) {
+        mUseWeightTable = pUseTable;
+    }
+
+    /**
+     * sets the maximal relative error of the weights taken from the weight 
+     * table. The default value is 1e-4. Note that the resulting grid values 
+     * are weighted means; thus, their error will be in the order of this 
+     * bound multiplied by the range of the input z-values.
+     * 
+     * @param pMaxRelError Maximal relative error (must be positive)
+     * @see #setWeightTableMode(boolean)
+     */
+    public void setWeightTableAccuracy(double pMaxRelError) 
+    {
+        if (!(pMaxRelError > 0.))
+            throw new T3dException("Illegal weight table accuracy.");
+        mWeightTableAccuracy = pMaxRelError;
+    }
+
     public String log() {
         return mLogString;
     }
@@ -174,7 +244,10 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
      * @return Estimated Memory-demand in Bytes
      */
     public int estimateMemoryConsumption() {
-    	return 2 * mNX * mNY * /* sizeof(double) = */ 8; // stimmt das?
+    	int res = 2 * mNX * mNY * /* sizeof(double) = */ 8; // stimmt das?
+    	if (mNumberOfThreads > 1)
+    		res += 3 * cChunkSize * 8; // buffer for incrementally added points
+    	return res;
     }
 
     /**
@@ -216,6 +289,65 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
      */
     public GmSimpleElevationGrid transform(List<VgPoint> pPointSet) throws T3dException
     {   	
+        return this.transform(pPointSet.iterator());
+    }
+
+    /** 
+     * performs the grid calculation for the points delivered by the given 
+     * iterator. The points will be processed one by one; thus, the point 
+     * objects need not be held in memory.
+     * 
+     * @param pPoints Iterator delivering <tt>VgPoint</tt>-objects
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(Iterator<? extends VgPoint> pPoints) 
+        throws T3dException
+    {
+        this.beginTransform();
+        this.addPoints(pPoints);
+        return this.endTransform();
+    }
+
+    /** 
+     * performs the grid calculation for the points given by the coordinate 
+     * array <tt>pXYZ</tt>, which holds the x-, y- and z-coordinate of each 
+     * point in consecutive order, i.e. 
+     * <tt>(x<sub>0</sub>, y<sub>0</sub>, z<sub>0</sub>, x<sub>1</sub>, ...)</tt>.
+     * 
+     * @param pXYZ Coordinate array
+     * @param pNumberOfPoints Number of points to be processed
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(double[] pXYZ, int pNumberOfPoints) 
+        throws T3dException
+    {
+        this.beginTransform();
+        this.addPoints(pXYZ, 0, pNumberOfPoints);
+        return this.endTransform();
+    }
+
+    /**
+     * starts an incremental grid calculation. After calling this method, the
+     * input points can be passed by calls of <tt>addPoint()</tt> or 
+     * <tt>addPoints()</tt>. Finally, the result grid will be computed by 
+     * {@link #endTransform()}. The memory demand is bounded by the size of 
+     * the target grid; the number of points passed is arbitrary. Example:
+     * <pre>
+     * final FltPointSet2ElevationGrid flt = new FltPointSet2ElevationGrid(geom, FltPointSet2ElevationGrid.cInverseDist, 100.);
+     * flt.beginTransform();
+     * reader.readFromFile("points.xyz", new IoPointListReader.PointHandler() {
+     *     public void handlePoint(double pX, double pY, double pZ) {
+     *         flt.addPoint(pX, pY, pZ);
+     *     }
+     * });
+     * GmSimpleElevationGrid grid = flt.endTransform();
+     * </pre>
+     * 
+     * @throws T3dException
+     * @see IoPointListReader#readFromFile(String, IoPointListReader.PointHandler)
+     */
+    public void beginTransform() throws T3dException
+    {
         if (mGrid == null) {
             throw new T3dException("Destination grid-geometry is missing.");
         }
@@ -241,17 +373,120 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
                 mSumN[i] = -1.; // will have the meaning: "did not store a distance yet"
         }
 
+        this.prepareProcessing();
+
+        mChunkCount = 0;
+        mTransformActive = true;
+    }
+
+    /**
+     * adds a single point to an incremental grid calculation.
+     * 
+     * @param pX x-coordinate
+     * @param pY y-coordinate
+     * @param pZ z-value
+     * @throws T3dException if {@link #beginTransform()} has not been called
+     */
+    public void addPoint(double pX, double pY, double pZ) throws T3dException
+    {
+        this.assertTransformActive();
+
+        if (mNumberOfThreads <= 1) {
+            this.processPoint(pX, pY, pZ, 0, mNY);
+            return;
+        }
+
+        // In parallel mode, points will be buffered and processed chunk-wise: 
+        if (mChunk == null) 
+            mChunk = new double[3 * cChunkSize];
+        int k = 3 * mChunkCount;
+        mChunk[k] = pX;
+        mChunk[k + 1] = pY;
+        mChunk[k + 2] = pZ;
+        mChunkCount++;
+        if (mChunkCount >= cChunkSize) 
+            this.flushChunk();
+    }
+
+    /**
+     * adds the points given by a coordinate array to an incremental grid 
+     * calculation. The array has to hold the x-, y- and z-coordinate of each 
+     * point in consecutive order.
+     * 
+     * @param pXYZ Coordinate array
+     * @param pOffset Array index of the first point's x-coordinate
+     * @param pNumberOfPoints Number of points to be processed
+     * @throws T3dException if {@link #beginTransform()} has not been called
+     */
+    public void addPoints(double[] pXYZ, int pOffset, int pNumberOfPoints) 
+        throws T3dException
+    {
+        this.assertTransformActive();
+        
+        if (pOffset < 0 || pNumberOfPoints < 0 || pOffset + 3 * pNumberOfPoints > pXYZ.length) {
+            throw new T3dException("Coordinate array index out of bounds.");
+        }
+        this.flushChunk(); // keep the order of points
+        this.processPoints(pXYZ, pOffset, pNumberOfPoints);
+    }
+
+    /**
+     * adds the points delivered by the given iterator to an incremental grid 
+     * calculation.
+     * 
+     * @param pPoints Iterator delivering <tt>VgPoint</tt>-objects
+     * @throws T3dException if {@link #beginTransform()} has not been called
+     */
+    public void addPoints(Iterator<? extends VgPoint> pPoints) throws T3dException
+    {
+        VgPoint pnt;
+        
+        while (pPoints.hasNext()) {
+            pnt = pPoints.next();
+            this.addPoint(pnt.getX(), pnt.getY(), pnt.getZ());
+        }
+    }
+
+    /**
+     * finishes an incremental grid calculation and returns the result grid.
+     * After this, the internal accumulation buffers will be released.
+     * 
+     * @return Elevation grid
+     * @throws T3dException if {@link #beginTransform()} has not been called
+     */
+    public GmSimpleElevationGrid endTransform() throws T3dException
+    {
+        this.assertTransformActive();
+        
         try {
-            this.processPoints(pPointSet);
+            this.flushChunk();
             this.putToElevationGrid();
         }
-        catch (T3dException e) {
-            throw e;
+        finally {
+            mTransformActive = false;
+            mSumZ = null;
+            mSumN = null;
+            mChunk = null;
         }
-
         return mGrid;
     }
 
+    private void assertTransformActive() throws T3dException
+    {
+        if (!mTransformActive) {
+            throw new T3dException("Gridding process has not been started.");
+        }
+    }
+
+    private void flushChunk()
+    {
+        if (mChunkCount > 0) {
+            int n = mChunkCount;
+            mChunkCount = 0;
+            this.processPoints(mChunk, 0, n);
+        }
+    }
+
     // Computation of the distance of the position (is, js) (referring to 
     // grid coordinates) from the grid's point (i,j):
     private double iDistance(int i, int j, double is, double js)
@@ -261,92 +496,313 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
         return Math.sqrt(k1 * k1 + k2 * k2);
     }
 
-    // Processing of all points of the given point-list and assigment of 
-    // values to mSumZ[] and mSumN[]:
-    private void processPoints(List<VgPoint> pPointSet)
+    // Processing of the given points (packed x, y, z coordinates) and 
+    // assigment of values to mSumZ[] and mSumN[]. In parallel mode, each 
+    // thread processes all points, but only for a band of grid rows. Since 
+    // every grid element thus receives its contributions in the same order as 
+    // for sequential processing, the results will be bit-identical.
+    private void processPoints(final double[] pXYZ, final int pOffset, final int pNumberOfPoints)
     {
-        // Search-radius rfering to matrix coordinates:
-        int radIdxX = (int)(Math.floor(mRadius / mDX)) + 1;
-        int radIdxY = (int)(Math.floor(mRadius / mDY)) + 1;
+        if (mNumberOfThreads <= 1) {
+            this.processPoints(pXYZ, pOffset, pNumberOfPoints, 0, mNY);
+            return;
+        }
+        T3dParallelExecutor.execute(0, mNY, mNumberOfThreads, 
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    processPoints(pXYZ, pOffset, pNumberOfPoints, pFrom, pTo);
+                }
+            });
+    }
+
+    // Processing of the given points for the grid rows pRowFrom (inclusive) 
+    // to pRowTo (exclusive):
+    private void processPoints(
+        double[] pXYZ, int pOffset, int pNumberOfPoints, int pRowFrom, int pRowTo)
+    {
+        int k = pOffset;
+        
+        if (mTable != null) {
+            for (int i = 0; i < pNumberOfPoints; i++, k += 3) {
+                this.processPointTable(pXYZ[k], pXYZ[k + 1], pXYZ[k + 2], pRowFrom, pRowTo);
+            }
+            return;
+        }
+        for (int i = 0; i < pNumberOfPoints; i++, k += 3) {
+            this.processPoint(pXYZ[k], pXYZ[k + 1], pXYZ[k + 2], pRowFrom, pRowTo);
+        }
+    }
+
+    // Search-radius referring to matrix coordinates:
+    private int mRadIdxX, mRadIdxY;
+    // Helpers:
+    private double mFaktorX, mFaktorY;
+    private double mMinDistInvDist; // distance below which cMaxWeight holds (inverse distances)
+    private double mSqrtMaxWeight;
+
+    // Weight table over squared distances s in [0, mRadius^2]. mTable[k] holds 
+    // the weight for s = k / mTableScale; linear interpolation is allowed for
+    // the intervals mTableKMin, ..., mTableKMax - 1 only, i.e. for squared 
+    // distances inside [mTableSMin, mTableSMax):
+    private final static int cWeightTableSize = 2048;
+    private double mTable[] = null;
+    private double mTableScale;
+    private int mTableKMin, mTableKMax;
+    private double mTableSMin, mTableSMax;
+
+    private void prepareProcessing()
+    {
+        mRadIdxX = (int)(Math.floor(mRadius / mDX)) + 1;
+        mRadIdxY = (int)(Math.floor(mRadius / mDY)) + 1;
+
+        mFaktorX = ((double)mNX - 1.) / (mXMax - mXMin);
+        mFaktorY = ((double)mNY - 1.) / (mYMax - mYMin);
+
+        mMinDistInvDist = Math.pow(cMaxWeight, -1. / (double)mInvDistExp);
+        mSqrtMaxWeight = Math.sqrt(cMaxWeight);
+
+        if (mUseWeightTable && mWeightFnc != cNearestNeighbor && mRadius > 0.)
+            this.prepareWeightTable();
+        else
+            mTable = null;
+    }
+
+    // Set-up of the weight table. For every table interval, the interpolated
+    // weights are checked against the exact weights. The table will be used 
+    // for the longest run of intervals meeting the accuracy bound; outside 
+    // (usually close to the singularity at distance 0), exact computation 
+    // takes place.
+    private void prepareWeightTable()
+    {
+        int n = cWeightTableSize;
+        double sMax = mRadius * mRadius;
+        double h = sMax / (double) n;
+
+        mTable = new double[n + 1];
+        mTableScale = (double) n / sMax;
+
+        for (int k = 0; k <= n; k++)
+            mTable[k] = this.weight(Math.sqrt(Math.min((double) k * h, sMax)));
+
+        final double[] lCheckPos = {0.125, 0.25, 0.5, 0.75, 0.875};
+        double w, wInt, t;
+        boolean valid;
+        int kStart = 0, kBest = 0, lenBest = 0;
+        for (int k = 0; k <= n; k++) {
+            valid = k < n;
+            for (int l = 0; valid && l < lCheckPos.length; l++) {
+                t = lCheckPos[l];
+                w = this.weight(Math.sqrt(((double) k + t) * h));
+                wInt = mTable[k] + t * (mTable[k + 1] - mTable[k]);
+                if (!(Math.abs(wInt - w) <= mWeightTableAccuracy * Math.abs(w)))
+                    valid = false;
+            }
+            if (!valid) {
+                if (k - kStart > lenBest) {
+                    kBest = kStart;
+                    lenBest = k - kStart;
+                }
+                kStart = k + 1;
+            }
+        }
+        mTableKMin = kBest;
+        mTableKMax = kBest + lenBest;
+        mTableSMin = (double) mTableKMin * h;
+        mTableSMax = (double) mTableKMax * h;
+        if (lenBest == 0)
+            mTable = null; // exact computation only
+    }
 
-        // Helpers:
-        double faktorX = ((double)mNX - 1.) / (mXMax - mXMin);
-        double faktorY = ((double)mNY - 1.) / (mYMax - mYMin);
+    // Exact weight for the distance r (r <= mRadius):
+    private double weight(double r)
+    {
+        double weight;
+        
+        switch (mWeightFnc) 
+        {
+            case cTriangleFnc:
+                weight = 1. - r / mRadius;
+                break;
+
+            case cInverseDist:
+                if (r > mMinDistInvDist)
+                    weight = 1. / Math.pow(r, (double)mInvDistExp);
+                else
+                    weight = cMaxWeight;
+                break;
+
+            case cFrankeLittle:
+                if (mRadius - r <= mSqrtMaxWeight * mRadius * r) {
+                    weight = (mRadius - r) / (mRadius * r);
+                    weight = weight * weight;
+                } else
+                    weight = cMaxWeight;                        
+                break;
+
+            default: throw new T3dException("Unexpected error.");
+        }
+        return weight;
+    }
 
+    // Assignment of a single point's contributions to mSumZ[] and mSumN[] 
+    // for the grid rows pRowFrom (inclusive) to pRowTo (exclusive):
+    private void processPoint(double x, double y, double z, int pRowFrom, int pRowTo)
+    {
         int ii, jj, index;
-        double x, y, z;
         double is, js;
         double r, weight = 0.;
-        VgPoint pnt;
 
-        for (int i = 0; i < pPointSet.size(); i++) // for all points in the list
+        // (real) grid-indices:
+        js = mFaktorX * (x - mXMin);
+        is = mFaktorY * (y - mYMin);
+
+        int iiFrom = ((int)Math.floor(is)) - mRadIdxY - 1; // -1 just to be sure
+        int iiTo = ((int)Math.floor(is)) + mRadIdxY + 1;
+        if (iiFrom < pRowFrom) iiFrom = pRowFrom;
+        if (iiTo > pRowTo - 1) iiTo = pRowTo - 1;
+        if (iiFrom > iiTo) 
+            return; // point does not affect the given rows
+
+        for (jj = (((int)Math.floor(js)) - mRadIdxX - 1);  // -1 just to be sure
+             jj <= ((int)Math.floor(js)) + mRadIdxX + 1;
+             jj++)
         {
-            pnt = ((VgPoint) pPointSet.get(i));
-            x = pnt.getX();
-            y = pnt.getY();
-            z = pnt.getZ();
-      
-            // (real) grid-indices:
-            js = faktorX * (x - mXMin);
-            is = faktorY * (y - mYMin);
-
-            for (jj = (((int)Math.floor(js)) - radIdxX - 1);  // -1 just to be sure
-                 jj <= ((int)Math.floor(js)) + radIdxX + 1;
-                 jj++)
+            for (ii = iiFrom; ii <= iiTo; ii++)
             {
-                for (ii = (((int)Math.floor(is)) - radIdxY - 1); 
-                     ii <= ((int)Math.floor(is)) + radIdxY + 1; 
-                     ii++)
+                if (jj >= 0 && jj <= mNX - 1 && ii >= 0 && ii <= mNY - 1) 
                 {
-                    if (jj >= 0 && jj <= mNX - 1 && ii >= 0 && ii <= mNY - 1) 
-                    {
-                        r = iDistance(jj, ii, js, is);
-
-                        if (r <= mRadius)
-                        {
-                            index = jj * mNY + ii;
-                  
-                            switch (mWeightFnc) 
-                            {
-                                case cTriangleFnc:
-                                    weight = 1. - r / mRadius;
-                                    break;
-                    
-                                case cInverseDist:
-                                    if (r > Math.pow(cMaxWeight, -1. / (double)mInvDistExp))
-                                        weight = 1. / Math.pow(r, (double)mInvDistExp);
-                                    else
-                                        weight = cMaxWeight;
-                                    break;
-
-                                case cFrankeLittle:
-                                    if (mRadius - r <= Math.sqrt(cMaxWeight) * mRadius * r) {
-                                        weight = (mRadius - r) / (mRadius * r);
-                                        weight = weight * weight;
-                                    } else
-                                        weight = cMaxWeight;                        
-                                    break;
-                     
-                                case cNearestNeighbor:        
-                                    if (mSumN[index] < 0. || (mSumN[index] >= 0. && r < mSumN[index])) {
-                                        mSumZ[index] = z;
-                                        mSumN[index] = r;
-                                    }
-                                    break;
-   
-                                default: throw new T3dException("Unexpected error.");
-                            }
+                    r = iDistance(jj, ii, js, is);
 
-                            if (mWeightFnc != cNearestNeighbor) {
-                                mSumZ[index] += weight * z;
-                                mSumN[index] += weight;
+                    if (r <= mRadius)
+                    {
+                        index = jj * mNY + ii;
+              
+                        if (mWeightFnc == cNearestNeighbor) {
+                            if (mSumN[index] < 0. || (mSumN[index] >= 0. && r < mSumN[index])) {
+                                mSumZ[index] = z;
+                                mSumN[index] = r;
                             }
                         }
+                        else {
+                            weight = this.weight(r);
+                            mSumZ[index] += weight * z;
+                            mSumN[index] += weight;
+                        }
                     }
-                } // for ii (rows)
-            } // for jj (columns)
-        } // for i (all points)
-    } // processPoints()
+                }
+            } // for ii (rows)
+        } // for jj (columns)
+    } // processPoint()
+
+    // Variant of processPoint() using the weight table. For each grid column,
+    // the rows inside the search-circle are split into segments: Rows whose 
+    // squared distance lies inside the table's valid range will be processed
+    // by table look-up, the remaining rows (close to the point's position or 
+    // close to the search-circle's border) by exact computation. Note that 
+    // exact computations are kept out of the table loop; this lets the JIT
+    // generate a tight loop here.
+    private void processPointTable(double x, double y, double z, int pRowFrom, int pRowTo)
+    {
+        // (real) grid-indices:
+        double js = mFaktorX * (x - mXMin);
+        double is = mFaktorY * (y - mYMin);
+
+        int iiFrom = ((int)Math.floor(is)) - mRadIdxY - 1;
+        int iiTo = ((int)Math.floor(is)) + mRadIdxY + 1;
+        if (iiFrom < pRowFrom) iiFrom = pRowFrom;
+        if (iiTo > pRowTo - 1) iiTo = pRowTo - 1;
+        if (iiFrom > iiTo) 
+            return; // point does not affect the given rows
+
+        int jjFrom = ((int)Math.floor(js)) - mRadIdxX - 1;
+        int jjTo = ((int)Math.floor(js)) + mRadIdxX + 1;
+        if (jjFrom < 0) jjFrom = 0;
+        if (jjTo > mNX - 1) jjTo = mNX - 1;
+        
+        final double[] lTable = mTable, lSumZ = mSumZ, lSumN = mSumN;
+        final double lScale = mTableScale, lDY = mDY, lSMax = mRadius * mRadius;
+        final int lKMin = mTableKMin, lKMax = mTableKMax - 1;
+
+        double k1, k2, s, pos, weight, a, b;
+        int e0, e1, t0, t1, index0, index, k, ii0, ii1;
+
+        for (int jj = jjFrom; jj <= jjTo; jj++) 
+        {
+            k1 = (js - (double)jj) * mDX;
+            k1 = k1 * k1;
+            if (k1 > lSMax)
+                continue;
+
+            // Rows with squared distance < mTableSMin are given by 
+            // e0 <= ii <= e1, rows with squared distance < mTableSMax by
+            // t0 <= ii <= t1:
+            a = Math.sqrt(Math.max(0., mTableSMin - k1)) / lDY;
+            b = Math.sqrt(Math.max(0., mTableSMax - k1)) / lDY;
+            e0 = (int)Math.floor(is - a) + 1;
+            e1 = (int)Math.ceil(is + a) - 1;
+            t0 = (int)Math.floor(is - b) + 1;
+            t1 = (int)Math.ceil(is + b) - 1;
+            if (e0 > e1) {
+                e0 = (int)Math.floor(is) + 1; // no inner exact segment
+                e1 = e0 - 1;
+            }
+            if (t0 > e0) t0 = e0;
+            if (t1 < e1) t1 = e1;
+
+            index0 = jj * mNY;
+            this.addExact(index0, k1, is, z, iiFrom, Math.min(t0 - 1, iiTo));
+            this.addExact(index0, k1, is, z, Math.max(e0, iiFrom), Math.min(e1, iiTo));
+            this.addExact(index0, k1, is, z, Math.max(t1 + 1, iiFrom), iiTo);
+
+            // table segments t0 <= ii < e0 and e1 < ii <= t1:
+            for (int seg = 0; seg < 2; seg++) 
+            {
+                ii0 = Math.max(seg == 0 ? t0 : e1 + 1, iiFrom);
+                ii1 = Math.min(seg == 0 ? e0 - 1 : t1, iiTo);
+                index = index0 + ii0;
+
+                for (int ii = ii0; ii <= ii1; ii++, index++) 
+                {
+                    k2 = (is - (double)ii) * lDY;
+                    s = k1 + k2 * k2;
+                    if (s > lSMax)
+                        continue;
+
+                    pos = s * lScale;
+                    k = (int) pos;
+                    // Due to round-off, the segment borders might be slightly 
+                    // missed. Then, the adjacent table interval will be used:
+                    if (k < lKMin) k = lKMin;
+                    if (k > lKMax) k = lKMax;
+                    weight = lTable[k] + (pos - (double) k) * (lTable[k + 1] - lTable[k]);
+
+                    lSumZ[index] += weight * z;
+                    lSumN[index] += weight;
+                }
+            }
+        }
+    } // processPointTable()
+
+    // Exact processing of the rows pII0, ..., pII1 of the grid column 
+    // starting at array index pIndex0; pK1 is the squared x-distance:
+    private void addExact(int pIndex0, double pK1, double is, double z, int pII0, int pII1)
+    {
+        double k2, s, weight;
+        int index = pIndex0 + pII0;
+        double sMax = mRadius * mRadius;
+
+        for (int ii = pII0; ii <= pII1; ii++, index++) 
+        {
+            k2 = (is - (double)ii) * mDY;
+            s = pK1 + k2 * k2;
+            if (s > sMax)
+                continue;
+
+            weight = this.weight(Math.sqrt(s));
+            mSumZ[index] += weight * z;
+            mSumN[index] += weight;
+        }
+    }
 
     // Assignment of values to the target grid:
     private void putToElevationGrid() 
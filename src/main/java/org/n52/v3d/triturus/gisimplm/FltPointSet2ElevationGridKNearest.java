@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.List;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dProcFilter;
+import org.n52.v3d.triturus.t3dutil.T3dKdTree;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/** 
+ * Gridding of scattered (3-D) data points based on the k nearest neighbors 
+ * of each grid vertex. In contrast to {@link FltPointSet2ElevationGrid}, 
+ * which uses a fixed search-radius, the neighborhood adapts to the local 
+ * point density; thus, no holes occur in sparse areas while dense areas are 
+ * processed efficiently. Optionally, a maximal search distance and a sector 
+ * constraint (e.g. quadrant search) can be specified.<p>
+ * The neighbor queries are performed using a {@link T3dKdTree}. The tree 
+ * may be built in advance and reused for several gridding runs or by other 
+ * filters. The grid rows may be processed in parallel.<p>
+ * The following weight functions are supported:<br />
+ * <table border="1">
+ * <tr><td><i>pWeightFnc</i></td><td>Weight function</td></tr>
+ * <tr><td><tt>FltPointSet2ElevationGrid.cNearestNeighbor</tt></td><td>z-value of the nearest neighbor</td></tr>
+ * <tr><td><tt>FltPointSet2ElevationGrid.cInverseDist</tt></td><td>Inverse distances (selectable exponent)</td></tr>
+ * <tr><td><tt>FltPointSet2ElevationGrid.cFrankeLittle</tt></td><td>Franke/Little-Weighting; the radius is given by the farthest neighbor's distance</td></tr>
+ * </table><p>
+ * 
+ * @author Benno Schmidt
+ */
+public class FltPointSet2ElevationGridKNearest extends T3dProcFilter
+{
+    private String mLogString = "";
+
+    private GmSimple2dGridGeometry mGeom;
+    private short mWeightFnc;
+    private int mK;
+    private double mMaxDist = Double.POSITIVE_INFINITY;
+    private int mSectors = 1;
+    private int mInvDistExp = 2;
+    private int mNumberOfThreads = 1;
+
+    private final double cMaxWeight = 1.e10; // same as for FltPointSet2ElevationGrid
+
+    /**
+     * Constructor.
+     * 
+     * @param pGeom the target-grid's geometry
+     * @param pWeightFnc Constant determining the weight function
+     * @param pK Number of neighbors to be considered for each grid vertex
+     * @throws T3dException for unsupported weight functions
+     * @see FltPointSet2ElevationGrid#cNearestNeighbor
+     * @see FltPointSet2ElevationGrid#cInverseDist
+     * @see FltPointSet2ElevationGrid#cFrankeLittle
+     */
+    public FltPointSet2ElevationGridKNearest(
+    		GmSimple2dGridGeometry pGeom, 
+    		short pWeightFnc, 
+    		int pK) 
+    	throws T3dException
+    {
+        mLogString = this.getClass().getName();
+
+        if (pWeightFnc != FltPointSet2ElevationGrid.cNearestNeighbor 
+            && pWeightFnc != FltPointSet2ElevationGrid.cInverseDist
+            && pWeightFnc != FltPointSet2ElevationGrid.cFrankeLittle) {
+            throw new T3dException("Unsupported weight function.");
+        }
+        mGeom = pGeom;
+        mWeightFnc = pWeightFnc;
+        this.setNumberOfNeighbors(pK);
+    }
+
+    public String log() {
+        return mLogString;
+    }
+
+    /**
+     * sets the number of neighbors to be considered for each grid vertex. If 
+     * a sector constraint is set, this number refers to each sector.
+     * 
+     * @param pK Number of neighbors
+     */
+    public void setNumberOfNeighbors(int pK) 
+    {
+        if (pK < 1)
+            throw new T3dException("Illegal number of neighbors.");
+        mK = pK;
+    }
+
+    /**
+     * sets the maximal search distance. Points farther away from a grid 
+     * vertex will not be considered. Grid vertices without neighbors inside 
+     * this distance remain unset. By default, the search distance is 
+     * unlimited.
+     * 
+     * @param pMaxDist Maximal distance (<tt>Double.POSITIVE_INFINITY</tt> for unlimited search)
+     */
+    public void setMaxDistance(double pMaxDist) {
+        mMaxDist = pMaxDist;
+    }
+
+    /**
+     * sets the number of sectors for the neighbor search. For a value greater
+     * than 1, the plane around each grid vertex will be divided into sectors 
+     * of equal angle and the <tt>k</tt> nearest neighbors will be taken from 
+     * each sector. E.g., 4 gives a quadrant search, which avoids that all 
+     * neighbors stem from one direction. The default value is 1 (no sector 
+     * constraint).
+     * 
+     * @param pSectors Number of sectors
+     */
+    public void setNumberOfSectors(int pSectors) 
+    {
+        if (pSectors < 1)
+            throw new T3dException("Illegal number of sectors.");
+        mSectors = pSectors;
+    }
+
+    /**
+     * sets the exponent to be used for the inverse distance weight-function 
+     * (if this method is to be used).
+     * 
+     * @param pExp Exponent (default-value is 2)
+     */
+    public void setInverseDistanceExponent(int pExp) {
+        mInvDistExp = pExp;
+    }
+
+    /**
+     * sets the number of threads to be used for the gridding process. The 
+     * target grid will be divided into bands of rows that are processed in 
+     * parallel. The default value is 1 (sequential processing).
+     * 
+     * @param pNumberOfThreads Number of threads
+     * @see T3dParallelExecutor#availableProcessors
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /** 
+     * performs the grid calculation.
+     * 
+     * @param pPointSet List of <tt>VgPoint</tt>-objects
+     * @return Elevation grid
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(List<VgPoint> pPointSet) throws T3dException {
+        return this.transform(new T3dKdTree(pPointSet));
+    }
+
+    /** 
+     * performs the grid calculation for the points given by a packed 
+     * coordinate array <tt>{x0, y0, z0, x1, y1, z1, ...}</tt>.
+     * 
+     * @param pXYZ Coordinate array
+     * @param pNumberOfPoints Number of points
+     * @return Elevation grid
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(double[] pXYZ, int pNumberOfPoints) 
+        throws T3dException 
+    {
+        return this.transform(new T3dKdTree(pXYZ, pNumberOfPoints));
+    }
+
+    /** 
+     * performs the grid calculation for the points held by the given kd-tree.
+     * 
+     * @param pTree kd-tree holding the input points
+     * @return Elevation grid
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(final T3dKdTree pTree) throws T3dException
+    {
+        if (mGeom == null) {
+            throw new T3dException("Destination grid-geometry is missing.");
+        }
+
+        final int nRows = mGeom.numberOfRows(), nCols = mGeom.numberOfColumns();
+        final double[] res = new double[nRows * nCols]; // row-major
+
+        if (mNumberOfThreads <= 1)
+            this.processRows(pTree, res, 0, nRows);
+        else {
+            T3dParallelExecutor.execute(0, nRows, mNumberOfThreads, 
+                new T3dParallelExecutor.RangeTask() {
+                    public void process(int pFrom, int pTo) {
+                        processRows(pTree, res, pFrom, pTo);
+                    }
+                });
+        }
+
+        GmSimpleElevationGrid grid = new GmSimpleElevationGrid(mGeom);
+        grid.setBlock(0, 0, nRows, nCols, res); // NaN values remain unset
+        return grid;
+    }
+
+    // Computation of the grid rows pRowFrom (inclusive) to pRowTo (exclusive):
+    private void processRows(T3dKdTree pTree, double[] pRes, int pRowFrom, int pRowTo)
+    {
+        final int nCols = mGeom.numberOfColumns();
+        final double x0 = mGeom.getOrigin().getX(), y0 = mGeom.getOrigin().getY();
+        final double dx = mGeom.getDeltaX(), dy = mGeom.getDeltaY();
+
+        T3dKdTree.Neighbors nb = new T3dKdTree.Neighbors(mK * mSectors);
+
+        for (int i = pRowFrom; i < pRowTo; i++) {
+            double y = y0 + i * dy;
+            for (int j = 0; j < nCols; j++) {
+                pTree.nearest(x0 + j * dx, y, mK, mMaxDist, mSectors, nb);
+                pRes[i * nCols + j] = this.interpolate(pTree, nb);
+            }
+        }
+    }
+
+    // Weighting of the neighbors' z-values:
+    private double interpolate(T3dKdTree pTree, T3dKdTree.Neighbors pNb)
+    {
+        int n = pNb.size();
+        if (n == 0)
+            return Double.NaN; // grid vertex will remain unset
+
+        int l;
+
+        if (mWeightFnc == FltPointSet2ElevationGrid.cNearestNeighbor) {
+            // Note: For equal distances, the point given first wins.
+            int best = 0;
+            for (l = 1; l < n; l++) {
+                if (pNb.getSquaredDistance(l) < pNb.getSquaredDistance(best)
+                    || (pNb.getSquaredDistance(l) == pNb.getSquaredDistance(best)
+                        && pTree.getOriginalIndex(pNb.getPosition(l)) 
+                           < pTree.getOriginalIndex(pNb.getPosition(best))))
+                    best = l;
+            }
+            return pTree.getZ(pNb.getPosition(best));
+        }
+
+        double sumZ = 0., sumN = 0., r, weight;
+
+        if (mWeightFnc == FltPointSet2ElevationGrid.cInverseDist) {
+            double rMin = Math.pow(cMaxWeight, -1. / (double)mInvDistExp);
+            for (l = 0; l < n; l++) {
+                r = pNb.getDistance(l);
+                if (r > rMin)
+                    weight = 1. / Math.pow(r, (double)mInvDistExp);
+                else
+                    weight = cMaxWeight;
+                sumZ += weight * pTree.getZ(pNb.getPosition(l));
+                sumN += weight;
+            }
+        }
+        else { // cFrankeLittle
+            double rad = 0.;
+            for (l = 0; l < n; l++)
+                rad = Math.max(rad, pNb.getDistance(l));
+            if (rad == 0.) 
+                return this.mean(pTree, pNb); // all neighbors at the vertex position
+            double sqrtMaxWeight = Math.sqrt(cMaxWeight);
+            for (l = 0; l < n; l++) {
+                r = pNb.getDistance(l);
+                if (rad - r <= sqrtMaxWeight * rad * r) {
+                    weight = (rad - r) / (rad * r);
+                    weight = weight * weight;
+                } else
+                    weight = cMaxWeight;
+                sumZ += weight * pTree.getZ(pNb.getPosition(l));
+                sumN += weight;
+            }
+            if (sumN == 0.) 
+                return this.mean(pTree, pNb); // all neighbors have the same distance
+        }
+        return sumZ / sumN;
+    }
+
+    private double mean(T3dKdTree pTree, T3dKdTree.Neighbors pNb)
+    {
+        double sumZ = 0.;
+        for (int l = 0; l < pNb.size(); l++)
+            sumZ += pTree.getZ(pNb.getPosition(l));
+        return sumZ / (double) pNb.size();
+    }
+}
@@ -33,17 +33,30 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.Delaunay;
+import org.n52.v3d.triturus.t3dutil.ParallelDelaunay;
+import org.n52.v3d.triturus.vgis.VgPoint;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /** 
- * Filter to perform triangulations of sets of 3-D points.
+ * Filter to perform triangulations of sets of 3-D points. The triangulation is a 2-D Delaunay
+ * triangulation of the points' x- and y-coordinates; the z-coordinates are carried along.<br />
+ * The resulting TIN geometry is set up from the triangulation's primitive coordinate and index 
+ * arrays, i.e. no point objects will be constructed per vertex.<br />
+ * Optionally, near-duplicate points can be removed before triangulation (see 
+ * {@link #setDuplicateTolerance(double)}).
  * @author Benno Schmidt
+ * @see org.n52.v3d.triturus.t3dutil.Delaunay
  */
 public class FltPointSet2TIN extends T3dProcFilter
 {
     private String mLogString = "";
+    
+    private int mNumberOfThreads = 1;
+    private double mDuplicateTolerance = -1.;
+    private int mNumberOfRemovedPoints = 0;
 
     /**
      * Constructor.
@@ -56,14 +69,188 @@ public class FltPointSet2TIN extends T3dProcFilter
         return mLogString;
     }
 
+    /**
+     * sets the number of threads used for the triangulation. For large point sets, the 
+     * triangulation will then be performed by a {@link ParallelDelaunay} instance. By default,
+     * a single thread will be used.
+     * @param pNumberOfThreads Number of threads (values &lt; 1 will be treated as 1)
+     * @see org.n52.v3d.triturus.t3dutil.T3dParallelExecutor#availableProcessors()
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /**
+     * sets the tolerance for the removal of near-duplicate points. If two input points have a 
+     * distance in the x-y-plane less than or equal to the given tolerance, only the point that
+     * occurs first inside the input point set will be kept. For a tolerance of 0, only points
+     * with identical x- and y-coordinates will be removed. A negative value (default) disables
+     * duplicate removal. Note that without duplicate removal, duplicate points will lead to 
+     * degenerated triangles, and near-duplicates might let the triangulation fail.
+     * @param pTolerance Tolerance in x-y-plane (referring to the points' unit)
+     */
+    public void setDuplicateTolerance(double pTolerance) {
+        mDuplicateTolerance = pTolerance;
+    }
+
+    /**
+     * returns the number of points that have been removed as near-duplicates during the last 
+     * call of a <tt>transform()</tt>-method.
+     * @return Number of removed points
+     */
+    public int numberOfRemovedPoints() {
+        return mNumberOfRemovedPoints;
+    }
+
+    /** 
+     * performs the triangulation of the given point set.
+     * @param pPointSet List of <tt>VgPoint</tt>-objects
+     * @return TIN with points in the given order (unless near-duplicates have been removed)
+     * @throws T3dException
+     */
+    public GmSimpleTINFeature transform(List<VgPoint> pPointSet) throws T3dException
+    {
+        int n = pPointSet.size();
+        double[] lXYZ = new double[3 * n];
+        int k = 0;
+        for (VgPoint lPnt : pPointSet) {
+            lXYZ[k++] = lPnt.getX();
+            lXYZ[k++] = lPnt.getY();
+            lXYZ[k++] = lPnt.getZ();
+        }
+        GmSimpleTINFeature lTIN = this.triangulate(lXYZ, n);
+        if (n > 0) {
+            lTIN.getGeometry().setSRS(pPointSet.get(0).getSRS());
+        }
+        return lTIN;
+    }
+
     /** 
-     * <b>TODO</b><p> 
-     * <i>... Verfahren: Delaunay, ...</i><p>
-     * <i>... Verfahrensparameter: ...</i><p>
-     * @param pPointSet Liste von <tt>VgPoint</tt>-Objekten
+     * performs the triangulation of the given point set. The points' coordinates are taken from 
+     * the array <tt>pXYZ</tt> given as <i>x<sub>0</sub>, y<sub>0</sub>, z<sub>0</sub>, 
+     * x<sub>1</sub>, y<sub>1</sub>, z<sub>1</sub>, ...</i>; the array will not be modified.
+     * @param pXYZ Point coordinates
+     * @param pNumberOfPoints Number of points to be processed
+     * @return TIN with points in the given order (unless near-duplicates have been removed)
+     * @throws T3dException
      */
-    public GmSimpleTINFeature transform(ArrayList pPointSet) throws T3dException
+    public GmSimpleTINFeature transform(double[] pXYZ, int pNumberOfPoints) throws T3dException
+    {
+        if (pNumberOfPoints < 0 || 3 * pNumberOfPoints > pXYZ.length) {
+            throw new T3dException("Coordinate array index out of bounds.");
+        }
+        double[] lXYZ = new double[3 * pNumberOfPoints];
+        System.arraycopy(pXYZ, 0, lXYZ, 0, 3 * pNumberOfPoints);
+        return this.triangulate(lXYZ, pNumberOfPoints);
+    }
+
+    // Note: pXYZ will be adopted by the resulting TIN geometry.
+    private GmSimpleTINFeature triangulate(double[] pXYZ, int pNumberOfPoints) 
+    {
+        mNumberOfRemovedPoints = 0;
+        int n = pNumberOfPoints;
+        if (mDuplicateTolerance >= 0. && n > 1) {
+            n = this.removeDuplicates(pXYZ, n, mDuplicateTolerance);
+            mNumberOfRemovedPoints = pNumberOfPoints - n;
+        }
+
+        int[] lTri = new int[0];
+        int lNumberOfTriangles = 0;
+        if (n >= 3) {
+            // Delaunay's exterior triangle depends on the maximal absolute coordinate value; thus 
+            // the points are moved to the origin to preserve numerical precision for geo-coordinates.
+            // Note that the points have to be moved to the first quadrant, since points close to 
+            // the corners (-b, b) and (b, -b) of the bounding square would lie on the exterior
+            // triangle's edges.
+            double xMin = pXYZ[0], yMin = pXYZ[1];
+            for (int i = 1, k = 3; i < n; i++, k += 3) {
+                if (pXYZ[k] < xMin) xMin = pXYZ[k];
+                if (pXYZ[k + 1] < yMin) yMin = pXYZ[k + 1];
+            }
+            double[] lXY = new double[2 * n];
+            for (int i = 0, k = 0; i < n; i++, k += 3) {
+                lXY[2 * i] = pXYZ[k] - xMin;
+                lXY[2 * i + 1] = pXYZ[k + 1] - yMin;
+            }
+
+            Delaunay lDelaunay;
+            try {
+                if (mNumberOfThreads > 1) {
+                    lDelaunay = new ParallelDelaunay(lXY, mNumberOfThreads);
+                } else {
+                    lDelaunay = new Delaunay(lXY, true);
+                }
+            }
+            catch (RuntimeException e) {
+                throw new T3dException("Triangulation failed (" + e.getMessage() 
+                    + "); consider to remove near-duplicate points.");
+            }
+            lXY = null;
+            lNumberOfTriangles = lDelaunay.getNumFaces();
+            lTri = lDelaunay.getIndices();
+        }
+
+        GmSimpleTINFeature lTIN = new GmSimpleTINFeature();
+        lTIN.setGeometry(new GmSimpleTINGeometry(pXYZ, n, lTri, lNumberOfTriangles));
+        return lTIN;
+    }
+
+    // removes near-duplicates by compacting pXYZ in-place and returns the new number of points
+    private int removeDuplicates(double[] pXYZ, int pNumberOfPoints, double pTol) 
     {
-    	throw new T3dNotYetImplException();
-   }
+        double xMin = pXYZ[0], xMax = xMin, yMin = pXYZ[1], yMax = yMin;
+        for (int i = 1, k = 3; i < pNumberOfPoints; i++, k += 3) {
+            if (pXYZ[k] < xMin) xMin = pXYZ[k]; else if (pXYZ[k] > xMax) xMax = pXYZ[k];
+            if (pXYZ[k + 1] < yMin) yMin = pXYZ[k + 1]; else if (pXYZ[k + 1] > yMax) yMax = pXYZ[k + 1];
+        }
+
+        // Hash grid with cell size >= tolerance, so that duplicates are found in the 3x3 
+        // neighbourhood of a point's cell; the cells hold about one point on average.
+        double lCell = Math.max(pTol, Math.max(xMax - xMin, yMax - yMin) / Math.sqrt(pNumberOfPoints));
+        if (!(lCell > 0.)) {
+            lCell = 1.;
+        }
+        int lSize = Integer.highestOneBit(Math.max(pNumberOfPoints, 2) - 1) << 2;
+        int lMask = lSize - 1;
+        int[] lHead = new int[lSize];
+        Arrays.fill(lHead, -1);
+        int[] lNext = new int[pNumberOfPoints];
+        double lTol2 = pTol * pTol;
+
+        int n = 0;
+        for (int i = 0; i < pNumberOfPoints; i++) {
+            double x = pXYZ[3 * i], y = pXYZ[3 * i + 1];
+            long cx = (long) Math.floor((x - xMin) / lCell);
+            long cy = (long) Math.floor((y - yMin) / lCell);
+
+            boolean lDuplicate = false;
+            for (long u = cx - 1; u <= cx + 1 && !lDuplicate; u++) {
+                for (long v = cy - 1; v <= cy + 1 && !lDuplicate; v++) {
+                    for (int j = lHead[this.hash(u, v) & lMask]; j >= 0; j = lNext[j]) {
+                        double dx = pXYZ[3 * j] - x, dy = pXYZ[3 * j + 1] - y;
+                        if (dx * dx + dy * dy <= lTol2) {
+                            lDuplicate = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (lDuplicate) {
+                continue;
+            }
+            if (n != i) {
+                System.arraycopy(pXYZ, 3 * i, pXYZ, 3 * n, 3);
+            }
+            int h = this.hash(cx, cy) & lMask;
+            lNext[n] = lHead[h];
+            lHead[h] = n;
+            n++;
+        }
+        return n;
+    }
+
+    private int hash(long pX, long pY) {
+        long h = pX * 0x9E3779B97F4A7C15L + pY * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 29));
+    }
 }
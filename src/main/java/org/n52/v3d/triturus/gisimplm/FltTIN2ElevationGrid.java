@@ -33,33 +33,300 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgTIN;
 
 /** 
  * Filter to transform an <tt>GmSimpleTINFeature</tt>-objects to a <tt>GmSimpleElevationGrid</tt>.
+ * The TIN's triangles will be rasterized into the given target grid 
+ * geometry by a scanline algorithm; for every grid vertex covered by a 
+ * triangle, the z-value will be interpolated linearly from the triangle's 
+ * corner points. Grid vertices outside the TIN remain unset.<p>
+ * The grid's vertices are sampled in both the vertex-based 
+ * (&quot;lattice&quot;) and the cell-based (&quot;grid&quot;) mode; in 
+ * cell-based mode, they are interpreted as cell centers. The mode will be 
+ * set for the resulting elevation grid.<p>
+ * To process large TINs, the target grid may be divided into bands of rows 
+ * which are rasterized in parallel. The results do not depend on the number
+ * of threads used.
+ * 
  * @author Benno Schmidt
+ * @see GmSimpleElevationGrid#setLatticeInterpretation
+ * @see GmSimpleElevationGrid#setGridInterpretation
  */
 public class FltTIN2ElevationGrid extends T3dProcFilter
 {
     private String mLogString = "";
 
+    private GmSimple2dGridGeometry mGeom = null;
+    private boolean mLatticeMode = false;
+    private int mNumberOfThreads = 1;
+
+    // Tolerance (referring to grid index units) used to decide whether grid 
+    // vertices on triangle edges are covered:
+    private final double cEps = 1.e-9;
+
     /**
-     * Constructor.
+     * Constructor. Note that the target grid geometry has to be set using 
+     * {@link #setGridGeometry(GmSimple2dGridGeometry)} before calling 
+     * <tt>transform()</tt>.
      */
     public FltTIN2ElevationGrid() {
         mLogString = this.getClass().getName();
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param pGeom the target-grid's geometry
+     */
+    public FltTIN2ElevationGrid(GmSimple2dGridGeometry pGeom) {
+        mLogString = this.getClass().getName();
+        mGeom = pGeom;
+    }
+
     public String log() {
         return mLogString;
     }
 
     /**
-     * performs the described filter operation.<br />
-     * <i>Sorry, this method has not been implemented yet...</i>
+     * sets the target-grid's geometry.
+     * 
+     * @param pGeom Grid geometry
+     */
+    public void setGridGeometry(GmSimple2dGridGeometry pGeom) {
+        mGeom = pGeom;
+    }
+
+    /**
+     * sets vertex-based interpretation mode for the resulting grid.
+     */
+    public void setLatticeInterpretation() {
+        mLatticeMode = true;
+    }
+
+    /**
+     * sets cell-based interpretation mode for the resulting grid. This is 
+     * the default mode.
+     */
+    public void setGridInterpretation() {
+        mLatticeMode = false;
+    }
+
+    /**
+     * sets the number of threads to be used for the rasterization. The 
+     * default value is 1 (sequential processing).
+     * 
+     * @param pNumberOfThreads Number of threads
+     * @see T3dParallelExecutor#availableProcessors
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
+    /**
+     * performs the described filter operation.
+     * 
+     * @param pTIN TIN
+     * @return Elevation grid
+     * @throws T3dException
      */
     public GmSimpleElevationGrid transform(GmSimpleTINFeature pTIN) throws T3dException
     {
-    	throw new T3dNotYetImplException();
+        if (pTIN == null) {
+            throw new T3dException("TIN is missing.");
+        }
+        return this.transform((VgTIN) pTIN.getGeometry());
+    }
+
+    /**
+     * performs the described filter operation for a TIN geometry.
+     * 
+     * @param pTIN TIN geometry
+     * @return Elevation grid
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(VgTIN pTIN) throws T3dException
+    {
+        if (mGeom == null) {
+            throw new T3dException("Destination grid-geometry is missing.");
+        }
+
+        // Primitive copies of the TIN's vertices and triangles:
+        double[] xyz;
+        int[] tri;
+        int nTri = pTIN.numberOfTriangles();
+        VgPoint pnt;
+
+        if (pTIN instanceof GmSimpleTINGeometry) {
+            // no copies necessary
+            xyz = ((GmSimpleTINGeometry) pTIN).getXYZArray();
+            tri = ((GmSimpleTINGeometry) pTIN).getTriangleArray();
+        }
+        else if (pTIN instanceof VgIndexedTIN) {
+            int nPnt = pTIN.numberOfPoints();
+            xyz = new double[3 * nPnt];
+            for (int i = 0; i < nPnt; i++) {
+                pnt = pTIN.getPoint(i);
+                xyz[3 * i] = pnt.getX();
+                xyz[3 * i + 1] = pnt.getY();
+                xyz[3 * i + 2] = pnt.getZ();
+            }
+            tri = new int[3 * nTri];
+            int[] idx;
+            for (int t = 0; t < nTri; t++) {
+                idx = ((VgIndexedTIN) pTIN).getTriangleVertexIndices(t);
+                tri[3 * t] = idx[0];
+                tri[3 * t + 1] = idx[1];
+                tri[3 * t + 2] = idx[2];
+            }
+        }
+        else {
+            xyz = new double[9 * nTri];
+            tri = new int[3 * nTri];
+            VgPoint[] corners;
+            for (int t = 0; t < nTri; t++) {
+                corners = pTIN.getTriangle(t).getCornerPoints();
+                for (int c = 0; c < 3; c++) {
+                    xyz[9 * t + 3 * c] = corners[c].getX();
+                    xyz[9 * t + 3 * c + 1] = corners[c].getY();
+                    xyz[9 * t + 3 * c + 2] = corners[c].getZ();
+                    tri[3 * t + c] = 3 * t + c;
+                }
+            }
+        }
+
+        return this.transform(xyz, tri, nTri);
+    }
+
+    /**
+     * performs the described filter operation for a TIN given by primitive 
+     * arrays.
+     * 
+     * @param pXYZ Packed vertex coordinates <tt>{x0, y0, z0, x1, y1, z1, ...}</tt>
+     * @param pTriangles Packed vertex indices <tt>{t0v0, t0v1, t0v2, t1v0, ...}</tt>
+     * @param pNumberOfTriangles Number of triangles
+     * @return Elevation grid
+     * @throws T3dException
+     */
+    public GmSimpleElevationGrid transform(
+        final double[] pXYZ, final int[] pTriangles, final int pNumberOfTriangles) 
+        throws T3dException
+    {
+        if (mGeom == null) {
+            throw new T3dException("Destination grid-geometry is missing.");
+        }
+        if (3 * pNumberOfTriangles > pTriangles.length) {
+            throw new T3dException("Triangle array index out of bounds.");
+        }
+
+        final int nRows = mGeom.numberOfRows(), nCols = mGeom.numberOfColumns();
+        final double[] res = new double[nRows * nCols]; // row-major
+        for (int k = 0; k < res.length; k++)
+            res[k] = Double.NaN;
+
+        if (mNumberOfThreads <= 1) 
+            this.rasterize(pXYZ, pTriangles, pNumberOfTriangles, res, 0, nRows);
+        else {
+            T3dParallelExecutor.execute(0, nRows, mNumberOfThreads, 
+                new T3dParallelExecutor.RangeTask() {
+                    public void process(int pFrom, int pTo) {
+                        rasterize(pXYZ, pTriangles, pNumberOfTriangles, res, pFrom, pTo);
+                    }
+                });
+        }
+
+        GmSimpleElevationGrid grid = new GmSimpleElevationGrid(mGeom);
+        if (mLatticeMode)
+            grid.setLatticeInterpretation();
+        else
+            grid.setGridInterpretation();
+        grid.setBlock(0, 0, nRows, nCols, res); // NaN values remain unset
+        return grid;
+    }
+
+    // Rasterization of all triangles for the grid rows pRowFrom (inclusive) to 
+    // pRowTo (exclusive). Triangles are processed in the given order; thus, 
+    // on shared edges the last triangle wins independent of the band layout.
+    private void rasterize(
+        double[] pXYZ, int[] pTri, int pNumberOfTriangles, double[] pRes, 
+        int pRowFrom, int pRowTo)
+    {
+        final int nCols = mGeom.numberOfColumns();
+        final double xOrig = mGeom.getOrigin().getX(), yOrig = mGeom.getOrigin().getY();
+        final double dx = mGeom.getDeltaX(), dy = mGeom.getDeltaY();
+
+        int i0, i1, i2, h, row, rowFrom, rowTo, col, colFrom, colTo, k;
+        double x0, y0, z0, x1, y1, z1, x2, y2, z2, det, a, b;
+        double y, xA, xB, u, v, t;
+
+        for (int tr = 0; tr < pNumberOfTriangles; tr++) 
+        {
+            // Corner points in grid index units, sorted by row coordinate 
+            // (y0 <= y1 <= y2; note that the grid's deltas might be negative):
+            i0 = 3 * pTri[3 * tr];
+            i1 = 3 * pTri[3 * tr + 1];
+            i2 = 3 * pTri[3 * tr + 2];
+            y0 = (pXYZ[i0 + 1] - yOrig) / dy;
+            y1 = (pXYZ[i1 + 1] - yOrig) / dy;
+            y2 = (pXYZ[i2 + 1] - yOrig) / dy;
+            if (y1 < y0) { h = i0; i0 = i1; i1 = h; t = y0; y0 = y1; y1 = t; }
+            if (y2 < y1) { h = i1; i1 = i2; i2 = h; t = y1; y1 = y2; y2 = t; }
+            if (y1 < y0) { h = i0; i0 = i1; i1 = h; t = y0; y0 = y1; y1 = t; }
+
+            rowFrom = (int) Math.ceil(y0 - cEps);
+            rowTo = (int) Math.floor(y2 + cEps);
+            if (rowFrom < pRowFrom) rowFrom = pRowFrom;
+            if (rowTo > pRowTo - 1) rowTo = pRowTo - 1;
+            if (rowFrom > rowTo)
+                continue; // triangle does not cover any grid row of the band
+
+            x0 = (pXYZ[i0] - xOrig) / dx; z0 = pXYZ[i0 + 2];
+            x1 = (pXYZ[i1] - xOrig) / dx; z1 = pXYZ[i1 + 2];
+            x2 = (pXYZ[i2] - xOrig) / dx; z2 = pXYZ[i2 + 2];
+
+            // Plane z = z0 + a * (x - x0) + b * (y - y0):
+            det = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+            if (det == 0.)
+                continue; // degenerated triangle
+            a = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) / det;
+            b = ((x1 - x0) * (z2 - z0) - (x2 - x0) * (z1 - z0)) / det;
+
+            for (row = rowFrom; row <= rowTo; row++) 
+            {
+                y = (double) row;
+
+                // intersection with the edge v0-v2:
+                t = (y - y0) / (y2 - y0);
+                if (t < 0.) t = 0.; else if (t > 1.) t = 1.;
+                xA = x0 + t * (x2 - x0);
+                // intersection with the edge v0-v1 or v1-v2:
+                if (y < y1) {
+                    t = (y - y0) / (y1 - y0);
+                    if (t < 0.) t = 0.;
+                    xB = x0 + t * (x1 - x0);
+                } 
+                else if (y2 > y1) {
+                    t = (y - y1) / (y2 - y1);
+                    if (t > 1.) t = 1.;
+                    xB = x1 + t * (x2 - x1);
+                }
+                else
+                    xB = x1;
+
+                u = Math.min(xA, xB);
+                v = Math.max(xA, xB);
+                colFrom = (int) Math.ceil(u - cEps);
+                colTo = (int) Math.floor(v + cEps);
+                if (colFrom < 0) colFrom = 0;
+                if (colTo > nCols - 1) colTo = nCols - 1;
+
+                k = row * nCols + colFrom;
+                for (col = colFrom; col <= colTo; col++, k++)
+                    pRes[k] = z0 + a * ((double) col - x0) + b * (y - y0);
+            }
+        }
     }
 }
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2007-2015 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * icense version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dProcFilter;
+import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgLineString;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgProfile;
+
+/**
+ * Filter to calculate cross-sections for TINs. The base-line will be traced 
+ * through the TIN by walking from triangle to triangle across the shared 
+ * edges; the start triangles will be determined by a spatial index. Thus, 
+ * the computation time depends on the number of triangles crossed, but not 
+ * on the TIN's size.<p>
+ * For every crossing of the base-line with a triangle edge (or with a TIN 
+ * vertex), exactly one t-z-pair will be generated; additional t-z-pairs will 
+ * be generated for the base-line's vertices. The station t is given by the 
+ * 2D length along the base-line. Parts of the base-line outside the TIN will 
+ * be skipped. The resulting <tt>GmProfile</tt> may be written using 
+ * <tt>IoProfileWriter</tt>.<p>
+ * If the filter is applied multiple times to the same TIN object, the 
+ * half-edge structure and the spatial index will be reused. Note that 
+ * modifications of the TIN after the first call will not be taken into 
+ * account then.
+ *
+ * @author Benno Schmidt
+ * @see GmHalfEdgeTIN
+ * @see GmTINSpatialIndex
+ */
+public class FltTIN2Profile extends T3dProcFilter
+{
+    private String mLogString = "";
+
+    private VgIndexedTIN mSource = null;
+    private GmHalfEdgeTIN mTIN = null;
+    private GmTINSpatialIndex mIndex = null;
+    private double[] mXYZ;
+    private int[] mTri;
+
+    // State of the walk along the current base-line segment:
+    private GmProfile mRes;
+    private double mLastT;
+    private double mXA, mYA, mXB, mYB, mLen, mT0;
+    private int mCurrent = -1; // current triangle, -1 outside the TIN
+
+    public FltTIN2Profile() {
+        mLogString = this.getClass().getName();
+    }
+
+    public String log() {
+        return mLogString;
+    }
+
+    /**
+     * calculates the cross-section for a TIN feature, e.g. as read by 
+     * <tt>IoTINReader</tt>.
+     *
+     * @param pTIN TIN feature
+     * @param pDefLine 2D base-line
+     * @return 3D cross-section
+     * @throws T3dException
+     */
+    public VgProfile transform(GmSimpleTINFeature pTIN, VgLineString pDefLine)
+        throws T3dException
+    {
+        if (pTIN == null) {
+            throw new T3dException("TIN is missing.");
+        }
+        return this.transform((VgIndexedTIN) pTIN.getGeometry(), pDefLine);
+    }
+
+    /**
+     * calculates the cross-section for a TIN.
+     *
+     * @param pTIN TIN geometry
+     * @param pDefLine 2D base-line
+     * @return 3D cross-section
+     * @throws T3dException if the TIN is not a 2-manifold
+     */
+    public VgProfile transform(VgIndexedTIN pTIN, VgLineString pDefLine)
+        throws T3dException
+    {
+        if (pTIN == null) {
+            throw new T3dException("TIN is missing.");
+        }
+        this.prepare(pTIN);
+
+        mRes = new GmProfile(pDefLine);
+        mLastT = Double.NEGATIVE_INFINITY;
+        mCurrent = -1;
+
+        int n = pDefLine.numberOfVertices();
+        if (n <= 0) {
+            return mRes;
+        }
+        VgPoint p = pDefLine.getVertex(0);
+        double x = p.getX(), y = p.getY(), t = 0.;
+        if (n == 1) {
+            int i = mIndex.findTriangle(x, y);
+            if (i >= 0) {
+                mRes.addTZPair(0., mTIN.interpolateZ(i, x, y));
+            }
+            return mRes;
+        }
+        for (int k = 1; k < n; k++) {
+            p = pDefLine.getVertex(k);
+            double len = this.traceSegment(x, y, p.getX(), p.getY(), t);
+            t += len;
+            x = p.getX();
+            y = p.getY();
+        }
+        return mRes;
+    }
+
+    private void prepare(VgIndexedTIN pTIN)
+    {
+        if (pTIN == mSource && mTIN != null) {
+            return;
+        }
+        if (pTIN instanceof GmHalfEdgeTIN) {
+            mTIN = (GmHalfEdgeTIN) pTIN;
+        } else {
+            mTIN = new GmHalfEdgeTIN(pTIN);
+        }
+        mIndex = new GmTINSpatialIndex(mTIN);
+        mXYZ = mTIN.getXYZArray();
+        mTri = mTIN.getTriangleArray();
+        mSource = pTIN;
+    }
+
+    // Traces the segment (xa, ya) -> (xb, yb), which starts at station pT0;
+    // returns the segment length.
+    private double traceSegment(
+        double xa, double ya, double xb, double yb, double pT0)
+        throws T3dException
+    {
+        mXA = xa; mYA = ya; mXB = xb; mYB = yb; mT0 = pT0;
+        mLen = Math.sqrt((xb - xa) * (xb - xa) + (yb - ya) * (yb - ya));
+
+        // The previous segment's end triangle contains the start point:
+        if (mCurrent < 0) {
+            mCurrent = mIndex.findTriangle(xa, ya);
+        }
+        if (mCurrent >= 0) {
+            this.emit(0., mTIN.interpolateZ(mCurrent, xa, ya));
+        }
+        if (mLen == 0.) {
+            return 0.;
+        }
+
+        int entry = -1; // half-edge the current triangle has been entered by
+        double s = 0.;
+        int maxSteps = 4 * mTIN.numberOfTriangles() + 16;
+        for (int step = 0; step < maxSteps; step++)
+        {
+            if (mCurrent < 0) {
+                s = this.findEntry(s);
+                if (s < 0.) {
+                    return mLen; // the remaining part lies outside the TIN
+                }
+                this.emit(s, mTIN.interpolateZ(
+                    mCurrent, xa + s * (xb - xa), ya + s * (yb - ya)));
+                entry = -1;
+            }
+
+            // Find the edge through which the segment leaves the current 
+            // triangle; if there is none, the end point lies inside:
+            int hx = -1, hAlt = -1;
+            double fa = 0., fb = 0.;
+            for (int c = 0; c < 3; c++) {
+                int h = 3 * mCurrent + c;
+                if (h == entry) {
+                    continue;
+                }
+                int a = mTri[h], b = mTri[mTIN.next(h)];
+                if (this.orientEdge(a, b, xb, yb) >= 0.) {
+                    continue;
+                }
+                double oa = this.side(a), ob = this.side(b);
+                if (oa <= 0. && ob >= 0.) {
+                    hx = h; fa = oa; fb = ob;
+                    break;
+                }
+                hAlt = h; // fallback for numerically inconsistent cases
+            }
+            if (hx < 0 && hAlt < 0) {
+                this.emit(1., mTIN.interpolateZ(mCurrent, xb, yb));
+                return mLen;
+            }
+            if (hx < 0) {
+                hx = hAlt;
+                fa = Math.min(this.side(mTri[hx]), 0.);
+                fb = Math.max(this.side(mTri[mTIN.next(hx)]), 0.);
+            }
+
+            int a = mTri[hx], b = mTri[mTIN.next(hx)];
+            if (fa == 0. || fb == 0.) {
+                // The segment passes a TIN vertex:
+                int v = (fa == 0.) ? a : b;
+                s = Math.max(s, this.param(mXYZ[3 * v], mXYZ[3 * v + 1]));
+                this.emit(s, mXYZ[3 * v + 2]);
+                mCurrent = this.leaveVertex(v);
+                entry = -1;
+            }
+            else {
+                double u = fa / (fa - fb);
+                double x = mXYZ[3 * a] + u * (mXYZ[3 * b] - mXYZ[3 * a]);
+                double y = mXYZ[3 * a + 1] + u * (mXYZ[3 * b + 1] - mXYZ[3 * a + 1]);
+                s = Math.max(s, this.param(x, y));
+                this.emit(s, 
+                    mXYZ[3 * a + 2] + u * (mXYZ[3 * b + 2] - mXYZ[3 * a + 2]));
+                entry = mTIN.twin(hx);
+                mCurrent = (entry < 0) ? -1 : entry / 3;
+            }
+            if (s >= 1.) {
+                return mLen;
+            }
+        }
+        throw new T3dException("Could not trace the base-line through the TIN.");
+    }
+
+    // Determines the triangle incident to vertex v that the segment enters; 
+    // returns -1 if the segment leaves the TIN at v.
+    private int leaveVertex(int v)
+    {
+        double vx = mXYZ[3 * v], vy = mXYZ[3 * v + 1];
+        double dx = mXB - vx, dy = mYB - vy;
+        int h0 = mTIN.getOutgoingHalfEdge(v), h = h0;
+        if (h0 < 0) {
+            return -1;
+        }
+        do {
+            int w1 = mTri[mTIN.next(h)], w2 = mTri[mTIN.prev(h)];
+            double c1 = (mXYZ[3 * w1] - vx) * dy - (mXYZ[3 * w1 + 1] - vy) * dx;
+            double c2 = dx * (mXYZ[3 * w2 + 1] - vy) - dy * (mXYZ[3 * w2] - vx);
+            if (c1 >= 0. && c2 >= 0.) {
+                return h / 3;
+            }
+            h = mTIN.rotateCCW(h);
+        } while (h >= 0 && h != h0);
+        return -1;
+    }
+
+    // Searches the next position s' > s at which the segment enters the TIN; 
+    // the segment is processed in pieces of about the index's cell size.
+    private double findEntry(double s)
+    {
+        double eps = 1e-12;
+        int nPieces = (int) Math.min(
+            Math.ceil((1. - s) * mLen / mIndex.getCellSize()), 1 << 20);
+        nPieces = Math.max(nPieces, 1);
+        double ds = (1. - s) / nPieces;
+        for (int p = 0; p < nPieces; p++) 
+        {
+            double sa = s + p * ds, sb = (p == nPieces - 1) ? 1. : sa + ds;
+            double xa = mXA + sa * (mXB - mXA), ya = mYA + sa * (mYB - mYA);
+            double xb = mXA + sb * (mXB - mXA), yb = mYA + sb * (mYB - mYA);
+            int[] cand = mIndex.trianglesInEnvelope(
+                Math.min(xa, xb), Math.max(xa, xb), 
+                Math.min(ya, yb), Math.max(ya, yb));
+
+            double best = Double.POSITIVE_INFINITY;
+            int bestTri = -1;
+            for (int k = 0; k < cand.length; k++) {
+                int t = cand[k];
+                double sIn = 0., sOut = 1.;
+                for (int c = 0; c < 3 && sIn <= sOut; c++) {
+                    int a = mTri[3 * t + c], b = mTri[3 * t + (c + 1) % 3];
+                    double fA = this.orientEdge(a, b, mXA, mYA);
+                    double fB = this.orientEdge(a, b, mXB, mYB);
+                    if (fA == fB) {
+                        if (fA < 0.) sOut = -1.;
+                    } else if (fB > fA) {
+                        sIn = Math.max(sIn, -fA / (fB - fA));
+                    } else {
+                        sOut = Math.min(sOut, fA / (fA - fB));
+                    }
+                }
+                if (sIn <= sOut && sOut > s + eps) {
+                    double se = Math.max(sIn, s);
+                    if (se < best) {
+                        best = se;
+                        bestTri = t;
+                    }
+                }
+            }
+            if (bestTri >= 0 && best <= sb) {
+                mCurrent = bestTri;
+                return best;
+            }
+        }
+        return -1.;
+    }
+
+    // Orientation of the position (px, py) with respect to the directed 
+    // edge a -> b; positive values refer to the left side.
+    private double orientEdge(int a, int b, double px, double py) {
+        double ax = mXYZ[3 * a], ay = mXYZ[3 * a + 1];
+        return (mXYZ[3 * b] - ax) * (py - ay) - (mXYZ[3 * b + 1] - ay) * (px - ax);
+    }
+
+    // Orientation of vertex v with respect to the current segment:
+    private double side(int v) {
+        return (mXB - mXA) * (mXYZ[3 * v + 1] - mYA) 
+            - (mYB - mYA) * (mXYZ[3 * v] - mXA);
+    }
+
+    // Segment parameter of a position on the current segment:
+    private double param(double px, double py) {
+        double s = ((px - mXA) * (mXB - mXA) + (py - mYA) * (mYB - mYA)) 
+            / (mLen * mLen);
+        return s < 0. ? 0. : (s > 1. ? 1. : s);
+    }
+
+    private void emit(double s, double z)
+    {
+        double t = mT0 + s * mLen;
+        if (t > mLastT && !Double.isNaN(z)) {
+            mRes.addTZPair(t, z);
+            mLastT = t;
+        }
+    }
+}
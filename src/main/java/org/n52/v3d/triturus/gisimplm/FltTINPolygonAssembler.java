@@ -31,32 +31,949 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
+import java.util.Arrays;
+
+import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dProcFilter;
+import org.n52.v3d.triturus.t3dutil.T3dLongIntHashMap;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 
 /**
- * @deprecated
  * Filter class to integrate polygonal geometries into a TIN (geometric intersection).<br /><br />
- * <i>German:</i> Filter-Klasse zum Einbau einer Polygon-Geometrie in ein TIN (geometrische Verschneidung).
- * @author Martin May, Ilja Abramovic
+ * <i>German:</i> Filter-Klasse zum Einbau einer Polygon-Geometrie in ein TIN (geometrische Verschneidung).<br /><br />
+ * The resulting TIN covers the part of the input TIN that lies inside the polygon (with respect to the
+ * x-y-plane); polygon holes will be cut out. Triangles that lie completely inside the polygon will be taken
+ * over, triangles cut by the polygon boundary will be re-triangulated. The elevations of new vertices will
+ * be interpolated linearly inside the input triangles. Vertices that are created on input TIN edges will be
+ * shared by the adjacent result triangles.<br /><br />
+ * For large TINs, triangles are classified using a bounding-box prefilter and a prepared polygon (see
+ * {@link GmPreparedPolygon}), so that exact intersection computations are performed only for triangles in
+ * the neighbourhood of the polygon boundary.
+ * @author Martin May, Ilja Abramovic, Benno Schmidt
  */
 public class FltTINPolygonAssembler extends T3dProcFilter
 {
+	private String mLogString = "";
+
+	/**
+	 * Constructor.
+	 */
+	public FltTINPolygonAssembler() {
+		mLogString = this.getClass().getName();
+	}
+
 	public String log() {
-		// TODO Auto-generated method stub
-		return null;
+		return mLogString;
 	}
 
 	/**
      * return the TIN that results from the intersection operation.<br /><br />
-     * <i>Sorry, this method has not been implemented yet...</i>
 	 * <i>German:</i> liefert das TIN, das Ergebnis der Verschneidung ist.<p>
 	 * @param pTIN TIN, in dessen Geometrie die Polygon-Geometrie eingebaut werden soll.
 	 * @param pPolygon einzubauende Geometrie
    	 * @return TIN-Geometrie
+	 * @throws T3dException
 	 */
-	public GmSimpleTINGeometry transform(GmSimpleTINGeometry pTIN, GmPolygon pPolygon)
+	public GmSimpleTINGeometry transform(GmSimpleTINGeometry pTIN, GmPolygon pPolygon) throws T3dException
     {
-        // todo
-        return null;
+		if (pPolygon == null) {
+			throw new T3dException("Polygon is missing.");
+		}
+		return this.transform(pTIN, new GmPreparedPolygon(pPolygon));
+	}
+
+	/**
+	 * return the TIN that results from the intersection operation. If the same polygon shall be intersected
+	 * with multiple TINs, the prepared polygon can be reused.
+	 * @param pTIN TIN
+	 * @param pPolygon Prepared polygon
+	 * @return TIN-geometry
+	 * @throws T3dException
+	 */
+	public GmSimpleTINGeometry transform(GmSimpleTINGeometry pTIN, GmPreparedPolygon pPolygon) throws T3dException
+	{
+		if (pTIN == null) {
+			throw new T3dException("TIN is missing.");
+		}
+		Clipper lClipper = new Clipper(pTIN, pPolygon);
+		lClipper.run();
+		GmSimpleTINGeometry lRes = new GmSimpleTINGeometry(
+			lClipper.mOutXYZ, lClipper.mOutNumberOfPoints, lClipper.mOutTri, lClipper.mOutNumberOfTriangles);
+		lRes.setSRS(pTIN.getSRS());
+		return lRes;
+	}
+
+	// Verschneidung eines TINs mit einem Polygon. Fuer jedes vom Polygonrand geschnittene Dreieck werden die
+	// Schnittflaechen nach Weiler-Atherton aufgebaut (Polygon-Ketten im Dreieck, verbunden durch Abschnitte des
+	// Dreiecksrands) und anschliessend per "ear clipping" trianguliert.
+	private static class Clipper
+	{
+		private double[] mXYZ;
+		private int[] mTri;
+		private int mNumberOfTriangles;
+		private GmPreparedPolygon mPol;
+
+		double[] mOutXYZ = new double[3 * 1024];
+		int mOutNumberOfPoints = 0;
+		int[] mOutTri = new int[3 * 1024];
+		int mOutNumberOfTriangles = 0;
+
+		private int[] mTinMap; // TIN-Vertex -> Ergebnis-Vertex
+		private byte[] mTinStatus; // 0: unbekannt, 1: innen, 2: aussen
+		private int[] mPolMap; // Polygon-Vertex -> Ergebnis-Vertex
+
+		// Schnittpunkte auf TIN-Kanten (je Kante verkettete Liste):
+		private T3dLongIntHashMap mEdgeHead = new T3dLongIntHashMap(1024);
+		private int[] mLstPolEdge = new int[256], mLstVertex = new int[256], mLstNext = new int[256];
+		private int mLstSize = 0;
+
+		// neu erzeugte Vertizes, ueber die Koordinaten identifiziert (je Hash-Wert verkettete Liste):
+		private T3dLongIntHashMap mCoordHead = new T3dLongIntHashMap(1024);
+		private int[] mCoordNext = new int[1024];
+
+		// Hilfsfelder fuer das aktuelle Dreieck:
+		private int mStamp = 0;
+		private int[] mPolStamp; // mPolInside[v] gueltig, falls mPolStamp[v] == mStamp
+		private boolean[] mPolInside;
+		private int[] mVisitStamp;
+		private int[] mEntryOf, mExitOf; // Schnittpunkt je Polygon-Kante
+		private int[] mCand = new int[64];
+		private double[] mCX = new double[3], mCY = new double[3];
+		private int[] mCV = new int[3];
+
+		private int mNI = 0; // Anzahl Schnittpunkte
+		private int[] mIPolEdge = new int[16], mITriEdge = new int[16], mIVertex = new int[16], mIPos = new int[16];
+		private double[] mIS = new double[16], mITie1 = new double[16], mITie2 = new double[16];
+		private boolean[] mIEntry = new boolean[16], mIUsed = new boolean[16];
+		private int[] mEv = new int[32]; // Randereignisse: Eckpunkt k als -1 - k, sonst Schnittpunkt-Index
+
+		private int[] mRings = new int[64]; // Ringe, je Ring: Anzahl, Vertizes
+		private int mRingsSize = 0;
+		private int mRingStart = -1; // aktueller Ring
+
+		private EarClipper mEarClipper = new EarClipper();
+
+		Clipper(GmSimpleTINGeometry pTIN, GmPreparedPolygon pPol)
+		{
+			mXYZ = pTIN.getXYZArray();
+			mTri = pTIN.getTriangleArray();
+			mNumberOfTriangles = pTIN.numberOfTriangles();
+			mPol = pPol;
+
+			int nP = pTIN.numberOfPoints();
+			mTinMap = new int[nP];
+			Arrays.fill(mTinMap, -1);
+			mTinStatus = new byte[nP];
+
+			int nV = pPol.numberOfVertices();
+			mPolMap = new int[nV];
+			Arrays.fill(mPolMap, -1);
+			mPolStamp = new int[nV];
+			mPolInside = new boolean[nV];
+			mVisitStamp = new int[nV];
+			mEntryOf = new int[nV];
+			Arrays.fill(mEntryOf, -1);
+			mExitOf = new int[nV];
+			Arrays.fill(mExitOf, -1);
+		}
+
+		void run()
+		{
+			double pxMin = mPol.getXMin(), pxMax = mPol.getXMax(), pyMin = mPol.getYMin(), pyMax = mPol.getYMax();
+
+			for (int t = 0; t < mNumberOfTriangles; t++) {
+				int i0 = mTri[3 * t], i1 = mTri[3 * t + 1], i2 = mTri[3 * t + 2];
+				double x0 = mXYZ[3 * i0], y0 = mXYZ[3 * i0 + 1];
+				double x1 = mXYZ[3 * i1], y1 = mXYZ[3 * i1 + 1];
+				double x2 = mXYZ[3 * i2], y2 = mXYZ[3 * i2 + 1];
+				double xMin = Math.min(x0, Math.min(x1, x2)), xMax = Math.max(x0, Math.max(x1, x2));
+				double yMin = Math.min(y0, Math.min(y1, y2)), yMax = Math.max(y0, Math.max(y1, y2));
+				if (xMax < pxMin || xMin > pxMax || yMax < pyMin || yMin > pyMax) {
+					continue; // Bounding-Box-Vorfilter
+				}
+
+				int nc = mPol.edgesInEnvelope(xMin, xMax, yMin, yMax, mCand);
+				if (nc > mCand.length) {
+					mCand = new int[2 * nc];
+					nc = mPol.edgesInEnvelope(xMin, xMax, yMin, yMax, mCand);
+				}
+				if (nc == 0) {
+					if (this.tinVertexInside(i0)) {
+						this.addTriangle(this.tinVertex(i0), this.tinVertex(i1), this.tinVertex(i2));
+					}
+					continue;
+				}
+
+				double det = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+				if (det == 0.) {
+					continue; // degeneriertes Dreieck
+				}
+				if (det < 0.) {
+					int tmp = i1; i1 = i2; i2 = tmp;
+				}
+				mCV[0] = i0; mCV[1] = i1; mCV[2] = i2;
+				for (int k = 0; k < 3; k++) {
+					mCX[k] = mXYZ[3 * mCV[k]];
+					mCY[k] = mXYZ[3 * mCV[k] + 1];
+				}
+				mStamp++;
+				int lTriStart = mOutNumberOfTriangles;
+				if (!this.clipTriangle(nc)) {
+					// Numerisch inkonsistente Situation: Dreieck ueber Schwerpunkt klassifizieren
+					mOutNumberOfTriangles = lTriStart;
+					if (mPol.contains((x0 + x1 + x2) / 3., (y0 + y1 + y2) / 3.)) {
+						this.addTriangle(this.tinVertex(i0), this.tinVertex(i1), this.tinVertex(i2));
+					}
+				}
+				for (int k = 0; k < nc; k++) {
+					mEntryOf[mCand[k]] = -1;
+					mExitOf[mCand[k]] = -1;
+				}
+			}
+		}
+
+		private boolean clipTriangle(int nc)
+		{
+			// 1. Schnittpunkte zwischen Polygon- und Dreieckskanten
+			mNI = 0;
+			for (int j = 0; j < nc; j++) {
+				int e = mCand[j], q = mPol.nextVertex(e);
+				for (int k = 0; k < 3; k++) {
+					int k1 = (k == 2) ? 0 : k + 1;
+					int sp = mPol.vertexOrientation(mCX[k], mCY[k], mCX[k1], mCY[k1], e);
+					int sq = mPol.vertexOrientation(mCX[k], mCY[k], mCX[k1], mCY[k1], q);
+					if (sp == sq) {
+						continue;
+					}
+					if (mPol.orientation(e, mCX[k], mCY[k]) == mPol.orientation(e, mCX[k1], mCY[k1])) {
+						continue;
+					}
+					boolean lEntry = sp < 0;
+					if ((lEntry ? mEntryOf[e] : mExitOf[e]) >= 0) {
+						return false;
+					}
+					this.addIntersection(e, k, lEntry);
+				}
+			}
+
+			// 2. Randereignisse entlang des Dreiecksrands (gegen den Uhrzeigersinn) sortieren
+			int nEv = 0;
+			if (mEv.length < mNI + 3) {
+				mEv = new int[2 * (mNI + 3)];
+			}
+			for (int k = 0; k < 3; k++) {
+				mEv[nEv++] = -1 - k;
+				int lStart = nEv;
+				for (int i = 0; i < mNI; i++) {
+					if (mITriEdge[i] != k) {
+						continue;
+					}
+					int m = nEv++;
+					while (m > lStart && this.before(i, mEv[m - 1])) {
+						mEv[m] = mEv[m - 1];
+						m--;
+					}
+					mEv[m] = i;
+				}
+			}
+			for (int m = 0; m < nEv; m++) {
+				if (mEv[m] >= 0) {
+					mIPos[mEv[m]] = m;
+				}
+			}
+
+			// 3. Ringe aufbauen
+			mRingsSize = 0;
+			int lNumberOfFaces = 0;
+			for (int i0 = 0; i0 < mNI; i0++) {
+				if (!mIEntry[i0] || mIUsed[i0]) {
+					continue;
+				}
+				int lRingStart = this.beginRing();
+				int cur = i0, lGuard = 0;
+				do {
+					mIUsed[cur] = true;
+					int x = this.walkChain(cur);
+					if (x < 0) {
+						return false;
+					}
+					int m = mIPos[x];
+					while (true) {
+						m = (m + 1 == nEv) ? 0 : m + 1;
+						if (mEv[m] < 0) {
+							this.appendToRing(this.tinVertex(mCV[-1 - mEv[m]]));
+						}
+						else {
+							break;
+						}
+					}
+					cur = mEv[m];
+					if (!mIEntry[cur] || (mIUsed[cur] && cur != i0) || ++lGuard > mNI) {
+						return false;
+					}
+				} while (cur != i0);
+				this.endRing(lRingStart);
+				lNumberOfFaces++;
+			}
+			if (mNI == 0 && this.tinVertexInside(mCV[0])) {
+				int lRingStart = this.beginRing();
+				for (int k = 0; k < 3; k++) {
+					this.appendToRing(this.tinVertex(mCV[k]));
+				}
+				this.endRing(lRingStart);
+				lNumberOfFaces++;
+			}
+
+			// Polygon-Ringe, die vollstaendig im Dreieck liegen (Rand oder Loch)
+			int lHolesStart = mRingsSize;
+			int lNumberOfHoles = 0;
+			for (int j = 0; j < nc; j++) {
+				int v0 = mCand[j];
+				if (mVisitStamp[v0] == mStamp || !this.polVertexInside(v0)) {
+					continue;
+				}
+				int lRingStart = this.beginRing();
+				int v = v0, lGuard = 0;
+				do {
+					if (mExitOf[v] >= 0 || !this.polVertexInside(v) || ++lGuard > mPol.numberOfVertices()) {
+						return false;
+					}
+					mVisitStamp[v] = mStamp;
+					this.appendToRing(this.polVertex(v));
+					v = mPol.nextVertex(v);
+				} while (v != v0);
+				this.endRing(lRingStart);
+				if (this.ringArea(lRingStart) > 0.) {
+					// Aeusserer Rand: vor die Loecher verschieben
+					this.moveRing(lRingStart, lHolesStart);
+					lHolesStart += mRings[lHolesStart] + 1;
+					lNumberOfFaces++;
+				}
+				else {
+					lNumberOfHoles++;
+				}
+			}
+
+			// 4. Triangulation der Flaechen (Loecher werden der enthaltenden Flaeche zugeordnet)
+			if (lNumberOfFaces == 0) {
+				return true;
+			}
+			int[] lHoleFace = new int[lNumberOfHoles];
+			for (int h = 0, r = lHolesStart; h < lNumberOfHoles; h++, r += mRings[r] + 1) {
+				lHoleFace[h] = -1;
+				int v = mRings[r + 1];
+				double px = mOutXYZ[3 * v], py = mOutXYZ[3 * v + 1];
+				for (int f = 0, s = 0; f < lNumberOfFaces; f++, s += mRings[s] + 1) {
+					if (this.ringContains(s, px, py)) {
+						lHoleFace[h] = f;
+						break;
+					}
+				}
+			}
+			for (int f = 0, s = 0; f < lNumberOfFaces; f++, s += mRings[s] + 1) {
+				mEarClipper.begin(mOutXYZ, mRings, s + 1, mRings[s]);
+				for (int h = 0, r = lHolesStart; h < lNumberOfHoles; h++, r += mRings[r] + 1) {
+					if (lHoleFace[h] == f) {
+						mEarClipper.addHole(mRings, r + 1, mRings[r]);
+					}
+				}
+				mEarClipper.triangulate(this);
+			}
+			return true;
+		}
+
+		// Reihenfolge zweier Schnittpunkte auf derselben Dreieckskante
+		private boolean before(int i, int j) {
+			if (mIS[i] != mIS[j]) {
+				return mIS[i] < mIS[j];
+			}
+			if (mITie1[i] != mITie1[j]) {
+				return mITie1[i] < mITie1[j];
+			}
+			return mITie2[i] < mITie2[j];
+		}
+
+		private void addIntersection(int e, int k, boolean pEntry)
+		{
+			if (mNI == mIPolEdge.length) {
+				int n = 2 * mNI;
+				mIPolEdge = T3dArrays.copyOf(mIPolEdge, n);
+				mITriEdge = T3dArrays.copyOf(mITriEdge, n);
+				mIVertex = T3dArrays.copyOf(mIVertex, n);
+				mIPos = T3dArrays.copyOf(mIPos, n);
+				mIS = T3dArrays.copyOf(mIS, n);
+				mITie1 = T3dArrays.copyOf(mITie1, n);
+				mITie2 = T3dArrays.copyOf(mITie2, n);
+				mIEntry = T3dArrays.copyOf(mIEntry, n);
+				mIUsed = T3dArrays.copyOf(mIUsed, n);
+			}
+			int k1 = (k == 2) ? 0 : k + 1;
+			int q = mPol.nextVertex(e);
+			double px = mPol.getX(e), py = mPol.getY(e);
+			double dx = mPol.getX(q) - px, dy = mPol.getY(q) - py;
+			double oa = dx * (mCY[k] - py) - dy * (mCX[k] - px);
+			double ob = dx * (mCY[k1] - py) - dy * (mCX[k1] - px);
+
+			int a = mCV[k], b = mCV[k1];
+			int lo = Math.min(a, b), hi = Math.max(a, b);
+			double s = (a == lo) ? oa / (oa - ob) : ob / (ob - oa); // kanonisch: von lo nach hi
+			// Liegt ein Endpunkt der Polygon-Kante exakt auf der Dreieckskante, wird s aus diesem Punkt 
+			// bestimmt, damit alle in ihm endenden Kanten denselben Wert liefern (sonst koennten Rundungs-
+			// fehler die Tie-Break-Reihenfolge umkehren).
+			int lOn = this.endpointOnEdge(e, q, lo, hi);
+			if (lOn >= 0) {
+				s = this.parameterOnEdge(mPol.getX(lOn), mPol.getY(lOn), lo, hi);
+			}
+			s = Math.max(0., Math.min(1., s));
+
+			int i = mNI++;
+			mIPolEdge[i] = e;
+			mITriEdge[i] = k;
+			mIVertex[i] = this.intersectionVertex(lo, hi, e, s);
+			mIS[i] = (a == lo) ? s : 1. - s;
+			// Fuer die infinitesimal verschobene Polygon-Kante gilt s(eps) = s + eps * dy / (oa - ob)
+			// - eps^2 * dx / (oa - ob); die Koeffizienten entscheiden bei zusammenfallenden Schnittpunkten.
+			// Der Nenner wird ohne Ausloeschung berechnet; fuer waagerechte Dreieckskanten ist der lineare 
+			// Koeffizient fuer alle Polygon-Kanten gleich und wird exakt gesetzt.
+			double lTx = mCX[k1] - mCX[k], lTy = mCY[k1] - mCY[k];
+			double lDen = dy * lTx - dx * lTy; // = oa - ob
+			mITie1[i] = (lTy == 0.) ? 1. / lTx : dy / lDen;
+			mITie2[i] = -dx / lDen;
+			mIEntry[i] = pEntry;
+			mIUsed[i] = false;
+			if (pEntry)
+				mEntryOf[e] = i;
+			else
+				mExitOf[e] = i;
+		}
+
+		// liefert den Endpunkt (e oder q) der Polygon-Kante, der exakt auf der Geraden durch die 
+		// TIN-Vertices lo und hi liegt, oder -1
+		private int endpointOnEdge(int e, int q, int lo, int hi)
+		{
+			double ax = mXYZ[3 * lo], ay = mXYZ[3 * lo + 1];
+			double dx = mXYZ[3 * hi] - ax, dy = mXYZ[3 * hi + 1] - ay;
+			if (dx * (mPol.getY(e) - ay) - dy * (mPol.getX(e) - ax) == 0.)
+				return e;
+			if (dx * (mPol.getY(q) - ay) - dy * (mPol.getX(q) - ax) == 0.)
+				return q;
+			return -1;
+		}
+
+		// Parameter des Punkts (x, y) auf der Kante von lo nach hi (bzgl. der dominanten Achse)
+		private double parameterOnEdge(double x, double y, int lo, int hi)
+		{
+			double dx = mXYZ[3 * hi] - mXYZ[3 * lo], dy = mXYZ[3 * hi + 1] - mXYZ[3 * lo + 1];
+			if (Math.abs(dx) >= Math.abs(dy))
+				return (x - mXYZ[3 * lo]) / dx;
+			return (y - mXYZ[3 * lo + 1]) / dy;
+		}
+
+		// verfolgt den Polygonrand ab dem Eintrittspunkt i bis zum naechsten Austrittspunkt
+		private int walkChain(int i)
+		{
+			this.appendToRing(mIVertex[i]);
+			int e = mIPolEdge[i];
+			for (int lGuard = 0; lGuard <= mPol.numberOfVertices(); lGuard++) {
+				int x = mExitOf[e];
+				if (x >= 0) {
+					this.appendToRing(mIVertex[x]);
+					return x;
+				}
+				int v = mPol.nextVertex(e);
+				if (!this.polVertexInside(v)) {
+					return -1;
+				}
+				mVisitStamp[v] = mStamp;
+				this.appendToRing(this.polVertex(v));
+				e = v;
+			}
+			return -1;
+		}
+
+		private boolean polVertexInside(int v)
+		{
+			if (mPolStamp[v] != mStamp) {
+				boolean lIn = true;
+				for (int k = 0; k < 3 && lIn; k++) {
+					int k1 = (k == 2) ? 0 : k + 1;
+					lIn = mPol.vertexOrientation(mCX[k], mCY[k], mCX[k1], mCY[k1], v) > 0;
+				}
+				mPolInside[v] = lIn;
+				mPolStamp[v] = mStamp;
+			}
+			return mPolInside[v];
+		}
+
+		private boolean tinVertexInside(int i)
+		{
+			if (mTinStatus[i] == 0) {
+				mTinStatus[i] = (byte) (mPol.contains(mXYZ[3 * i], mXYZ[3 * i + 1]) ? 1 : 2);
+			}
+			return mTinStatus[i] == 1;
+		}
+
+		private int tinVertex(int i)
+		{
+			if (mTinMap[i] < 0) {
+				mTinMap[i] = this.addVertex(mXYZ[3 * i], mXYZ[3 * i + 1], mXYZ[3 * i + 2]);
+			}
+			return mTinMap[i];
+		}
+
+		private int polVertex(int v)
+		{
+			if (mPolMap[v] < 0) {
+				// Hoehe aus der Ebene des aktuellen Dreiecks
+				double x = mPol.getX(v), y = mPol.getY(v);
+				double x0 = mCX[0], y0 = mCY[0], z0 = mXYZ[3 * mCV[0] + 2];
+				double dx1 = mCX[1] - x0, dy1 = mCY[1] - y0, dx2 = mCX[2] - x0, dy2 = mCY[2] - y0;
+				double det = dx1 * dy2 - dy1 * dx2;
+				double u = ((x - x0) * dy2 - (y - y0) * dx2) / det;
+				double w = (dx1 * (y - y0) - dy1 * (x - x0)) / det;
+				double z = z0 + u * (mXYZ[3 * mCV[1] + 2] - z0) + w * (mXYZ[3 * mCV[2] + 2] - z0);
+				mPolMap[v] = this.newVertex(x, y, z);
+			}
+			return mPolMap[v];
+		}
+
+		private int intersectionVertex(int lo, int hi, int e, double s)
+		{
+			long lKey = T3dLongIntHashMap.key(lo, hi);
+			int lHead = mEdgeHead.get(lKey);
+			for (int l = lHead; l != T3dLongIntHashMap.cNoEntry; l = mLstNext[l]) {
+				if (mLstPolEdge[l] == e) {
+					return mLstVertex[l];
+				}
+			}
+			double x = mXYZ[3 * lo] + s * (mXYZ[3 * hi] - mXYZ[3 * lo]);
+			double y = mXYZ[3 * lo + 1] + s * (mXYZ[3 * hi + 1] - mXYZ[3 * lo + 1]);
+			double z = mXYZ[3 * lo + 2] + s * (mXYZ[3 * hi + 2] - mXYZ[3 * lo + 2]);
+			int v = this.newVertex(x, y, z);
+			if (mLstSize == mLstNext.length) {
+				mLstPolEdge = T3dArrays.copyOf(mLstPolEdge, 2 * mLstSize);
+				mLstVertex = T3dArrays.copyOf(mLstVertex, 2 * mLstSize);
+				mLstNext = T3dArrays.copyOf(mLstNext, 2 * mLstSize);
+			}
+			mLstPolEdge[mLstSize] = e;
+			mLstVertex[mLstSize] = v;
+			mLstNext[mLstSize] = lHead;
+			mEdgeHead.put(lKey, mLstSize++);
+			return v;
+		}
+
+		// liefert fuer Punkte, die mit einem Eckpunkt des aktuellen Dreiecks oder einem bereits erzeugten
+		// Vertex zusammenfallen, den vorhandenen Vertex
+		private int newVertex(double x, double y, double z)
+		{
+			for (int k = 0; k < 3; k++) {
+				if (x == mCX[k] && y == mCY[k]) {
+					return this.tinVertex(mCV[k]);
+				}
+			}
+			long lBits = Double.doubleToLongBits(x) * 31L + Double.doubleToLongBits(y);
+			int lHead = mCoordHead.get(lBits);
+			for (int v = lHead; v != T3dLongIntHashMap.cNoEntry; v = mCoordNext[v]) {
+				if (mOutXYZ[3 * v] == x && mOutXYZ[3 * v + 1] == y) {
+					return v;
+				}
+			}
+			int v = this.addVertex(x, y, z);
+			if (v >= mCoordNext.length) {
+				mCoordNext = T3dArrays.copyOf(mCoordNext, 2 * v + 2);
+			}
+			mCoordNext[v] = lHead;
+			mCoordHead.put(lBits, v);
+			return v;
+		}
+
+		private int addVertex(double x, double y, double z)
+		{
+			if (3 * mOutNumberOfPoints + 3 > mOutXYZ.length) {
+				mOutXYZ = T3dArrays.copyOf(mOutXYZ, 2 * mOutXYZ.length);
+			}
+			mOutXYZ[3 * mOutNumberOfPoints] = x;
+			mOutXYZ[3 * mOutNumberOfPoints + 1] = y;
+			mOutXYZ[3 * mOutNumberOfPoints + 2] = z;
+			return mOutNumberOfPoints++;
+		}
+
+		void addTriangle(int v0, int v1, int v2)
+		{
+			if (v0 == v1 || v1 == v2 || v2 == v0) {
+				return;
+			}
+			if (3 * mOutNumberOfTriangles + 3 > mOutTri.length) {
+				mOutTri = T3dArrays.copyOf(mOutTri, 2 * mOutTri.length);
+			}
+			mOutTri[3 * mOutNumberOfTriangles] = v0;
+			mOutTri[3 * mOutNumberOfTriangles + 1] = v1;
+			mOutTri[3 * mOutNumberOfTriangles + 2] = v2;
+			mOutNumberOfTriangles++;
+		}
+
+		// Ringe werden als (Anzahl, Vertex-Indizes...) in mRings abgelegt
+
+		private int beginRing() {
+			// Platzhalter fuer die Ringlaenge; nicht ueber appendToRing(), da dort gegen den letzten 
+			// Vertex des vorherigen Rings geprueft wuerde
+			if (mRingsSize == mRings.length) {
+				mRings = T3dArrays.copyOf(mRings, 2 * mRingsSize);
+			}
+			mRingStart = mRingsSize;
+			mRings[mRingsSize++] = 0;
+			return mRingStart;
+		}
+
+		private void appendToRing(int v) {
+			if (mRingsSize > 0 && mRings[mRingsSize - 1] == v && mRingsSize - 1 != mRingStart) {
+				return; // zusammenfallende Vertizes
+			}
+			if (mRingsSize == mRings.length) {
+				mRings = T3dArrays.copyOf(mRings, 2 * mRingsSize);
+			}
+			mRings[mRingsSize++] = v;
+		}
+
+		private void endRing(int pStart) {
+			while (mRingsSize - pStart > 2 && mRings[mRingsSize - 1] == mRings[pStart + 1]) {
+				mRingsSize--;
+			}
+			mRings[pStart] = mRingsSize - pStart - 1;
+		}
+
+		// verschiebt den Ring ab pFrom an die Position pTo (pTo < pFrom, Ring liegt am Ende)
+		private void moveRing(int pFrom, int pTo) {
+			int[] lRing = T3dArrays.copyOfRange(mRings, pFrom, mRingsSize);
+			System.arraycopy(mRings, pTo, mRings, pTo + lRing.length, pFrom - pTo);
+			System.arraycopy(lRing, 0, mRings, pTo, lRing.length);
+		}
+
+		private double ringArea(int pStart)
+		{
+			int n = mRings[pStart];
+			double a = 0., x0 = mOutXYZ[3 * mRings[pStart + 1]], y0 = mOutXYZ[3 * mRings[pStart + 1] + 1];
+			for (int k = 1; k < n - 1; k++) {
+				int v1 = mRings[pStart + 1 + k], v2 = mRings[pStart + 2 + k];
+				a += (mOutXYZ[3 * v1] - x0) * (mOutXYZ[3 * v2 + 1] - y0)
+					- (mOutXYZ[3 * v2] - x0) * (mOutXYZ[3 * v1 + 1] - y0);
+			}
+			return a / 2.;
+		}
+
+		private boolean ringContains(int pStart, double px, double py)
+		{
+			int n = mRings[pStart];
+			boolean lIn = false;
+			for (int k = 0, k1 = n - 1; k < n; k1 = k++) {
+				int v = mRings[pStart + 1 + k], w = mRings[pStart + 1 + k1];
+				double vy = mOutXYZ[3 * v + 1], wy = mOutXYZ[3 * w + 1];
+				if ((vy > py) != (wy > py)) {
+					double vx = mOutXYZ[3 * v], wx = mOutXYZ[3 * w];
+					if (px < vx + (py - vy) * (wx - vx) / (wy - vy)) {
+						lIn = !lIn;
+					}
+				}
+			}
+			return lIn;
+		}
+	}
+
+	// Triangulation eines einfachen Polygons (gegen den Uhrzeigersinn orientiert) mit Loechern (im
+	// Uhrzeigersinn orientiert) durch "ear clipping"; Loecher werden zuvor ueber Stege an den Rand angebunden.
+	private static class EarClipper
+	{
+		private double[] mXYZ;
+		private int[] mPoly = new int[64];
+		private int mN = 0;
+		private int[] mHole = new int[64];
+		private int[] mHoleStart = new int[8];
+		private int mNumberOfHoles = 0;
+		private int[] mPrev = new int[64], mNext = new int[64];
+
+		private static final double cRelTolerance = 1.e-12;
+
+		void begin(double[] pXYZ, int[] pRing, int pOff, int pN)
+		{
+			mXYZ = pXYZ;
+			if (mPoly.length < pN) {
+				mPoly = new int[2 * pN];
+			}
+			System.arraycopy(pRing, pOff, mPoly, 0, pN);
+			mN = pN;
+			mNumberOfHoles = 0;
+			mHoleStart[0] = 0;
+		}
+
+		void addHole(int[] pRing, int pOff, int pN)
+		{
+			if (mHoleStart.length < mNumberOfHoles + 2) {
+				mHoleStart = T3dArrays.copyOf(mHoleStart, 2 * (mNumberOfHoles + 2));
+			}
+			int s = mHoleStart[mNumberOfHoles];
+			if (mHole.length < s + pN) {
+				mHole = T3dArrays.copyOf(mHole, 2 * (s + pN));
+			}
+			System.arraycopy(pRing, pOff, mHole, s, pN);
+			mHoleStart[++mNumberOfHoles] = s + pN;
+		}
+
+		private double x(int v) {
+			return mXYZ[3 * v];
+		}
+
+		private double y(int v) {
+			return mXYZ[3 * v + 1];
+		}
+
+		private double orient(int a, int b, int c) {
+			return (this.x(b) - this.x(a)) * (this.y(c) - this.y(a)) - (this.y(b) - this.y(a)) * (this.x(c) - this.x(a));
+		}
+
+		void triangulate(Clipper pOut)
+		{
+			this.bridgeHoles();
+			int n = mN;
+			if (n < 3) {
+				return;
+			}
+			if (mPrev.length < n) {
+				mPrev = new int[2 * n];
+				mNext = new int[2 * n];
+			}
+			for (int k = 0; k < n; k++) {
+				mPrev[k] = (k == 0) ? n - 1 : k - 1;
+				mNext[k] = (k == n - 1) ? 0 : k + 1;
+			}
+			int i = 0, lFails = 0;
+			while (n > 3) {
+				if (lFails > n) {
+					// Kein Ohr gefunden (degenerierter Ring): Vertices ohne Flaechenanteil werden 
+					// entfernt; ist dies nicht moeglich, ist der Ring nicht einfach.
+					i = this.degenerateVertex(i, n);
+					if (i < 0) {
+						throw new T3dException("Could not triangulate clipped polygon (ring not simple).");
+					}
+					mNext[mPrev[i]] = mNext[i];
+					mPrev[mNext[i]] = mPrev[i];
+					n--;
+					i = mPrev[i];
+					lFails = 0;
+					continue;
+				}
+				int lSpike = this.spikeVertex(i, n);
+				if (lSpike >= 0) {
+					// Stachel ohne Flaeche (sich beruehrender Ring): Spitze und Endpunkt entfernen, da 
+					// sonst ein Ohr ueber den Stachel hinweg abgeschnitten werden koennte
+					int p = mPrev[lSpike], q = mNext[lSpike];
+					mNext[p] = mNext[q];
+					mPrev[mNext[q]] = p;
+					n -= 2;
+					i = p;
+					lFails = 0;
+					continue;
+				}
+				int p = mPrev[i], q = mNext[i];
+				if (this.isEar(p, i, q)) {
+					this.emit(pOut, p, i, q);
+					mNext[p] = q;
+					mPrev[q] = p;
+					n--;
+					i = p;
+					lFails = 0;
+				}
+				else {
+					i = q;
+					lFails++;
+				}
+			}
+			if (n == 3) {
+				this.emit(pOut, mPrev[i], i, mNext[i]);
+			}
+		}
+
+		// liefert den ersten Vertex ab i, dessen Nachbarn zusammenfallen, oder -1
+		private int spikeVertex(int i, int n)
+		{
+			for (int k = 0; k < n; k++, i = mNext[i]) {
+				if (this.sameXY(mPoly[mPrev[i]], mPoly[mNext[i]])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		// liefert den ersten Vertex ab i, der mit seinen Nachbarn auf einer Geraden liegt, oder -1
+		private int degenerateVertex(int i, int n)
+		{
+			for (int k = 0; k < n; k++, i = mNext[i]) {
+				if (this.orient(mPoly[mPrev[i]], mPoly[i], mPoly[mNext[i]]) == 0.) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private void emit(Clipper pOut, int p, int i, int q) {
+			int a = mPoly[p], b = mPoly[i], c = mPoly[q];
+			if (this.orient(a, b, c) > 0.) {
+				pOut.addTriangle(a, b, c);
+			}
+		}
+
+		private boolean isEar(int p, int i, int q)
+		{
+			int a = mPoly[p], b = mPoly[i], c = mPoly[q];
+			if (this.orient(a, b, c) <= 0.) {
+				return false;
+			}
+			for (int k = mNext[q]; k != p; k = mNext[k]) {
+				int v = mPoly[k];
+				if (this.sameXY(v, a) || this.sameXY(v, b) || this.sameXY(v, c)) {
+					// Mehrfach durchlaufener Vertex (sich beruehrender Ring): die dort anschliessenden 
+					// Kanten duerfen nicht in das Ohr hineinlaufen
+					if (this.entersEar(a, b, c, v, mPoly[mPrev[k]]) || this.entersEar(a, b, c, v, mPoly[mNext[k]])) {
+						return false;
+					}
+					continue;
+				}
+				// Vertices, die (bis auf Rundungsfehler der Schnittpunktberechnung) auf dem Rand des Ohrs 
+				// liegen, blockieren es ebenfalls; sonst entstehen bei sich beruehrenden Ringen Ueberlappungen.
+				if (this.orient(a, b, v) >= -this.tolerance(a, b) 
+					&& this.orient(b, c, v) >= -this.tolerance(b, c) 
+					&& this.orient(c, a, v) >= -this.tolerance(c, a)) 
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// prueft, ob die Kante von v (Eckpunkt des Ohrs a, b, c) nach w im Innenwinkel des Ohrs bei v verlaeuft
+		private boolean entersEar(int a, int b, int c, int v, int w)
+		{
+			if (this.sameXY(v, a)) {
+				return this.orient(c, a, w) > 0. && this.orient(a, b, w) > 0.;
+			}
+			if (this.sameXY(v, b)) {
+				return this.orient(a, b, w) > 0. && this.orient(b, c, w) > 0.;
+			}
+			return this.orient(b, c, w) > 0. && this.orient(c, a, w) > 0.;
+		}
+
+		private double tolerance(int a, int b) {
+			double lScale = Math.abs(this.x(a)) + Math.abs(this.y(a)) + Math.abs(this.x(b)) + Math.abs(this.y(b));
+			return cRelTolerance * lScale * (Math.abs(this.x(b) - this.x(a)) + Math.abs(this.y(b) - this.y(a)));
+		}
+
+		private boolean sameXY(int v, int w) {
+			return this.x(v) == this.x(w) && this.y(v) == this.y(w);
+		}
+
+		// Anbindung der Loecher (absteigend nach maximaler x-Koordinate) an den aeusseren Rand
+		private void bridgeHoles()
+		{
+			boolean[] lDone = new boolean[mNumberOfHoles];
+			for (int h = 0; h < mNumberOfHoles; h++) {
+				int lBest = -1, lM = -1;
+				for (int j = 0; j < mNumberOfHoles; j++) {
+					if (lDone[j]) {
+						continue;
+					}
+					for (int k = mHoleStart[j]; k < mHoleStart[j + 1]; k++) {
+						if (lM < 0 || this.x(mHole[k]) > this.x(mHole[lM])) {
+							lM = k;
+							lBest = j;
+						}
+					}
+				}
+				lDone[lBest] = true;
+				this.bridge(lBest, lM, lDone);
+			}
+		}
+
+		private void bridge(int pHole, int pM, boolean[] pDone)
+		{
+			int m = mHole[pM];
+			int lBest = -1;
+			double lBestDist = Double.POSITIVE_INFINITY;
+			for (int k = 0; k < mN; k++) {
+				int v = mPoly[k];
+				double dx = this.x(v) - this.x(m), dy = this.y(v) - this.y(m);
+				double d = dx * dx + dy * dy;
+				if (d < lBestDist && this.visible(m, v, pDone)) {
+					lBestDist = d;
+					lBest = k;
+				}
+			}
+			if (lBest < 0) {
+				lBest = 0;
+			}
+
+			// mPoly: ..., P, M, Loch..., M, P, ...
+			int s = mHoleStart[pHole], nh = mHoleStart[pHole + 1] - s;
+			int[] lNew = new int[mN + nh + 2];
+			System.arraycopy(mPoly, 0, lNew, 0, lBest + 1);
+			int n = lBest + 1;
+			for (int k = 0; k <= nh; k++) {
+				lNew[n++] = mHole[s + (pM - s + k) % nh];
+			}
+			lNew[n++] = mPoly[lBest];
+			System.arraycopy(mPoly, lBest + 1, lNew, n, mN - lBest - 1);
+			mPoly = lNew;
+			mN += nh + 2;
+		}
+
+		// prueft, ob der Steg m-v keine Kante des Randes oder eines Lochs schneidet und im Inneren verlaeuft
+		private boolean visible(int m, int v, boolean[] pDone)
+		{
+			for (int k = 0; k < mN; k++) {
+				if (this.crosses(m, v, mPoly[k], mPoly[(k + 1) % mN])) {
+					return false;
+				}
+			}
+			for (int j = 0; j < mNumberOfHoles; j++) {
+				int s = mHoleStart[j], e = mHoleStart[j + 1];
+				for (int k = s; k < e; k++) {
+					if (this.crosses(m, v, mHole[k], mHole[(k + 1 < e) ? k + 1 : s])) {
+						return false;
+					}
+				}
+			}
+			double mx = (this.x(m) + this.x(v)) / 2., my = (this.y(m) + this.y(v)) / 2.;
+			if (!this.contains(mPoly, 0, mN, mx, my)) {
+				return false;
+			}
+			for (int j = 0; j < mNumberOfHoles; j++) {
+				if (this.contains(mHole, mHoleStart[j], mHoleStart[j + 1], mx, my)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean crosses(int a, int b, int c, int d)
+		{
+			if (this.sameXY(a, c) || this.sameXY(a, d) || this.sameXY(b, c) || this.sameXY(b, d)) {
+				return false;
+			}
+			double o1 = this.orient(a, b, c), o2 = this.orient(a, b, d);
+			double o3 = this.orient(c, d, a), o4 = this.orient(c, d, b);
+			return ((o1 > 0. && o2 < 0.) || (o1 < 0. && o2 > 0.)) && ((o3 > 0. && o4 < 0.) || (o3 < 0. && o4 > 0.));
+		}
+
+		private boolean contains(int[] pRing, int s, int e, double px, double py)
+		{
+			boolean lIn = false;
+			for (int k = s, k1 = e - 1; k < e; k1 = k++) {
+				int v = pRing[k], w = pRing[k1];
+				if ((this.y(v) > py) != (this.y(w) > py)) {
+					if (px < this.x(v) + (py - this.y(v)) * (this.x(w) - this.x(v)) / (this.y(w) - this.y(v))) {
+						lIn = !lIn;
+					}
+				}
+			}
+			return lIn;
+		}
 	}
 }
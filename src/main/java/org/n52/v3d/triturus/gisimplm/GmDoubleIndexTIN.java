@@ -34,6 +34,7 @@ package org.n52.v3d.triturus.gisimplm;
 import org.n52.v3d.triturus.vgis.*;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.T3dLongIntHashMap;
 
 import java.util.Arrays;
 
@@ -47,130 +48,42 @@ public class GmDoubleIndexTIN extends VgIndexedTIN
 	private int numberOfEdges = 0;
 	private int numberOfTriangles = 0;
 
-	private VgPoint[] vertices;
+	private double[] xyz; //vertex-koordinaten, triples
+	private VgPoint[] vertices; //wird bei Bedarf erzeugt
 	private int[] edges; //referenzen auf die vertices, pairs
 	private int[] triangles; //referenzen auf die kanten, triples
 
 	public GmDoubleIndexTIN(GmSimpleTINGeometry sTinGeom) {
 //		long sTime = System.currentTimeMillis();
-		firstMethod(sTinGeom);
-		//secondMethod(sTinGeom);
+		buildTopology(sTinGeom);
 //		long eTime = System.currentTimeMillis();
 //		long laufzeit = eTime-sTime;
 //		System.out.println("laufzeit: "+ laufzeit);
 	}
 
-	private void secondMethod(GmSimpleTINGeometry sTinGeom) {
+	// Kantenaufbau in O(T): Die Kanten werden ueber einen Hash (Schluessel: sortiertes
+	// Vertex-Paar) identifiziert. Die Kanten werden in der Reihenfolge ihres ersten Auftretens
+	// nummeriert; pro Dreieck (Vertex-Indizes aufsteigend sortiert: v0 < v1 < v2) werden die
+	// Kanten v0-v1, v1-v2 und v0-v2 betrachtet.
+	private void buildTopology(GmSimpleTINGeometry sTinGeom) {
 		numberOfVertices = sTinGeom.numberOfPoints();
 		numberOfTriangles = sTinGeom.numberOfTriangles();
-		vertices = sTinGeom.getPoints();
-
-		triangles = new int[numberOfTriangles * 3];
-
-		int[][] flagMatrix = new int[numberOfVertices][numberOfVertices];
-		//eine zelle der matrix = -1, falls i-ter und j-ter vertices nicht verbunden sind,
-		//sonst steht da die kantennummer, mit der die verbunden sind.
-		for (int i = 0; i < numberOfVertices; i++) {
-			Arrays.fill(flagMatrix[i], -1);
-			//-1: erstmal sind alle vertices nicht verbunden
-		}
-		int currentEdgeNr = 0;
-		for (int i = 0; i < numberOfTriangles; i++) {
-			int[] tr = sTinGeom.getTriangleVertexIndices(i);
-			for (int j = 0; j < tr.length; j++) {
-				if ((flagMatrix[tr[0]][tr[1]] == -1)
-					|| (flagMatrix[tr[1]][tr[0]] == -1)) {
-					//also  tr[0] u. tr[1] noch nicht verbunden
-					flagMatrix[tr[0]][tr[1]] = currentEdgeNr++;
-					flagMatrix[tr[1]][tr[0]] = flagMatrix[tr[0]][tr[1]];
-				}
-				triangles[i * 3] = flagMatrix[tr[0]][tr[1]];
-				if ((flagMatrix[tr[1]][tr[2]] == -1)
-					|| (flagMatrix[tr[2]][tr[1]] == -1)) {
-					//also  tr[1] u. tr[2] noch nicht verbunden
-					flagMatrix[tr[1]][tr[2]] = currentEdgeNr++;
-					flagMatrix[tr[2]][tr[1]] = flagMatrix[tr[1]][tr[2]];
-				}
-				triangles[i * 3 + 1] = flagMatrix[tr[1]][tr[2]];
-				if ((flagMatrix[tr[2]][tr[0]] == -1)
-					|| (flagMatrix[tr[0]][tr[2]] == -1)) {
-					//also  tr[2] u. tr[0] noch nicht verbunden
-					flagMatrix[tr[2]][tr[0]] = currentEdgeNr++;
-					flagMatrix[tr[0]][tr[2]] = flagMatrix[tr[2]][tr[0]];
-				}
-				triangles[i * 3 + 2] = flagMatrix[tr[2]][tr[0]];
-			}
-		}
-		numberOfEdges = currentEdgeNr;
-		edges = new int[numberOfEdges * 2];
-		for (int i = 0; i < flagMatrix.length; i++) {
-			for (int j = i + 1; j < flagMatrix.length; j++) {
-				if (flagMatrix[i][j] != -1) {
-					edges[flagMatrix[i][j] * 2] = i;
-					edges[flagMatrix[i][j] * 2 + 1] = j;
-				}
-			}
-		}
-	}
-
-	private void firstMethod(GmSimpleTINGeometry sTinGeom) {
-		numberOfVertices = sTinGeom.numberOfPoints();
-		numberOfTriangles = sTinGeom.numberOfTriangles();
-		vertices = sTinGeom.getPoints();
+		xyz = sTinGeom.getXYZArray();
 		//Dies wird der neue Dreiecks-Index - auf die Kanten:
 		triangles = new int[numberOfTriangles * 3];
-		//Hier wird zun�chst ein zu gro�er Puffer gebildet, um performanten Zugriff zu erm�glichen:
-		edges = new int[numberOfTriangles * 3 * 2]; //max m�gl. anzahl
-		int[] exists = { -1, -1, -1 }; //0-1, 1-2, 0-2
+		//Hier wird zunaechst ein zu grosser Puffer gebildet (max. moegl. Anzahl):
+		edges = new int[numberOfTriangles * 3 * 2];
+		numberOfEdges = 0;
+
+		T3dLongIntHashMap edgeMap = new T3dLongIntHashMap(numberOfTriangles * 3 / 2 + 3);
+		int[] tr = new int[3];
 		for (int i = 0; i < numberOfTriangles; i++) {
-			int[] tr = sTinGeom.getTriangleVertexIndices(i);
+			sTinGeom.getTriangleVertexIndices(i, tr);
 			//Richtung der Kanten geht verloren:
 			Arrays.sort(tr);
-			//Die erzeugten Kanten werden auf Existenz gepr�ft
-			//!!!!!!!!!!!!�u�erst unperformant...!!!!!!!!!!!!!
-			for (int j = 0; j < numberOfEdges; j++) {
-				if (tr[0] == edges[j * 2]) {
-					if (tr[1] == edges[j * 2 + 1]) {
-						exists[0] = j;
-					}
-					if (tr[2] == edges[j * 2 + 1]) {
-						exists[2] = j;
-					}
-				}
-				if (tr[1] == edges[j * 2]) {
-					if (tr[2] == edges[j * 2 + 1]) {
-						exists[1] = j;
-					}
-				}
-			}
-
-			if (exists[0] == -1) {
-				edges[numberOfEdges * 2] = tr[0];
-				edges[numberOfEdges * 2 + 1] = tr[1];
-				triangles[i * 3] = numberOfEdges++;
-			}
-			else {
-				triangles[i * 3] = exists[0];
-				exists[0] = -1;
-			}
-			if (exists[1] == -1) {
-				edges[numberOfEdges * 2] = tr[1];
-				edges[numberOfEdges * 2 + 1] = tr[2];
-				triangles[i * 3 + 1] = numberOfEdges++;
-			}
-			else {
-				triangles[i * 3 + 1] = exists[1];
-				exists[1] = -1;
-			}
-			if (exists[2] == -1) {
-				edges[numberOfEdges * 2] = tr[0];
-				edges[numberOfEdges * 2 + 1] = tr[2];
-				triangles[i * 3 + 2] = numberOfEdges++;
-			}
-			else {
-				triangles[i * 3 + 2] = exists[2];
-				exists[2] = -1;
-			}
+			triangles[i * 3] = this.edgeIndex(edgeMap, tr[0], tr[1]);
+			triangles[i * 3 + 1] = this.edgeIndex(edgeMap, tr[1], tr[2]);
+			triangles[i * 3 + 2] = this.edgeIndex(edgeMap, tr[0], tr[2]);
 		}
 		int[] temp = new int[numberOfEdges * 2];
 		System.arraycopy(edges, 0, temp, 0, numberOfEdges * 2);
@@ -178,6 +91,17 @@ public class GmDoubleIndexTIN extends VgIndexedTIN
 		edges = temp;
 	}
 
+	// liefert den Index der Kante v1-v2 (v1 < v2), ggf. wird die Kante neu angelegt
+	private int edgeIndex(T3dLongIntHashMap edgeMap, int v1, int v2) {
+		int e = edgeMap.putIfAbsent(T3dLongIntHashMap.key(v1, v2), numberOfEdges);
+		if (e == T3dLongIntHashMap.cNoEntry) {
+			edges[numberOfEdges * 2] = v1;
+			edges[numberOfEdges * 2 + 1] = v2;
+			e = numberOfEdges++;
+		}
+		return e;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.n52.v3d.triturus.vgis.VgTIN#numberOfPoints()
 	 */
@@ -197,7 +121,7 @@ public class GmDoubleIndexTIN extends VgIndexedTIN
 	 * @see org.n52.v3d.triturus.vgis.VgTIN#getPoint(int)
 	 */
 	public VgPoint getPoint(int i) throws T3dException {
-		return vertices[i];
+		return this.getVertex(i);
 	}
 
 	/* (non-Javadoc)
@@ -251,6 +175,12 @@ public class GmDoubleIndexTIN extends VgIndexedTIN
 	 * @return Vertex array
 	 */
 	public VgPoint[] getVertices() {
+		if (vertices == null) {
+			vertices = new VgPoint[numberOfVertices];
+			for (int i = 0; i < numberOfVertices; i++) {
+				vertices[i] = this.getVertex(i);
+			}
+		}
 		return vertices;
 	}
 
@@ -261,7 +191,7 @@ public class GmDoubleIndexTIN extends VgIndexedTIN
 	 * @return corresponding point-geometry
 	 */
 	public VgPoint getVertex(int i) {
-		return vertices[i];
+		return new GmPoint(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
 	}
 
 	/**
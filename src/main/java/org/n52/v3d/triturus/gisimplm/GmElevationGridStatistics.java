@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+import org.n52.v3d.triturus.vgis.VgElevationGrid;
+
+/**
+ * Descriptive statistics for the set elements of an elevation grid, i.e. 
+ * minimum, maximum, mean value, standard deviation, number of set elements, 
+ * histograms and approximate percentiles.<p>
+ * The summary values are computed in a single pass over the grid rows, 
+ * which may be distributed over multiple threads by row bands. Histograms 
+ * require a second pass, which will be performed on demand; the most recent
+ * histogram will be kept. Percentiles are derived from a fine histogram, 
+ * their error is below <tt>(max - min) / 4096</tt>.<p>
+ * Note that the statistics object describes the grid's state at 
+ * construction time. {@link GmSimpleElevationGrid#getStatistics()} provides 
+ * cached statistics that will be re-computed after modifications. Since 
+ * histograms and percentiles are computed on demand, they are not available 
+ * any more after a <tt>GmSimpleElevationGrid</tt> has been modified; for 
+ * other grid implementations, modifications cannot be detected, and values 
+ * outside the range <tt>[getMin(), getMax()]</tt> will be counted to the 
+ * first or last histogram class.
+ *
+ * @author Benno Schmidt
+ */
+public class GmElevationGridStatistics
+{
+    private final static int cPercentileBins = 4096;
+
+    private VgElevationGrid mGrid;
+    private int mNumberOfThreads;
+
+    private long mCount = 0;
+    private double mMin = Double.NaN, mMax = Double.NaN;
+    private double mMean = Double.NaN, mM2 = 0.;
+
+    private long mModCount; // grid modification counter at construction time
+
+    private long[] mHistogram = null;
+    private long[] mPercentileHistogram = null;
+
+    /**
+     * Constructor. The computation will be performed using all available 
+     * processors.
+     *
+     * @param pGrid Elevation grid
+     */
+    public GmElevationGridStatistics(VgElevationGrid pGrid) {
+        this(pGrid, T3dParallelExecutor.availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pGrid Elevation grid
+     * @param pNumberOfThreads Number of threads to be used
+     */
+    public GmElevationGridStatistics(VgElevationGrid pGrid, int pNumberOfThreads)
+    {
+        mGrid = pGrid;
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+        mModCount = this.gridModCount();
+        this.computeSummary();
+    }
+
+    /**
+     * returns the number of set grid elements.
+     *
+     * @return Number of elements holding elevation values
+     */
+    public long numberOfSetElements() {
+        return mCount;
+    }
+
+    /**
+     * returns the minimal elevation value. For grids without any set 
+     * elements, <tt>Double.NaN</tt> will be returned.
+     *
+     * @return Minimum
+     */
+    public double getMin() {
+        return mMin;
+    }
+
+    /**
+     * returns the maximal elevation value. For grids without any set 
+     * elements, <tt>Double.NaN</tt> will be returned.
+     *
+     * @return Maximum
+     */
+    public double getMax() {
+        return mMax;
+    }
+
+    /**
+     * returns the mean elevation value. For grids without any set 
+     * elements, <tt>Double.NaN</tt> will be returned.
+     *
+     * @return Mean value
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    /**
+     * returns the (population) standard deviation of the elevation values.
+     * For grids without any set elements, <tt>Double.NaN</tt> will be 
+     * returned.
+     *
+     * @return Standard deviation
+     */
+    public double getStandardDeviation() {
+        if (mCount == 0)
+            return Double.NaN;
+        return Math.sqrt(mM2 / mCount);
+    }
+
+    /**
+     * returns a histogram of the elevation values. The range 
+     * <tt>[getMin(), getMax()]</tt> will be divided into <tt>pBins</tt> 
+     * classes of equal width; the maximum will be counted to the last class.
+     *
+     * @param pBins Number of classes
+     * @return Array holding the number of elements for each class
+     * @throws T3dException if <tt>pBins</tt> is not positive or if the grid 
+     * has been modified since construction
+     */
+    public synchronized long[] getHistogram(int pBins) throws T3dException
+    {
+        if (pBins <= 0) {
+            throw new T3dException("Illegal number of histogram classes.");
+        }
+        if (mHistogram == null || mHistogram.length != pBins) {
+            mHistogram = this.computeHistogram(pBins);
+        }
+        return mHistogram.clone();
+    }
+
+    /**
+     * returns the approximate <tt>pP</tt>-percentile of the elevation 
+     * values, e.g. <tt>getPercentile(50.)</tt> gives the median.
+     *
+     * @param pP Percentage (0 &lt;= pP &lt;= 100)
+     * @return Elevation value, or <tt>Double.NaN</tt> for empty grids
+     * @throws T3dException if <tt>pP</tt> is out of range or if the grid 
+     * has been modified since construction
+     */
+    public synchronized double getPercentile(double pP) throws T3dException
+    {
+        if (!(pP >= 0. && pP <= 100.)) {
+            throw new T3dException("Percentage out of range.");
+        }
+        if (mCount == 0) 
+            return Double.NaN;
+        if (pP == 0.) 
+            return mMin;
+        if (pP == 100.) 
+            return mMax;
+        if (mPercentileHistogram == null) {
+            mPercentileHistogram = this.computeHistogram(cPercentileBins);
+        }
+
+        int nBins = mPercentileHistogram.length;
+        double binWidth = (mMax - mMin) / nBins;
+        double target = pP / 100. * mCount;
+        long cum = 0;
+        for (int b = 0; b < nBins; b++) {
+            long c = mPercentileHistogram[b];
+            if (c > 0 && cum + c >= target) {
+                // Linear interpolation inside the class:
+                double f = (target - cum) / c;
+                return mMin + (b + f) * binWidth;
+            }
+            cum += c;
+        }
+        return mMax;
+    }
+
+    // Band results for the summary pass:
+    private static class Summary
+    {
+        long count = 0;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        double mean = 0., m2 = 0.;
+
+        // Merges the given band result (Chan et al.):
+        void merge(Summary s) 
+        {
+            if (s.count == 0) 
+                return;
+            if (count == 0) {
+                count = s.count; min = s.min; max = s.max; 
+                mean = s.mean; m2 = s.m2;
+                return;
+            }
+            long n = count + s.count;
+            double delta = s.mean - mean;
+            mean += delta * s.count / n;
+            m2 += s.m2 + delta * delta * ((double) count * s.count / n);
+            count = n;
+            if (s.min < min) min = s.min;
+            if (s.max > max) max = s.max;
+        }
+    }
+
+    private void computeSummary()
+    {
+        final int nRows = mGrid.numberOfRows(), nCols = mGrid.numberOfColumns();
+        int nBands = Math.min(mNumberOfThreads, Math.max(1, nRows / 16));
+        final Summary[] res = new Summary[nBands];
+        
+        T3dParallelExecutor.execute(0, nBands, nBands, 
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    for (int b = pFrom; b < pTo; b++) {
+                        res[b] = summarize(
+                            (int) ((long) nRows * b / res.length), 
+                            (int) ((long) nRows * (b + 1) / res.length), 
+                            nCols);
+                    }
+                }
+            });
+
+        Summary total = new Summary();
+        for (int b = 0; b < nBands; b++) {
+            total.merge(res[b]);
+        }
+        mCount = total.count;
+        if (mCount > 0) {
+            mMin = total.min;
+            mMax = total.max;
+            mMean = total.mean;
+            mM2 = total.m2;
+        }
+    }
+
+    private Summary summarize(int pRow0, int pRow1, int pCols)
+    {
+        Summary s = new Summary();
+        double[] row = new double[pCols];
+        for (int i = pRow0; i < pRow1; i++) {
+            mGrid.getRow(i, row);
+            // Per row, sums are accumulated relative to the row's first 
+            // value and merged afterwards:
+            long n = 0;
+            double sum = 0., sum2 = 0., ref = Double.NaN;
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < pCols; j++) {
+                double z = row[j];
+                if (z != z) 
+                    continue; // unset
+                if (n == 0) 
+                    ref = z;
+                double d = z - ref;
+                sum += d;
+                sum2 += d * d;
+                n++;
+                if (z < min) min = z;
+                if (z > max) max = z;
+            }
+            if (n > 0) {
+                Summary r = new Summary();
+                r.count = n;
+                r.min = min;
+                r.max = max;
+                r.mean = ref + sum / n;
+                r.m2 = Math.max(0., sum2 - sum * sum / n);
+                s.merge(r);
+            }
+        }
+        return s;
+    }
+
+    private long gridModCount() {
+        if (mGrid instanceof GmSimpleElevationGrid)
+            return ((GmSimpleElevationGrid) mGrid).modCount();
+        return 0;
+    }
+
+    private long[] computeHistogram(final int pBins) throws T3dException
+    {
+        if (this.gridModCount() != mModCount) {
+            throw new T3dException(
+                "The grid has been modified after the statistics computation.");
+        }
+        final int nRows = mGrid.numberOfRows(), nCols = mGrid.numberOfColumns();
+        long[] hist = new long[pBins];
+        if (mCount == 0) 
+            return hist;
+
+        int nBands = Math.min(mNumberOfThreads, Math.max(1, nRows / 16));
+        final long[][] res = new long[nBands][];
+        final double min = mMin;
+        final double scale = (mMax > mMin) ? pBins / (mMax - mMin) : 0.;
+
+        T3dParallelExecutor.execute(0, nBands, nBands, 
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    double[] row = new double[nCols];
+                    for (int b = pFrom; b < pTo; b++) {
+                        long[] h = new long[pBins];
+                        int i0 = (int) ((long) nRows * b / res.length);
+                        int i1 = (int) ((long) nRows * (b + 1) / res.length);
+                        for (int i = i0; i < i1; i++) {
+                            mGrid.getRow(i, row);
+                            for (int j = 0; j < nCols; j++) {
+                                double z = row[j];
+                                if (z != z) 
+                                    continue; // unset
+                                int k = (int) ((z - min) * scale);
+                                if (k >= pBins) k = pBins - 1;
+                                if (k < 0) k = 0;
+                                h[k]++;
+                            }
+                        }
+                        res[b] = h;
+                    }
+                }
+            });
+
+        for (int b = 0; b < nBands; b++) {
+            for (int k = 0; k < pBins; k++) {
+                hist[k] += res[b][k];
+            }
+        }
+        return hist;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.Arrays;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Cell-storage engine holding elevation values in a single row-major 
+ * <tt>float</tt>-array. No-data flags are encoded as <tt>Float.NaN</tt>. 
+ * This storage needs less than half of the memory of the former 
+ * <tt>double[][]</tt>/<tt>boolean[][]</tt>-representation, at the cost of 
+ * single-precision elevation values (about 7 significant digits), which 
+ * usually is sufficient for digital elevation models.
+ *
+ * @see GmDoubleGridStorage
+ * @author Benno Schmidt
+ */
+public class GmFloatGridStorage extends GmGridStorage
+{
+    private int mRows, mCols;
+    private float[] mVal;
+
+    /**
+     * Constructor. All grid elements will be unset.
+     *
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @throws T3dException if the grid is too large to be held in an array
+     */
+    public GmFloatGridStorage(int pRows, int pCols) throws T3dException
+    {
+        long n = (long) pRows * (long) pCols;
+        if (pRows < 0 || pCols < 0 || n > Integer.MAX_VALUE - 8) {
+            throw new T3dException(
+                "Can not allocate grid storage for " + pRows + " x " + pCols 
+                + " elements.");
+        }
+        mRows = pRows;
+        mCols = pCols;
+        mVal = new float[(int) n];
+        Arrays.fill(mVal, Float.NaN);
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public double get(int pRow, int pCol) {
+        return mVal[pRow * mCols + pCol];
+    }
+
+    public void set(int pRow, int pCol, double pZ) {
+        mVal[pRow * mCols + pCol] = (float) pZ;
+    }
+
+    public boolean isSet(int pRow, int pCol) {
+        float z = mVal[pRow * mCols + pCol];
+        return z == z; // false for NaN
+    }
+
+    public void getBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+    {
+        for (int i = 0; i < pRows; i++) {
+            int src = (pRow0 + i) * mCols + pCol0, dst = i * pCols;
+            for (int j = 0; j < pCols; j++) {
+                pDst[dst + j] = mVal[src + j];
+            }
+        }
+    }
+
+    public void setBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+    {
+        for (int i = 0; i < pRows; i++) {
+            int src = i * pCols, dst = (pRow0 + i) * mCols + pCol0;
+            for (int j = 0; j < pCols; j++) {
+                mVal[dst + j] = (float) pSrc[src + j];
+            }
+        }
+    }
+
+    public long byteSize() {
+        return 4L * mVal.length;
+    }
+
+    /**
+     * provides direct access to the underlying row-major value array. Unset 
+     * elements are given as <tt>Float.NaN</tt>. Note that modifications of 
+     * the array will directly affect the storage.
+     *
+     * @return Array of size <tt>numberOfRows() * numberOfColumns()</tt>
+     */
+    public float[] getArray() {
+        return mVal;
+    }
+}
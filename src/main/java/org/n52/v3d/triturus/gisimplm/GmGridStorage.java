@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Abstract base class for the cell-storage engines used by elevation grids. 
+ * A storage holds <tt>numberOfRows() * numberOfColumns()</tt> elevation 
+ * values. Unset grid elements (&quot;no data&quot;) are encoded as 
+ * <tt>Double.NaN</tt>, so no separate flag matrix is needed.<p>
+ * Note that implementations do not check index bounds; this is left to the 
+ * grid using the storage.<p>
+ * The storage engines for newly constructed grids are provided by 
+ * {@link #create(int, int)}. By default, double-precision storages will be 
+ * used; calling <tt>setDefaultPrecision(GmGridStorage.cSinglePrecision)</tt> 
+ * halves the memory consumption of all grids constructed afterwards (e.g. by 
+ * readers and filters), at the cost of single-precision elevation values.
+ *
+ * @see GmSimpleElevationGrid
+ * @author Benno Schmidt
+ */
+abstract public class GmGridStorage
+{
+    /** 
+     * precision identifier for storages holding <tt>double</tt>-values 
+     * (8 bytes per grid element)
+     * @see GmDoubleGridStorage
+     */
+    public final static short cDoublePrecision = 1;
+    /** 
+     * precision identifier for storages holding <tt>float</tt>-values 
+     * (4 bytes per grid element)
+     * @see GmFloatGridStorage
+     */
+    public final static short cSinglePrecision = 2;
+
+    private static volatile short sDefaultPrecision = cDoublePrecision;
+
+    /**
+     * sets the precision of the storages provided by 
+     * {@link #create(int, int)}.
+     *
+     * @param pPrecision {@link #cDoublePrecision} or {@link #cSinglePrecision}
+     * @throws T3dException if an illegal value is given
+     */
+    public static void setDefaultPrecision(short pPrecision) throws T3dException 
+    {
+        if (pPrecision != cDoublePrecision && pPrecision != cSinglePrecision) {
+            throw new T3dException("Illegal grid storage precision.");
+        }
+        sDefaultPrecision = pPrecision;
+    }
+
+    /**
+     * returns the precision of the storages provided by 
+     * {@link #create(int, int)}.
+     *
+     * @return {@link #cDoublePrecision} or {@link #cSinglePrecision}
+     */
+    public static short getDefaultPrecision() {
+        return sDefaultPrecision;
+    }
+
+    /**
+     * creates an in-memory storage of the default precision. All grid 
+     * elements will be unset.
+     *
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @return Storage engine
+     * @throws T3dException if the grid is too large to be held in an array
+     * @see #setDefaultPrecision(short)
+     */
+    public static GmGridStorage create(int pRows, int pCols) throws T3dException {
+        return create(pRows, pCols, sDefaultPrecision);
+    }
+
+    /**
+     * creates an in-memory storage of the given precision. All grid elements 
+     * will be unset.
+     *
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pPrecision {@link #cDoublePrecision} or {@link #cSinglePrecision}
+     * @return Storage engine
+     * @throws T3dException if the grid is too large to be held in an array or 
+     * if an illegal precision is given
+     */
+    public static GmGridStorage create(int pRows, int pCols, short pPrecision) 
+        throws T3dException
+    {
+        if (pPrecision == cSinglePrecision)
+            return new GmFloatGridStorage(pRows, pCols);
+        if (pPrecision == cDoublePrecision)
+            return new GmDoubleGridStorage(pRows, pCols);
+        throw new T3dException("Illegal grid storage precision.");
+    }
+
+    /**
+     * returns the number of rows held by the storage.
+     *
+     * @return Number of rows
+     */
+    abstract public int numberOfRows();
+
+    /**
+     * returns the number of columns held by the storage.
+     *
+     * @return Number of columns
+     */
+    abstract public int numberOfColumns();
+
+    /**
+     * returns the value stored for the given grid element. For unset 
+     * elements <tt>Double.NaN</tt> will be returned.
+     *
+     * @param pRow Row-index
+     * @param pCol Column-index
+     * @return Elevation-value or <tt>Double.NaN</tt>
+     */
+    abstract public double get(int pRow, int pCol);
+
+    /**
+     * stores a value for the given grid element. Setting the value 
+     * <tt>Double.NaN</tt> marks the element as unset.
+     *
+     * @param pRow Row-index
+     * @param pCol Column-index
+     * @param pZ Elevation-value
+     */
+    abstract public void set(int pRow, int pCol, double pZ);
+
+    /**
+     * returns the number of bytes occupied by the stored cell values.
+     *
+     * @return Storage size in bytes
+     */
+    abstract public long byteSize();
+
+    /**
+     * returns <i>true</i>, if a value is assigned to the given grid element.
+     *
+     * @param pRow Row-index
+     * @param pCol Column-index
+     * @return <i>false</i> for &quot;no data&quot; elements
+     */
+    public boolean isSet(int pRow, int pCol) {
+        return !Double.isNaN(this.get(pRow, pCol));
+    }
+
+    /**
+     * marks the given grid element as unset (&quot;no data&quot;).
+     *
+     * @param pRow Row-index
+     * @param pCol Column-index
+     */
+    public void unset(int pRow, int pCol) {
+        this.set(pRow, pCol, Double.NaN);
+    }
+
+    /**
+     * reads a rectangular block of values into the given array. The value 
+     * of the element <tt>(pRow0 + i, pCol0 + j)</tt> will be stored at 
+     * position <tt>i * pCols + j</tt>. The default implementation performs 
+     * single element accesses; implementing classes should override this 
+     * method if more efficient access is possible.
+     *
+     * @param pRow0 First row index
+     * @param pCol0 First column index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pDst Destination array
+     */
+    public void getBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+    {
+        int k = 0;
+        for (int i = pRow0; i < pRow0 + pRows; i++) {
+            for (int j = pCol0; j < pCol0 + pCols; j++) {
+                pDst[k++] = this.get(i, j);
+            }
+        }
+    }
+
+    /**
+     * stores a rectangular block of values. The array layout is the same as 
+     * for <tt>getBlock()</tt>; <tt>Double.NaN</tt>-values mark elements as 
+     * unset.
+     *
+     * @param pRow0 First row index
+     * @param pCol0 First column index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pSrc Source array
+     */
+    public void setBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+    {
+        int k = 0;
+        for (int i = pRow0; i < pRow0 + pRows; i++) {
+            for (int j = pCol0; j < pCol0 + pCols; j++) {
+                this.set(i, j, pSrc[k++]);
+            }
+        }
+    }
+
+    /**
+     * returns the number of grid elements, i.e. the number of rows 
+     * multiplied by the number of columns.
+     *
+     * @return Number of cells
+     */
+    public long numberOfCells() {
+        return (long) this.numberOfRows() * (long) this.numberOfColumns();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Abstract base class for backing stores providing the tiles of a 
+ * {@link GmTiledGridStorage}. A tile is a rectangular block of grid elements 
+ * given by its first row and column and its size; unset grid elements are 
+ * represented by <tt>Double.NaN</tt>.
+ *
+ * @see IoRawGridTileSource
+ * @author Benno Schmidt
+ */
+abstract public class GmGridTileSource
+{
+    /**
+     * returns the total number of grid rows provided by the source.
+     *
+     * @return Number of rows
+     */
+    abstract public int numberOfRows();
+
+    /**
+     * returns the total number of grid columns provided by the source.
+     *
+     * @return Number of columns
+     */
+    abstract public int numberOfColumns();
+
+    /**
+     * reads a block of grid elements into the given array. The element 
+     * <tt>(pRow0 + i, pCol0 + j)</tt> has to be stored at position 
+     * <tt>i * pCols + j</tt>.
+     *
+     * @param pRow0 First row of the block
+     * @param pCol0 First column of the block
+     * @param pRows Number of rows of the block
+     * @param pCols Number of columns of the block
+     * @param pDst Destination array of size <tt>pRows * pCols</tt> at least
+     * @throws T3dException if the block can not be read
+     */
+    abstract public void readBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+        throws T3dException;
+
+    /**
+     * returns <i>true</i>, if modified blocks can be written back to the 
+     * source. The default implementation returns <i>false</i>.
+     *
+     * @return <i>true</i>, if <tt>writeBlock()</tt> is supported
+     */
+    public boolean isWritable() {
+        return false;
+    }
+
+    /**
+     * writes a block of grid elements back to the source. The array layout 
+     * is the same as for <tt>readBlock()</tt>. The default implementation 
+     * throws a <tt>T3dException</tt>.
+     *
+     * @param pRow0 First row of the block
+     * @param pCol0 First column of the block
+     * @param pRows Number of rows of the block
+     * @param pCols Number of columns of the block
+     * @param pSrc Source array
+     * @throws T3dException if the block can not be written
+     */
+    public void writeBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+        throws T3dException
+    {
+        throw new T3dException("Grid tile source is not writable.");
+    }
+}
@@ -0,0 +1,732 @@
+/**
+ * Copyright (C) 2007-2015 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * icense version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.T3dLongIntHashMap;
+import org.n52.v3d.triturus.vgis.*;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indexed TIN that provides the topological relations between vertices, edges and triangles in
+ * constant time.<br /><br />
+ * The TIN is held in a compact half-edge structure consisting of primitive arrays only: The
+ * triangle <i>t</i> owns the half-edges <i>3 t</i>, <i>3 t + 1</i> and <i>3 t + 2</i>, where
+ * half-edge <i>3 t + c</i> starts at the triangle's <i>c</i>-th corner and ends at the next corner.
+ * For every half-edge, the opposite half-edge in the neighbour triangle (<i>twin</i>) is stored
+ * (-1 for edges on the TIN's boundary); for every vertex, one outgoing half-edge is stored.
+ * Construction requires time linear in the number of triangles.<br /><br />
+ * All triangles will be oriented counter-clockwise (with respect to the x-y-plane). The TIN has to
+ * be manifold, i.e. an edge may be shared by two triangles at most; otherwise a
+ * <tt>T3dException</tt> will be thrown.<br /><br />
+ * Example: Iteration over the triangles around a vertex <i>v</i> (vertex star):
+ * <pre>
+ * int h0 = tin.getOutgoingHalfEdge(v), h = h0;
+ * if (h0 &gt;= 0) {
+ *     do {
+ *         int t = tin.getTriangleOfHalfEdge(h);
+ *         ...
+ *         h = tin.rotateCCW(h);
+ *     } while (h &gt;= 0 &amp;&amp; h != h0);
+ * }
+ * </pre>
+ * @author Benno Schmidt
+ */
+public class GmHalfEdgeTIN extends VgIndexedTIN
+{
+	private int mNumberOfPoints;
+	private double[] mXYZ; // x_0, y_0, z_0, x_1, y_1, z_1, ...
+	private int mNumberOfTriangles;
+	private int[] mTri; // origin vertex of half-edge h (3 per triangle)
+	private int[] mTwin; // opposite half-edge, -1 on boundary
+	private int[] mVertexHalfEdge; // outgoing half-edge per vertex (boundary half-edge, if possible)
+	private GmEnvelope mEnv;
+
+	/**
+	 * Constructor. The TIN's vertex coordinates will be backed by the given coordinate array
+	 * (i.e. the array is not copied), the triangle index array will be taken over and might be
+	 * modified (re-orientation of clockwise triangles, edge flips).
+	 * @param pXYZ Vertex coordinates given as <i>x<sub>0</sub>, y<sub>0</sub>, z<sub>0</sub>, x<sub>1</sub>, ...</i>
+	 * @param pNumberOfPoints Number of points of the TIN
+	 * @param pTri Vertex indices, three consecutive entries per triangle
+	 * @param pNumberOfTriangles Number of triangles of the TIN
+	 * @throws T3dException if the arrays are too short or if the TIN is not manifold
+	 */
+	public GmHalfEdgeTIN(double[] pXYZ, int pNumberOfPoints, int[] pTri, int pNumberOfTriangles)
+		throws T3dException
+	{
+		if (pNumberOfPoints < 0 || pNumberOfTriangles < 0
+			|| pXYZ.length < 3 * pNumberOfPoints || pTri.length < 3 * pNumberOfTriangles) {
+			throw new T3dException("Insufficient TIN array size.");
+		}
+		mNumberOfPoints = pNumberOfPoints;
+		mXYZ = pXYZ;
+		mNumberOfTriangles = pNumberOfTriangles;
+		mTri = pTri;
+		mEnv = null;
+
+		this.buildHalfEdges();
+	}
+
+	/**
+	 * Constructor. The given TIN's geometry will be copied.
+	 * @param pTIN Indexed TIN
+	 * @throws T3dException if the TIN is not manifold
+	 */
+	public GmHalfEdgeTIN(VgIndexedTIN pTIN) throws T3dException
+	{
+		mNumberOfPoints = pTIN.numberOfPoints();
+		mNumberOfTriangles = pTIN.numberOfTriangles();
+		if (pTIN instanceof GmSimpleTINGeometry) {
+			GmSimpleTINGeometry lGeom = (GmSimpleTINGeometry) pTIN;
+			mXYZ = T3dArrays.copyOf(lGeom.getXYZArray(), 3 * mNumberOfPoints);
+			mTri = T3dArrays.copyOf(lGeom.getTriangleArray(), 3 * mNumberOfTriangles);
+		}
+		else {
+			mXYZ = new double[3 * mNumberOfPoints];
+			for (int i = 0; i < mNumberOfPoints; i++) {
+				VgPoint lPnt = pTIN.getPoint(i);
+				mXYZ[3 * i] = lPnt.getX();
+				mXYZ[3 * i + 1] = lPnt.getY();
+				mXYZ[3 * i + 2] = lPnt.getZ();
+			}
+			mTri = new int[3 * mNumberOfTriangles];
+			for (int i = 0; i < mNumberOfTriangles; i++) {
+				System.arraycopy(pTIN.getTriangleVertexIndices(i), 0, mTri, 3 * i, 3);
+			}
+		}
+		this.setSRS(pTIN.getSRS());
+		mEnv = null;
+
+		this.buildHalfEdges();
+	}
+
+	// Aufbau der Half-Edge-Struktur in O(T): Die Zwillinge werden ueber einen Hash (Schluessel:
+	// ungeordnetes Vertex-Paar) zugeordnet.
+	private void buildHalfEdges() throws T3dException
+	{
+		mTwin = new int[3 * mNumberOfTriangles];
+		Arrays.fill(mTwin, -1);
+		mVertexHalfEdge = new int[mNumberOfPoints];
+		Arrays.fill(mVertexHalfEdge, -1);
+
+		for (int t = 0; t < mNumberOfTriangles; t++) {
+			for (int c = 0; c < 3; c++) {
+				int v = mTri[3 * t + c];
+				if (v < 0 || v >= mNumberOfPoints) {
+					throw new T3dException("Illegal vertex index in triangle " + t + ": " + v);
+				}
+			}
+			if (this.orient(mTri[3 * t], mTri[3 * t + 1], mTri[3 * t + 2]) < 0.) {
+				int tmp = mTri[3 * t + 1];
+				mTri[3 * t + 1] = mTri[3 * t + 2];
+				mTri[3 * t + 2] = tmp;
+			}
+		}
+
+		T3dLongIntHashMap lEdges = new T3dLongIntHashMap(3 * mNumberOfTriangles / 2 + 3);
+		for (int h = 0; h < 3 * mNumberOfTriangles; h++) {
+			int a = mTri[h], b = mTri[this.next(h)];
+			if (a == b) {
+				throw new T3dException("Degenerated triangle " + h / 3 + ".");
+			}
+			int g = lEdges.putIfAbsent(T3dLongIntHashMap.key(a, b), h);
+			if (g == T3dLongIntHashMap.cNoEntry) {
+				continue;
+			}
+			if (mTwin[g] >= 0 || mTri[g] != b) {
+				throw new T3dException("Non-manifold TIN at edge " + a + "-" + b + ".");
+			}
+			mTwin[g] = h;
+			mTwin[h] = g;
+		}
+
+		for (int h = 0; h < 3 * mNumberOfTriangles; h++) {
+			int v = mTri[h];
+			if (mVertexHalfEdge[v] < 0 || mTwin[h] < 0) {
+				mVertexHalfEdge[v] = h;
+			}
+		}
+	}
+
+	public int numberOfPoints() {
+		return mNumberOfPoints;
+	}
+
+	public int numberOfTriangles() {
+		return mNumberOfTriangles;
+	}
+
+	/**
+	 * returns the i-th point (vertex) of the TIN structure. Note that a new point object will be
+	 * created on every call.
+	 * @param i Point index
+	 */
+	public VgPoint getPoint(int i) throws T3dException {
+		this.checkPointIndex(i);
+		GmPoint lPnt = new GmPoint(mXYZ[3 * i], mXYZ[3 * i + 1], mXYZ[3 * i + 2]);
+		lPnt.setSRS(this.getSRS());
+		return lPnt;
+	}
+
+	public VgTriangle getTriangle(int i) throws T3dException {
+		this.checkTriangleIndex(i);
+		return new GmTriangle(
+			this.getPoint(mTri[3 * i]),
+			this.getPoint(mTri[3 * i + 1]),
+			this.getPoint(mTri[3 * i + 2]));
+	}
+
+	public int[] getTriangleVertexIndices(int i) throws T3dException {
+		this.checkTriangleIndex(i);
+		return new int[] { mTri[3 * i], mTri[3 * i + 1], mTri[3 * i + 2] };
+	}
+
+	/**
+	 * copies the vertex-indices of the i-th triangle into the given array.
+	 * @param i Triangle index
+	 * @param pIdx Destination array of length 3 at least
+	 * @return <tt>pIdx</tt>
+	 * @throws T3dException
+	 */
+	public int[] getTriangleVertexIndices(int i, int[] pIdx) throws T3dException {
+		this.checkTriangleIndex(i);
+		pIdx[0] = mTri[3 * i];
+		pIdx[1] = mTri[3 * i + 1];
+		pIdx[2] = mTri[3 * i + 2];
+		return pIdx;
+	}
+
+	/**
+	 * returns the x-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return x-coordinate
+	 */
+	public double getX(int i) {
+		return mXYZ[3 * i];
+	}
+
+	/**
+	 * returns the y-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return y-coordinate
+	 */
+	public double getY(int i) {
+		return mXYZ[3 * i + 1];
+	}
+
+	/**
+	 * returns the z-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return z-coordinate
+	 */
+	public double getZ(int i) {
+		return mXYZ[3 * i + 2];
+	}
+
+	/**
+	 * provides direct access to the vertex coordinates (see {@link GmSimpleTINGeometry#getXYZArray()}).
+	 * @return Coordinate array
+	 */
+	public double[] getXYZArray() {
+		return mXYZ;
+	}
+
+	/**
+	 * provides direct access to the triangles' vertex-indices; the entry <i>h</i> holds the origin
+	 * vertex of half-edge <i>h</i>. The array must not be modified.
+	 * @return Index array
+	 */
+	public int[] getTriangleArray() {
+		return mTri;
+	}
+
+	/**
+	 * provides direct access to the half-edges' twins; the entry <i>h</i> holds the half-edge
+	 * opposite to <i>h</i>, or -1 if <i>h</i> lies on the TIN's boundary. The array must not be
+	 * modified.
+	 * @return Twin array
+	 */
+	public int[] getTwinArray() {
+		return mTwin;
+	}
+
+	/**
+	 * returns the number of half-edges, i.e. <tt>3 * this.numberOfTriangles()</tt>.
+	 * @return Number of half-edges
+	 */
+	public int numberOfHalfEdges() {
+		return 3 * mNumberOfTriangles;
+	}
+
+	/**
+	 * returns the half-edge that starts at the given corner of the i-th triangle.
+	 * @param i Triangle index
+	 * @param pCorner Corner number (0, 1 or 2)
+	 * @return Half-edge index
+	 */
+	public int getHalfEdge(int i, int pCorner) {
+		return 3 * i + pCorner;
+	}
+
+	/**
+	 * returns the index of the triangle a half-edge belongs to.
+	 * @param h Half-edge index
+	 * @return Triangle index
+	 */
+	public int getTriangleOfHalfEdge(int h) {
+		return h / 3;
+	}
+
+	/**
+	 * returns the vertex the given half-edge starts at.
+	 * @param h Half-edge index
+	 * @return Vertex index
+	 */
+	public int origin(int h) {
+		return mTri[h];
+	}
+
+	/**
+	 * returns the vertex the given half-edge ends at.
+	 * @param h Half-edge index
+	 * @return Vertex index
+	 */
+	public int destination(int h) {
+		return mTri[this.next(h)];
+	}
+
+	/**
+	 * returns the next half-edge inside the same triangle (counter-clockwise).
+	 * @param h Half-edge index
+	 * @return Half-edge index
+	 */
+	public int next(int h) {
+		return (h % 3 == 2) ? h - 2 : h + 1;
+	}
+
+	/**
+	 * returns the previous half-edge inside the same triangle.
+	 * @param h Half-edge index
+	 * @return Half-edge index
+	 */
+	public int prev(int h) {
+		return (h % 3 == 0) ? h + 2 : h - 1;
+	}
+
+	/**
+	 * returns the opposite half-edge inside the neighbour triangle.
+	 * @param h Half-edge index
+	 * @return Half-edge index, or -1 if <i>h</i> is a boundary half-edge
+	 */
+	public int twin(int h) {
+		return mTwin[h];
+	}
+
+	/**
+	 * checks if the given half-edge lies on the TIN's boundary.
+	 * @param h Half-edge index
+	 * @return <i>true</i> for boundary half-edges
+	 */
+	public boolean isBoundary(int h) {
+		return mTwin[h] < 0;
+	}
+
+	/**
+	 * returns the triangle that is adjacent to the i-th triangle across the edge starting at the
+	 * given corner.
+	 * @param i Triangle index
+	 * @param pCorner Corner number (0, 1 or 2)
+	 * @return Triangle index, or -1 if the edge lies on the TIN's boundary
+	 */
+	public int getNeighborTriangle(int i, int pCorner) {
+		int g = mTwin[3 * i + pCorner];
+		return g < 0 ? -1 : g / 3;
+	}
+
+	/**
+	 * returns a half-edge starting at the given vertex. For vertices on the TIN's boundary, the
+	 * boundary half-edge will be returned, so that all incident triangles can be visited by
+	 * {@link #rotateCCW(int)}.
+	 * @param pVertex Vertex index
+	 * @return Half-edge index, or -1 if the vertex is not part of any triangle
+	 */
+	public int getOutgoingHalfEdge(int pVertex) {
+		return mVertexHalfEdge[pVertex];
+	}
+
+	/**
+	 * checks if the given vertex lies on the TIN's boundary.
+	 * @param pVertex Vertex index
+	 * @return <i>true</i> for boundary vertices (and for vertices that are not part of any triangle)
+	 */
+	public boolean isBoundaryVertex(int pVertex) {
+		int h = mVertexHalfEdge[pVertex];
+		return h < 0 || mTwin[h] < 0;
+	}
+
+	/**
+	 * rotates an outgoing half-edge counter-clockwise around its origin vertex.
+	 * @param h Half-edge index
+	 * @return Next outgoing half-edge, or -1 if the TIN's boundary has been reached
+	 */
+	public int rotateCCW(int h) {
+		return mTwin[this.prev(h)];
+	}
+
+	/**
+	 * rotates an outgoing half-edge clockwise around its origin vertex.
+	 * @param h Half-edge index
+	 * @return Next outgoing half-edge, or -1 if the TIN's boundary has been reached
+	 */
+	public int rotateCW(int h) {
+		int g = mTwin[h];
+		return g < 0 ? -1 : this.next(g);
+	}
+
+	/**
+	 * copies the indices of the triangles that are incident to the given vertex (vertex star) into
+	 * the given array. The triangles will be given in counter-clockwise order.
+	 * @param pVertex Vertex index
+	 * @param pTriangles Destination array; it has to provide enough space
+	 * @return Number of triangles
+	 */
+	public int getIncidentTriangles(int pVertex, int[] pTriangles) {
+		int h0 = mVertexHalfEdge[pVertex], h = h0, n = 0;
+		if (h0 < 0) {
+			return 0;
+		}
+		do {
+			pTriangles[n++] = h / 3;
+			h = this.rotateCCW(h);
+		} while (h >= 0 && h != h0);
+		return n;
+	}
+
+	/**
+	 * copies the indices of the vertices that are connected to the given vertex by an edge into
+	 * the given array. The vertices will be given in counter-clockwise order.
+	 * @param pVertex Vertex index
+	 * @param pVertices Destination array; it has to provide enough space
+	 * @return Number of vertices
+	 */
+	public int getAdjacentVertices(int pVertex, int[] pVertices) {
+		int h0 = mVertexHalfEdge[pVertex], h = h0, n = 0;
+		if (h0 < 0) {
+			return 0;
+		}
+		int last;
+		do {
+			pVertices[n++] = this.destination(h);
+			last = h;
+			h = this.rotateCCW(h);
+		} while (h >= 0 && h != h0);
+		if (h < 0) {
+			pVertices[n++] = mTri[this.prev(last)];
+		}
+		return n;
+	}
+
+	/**
+	 * returns the number of edges incident to the given vertex.
+	 * @param pVertex Vertex index
+	 * @return Vertex degree
+	 */
+	public int getVertexDegree(int pVertex) {
+		int h0 = mVertexHalfEdge[pVertex], h = h0, n = 0;
+		if (h0 < 0) {
+			return 0;
+		}
+		do {
+			n++;
+			h = this.rotateCCW(h);
+		} while (h >= 0 && h != h0);
+		return h < 0 ? n + 1 : n;
+	}
+
+	/**
+	 * returns the boundary half-edge that follows the given boundary half-edge, i.e. the boundary
+	 * half-edge that starts at the destination of <i>h</i>. Boundary half-edges run
+	 * counter-clockwise around the TIN (and clockwise around holes).
+	 * @param h Boundary half-edge
+	 * @return Next boundary half-edge
+	 * @throws T3dException if <i>h</i> is not a boundary half-edge
+	 */
+	public int nextBoundaryHalfEdge(int h) throws T3dException {
+		if (mTwin[h] >= 0) {
+			throw new T3dException("Half-edge " + h + " is not part of the boundary.");
+		}
+		int g = this.next(h);
+		while (mTwin[g] >= 0) {
+			g = this.next(mTwin[g]);
+		}
+		return g;
+	}
+
+	/**
+	 * determines the TIN's boundary polygons. Every polygon is given as array of boundary
+	 * half-edges, where the i-th half-edge's origin is the polygon's i-th vertex. The outer
+	 * boundaries are oriented counter-clockwise, holes clockwise.
+	 * @return List of <tt>int[]</tt> arrays holding half-edge indices
+	 */
+	public List<int[]> getBoundaryLoops()
+	{
+		List<int[]> lLoops = new ArrayList<int[]>();
+		boolean[] lVisited = new boolean[3 * mNumberOfTriangles];
+		int[] lBuf = new int[16];
+		for (int h0 = 0; h0 < 3 * mNumberOfTriangles; h0++) {
+			if (mTwin[h0] >= 0 || lVisited[h0]) {
+				continue;
+			}
+			int n = 0, h = h0;
+			do {
+				if (n == lBuf.length) {
+					lBuf = T3dArrays.copyOf(lBuf, 2 * n);
+				}
+				lBuf[n++] = h;
+				lVisited[h] = true;
+				h = this.nextBoundaryHalfEdge(h);
+			} while (h != h0);
+			lLoops.add(T3dArrays.copyOf(lBuf, n));
+		}
+		return lLoops;
+	}
+
+	/**
+	 * checks if the edge given by the half-edge <i>h</i> can be flipped, i.e. if it is an inner
+	 * edge and the quadrilateral formed by the two adjacent triangles is strictly convex.
+	 * @param h Half-edge index
+	 * @return <i>true</i> if the edge can be flipped
+	 */
+	public boolean isFlippable(int h) {
+		int g = mTwin[h];
+		if (g < 0) {
+			return false;
+		}
+		int a = mTri[h], b = mTri[g], c = mTri[this.prev(h)], d = mTri[this.prev(g)];
+		return this.orient(c, d, b) > 0. && this.orient(d, c, a) > 0.;
+	}
+
+	/**
+	 * flips an inner edge. The triangles <i>(a, b, c)</i> and <i>(b, a, d)</i> that share the
+	 * edge <i>a-b</i> given by <i>h</i> will be replaced by the triangles <i>(c, d, b)</i> and
+	 * <i>(d, c, a)</i>; the triangle indices remain unchanged.
+	 * @param h Half-edge index
+	 * @return Half-edge running from <i>c</i> to <i>d</i>
+	 * @throws T3dException if the edge can not be flipped
+	 * @see #isFlippable(int)
+	 */
+	public int flipEdge(int h) throws T3dException
+	{
+		if (!this.isFlippable(h)) {
+			throw new T3dException("Edge can not be flipped.");
+		}
+		int g = mTwin[h];
+		int h1 = this.next(h), h2 = this.prev(h), g1 = this.next(g), g2 = this.prev(g);
+		int a = mTri[h], b = mTri[g], c = mTri[h2], d = mTri[g2];
+		int twH1 = mTwin[h1], twH2 = mTwin[h2], twG1 = mTwin[g1], twG2 = mTwin[g2];
+		int b0 = 3 * (h / 3), b1 = 3 * (g / 3);
+
+		// Vertex-Referenzen vor dem Umbau der Dreiecke anpassen:
+		if (mVertexHalfEdge[a] == h || mVertexHalfEdge[a] == g1) mVertexHalfEdge[a] = b1 + 2;
+		if (mVertexHalfEdge[b] == g || mVertexHalfEdge[b] == h1) mVertexHalfEdge[b] = b0 + 2;
+		if (mVertexHalfEdge[c] == h2) mVertexHalfEdge[c] = b1 + 1;
+		if (mVertexHalfEdge[d] == g2) mVertexHalfEdge[d] = b0 + 1;
+
+		mTri[b0] = c; mTri[b0 + 1] = d; mTri[b0 + 2] = b;
+		mTri[b1] = d; mTri[b1 + 1] = c; mTri[b1 + 2] = a;
+		mTwin[b0] = b1;
+		mTwin[b1] = b0;
+		this.link(b0 + 1, twG2);
+		this.link(b0 + 2, twH1);
+		this.link(b1 + 1, twH2);
+		this.link(b1 + 2, twG1);
+		return b0;
+	}
+
+	private void link(int h, int g) {
+		mTwin[h] = g;
+		if (g >= 0) {
+			mTwin[g] = h;
+		}
+	}
+
+	/**
+	 * locates the triangle that contains the given position (with respect to the x-y-plane) by
+	 * walking through the TIN, starting at the given triangle. The effort is proportional to the
+	 * number of triangles crossed on the way; thus, for successive queries at nearby positions, the
+	 * last result should be passed as start triangle. If the walk hits the TIN's boundary (e.g.
+	 * for non-convex TINs), all triangles will be checked.
+	 * @param pX x-coordinate
+	 * @param pY y-coordinate
+	 * @param pStartTriangle Start triangle index
+	 * @return Triangle index, or -1 if the position lies outside the TIN
+	 */
+	public int locateTriangle(double pX, double pY, int pStartTriangle)
+	{
+		if (mNumberOfTriangles <= 0) {
+			return -1;
+		}
+		int t = (pStartTriangle >= 0 && pStartTriangle < mNumberOfTriangles) ? pStartTriangle : 0;
+		for (int lSteps = 0; lSteps <= mNumberOfTriangles; lSteps++) {
+			int lCrossed = -1;
+			// Start-Kante variieren, um Zyklen in Nicht-Delaunay-TINs zu vermeiden:
+			for (int k = 0, c = lSteps % 3; k < 3; k++, c = (c == 2) ? 0 : c + 1) {
+				int h = 3 * t + c;
+				if (this.orient(mTri[h], mTri[this.next(h)], pX, pY) < 0.) {
+					lCrossed = h;
+					break;
+				}
+			}
+			if (lCrossed < 0) {
+				return t;
+			}
+			if (mTwin[lCrossed] < 0) {
+				break;
+			}
+			t = mTwin[lCrossed] / 3;
+		}
+		for (t = 0; t < mNumberOfTriangles; t++) {
+			if (this.contains(t, pX, pY)) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * checks if the i-th triangle contains the given position (with respect to the x-y-plane).
+	 * Positions on the triangle's edges are considered as inside.
+	 * @param i Triangle index
+	 * @param pX x-coordinate
+	 * @param pY y-coordinate
+	 * @return <i>true</i> if the position lies inside the triangle
+	 */
+	public boolean contains(int i, double pX, double pY) {
+		return this.orient(mTri[3 * i], mTri[3 * i + 1], pX, pY) >= 0.
+			&& this.orient(mTri[3 * i + 1], mTri[3 * i + 2], pX, pY) >= 0.
+			&& this.orient(mTri[3 * i + 2], mTri[3 * i], pX, pY) >= 0.;
+	}
+
+	/**
+	 * interpolates the elevation inside the i-th triangle at the given position linearly.
+	 * @param i Triangle index
+	 * @param pX x-coordinate
+	 * @param pY y-coordinate
+	 * @return Elevation value
+	 */
+	public double interpolateZ(int i, double pX, double pY)
+	{
+		int k0 = 3 * mTri[3 * i], k1 = 3 * mTri[3 * i + 1], k2 = 3 * mTri[3 * i + 2];
+		double x0 = mXYZ[k0], y0 = mXYZ[k0 + 1];
+		double dx1 = mXYZ[k1] - x0, dy1 = mXYZ[k1 + 1] - y0;
+		double dx2 = mXYZ[k2] - x0, dy2 = mXYZ[k2 + 1] - y0;
+		double det = dx1 * dy2 - dy1 * dx2;
+		if (det == 0.) {
+			return mXYZ[k0 + 2];
+		}
+		double px = pX - x0, py = pY - y0;
+		double u = (px * dy2 - py * dx2) / det;
+		double v = (dx1 * py - dy1 * px) / det;
+		return mXYZ[k0 + 2] + u * (mXYZ[k1 + 2] - mXYZ[k0 + 2]) + v * (mXYZ[k2 + 2] - mXYZ[k0 + 2]);
+	}
+
+	// > 0, falls (a, b, c) gegen den Uhrzeigersinn orientiert ist
+	private double orient(int a, int b, int c) {
+		return this.orient(a, b, mXYZ[3 * c], mXYZ[3 * c + 1]);
+	}
+
+	private double orient(int a, int b, double pX, double pY) {
+		double ax = mXYZ[3 * a], ay = mXYZ[3 * a + 1];
+		return (mXYZ[3 * b] - ax) * (pY - ay) - (mXYZ[3 * b + 1] - ay) * (pX - ax);
+	}
+
+	private void checkPointIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfPoints) {
+			throw new T3dException("Point index out of bounds: " + i);
+		}
+	}
+
+	private void checkTriangleIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfTriangles) {
+			throw new T3dException("Triangle index out of bounds: " + i);
+		}
+	}
+
+	/**
+	 * returns the TIN's surface area.
+	 * @return Area value
+	 */
+	public double area()
+	{
+		double sum = 0.;
+		for (int t = 0; t < mNumberOfTriangles; t++) {
+			int k0 = 3 * mTri[3 * t], k1 = 3 * mTri[3 * t + 1], k2 = 3 * mTri[3 * t + 2];
+			double ux = mXYZ[k1] - mXYZ[k0], uy = mXYZ[k1 + 1] - mXYZ[k0 + 1], uz = mXYZ[k1 + 2] - mXYZ[k0 + 2];
+			double vx = mXYZ[k2] - mXYZ[k0], vy = mXYZ[k2 + 1] - mXYZ[k0 + 1], vz = mXYZ[k2 + 2] - mXYZ[k0 + 2];
+			double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+			sum += Math.sqrt(nx * nx + ny * ny + nz * nz);
+		}
+		return sum / 2.;
+	}
+
+	/**
+	 * returns the TIN's bounding-box.
+	 * @return Bounding-box, or <i>null</i> for empty TINs
+	 */
+	public VgEnvelope envelope()
+	{
+		if (mEnv == null && mNumberOfPoints > 0) {
+			double xMin = mXYZ[0], xMax = xMin;
+			double yMin = mXYZ[1], yMax = yMin;
+			double zMin = mXYZ[2], zMax = zMin;
+			for (int i = 1, k = 3; i < mNumberOfPoints; i++, k += 3) {
+				double x = mXYZ[k], y = mXYZ[k + 1], z = mXYZ[k + 2];
+				if (x < xMin) xMin = x; else if (x > xMax) xMax = x;
+				if (y < yMin) yMin = y; else if (y > yMax) yMax = y;
+				if (z < zMin) zMin = z; else if (z > zMax) zMax = z;
+			}
+			mEnv = new GmEnvelope(xMin, xMax, yMin, yMax, zMin, zMax);
+			mEnv.setSRS(this.getSRS());
+		}
+		return mEnv;
+	}
+
+	public VgGeomObject footprint() {
+		throw new T3dNotYetImplException();
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Cell-storage engine holding elevation values in a memory-mapped file 
+ * instead of the Java heap. Thus, elevation grids larger than the available 
+ * heap space can be processed, opening a grid file takes almost no time, and 
+ * multiple JVM processes may share the same grid through the operating 
+ * system's page cache.<p>
+ * The file contains the raw row-major values in little-endian byte order 
+ * (<tt>float</tt> or <tt>double</tt>); unset elements are stored as 
+ * <tt>NaN</tt>. Since a single mapping is limited to 2 GB, the file will be 
+ * mapped in multiple segments each holding a fixed number of grid rows.<p>
+ * Usage example:
+ * <pre>
+ * GmSimpleElevationGrid grid = new GmSimpleElevationGrid(
+ *     geom, 
+ *     new GmMappedGridStorage(
+ *         new File("dem.raw"), geom.numberOfRows(), geom.numberOfColumns()));
+ * </pre>
+ *
+ * @see GmSimpleElevationGrid#GmSimpleElevationGrid(GmSimple2dGridGeometry, GmGridStorage)
+ * @author Benno Schmidt
+ */
+public class GmMappedGridStorage extends GmGridStorage
+{
+    /**
+     * Identifier for single-precision values (4 bytes per grid element).
+     */
+    public final static short cFloat = 1;
+
+    /**
+     * Identifier for double-precision values (8 bytes per grid element).
+     */
+    public final static short cDouble = 2;
+
+    private final static long cMaxSegmentSize = Integer.MAX_VALUE;
+
+    private int mRows, mCols;
+    private short mValueType;
+    private int mBytesPerValue;
+    private boolean mReadOnly;
+    private int mRowsPerSegment;
+    private MappedByteBuffer[] mSegments;
+    private RandomAccessFile mFile = null;
+    private FileChannel mChannel = null;
+
+    /**
+     * Constructor. The given file will be mapped for read-write access using 
+     * single-precision values. If the file does not exist, or if it is too 
+     * small for the given grid size, it will be created or enlarged, and the 
+     * added grid elements will be unset.
+     *
+     * @param pFile Grid file
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @throws T3dException if the file can not be mapped
+     */
+    public GmMappedGridStorage(File pFile, int pRows, int pCols) 
+        throws T3dException
+    {
+        this(pFile, pRows, pCols, cFloat, false);
+    }
+
+    /**
+     * Constructor. If read-only access is requested, the given file must 
+     * exist and be large enough to hold the grid. Otherwise, the file will be 
+     * created or enlarged if necessary, and the added grid elements will be 
+     * unset.
+     *
+     * @param pFile Grid file
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pValueType <tt>cFloat</tt> or <tt>cDouble</tt>
+     * @param pReadOnly <i>true</i> for read-only access
+     * @throws T3dException if the file can not be mapped
+     * @see GmMappedGridStorage#cFloat
+     * @see GmMappedGridStorage#cDouble
+     */
+    public GmMappedGridStorage(
+        File pFile, 
+        int pRows, int pCols, 
+        short pValueType, 
+        boolean pReadOnly) 
+        throws T3dException
+    {
+        if (pValueType != cFloat && pValueType != cDouble) {
+            throw new T3dException("Unsupported value type " + pValueType + ".");
+        }
+        if (pRows <= 0 || pCols <= 0) {
+            throw new T3dException("Illegal grid size.");
+        }
+
+        mRows = pRows;
+        mCols = pCols;
+        mValueType = pValueType;
+        mBytesPerValue = (pValueType == cFloat) ? 4 : 8;
+        mReadOnly = pReadOnly;
+
+        long rowSize = (long) mCols * mBytesPerValue;
+        if (rowSize > cMaxSegmentSize) {
+            throw new T3dException("Grid row exceeds maximal segment size.");
+        }
+        mRowsPerSegment = (int) (cMaxSegmentSize / rowSize);
+        if (mRowsPerSegment > mRows) {
+            mRowsPerSegment = mRows;
+        }
+        int nSegments = (mRows + mRowsPerSegment - 1) / mRowsPerSegment;
+        long size = rowSize * mRows;
+
+        try {
+            mFile = new RandomAccessFile(pFile, pReadOnly ? "r" : "rw");
+            mChannel = mFile.getChannel();
+            long oldSize = mChannel.size();
+            if (oldSize < size) {
+                if (pReadOnly) {
+                    throw new T3dException(
+                        "Grid file \"" + pFile + "\" is too small (" + oldSize 
+                        + " bytes, " + size + " bytes expected).");
+                }
+                mFile.setLength(size);
+            }
+
+            FileChannel.MapMode mode = pReadOnly ? 
+                FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            mSegments = new MappedByteBuffer[nSegments];
+            for (int s = 0; s < nSegments; s++) {
+                long offset = (long) s * mRowsPerSegment * rowSize;
+                long segSize = Math.min(mRowsPerSegment * rowSize, size - offset);
+                mSegments[s] = mChannel.map(mode, offset, segSize);
+                mSegments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if (oldSize < size) {
+                this.fillNoData(oldSize);
+            }
+        }
+        catch (IOException e) {
+            this.close();
+            throw new T3dException(
+                "Could not map grid file \"" + pFile + "\": " + e.getMessage());
+        }
+        catch (T3dException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    // Sets all values starting at the given file offset to NaN:
+    private void fillNoData(long pFromOffset)
+    {
+        long rowSize = (long) mCols * mBytesPerValue;
+        long first = pFromOffset / mBytesPerValue; // first value to reset
+        int row0 = (int) (first / mCols);
+        int col0 = (int) (first % mCols);
+        
+        // Note that a partially written value at pFromOffset is reset, too.
+        for (int i = row0; i < mRows; i++) {
+            for (int j = (i == row0 ? col0 : 0); j < mCols; j++) {
+                this.write(i, j, Double.NaN);
+            }
+        }
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    /**
+     * returns the value type used for the grid file.
+     *
+     * @return <tt>cFloat</tt> or <tt>cDouble</tt>
+     */
+    public short getValueType() {
+        return mValueType;
+    }
+
+    /**
+     * returns the number of mapped file segments.
+     *
+     * @return Number of segments
+     */
+    public int numberOfSegments() {
+        return mSegments.length;
+    }
+
+    /**
+     * returns <i>true</i>, if the grid file has been mapped read-only.
+     *
+     * @return <i>true</i> for read-only access
+     */
+    public boolean isReadOnly() {
+        return mReadOnly;
+    }
+
+    public double get(int pRow, int pCol) 
+    {
+        int seg = pRow / mRowsPerSegment;
+        int pos = ((pRow - seg * mRowsPerSegment) * mCols + pCol) * mBytesPerValue;
+        if (mBytesPerValue == 4) {
+            return mSegments[seg].getFloat(pos);
+        }
+        return mSegments[seg].getDouble(pos);
+    }
+
+    public void set(int pRow, int pCol, double pZ) throws T3dException
+    {
+        if (mReadOnly) {
+            throw new T3dException("Grid storage has been opened read-only.");
+        }
+        this.write(pRow, pCol, pZ);
+    }
+
+    private void write(int pRow, int pCol, double pZ)
+    {
+        int seg = pRow / mRowsPerSegment;
+        int pos = ((pRow - seg * mRowsPerSegment) * mCols + pCol) * mBytesPerValue;
+        if (mBytesPerValue == 4) {
+            mSegments[seg].putFloat(pos, (float) pZ);
+        } else {
+            mSegments[seg].putDouble(pos, pZ);
+        }
+    }
+
+    public long byteSize() {
+        return (long) mRows * mCols * mBytesPerValue;
+    }
+
+    /**
+     * forces all changes to be written to the grid file.
+     */
+    public void flush() 
+    {
+        if (mReadOnly || mSegments == null) 
+            return;
+        for (int s = 0; s < mSegments.length; s++) {
+            if (mSegments[s] != null)
+                mSegments[s].force();
+        }
+    }
+
+    /**
+     * writes pending changes and closes the grid file. Note that the mapped 
+     * memory will be released not until the storage object has been 
+     * garbage-collected; after calling this method, the storage must not be 
+     * used anymore.
+     */
+    public void close() 
+    {
+        try {
+            this.flush();
+            if (mChannel != null)
+                mChannel.close();
+            if (mFile != null)
+                mFile.close();
+        }
+        catch (IOException e) {
+            throw new T3dException(
+                "Could not close grid file: " + e.getMessage());
+        }
+        finally {
+            mChannel = null;
+            mFile = null;
+        }
+    }
+}
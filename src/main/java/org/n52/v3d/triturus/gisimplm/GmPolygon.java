@@ -109,6 +109,11 @@ public class GmPolygon extends VgPolygon {
 	 */
 	public void addHole(VgLinearRing hole) {
 		// assert same CRS as outerBoundary
+		String srsOuterBoundary = this.outerBoundary.getSRS();
+		if (srsOuterBoundary != null && !srsOuterBoundary.equals(hole.getSRS()))
+			throw new T3dException(
+					"The spatial reference system (SRS) of the hole is not equal to the SRS of the outer boundary!");
+		this.holes.add(hole);
 	}
 
 	@Override
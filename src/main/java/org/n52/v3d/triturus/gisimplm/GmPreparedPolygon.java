@@ -0,0 +1,432 @@
+/**
+ * Copyright (C) 2007-2015 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * icense version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgLinearRing;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgPolygon;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
+
+/**
+ * Polygon (including holes) that has been prepared for fast repeated
+ * point-in-polygon tests and edge queries (with respect to the
+ * x-y-plane).<p>
+ * The vertices of all rings are held in primitive arrays; the outer
+ * boundary is oriented counter-clockwise, the holes clockwise, i.e. the
+ * polygon's interior lies left of every edge. Edge <i>i</i> runs from vertex
+ * <i>i</i> to vertex <tt>nextVertex(i)</tt>. Closing vertices that repeat
+ * a ring's first vertex and consecutive duplicate vertices will be
+ * removed.<p>
+ * The edges are registered in the cells of a uniform bucket grid. For
+ * positions inside cells that are not touched by any edge, the
+ * point-in-polygon test requires constant time.<p>
+ * Positions exactly on the polygon's boundary are classified as if the
+ * polygon had been shifted by an infinitesimal vector <i>(&epsilon;,
+ * &epsilon;<sup>2</sup>)</i>. Thus, the classification is consistent, e.g.
+ * a point on an edge shared by two adjacent TIN triangles will be
+ * assigned to exactly one of them.
+ *
+ * @author Benno Schmidt
+ */
+public class GmPreparedPolygon
+{
+    private int mNumberOfVertices;
+    private double[] mX, mY;
+    private int[] mNext; // following vertex inside the same ring
+    private int mNumberOfRings;
+    private int[] mRingStart;
+
+    private double mXMin, mXMax, mYMin, mYMax;
+    private double mX0, mY0, mInvCellSize;
+    private int mNX, mNY;
+    private int[] mCellStart; // edges of cell c: mCellEdge[mCellStart[c]] ... mCellEdge[mCellStart[c + 1] - 1]
+    private int[] mCellEdge;
+    private byte[] mCellStatus; // for cells without edges: 0 = unknown, 1 = inside, 2 = outside
+
+    /**
+     * Constructor.
+     *
+     * @param pPolygon Polygon
+     * @throws T3dException if the polygon's outer boundary is degenerated
+     */
+    public GmPreparedPolygon(VgPolygon pPolygon) throws T3dException
+    {
+        int n = pPolygon.getOuterBoundary().getNumberOfVertices();
+        for (int h = 0; h < pPolygon.getNumberOfHoles(); h++) {
+            n += pPolygon.getHole(h).getNumberOfVertices();
+        }
+        mX = new double[n];
+        mY = new double[n];
+        mNext = new int[n];
+        mRingStart = new int[pPolygon.getNumberOfHoles() + 2];
+        mNumberOfVertices = 0;
+        mNumberOfRings = 0;
+
+        this.addRing(pPolygon.getOuterBoundary(), false);
+        if (mNumberOfRings == 0) {
+            throw new T3dException("Degenerated polygon.");
+        }
+        for (int h = 0; h < pPolygon.getNumberOfHoles(); h++) {
+            this.addRing(pPolygon.getHole(h), true);
+        }
+
+        this.buildIndex();
+    }
+
+    private void addRing(VgLinearRing pRing, boolean pHole)
+    {
+        int i0 = mNumberOfVertices, n = 0;
+        for (int i = 0; i < pRing.getNumberOfVertices(); i++) {
+            VgPoint p = pRing.getVertex(i);
+            double x = p.getX(), y = p.getY();
+            if (n > 0 && x == mX[i0 + n - 1] && y == mY[i0 + n - 1]) {
+                continue;
+            }
+            mX[i0 + n] = x;
+            mY[i0 + n] = y;
+            n++;
+        }
+        while (n > 1 && mX[i0 + n - 1] == mX[i0] && mY[i0 + n - 1] == mY[i0]) {
+            n--;
+        }
+
+        // Signed area (shoelace formula):
+        double a = 0.;
+        for (int k = 0; k < n; k++) {
+            int k1 = (k + 1 == n) ? 0 : k + 1;
+            a += (mX[i0 + k] - mX[i0]) * (mY[i0 + k1] - mY[i0])
+                - (mX[i0 + k1] - mX[i0]) * (mY[i0 + k] - mY[i0]);
+        }
+        if (n < 3 || a == 0.) {
+            return; // degenerated ring
+        }
+        if ((a > 0.) == pHole) {
+            for (int k = 0; k < n / 2; k++) {
+                double tx = mX[i0 + k], ty = mY[i0 + k];
+                mX[i0 + k] = mX[i0 + n - 1 - k];
+                mY[i0 + k] = mY[i0 + n - 1 - k];
+                mX[i0 + n - 1 - k] = tx;
+                mY[i0 + n - 1 - k] = ty;
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            mNext[i0 + k] = (k + 1 == n) ? i0 : i0 + k + 1;
+        }
+        mNumberOfVertices += n;
+        mRingStart[mNumberOfRings++] = i0;
+        mRingStart[mNumberOfRings] = mNumberOfVertices;
+    }
+
+    private void buildIndex()
+    {
+        int n = mNumberOfVertices;
+        mXMin = mXMax = mX[0];
+        mYMin = mYMax = mY[0];
+        for (int i = 1; i < n; i++) {
+            if (mX[i] < mXMin) mXMin = mX[i]; else if (mX[i] > mXMax) mXMax = mX[i];
+            if (mY[i] < mYMin) mYMin = mY[i]; else if (mY[i] > mYMax) mYMax = mY[i];
+        }
+
+        // Cell size: about one edge per cell
+        double w = mXMax - mXMin, h = mYMax - mYMin;
+        double cs = Math.sqrt(w * h / n);
+        if (!(cs > 0.)) {
+            cs = Math.max(Math.max(w, h), 1.);
+        }
+        mNX = (int) Math.min(Math.floor(w / cs) + 1, 1 << 12);
+        mNY = (int) Math.min(Math.floor(h / cs) + 1, 1 << 12);
+        cs = Math.max(cs, Math.max(w / mNX, h / mNY) * (1. + 1e-12));
+        mX0 = mXMin;
+        mY0 = mYMin;
+        mInvCellSize = 1. / cs;
+
+        int nCells = mNX * mNY;
+        mCellStart = new int[nCells + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] pos = (pass == 0) ? null : T3dArrays.copyOf(mCellStart, nCells);
+            for (int e = 0; e < n; e++) {
+                int cx0 = this.cellX(Math.min(mX[e], mX[mNext[e]]));
+                int cx1 = this.cellX(Math.max(mX[e], mX[mNext[e]]));
+                int cy0 = this.cellY(Math.min(mY[e], mY[mNext[e]]));
+                int cy1 = this.cellY(Math.max(mY[e], mY[mNext[e]]));
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    for (int c = cy * mNX + cx0; c <= cy * mNX + cx1; c++) {
+                        if (pass == 0)
+                            mCellStart[c + 1]++;
+                        else
+                            mCellEdge[pos[c]++] = e;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 0; c < nCells; c++) {
+                    mCellStart[c + 1] += mCellStart[c];
+                }
+                mCellEdge = new int[mCellStart[nCells]];
+            }
+        }
+        mCellStatus = new byte[nCells];
+    }
+
+    private int cellX(double x) {
+        int cx = (int) Math.floor((x - mX0) * mInvCellSize);
+        return cx < 0 ? 0 : (cx >= mNX ? mNX - 1 : cx);
+    }
+
+    private int cellY(double y) {
+        int cy = (int) Math.floor((y - mY0) * mInvCellSize);
+        return cy < 0 ? 0 : (cy >= mNY ? mNY - 1 : cy);
+    }
+
+    /**
+     * returns the number of vertices of all rings.
+     *
+     * @return Number of vertices
+     */
+    public int numberOfVertices() {
+        return mNumberOfVertices;
+    }
+
+    /**
+     * returns the number of rings (outer boundary and holes).
+     *
+     * @return Number of rings
+     */
+    public int numberOfRings() {
+        return mNumberOfRings;
+    }
+
+    /**
+     * returns the x-coordinate of the i-th vertex.
+     *
+     * @param i Vertex index
+     * @return x-coordinate
+     */
+    public double getX(int i) {
+        return mX[i];
+    }
+
+    /**
+     * returns the y-coordinate of the i-th vertex.
+     *
+     * @param i Vertex index
+     * @return y-coordinate
+     */
+    public double getY(int i) {
+        return mY[i];
+    }
+
+    /**
+     * returns the index of the vertex that follows the i-th vertex inside
+     * the same ring, i.e. the end point of edge <i>i</i>.
+     *
+     * @param i Vertex index
+     * @return Vertex index
+     */
+    public int nextVertex(int i) {
+        return mNext[i];
+    }
+
+    /**
+     * returns the polygon's bounding-box.
+     *
+     * @return Envelope
+     */
+    public VgEnvelope envelope() {
+        return new GmEnvelope(mXMin, mXMax, mYMin, mYMax, 0., 0.);
+    }
+
+    public double getXMin() {
+        return mXMin;
+    }
+
+    public double getXMax() {
+        return mXMax;
+    }
+
+    public double getYMin() {
+        return mYMin;
+    }
+
+    public double getYMax() {
+        return mYMax;
+    }
+
+    /**
+     * determines the edges whose bounding-boxes intersect the given
+     * rectangle. The edge indices will be written to the given array as far
+     * as space is available; no objects will be allocated.
+     *
+     * @param pXMin Minimal x-coordinate
+     * @param pXMax Maximal x-coordinate
+     * @param pYMin Minimal y-coordinate
+     * @param pYMax Maximal y-coordinate
+     * @param pEdges Destination array
+     * @return Number of edges found (might be larger than
+     * <tt>pEdges.length</tt>)
+     */
+    public int edgesInEnvelope(
+        double pXMin, double pXMax, double pYMin, double pYMax, int[] pEdges)
+    {
+        if (pXMax < mXMin || pXMin > mXMax || pYMax < mYMin || pYMin > mYMax) {
+            return 0;
+        }
+        int qx0 = this.cellX(pXMin), qx1 = this.cellX(pXMax);
+        int qy0 = this.cellY(pYMin), qy1 = this.cellY(pYMax);
+        int n = 0;
+        for (int cy = qy0; cy <= qy1; cy++) {
+            for (int cx = qx0; cx <= qx1; cx++) {
+                int c = cy * mNX + cx;
+                for (int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                    int e = mCellEdge[k], f = mNext[e];
+                    double exMin = Math.min(mX[e], mX[f]), eyMin = Math.min(mY[e], mY[f]);
+                    if (Math.max(mX[e], mX[f]) < pXMin || exMin > pXMax
+                        || Math.max(mY[e], mY[f]) < pYMin || eyMin > pYMax) {
+                        continue;
+                    }
+                    // Report each edge only for the first cell shared by the
+                    // query range and the edge:
+                    if (cx != Math.max(qx0, this.cellX(exMin))
+                        || cy != Math.max(qy0, this.cellY(eyMin))) {
+                        continue;
+                    }
+                    if (n < pEdges.length) {
+                        pEdges[n] = e;
+                    }
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * checks if the given position lies inside the polygon. Positions
+     * inside holes are considered as outside.
+     *
+     * @param pX x-coordinate
+     * @param pY y-coordinate
+     * @return <i>true</i> if the position lies inside the polygon
+     */
+    public boolean contains(double pX, double pY)
+    {
+        if (!(pX > mXMin && pX <= mXMax && pY > mYMin && pY <= mYMax)) {
+            return false; // also for NaN coordinates
+        }
+        int cx = this.cellX(pX), cy = this.cellY(pY), c = cy * mNX + cx;
+        if (mCellStart[c] == mCellStart[c + 1]) {
+            // Cell without edges: all positions share the same status.
+            if (mCellStatus[c] == 0) {
+                double x = mX0 + (cx + 0.5) / mInvCellSize;
+                double y = mY0 + (cy + 0.5) / mInvCellSize;
+                mCellStatus[c] = (byte) (this.crossings(x, y, cx, cy) ? 1 : 2);
+            }
+            return mCellStatus[c] == 1;
+        }
+        return this.crossings(pX, pY, cx, cy);
+    }
+
+    // Crossing number test (even-odd rule) for a ray from (pX, pY) in
+    // positive x-direction; only the cells cx, ..., mNX - 1 of row cy are
+    // considered.
+    private boolean crossings(double pX, double pY, int cx, int cy)
+    {
+        boolean inside = false;
+        for (int c = cy * mNX + cx, c1 = cy * mNX + mNX; c < c1; c++) {
+            for (int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                int e = mCellEdge[k], f = mNext[e];
+                if ((mY[e] >= pY) == (mY[f] >= pY)) {
+                    continue;
+                }
+                if (c != cy * mNX + Math.max(cx, this.cellX(Math.min(mX[e], mX[f])))) {
+                    continue; // edge already visited
+                }
+                int o = this.orientation(e, pX, pY);
+                if ((mY[e] < mY[f]) ? o > 0 : o < 0) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * determines the position of a point relative to edge <i>e</i>. The
+     * result is never 0, since the polygon is considered as being shifted
+     * by an infinitesimal vector (see class description).
+     *
+     * @param e Edge index
+     * @param pX Point's x-coordinate
+     * @param pY Point's y-coordinate
+     * @return 1 if the point lies left of the edge, -1 if it lies right of
+     * the edge
+     */
+    public int orientation(int e, double pX, double pY)
+    {
+        int f = mNext[e];
+        double dx = mX[f] - mX[e], dy = mY[f] - mY[e];
+        double o = dx * (pY - mY[e]) - dy * (pX - mX[e]);
+        if (o != 0.)
+            return o > 0. ? 1 : -1;
+        if (dy != 0.)
+            return dy > 0. ? 1 : -1;
+        return dx < 0. ? 1 : -1;
+    }
+
+    /**
+     * determines the position of the i-th vertex relative to the directed
+     * line through <i>(pAX, pAY)</i> and <i>(pBX, pBY)</i>. The result is
+     * never 0, since the polygon is considered as being shifted by an
+     * infinitesimal vector (see class description); the positions <i>a</i>
+     * and <i>b</i> have to be different.
+     *
+     * @param pAX x-coordinate of <i>a</i>
+     * @param pAY y-coordinate of <i>a</i>
+     * @param pBX x-coordinate of <i>b</i>
+     * @param pBY y-coordinate of <i>b</i>
+     * @param i Vertex index
+     * @return 1 if the vertex lies left of the line, -1 if it lies right of
+     * the line
+     */
+    public int vertexOrientation(double pAX, double pAY, double pBX, double pBY, int i)
+    {
+        double dx = pBX - pAX, dy = pBY - pAY;
+        double o = dx * (mY[i] - pAY) - dy * (mX[i] - pAX);
+        if (o != 0.)
+            return o > 0. ? 1 : -1;
+        if (dy != 0.)
+            return dy < 0. ? 1 : -1;
+        return dx > 0. ? 1 : -1;
+    }
+}
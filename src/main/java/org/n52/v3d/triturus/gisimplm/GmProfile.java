@@ -33,14 +33,16 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.vgis.*;
 import org.n52.v3d.triturus.core.T3dException;
-import java.util.ArrayList;
-import java.util.Collections;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 import java.lang.Comparable;
 
 /**
  * <tt>VgProfile</tt>-implementation. Object information will be kept in main memory.<br />
  * x- and y-values have to be given with respect to the spatial reference system (SRS) that has been set for the
- * geometric object. z-values might be provided for the object's vertices.<br /><br />
+ * geometric object. z-values might be provided for the object's vertices.<br />
+ * The t-z-pairs are held in two parallel <tt>double</tt>-arrays. The arrays will be sorted only if pairs have been
+ * added out of order; t- and z-ranges will be cached, so that even profiles consisting of a large number of stations
+ * can be queried repeatedly without overhead.<br /><br />
  * <i>German:</i> <tt>VgProfile</tt>-Implementierung, bei der die Profil-Geometrie im Speicher vorgehalten wird.<br />
  * Bem.: Die vorliegende Implementierung liegt eine vereinfachte ACAD-GEO-Modellierung zugrunde (Beschr&auml;nkung
  * auf einen Werteverlauf z(t) pro Definitionslinie, keine Ber&uuml;cksichtigung visueller Attribute).<br />
@@ -49,82 +51,174 @@ import java.lang.Comparable;
  */
 public class GmProfile extends VgProfile
 {
-    private ArrayList mProfileData = null;
-    private boolean mOrdered;
-    
+    private double[] mT, mZ;
+    private int mSize = 0;
+    private boolean mOrdered = true;
+
+    // z-Wertebereich (nur gueltig, falls mRangeValid gesetzt ist):
+    private double mZMin, mZMax;
+    private boolean mRangeValid = false;
+
     /**
      * Constructor.
      * @param pGeom <tt>VgLineString</tt>-object holding defining base-line
      */
     public GmProfile(VgLineString pGeom) {
-    	this.setGeometry(pGeom);
-    	mProfileData = new ArrayList();
-    	mOrdered = true;
+        this(pGeom, 16);
     }
-    
+
+    /**
+     * Constructor. The given capacity will be used as initial array size; the profile will grow as needed.
+     * @param pGeom <tt>VgLineString</tt>-object holding defining base-line
+     * @param pCapacity Expected number of t-z-pairs
+     */
+    public GmProfile(VgLineString pGeom, int pCapacity) {
+        this.setGeometry(pGeom);
+        mT = new double[Math.max(pCapacity, 2)];
+        mZ = new double[mT.length];
+    }
+
     public int numberOfTZPairs() {
         this.provideOrder();
-        return mProfileData.size();
+        return mSize;
     }
 
     public double[] getTZPair(int i) throws T3dException
     {
         this.provideOrder();
-        if (i < 0 || i >= this.numberOfTZPairs())
+        if (i < 0 || i >= mSize)
             throw new T3dException("Index out of bounds.");
         double[] ret = new double[2];
-        ret[0] = ((TZPair) mProfileData.get(i)).getT();
-        ret[1] = ((TZPair) mProfileData.get(i)).getZ();
+        ret[0] = mT[i];
+        ret[1] = mZ[i];
         return ret;
     }
-    
+
+    /**
+     * returns the position parameter t of the i-th position point.
+     * @param i Vertex index
+     * @return t-value
+     * @throws T3dException
+     * @see GmProfile#getTZPair
+     */
+    public double getT(int i) throws T3dException
+    {
+        this.provideOrder();
+        if (i < 0 || i >= mSize)
+            throw new T3dException("Index out of bounds.");
+        return mT[i];
+    }
+
+    /**
+     * returns the z-value of the i-th position point.
+     * @param i Vertex index
+     * @return z-value
+     * @throws T3dException
+     * @see GmProfile#getTZPair
+     */
+    public double getZ(int i) throws T3dException
+    {
+        this.provideOrder();
+        if (i < 0 || i >= mSize)
+            throw new T3dException("Index out of bounds.");
+        return mZ[i];
+    }
+
+    /**
+     * returns all t-z-pairs as packed array <tt>{t0, z0, t1, z1, ...}</tt> ordered by t.
+     * @return Array consisting of 2 * <tt>this.numberOfTZPairs()</tt> elements
+     */
+    public double[] getTZArray()
+    {
+        this.provideOrder();
+        double[] res = new double[2 * mSize];
+        for (int i = 0; i < mSize; i++) {
+            res[2 * i] = mT[i];
+            res[2 * i + 1] = mZ[i];
+        }
+        return res;
+    }
+
     /**
      * adds a point to the cross-section.<br /><br />
      * <i>German:</i> f&uuml;gt dem Profil eine Stationsstelle hinzu. Das erste Element des Parameterfeldes enth&auml;lt
      * die Stationierung t, das zweite Element den zugeh&ouml;rigen z-Wert. Durch die Operation erh&ouml;ht sich der
      * Wert f&uuml;r <tt>this.numberOfTZPairs()</tt> um 1.<br />
-     * Bem.: Der Fall, dass f&uuml;r die angegebenen Station t bereits ein z-Wert im Profilverlauf enthalten ist, wird
-     * nicht abgefangen.
+     * Bem.: Falls f&uuml;r die angegebene Station t bereits ein z-Wert im Profilverlauf enthalten ist, wird als
+     * z-Wert der Mittelwert verwendet.
      * @param pVal Array consisting of two elements holding the values for t and z(t)
      */
-    public void addTZPair(double[] pVal) throws T3dException
+    public void addTZPair(double[] pVal) throws T3dException {
+        this.addTZPair(pVal[0], pVal[1]);
+    }
+
+    /**
+     * adds a point to the cross-section.
+     * @param pT Position t
+     * @param pZ Value z(t)
+     * @see GmProfile#addTZPair(double[])
+     */
+    public void addTZPair(double pT, double pZ)
     {
-        mProfileData.add(new TZPair(pVal[0], pVal[1]));
-        if (mProfileData.size() >= 2) {
-            if (pVal[0] <= ((TZPair) mProfileData.get(mProfileData.size() - 2)).getT())
-                mOrdered = false; 
-            else
-                ; // mOrdered wie vor addTZPair-Aufruf belassen
+        if (mSize == mT.length) {
+            int n = mT.length + (mT.length >> 1); // amortisiertes Wachstum um 50%
+            mT = T3dArrays.copyOf(mT, n);
+            mZ = T3dArrays.copyOf(mZ, n);
+        }
+        if (mSize > 0 && pT <= mT[mSize - 1])
+            mOrdered = false;
+        mT[mSize] = pT;
+        mZ[mSize] = pZ;
+        mSize++;
+        if (mRangeValid) {
+            if (pZ < mZMin) mZMin = pZ;
+            if (pZ > mZMax) mZMax = pZ;
+        }
+    }
+
+    /**
+     * adds multiple points to the cross-section. The points are given as packed array
+     * <tt>{t0, z0, t1, z1, ...}</tt>.
+     * @param pTZ Packed t-z-pairs
+     * @see GmProfile#addTZPair(double[])
+     */
+    public void addTZPairs(double[] pTZ)
+    {
+        int n = pTZ.length / 2;
+        if (mSize + n > mT.length) {
+            int cap = Math.max(mSize + n, mT.length + (mT.length >> 1));
+            mT = T3dArrays.copyOf(mT, cap);
+            mZ = T3dArrays.copyOf(mZ, cap);
+        }
+        for (int k = 0; k < n; k++) {
+            this.addTZPair(pTZ[2 * k], pTZ[2 * k + 1]);
         }
     }
 
     public double tMin() {
-        if (mProfileData.size() > 0)
-            return ((TZPair) mProfileData.get(0)).getT();
+        this.provideOrder();
+        if (mSize > 0)
+            return mT[0];
         else
             return 0.;
     }
 
     public double tMax() {
-        if (mProfileData.size() > 0)
-            return ((TZPair) mProfileData.get(mProfileData.size() - 1)).getT();
+        this.provideOrder();
+        if (mSize > 0)
+            return mT[mSize - 1];
         else
             return 0.;
     }
 
     public double zMin()
     {
-        this.provideOrder(); // da t-Werte doppelt vorkommen k�nnen
+        this.provideOrder(); // da t-Werte doppelt vorkommen koennen
 
-        if (this.numberOfTZPairs() <= 0)
+        if (mSize <= 0)
             return 0.;
-    
-        double z, zMin = ((TZPair) mProfileData.get(0)).getZ();
-        for (int i = 1; i < this.numberOfTZPairs(); i++) {
-            z = ((TZPair) mProfileData.get(i)).getZ();
-            if (z < zMin) zMin = z;
-        }
-        return zMin;
+        this.provideRange();
+        return mZMin;
     }
 
     /**
@@ -136,19 +230,55 @@ public class GmProfile extends VgProfile
      */
     public double zMax()
     {
-        this.provideOrder(); // da t-Werte doppelt vorkommen k�nnen
+        this.provideOrder(); // da t-Werte doppelt vorkommen koennen
 
-        if (this.numberOfTZPairs() <= 0)
+        if (mSize <= 0)
             return 0.;
-    
-        double z, zMax = ((TZPair) mProfileData.get(0)).getZ();
-        for (int i = 1; i < this.numberOfTZPairs(); i++) {
-            z = ((TZPair) mProfileData.get(i)).getZ();
-            if (z > zMax) zMax = z;
+        this.provideRange();
+        return mZMax;
+    }
+
+    /**
+     * returns the index of the last position point with a t-value less than or equal to the given position. The
+     * position points are located by binary search.
+     * @param pT Position t
+     * @return Vertex index, -1 if <tt>pT &lt; this.tMin()</tt> or if the profile is empty
+     */
+    public int findIndex(double pT)
+    {
+        this.provideOrder();
+        int lo = 0, hi = mSize - 1;
+        if (mSize == 0 || !(pT >= mT[0]))
+            return -1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mT[mid] <= pT)
+                lo = mid;
+            else
+                hi = mid - 1;
         }
-        return zMax;
+        return lo;
     }
-    
+
+    /**
+     * interpolates the cross-section's z-value at an arbitrary position t. Between two position points, z(t) will be
+     * interpolated linearly.<br /><br />
+     * <i>German:</i> interpoliert den z-Wert an der Stationierung t. Au&szlig;erhalb des Belegungsbereichs wird
+     * <tt>Double.NaN</tt> zur&uuml;ckgegeben.
+     * @param pT Position t
+     * @return z(t) or <tt>Double.NaN</tt>, if t lies outside the interval [<tt>tMin()</tt>, <tt>tMax()</tt>]
+     */
+    public double interpolateZ(double pT)
+    {
+        int i = this.findIndex(pT);
+        if (i < 0 || pT > mT[mSize - 1])
+            return Double.NaN;
+        if (i == mSize - 1)
+            return mZ[i];
+        double s = (pT - mT[i]) / (mT[i + 1] - mT[i]);
+        return mZ[i] + s * (mZ[i + 1] - mZ[i]);
+    }
+
     public String toString() {
         String strGeom = "<empty geometry>";
         if (this.getGeometry() != null)
@@ -156,36 +286,103 @@ public class GmProfile extends VgProfile
         return "[" + this.getName() + ", {# " + this.numberOfTZPairs() + " t-z-pairs}, " + strGeom + "]";
     }
 
+    private void provideRange()
+    {
+        if (mRangeValid)
+            return;
+        double zMin = mZ[0], zMax = mZ[0];
+        for (int i = 1; i < mSize; i++) {
+            double z = mZ[i];
+            if (z < zMin) zMin = z;
+            if (z > zMax) zMax = z;
+        }
+        mZMin = zMin;
+        mZMax = zMax;
+        mRangeValid = true;
+    }
+
     private void provideOrder() 
     {
-        if (mOrdered || mProfileData.size() < 2) 
+        if (mOrdered || mSize < 2) 
             return;
-        else {
-            Collections.sort(mProfileData);
-            int ct = 1;
-            double t0, t1;
-            for (int i = 0; i < mProfileData.size() - 1; i++) {
-                t0 = ((TZPair) mProfileData.get(i)).getT();
-                t1 = ((TZPair) mProfileData.get(i + 1)).getT();
-                if (t0 == t1) {
-                    double z0, z1;
-                    z0 = ((TZPair) mProfileData.get(i)).getZ();
-                    z1 = ((TZPair) mProfileData.get(i + 1)).getZ();
+
+        this.sort(0, mSize - 1);
+
+        // Mehrfach belegte Stationen zusammenfassen (Mittelwert der z-Werte):
+        int w = 0;
+        for (int i = 1; i < mSize; i++) {
+            if (mT[i] == mT[w]) {
+                int ct = 1;
+                double sum = mZ[w];
+                while (i < mSize && mT[i] == mT[w]) {
+                    sum += mZ[i++];
                     ct++;
-                    double avg = ((double) (ct - 1))/((double) ct) * z0 + 1./((double) ct) * z1;                  
-                    ((TZPair) mProfileData.get(i)).setZ(avg);
-                    mProfileData.remove(i + 1);
-                    i--;
                 }
-                else
-                    ct = 1;
+                i--;
+                mZ[w] = sum / ct;
+                mRangeValid = false;
+            }
+            else {
+                w++;
+                mT[w] = mT[i];
+                mZ[w] = mZ[i];
+            }
+        }
+        mSize = w + 1;
+        mOrdered = true;
+    }
+
+    // Quicksort der parallelen Felder mT und mZ nach t (Median-aus-Drei, kurze Abschnitte per Einfuegesortierung):
+    private void sort(int pLo, int pHi)
+    {
+        while (pHi - pLo > 16) {
+            int mid = (pLo + pHi) >>> 1;
+            if (mT[mid] < mT[pLo]) this.swap(mid, pLo);
+            if (mT[pHi] < mT[pLo]) this.swap(pHi, pLo);
+            if (mT[pHi] < mT[mid]) this.swap(pHi, mid);
+            double pivot = mT[mid];
+            int i = pLo, j = pHi;
+            while (i <= j) {
+                while (mT[i] < pivot) i++;
+                while (mT[j] > pivot) j--;
+                if (i <= j) {
+                    this.swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Rekursion fuer den kleineren Teil, Schleife fuer den groesseren:
+            if (j - pLo < pHi - i) {
+                this.sort(pLo, j);
+                pLo = i;
+            }
+            else {
+                this.sort(i, pHi);
+                pHi = j;
             }
-            mOrdered = true;
         }
+        for (int i = pLo + 1; i <= pHi; i++) {
+            double t = mT[i], z = mZ[i];
+            int j = i - 1;
+            while (j >= pLo && mT[j] > t) {
+                mT[j + 1] = mT[j];
+                mZ[j + 1] = mZ[j];
+                j--;
+            }
+            mT[j + 1] = t;
+            mZ[j + 1] = z;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        double t = mT[i]; mT[i] = mT[j]; mT[j] = t;
+        double z = mZ[i]; mZ[i] = mZ[j]; mZ[j] = z;
     }
     
     /** 
-     * Inner class to hold t-z value pairs.
+     * Inner class to hold t-z value pairs. Note that the profile itself does not use <tt>TZPair</tt>-objects to hold
+     * its values.
      */
     public class TZPair implements Comparable
     {
@@ -42,21 +42,27 @@ import java.util.ArrayList;
  * to be parallel in line with the x- and y-axis. It might be specified 
  * as vertex-based (so-called &quot;Lattice&quot;) or cell-based 
  * (&quot;Grid&quot;). Note that grid's values may left unset, since for all 
- * grid elements (vertices or cells) a &quot;no data&quot;-flag can be set.
+ * grid elements (vertices or cells) a &quot;no data&quot;-flag can be set.<p>
+ * The grid's elevation values are held by a {@link GmGridStorage}. By 
+ * default, a {@link GmDoubleGridStorage} will be used; to save memory for 
+ * large elevation models, a {@link GmFloatGridStorage} or any other storage 
+ * engine may be passed to the constructor. 
  * 
  * @author Benno Schmidt
  */
 public class GmSimpleElevationGrid extends VgElevationGrid
 {
     private GmSimple2dGridGeometry mGeom;
-    private double[][] mVal;
-    private boolean[][] mIsSetFl;
+    private GmGridStorage mStorage;
     private boolean mLatticeMode = false;
     private String mTheme = "Elevations";
 
     
     /**
-     * Constructor. This will generate a grid will all elements unset.
+     * Constructor. This will generate a grid will all elements unset. The 
+     * storage engine will be provided by {@link GmGridStorage#create(int, int)}, 
+     * i.e. the values will be held in double precision unless a different 
+     * default precision has been set.
      * 
      * @param pCols Number of grid cells in x-direction (columns)
      * @param pRows Number of grid cells in y-direction (rows)
@@ -74,37 +80,53 @@ public class GmSimpleElevationGrid extends VgElevationGrid
         		pOrigin, 
         		pDeltaX, pDeltaY);
         
-        mVal = new double[pRows][pCols]; 
-        mIsSetFl = new boolean[pRows][pCols]; 
-        for (int i = 0; i < pRows; i++) {
-            for (int j = 0; j < pCols; j++) {
-                mIsSetFl[i][j] = false;
-            }
-        }
+        mStorage = GmGridStorage.create(pRows, pCols);
         
         this.setName("unnamed elevation grid");
     }
 
     /**
-     * Constructor. This will generate a grid will all elements unset.
+     * Constructor. This will generate a grid will all elements unset. The 
+     * storage engine will be provided by {@link GmGridStorage#create(int, int)}, 
+     * i.e. the values will be held in double precision unless a different 
+     * default precision has been set.
      * 
      * @param pGeom Existing grid geometry
      */
     public GmSimpleElevationGrid(GmSimple2dGridGeometry pGeom) 
     {
         mGeom = pGeom;
-      
-        int nRows = mGeom.numberOfRows();
-        int nCols = mGeom.numberOfColumns();
- 
-        mVal = new double[nRows][nCols]; 
-        mIsSetFl = new boolean[nRows][nCols]; 
-        for (int i = 0; i < nRows; i++) {
-            for (int j = 0; j < nCols; j++) {
-                mIsSetFl[i][j] = false;
-            }
+        mStorage = GmGridStorage.create(
+        		mGeom.numberOfRows(), mGeom.numberOfColumns());
+        
+        this.setName("unnamed elevation grid");
+    }
+
+    /**
+     * Constructor. The grid's elevation values will be held by the given 
+     * storage engine, which must provide the same number of rows and columns 
+     * as the grid geometry. Values already present inside the storage will 
+     * be kept.
+     * 
+     * @param pGeom Existing grid geometry
+     * @param pStorage Cell-storage engine
+     * @throws T3dException if the storage does not fit the geometry
+     */
+    public GmSimpleElevationGrid(
+    		GmSimple2dGridGeometry pGeom, GmGridStorage pStorage) 
+    	throws T3dException
+    {
+        if (pStorage == null ||
+        	pStorage.numberOfRows() != pGeom.numberOfRows() ||
+        	pStorage.numberOfColumns() != pGeom.numberOfColumns())
+        {
+            throw new T3dException(
+            	"Grid storage does not match the grid geometry.");
         }
         
+        mGeom = pGeom;
+        mStorage = pStorage;
+        
         this.setName("unnamed elevation grid");
     }
 
@@ -158,6 +180,15 @@ public class GmSimpleElevationGrid extends VgElevationGrid
         return 1;
     }
 
+    /**
+     * returns the storage engine that holds the grid's elevation values.
+     * 
+     * @return Cell-storage
+     */
+    public GmGridStorage getStorage() {
+        return mStorage;
+    }
+
     public int numberOfColumns() {
         return mGeom.numberOfColumns();
     }
@@ -200,7 +231,9 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      * <i>0 &lt;= pRow &lt; this.numberOfRows(), 
      * 0 &lt;= pCol &lt; this.numberOfColumns()</i>
      * is violated, a <tt>T3dException</tt> will be thrown. Post-condition: 
-     * <tt>this.isSet(pRow, pCol) = true</tt>
+     * <tt>this.isSet(pRow, pCol) = true</tt><p>
+     * Note that setting the value <tt>Double.NaN</tt> will leave the grid 
+     * element unset.
      * 
      * @param pRow Row-index
      * @param pCol Column-index
@@ -208,16 +241,14 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public void setValue(int pRow, int pCol, double pZ) throws T3dException 
     {
-        try {
-            double zOld = mVal[pRow][pCol];
-            mVal[pRow][pCol] = pZ;
-            mIsSetFl[pRow][pCol] = true;
-            this.updateZBounds(zOld, pZ);
-        }
-        catch (Exception e) {
+        if (!this.inside(pRow, pCol)) {
             throw new T3dException(
             	"Could not set grid value (" + pRow + ", " + pCol + ").");
         }
+        double zOld = mStorage.get(pRow, pCol);
+        mStorage.set(pRow, pCol, pZ);
+        mModCount++;
+        this.updateZBounds(zOld, pZ);
     }
 
     /** 
@@ -233,12 +264,11 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public boolean isSet(int pRow, int pCol) throws T3dException
     {
-        try {
-            return mIsSetFl[pRow][pCol];
-        }
-        catch (Exception e) {
-            throw new T3dException(e.getMessage());
+        if (!this.inside(pRow, pCol)) {
+            throw new T3dException(
+            	"Index out of bounds (" + pRow + ", " + pCol + ").");
         }
+        return mStorage.isSet(pRow, pCol);
     }
 
     /** 
@@ -248,7 +278,7 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     {
         for (int i = 0; i < this.numberOfRows(); i++) {
             for (int j = 0; j < this.numberOfColumns(); j++) {
-                if (!mIsSetFl[i][j]) return false; 
+                if (!mStorage.isSet(i, j)) return false; 
             }
         }
         return true;
@@ -268,12 +298,15 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public void unset(int pRow, int pCol) throws T3dException
     {
-        try {
-            mIsSetFl[pRow][pCol] = false;
-        }
-        catch (Exception e) {
-            throw new T3dException(e.getMessage());
+        if (!this.inside(pRow, pCol)) {
+            throw new T3dException(
+            	"Index out of bounds (" + pRow + ", " + pCol + ").");
         }
+        double zOld = mStorage.get(pRow, pCol);
+        mStorage.unset(pRow, pCol);
+        mModCount++;
+        if (mCalculated && (zOld <= mZMin || zOld >= mZMax)) 
+            mCalculated = false; // re-computation will be necessary later
     }
 
     /** 
@@ -292,17 +325,61 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public double getValue(int pRow, int pCol) throws T3dException
     {
-        try {
-            if (mIsSetFl[pRow][pCol]) {
-                return mVal[pRow][pCol];
-            } else {
-                throw new T3dException("Tried to access unset grid element.");
-            }
+        if (!this.inside(pRow, pCol)) {
+            throw new T3dException(
+            	"Illegal grid element access. Index out of bounds (" 
+            	+ pRow + ", " + pCol + ").");
         }
-        catch (Exception e) {
+        double z = mStorage.get(pRow, pCol);
+        if (Double.isNaN(z)) {
             throw new T3dException(
-            	"Illegal grid element access. " + e.getMessage());
+            	"Illegal grid element access. " 
+            	+ "Tried to access unset grid element.");
         }
+        return z;
+    }
+
+    /**
+     * reads a rectangular block of elevation values into the given array 
+     * (see {@link VgElevationGrid#getBlock}). Unset grid elements will be 
+     * given as <tt>Double.NaN</tt>. The values will be copied directly from
+     * the grid's storage.
+     * 
+     * @param pRow0 First row-index
+     * @param pCol0 First column-index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pDst Destination array of length <tt>pRows * pCols</tt> at least
+     * @throws T3dException
+     */
+    public void getBlock(
+    		int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+    	throws T3dException
+    {
+        this.checkBlock(pRow0, pCol0, pRows, pCols, pDst);
+        mStorage.getBlock(pRow0, pCol0, pRows, pCols, pDst);
+    }
+
+    /**
+     * assigns a rectangular block of elevation values (see 
+     * {@link VgElevationGrid#setBlock}). Elements given as 
+     * <tt>Double.NaN</tt> will be unset.
+     * 
+     * @param pRow0 First row-index
+     * @param pCol0 First column-index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pSrc Source array of length <tt>pRows * pCols</tt> at least
+     * @throws T3dException
+     */
+    public void setBlock(
+    		int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+    	throws T3dException
+    {
+        this.checkBlock(pRow0, pCol0, pRows, pCols, pSrc);
+        mStorage.setBlock(pRow0, pCol0, pRows, pCols, pSrc);
+        mModCount++;
+        mCalculated = false;
     }
 
     /** 
@@ -315,6 +392,7 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      * 
      * @param pPos Position (x, y)
      * @return Elevation (z) as {@link Double}-object or <i>null</i>
+     * @see FltElevationGridSampler
      */
     public Double getValue(VgPoint pPos) throws T3dSRSException
     {
@@ -336,18 +414,29 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     	float is = idx[0], js = idx[1];
     	int row = (int)idx[0], col = (int)idx[1];
     	
+    	// Positions on the last row or column are interpolated inside the 
+    	// preceding grid cell; beyond that, no neighbors are available:
+    	if (row + 1 >= mStorage.numberOfRows()) {
+    		if (is > row || row == 0) return null;
+    		row--;
+    	}
+    	if (col + 1 >= mStorage.numberOfColumns()) {
+    		if (js > col || col == 0) return null;
+    		col--;
+    	}
+    	
     	if (
-    		mIsSetFl[row][col] && 
-    		mIsSetFl[row + 1][col] &&
-    		mIsSetFl[row][col + 1] &&
-    		mIsSetFl[row + 1][col + 1])
+    		mStorage.isSet(row, col) && 
+    		mStorage.isSet(row + 1, col) &&
+    		mStorage.isSet(row, col + 1) &&
+    		mStorage.isSet(row + 1, col + 1))
     	{
         	double lambda = js - ((float)col), my = is - ((float)row);
         	return 
-            	mVal[row][col] * (1.f - my) * (1.f - lambda) +
-            	mVal[row + 1][col] * my * (1.f - lambda) +
-            	mVal[row][col + 1] * (1.f - my) * lambda + 
-            	mVal[row + 1][col + 1] * my * lambda;    			
+            	mStorage.get(row, col) * (1.f - my) * (1.f - lambda) +
+            	mStorage.get(row + 1, col) * my * (1.f - lambda) +
+            	mStorage.get(row, col + 1) * (1.f - my) * lambda + 
+            	mStorage.get(row + 1, col + 1) * my * lambda;    			
     	}
     	
     	// else:
@@ -414,6 +503,27 @@ public class GmSimpleElevationGrid extends VgElevationGrid
         return mZMax;
     }
 
+    /**
+     * provides descriptive statistics for the grid's elevation values. The 
+     * statistics will be computed in parallel and kept until the grid is 
+     * modified.
+     * 
+     * @return Grid statistics
+     */
+    public GmElevationGridStatistics getStatistics() 
+    {
+        if (mStatistics == null || mStatisticsModCount != mModCount) {
+            mStatistics = new GmElevationGridStatistics(this);
+            mStatisticsModCount = mModCount;
+        }
+        return mStatistics;
+    }
+
+    // Modification counter (used to detect outdated statistics):
+    long modCount() {
+        return mModCount;
+    }
+
     /**
      * deactivates lazy evaluation mode for minimal/maximal z-value 
      * computation. For performance reasons, it might be necessary to 
@@ -422,6 +532,7 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public void setZBoundsInvalid() {
         mCalculated = false;
+        mModCount++; // statistics have to be re-computed, too
     }
 
     // Private helpers to compute z-bounds ("lazy evaluation"!):
@@ -429,26 +540,19 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     private boolean mCalculated = false;
     private double mZMin, mZMax;
 
+    private long mModCount = 0; // modification counter
+    private GmElevationGridStatistics mStatistics = null;
+    private long mStatisticsModCount = -1;
+
     private void calculateZBounds() throws T3dException
     { 
         if (!mCalculated) {
-            try {
-                mZMin = this.getFirstSetZValue(); 
-            }
-            catch (T3dException e) {
-                throw e;
-            }
-            mZMax = mZMin;
-            double z;
-            for (int i = 0; i < this.numberOfRows(); i++) {
-                for (int j = 0; j < this.numberOfColumns(); j++) {
-                   if (this.isSet(i, j)) {
-                       z = this.getValue(i, j);
-                       if (z < mZMin) mZMin = z; else {
-                           if (z > mZMax) mZMax = z; }
-                   }
-                }
+            GmElevationGridStatistics lStats = this.getStatistics();
+            if (lStats.numberOfSetElements() == 0) {
+                throw new T3dException("Tried to access empty elevation grid.");
             }
+            mZMin = lStats.getMin();
+            mZMax = lStats.getMax();
             mCalculated = true;
         }
     }
@@ -468,17 +572,10 @@ public class GmSimpleElevationGrid extends VgElevationGrid
             ; // skip
     }
 
-    // Get z-value of some set grid element:
-    private double getFirstSetZValue() throws T3dException 
-    {
-        for (int i = 0; i < this.numberOfRows(); i++) {
-            for (int j = 0; j < this.numberOfColumns(); j++) {
-                if (this.isSet(i, j))
-                    return this.getValue(i, j);
-            }
-        }
-        // else:
-        throw new T3dException("Tried to access empty elevation grid.");
+    private boolean inside(int pRow, int pCol) {
+        return 
+        	pRow >= 0 && pRow < mStorage.numberOfRows() && 
+        	pCol >= 0 && pCol < mStorage.numberOfColumns();
     }
 
 	/** 
@@ -34,10 +34,15 @@ package org.n52.v3d.triturus.gisimplm;
 import org.n52.v3d.triturus.vgis.*;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
-
-import java.util.Vector;
+import org.n52.v3d.triturus.t3dutil.T3dLongIntHashMap;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 
 /**
+ * Mesh consisting of indexed vertices and line segments.<br /><br />
+ * The line segments are held as pairs of vertex indices inside a primitive array; an edge set 
+ * (hash map) allows to check in constant time whether two vertices are connected. To iterate 
+ * over the neighbours of a vertex without object creation, the methods 
+ * {@link #getNumberOfNeighbors(int)} and {@link #getNeighbor(int, int)} can be used.
  * @author Martin May
  */
 public class GmSimpleMesh extends VgMesh {
@@ -45,12 +50,15 @@ public class GmSimpleMesh extends VgMesh {
 	private int mNumberOfPoints;
 	private VgPoint mPoints[];
 	private int mNumberOfLineSegments = 0;
-	//private int mLineSegments[][];
-	private Vector mLineSegments;
+	private int[] mLineSegments; // vertex index pairs
+	private T3dLongIntHashMap mEdgeSet; // vertex pair -> line segment index
 	private GmEnvelope mEnv;
-	private boolean[][] adjMatrix;
 	private int doppelCount = 0;
 
+	// adjacency in compressed sparse row format; will be set up on demand:
+	private int[] mAdjStart = null; // neighbours of vertex i: mAdj[mAdjStart[i]] ... mAdj[mAdjStart[i + 1] - 1]
+	private int[] mAdj = null;
+
 	/**
      * Constructor.<br /><br />
      * <i>German:</i> Konstruktor. Die Netz-Gr&ouml;&szlig;e l&auml;sst sich &uuml;ber die Methoden
@@ -59,12 +67,21 @@ public class GmSimpleMesh extends VgMesh {
      * @param pNumberOfPoints Number of mesh-points
      */
 	public GmSimpleMesh(int pNumberOfPoints) {
+		this(pNumberOfPoints, 3 * pNumberOfPoints);
+	}
+
+	/**
+	 * Constructor.
+	 * @param pNumberOfPoints Number of mesh-points
+	 * @param pExpectedNumberOfLineSegments Expected number of line-segments (e.g. about three times 
+	 * the number of points for a triangulation)
+	 */
+	public GmSimpleMesh(int pNumberOfPoints, int pExpectedNumberOfLineSegments) {
 		mNumberOfPoints = pNumberOfPoints;
 		mPoints = new GmPoint[mNumberOfPoints];
-		adjMatrix = new boolean[mNumberOfPoints][mNumberOfPoints];
 		this.allocateStorage();
-		//mLineSegments = new int[mNumberOfLineSegments][3];
-		mLineSegments = new Vector();
+		mLineSegments = new int[2 * Math.max(16, pExpectedNumberOfLineSegments)];
+		mEdgeSet = new T3dLongIntHashMap(pExpectedNumberOfLineSegments);
 		mEnv = null;
 	}
 
@@ -73,35 +90,37 @@ public class GmSimpleMesh extends VgMesh {
      * <i>German:</i> Methode zum Hinzuf&uuml;gen eines LineSegmentes zwischen zwei Vertizes.
      * Es ist stets die Bedingung <i>0 &lt;= vertex1 &lt; this.getNumberOfPoints()</i>
 	 * und <i>0 &lt;= vertex2 &lt; this.getNumberOfPoints()</i>  einzuhalten;
-	 * anderenfalls wird eine <i>T3dException</i> geworfen.
+	 * anderenfalls wird eine <i>T3dException</i> geworfen. Bereits vorhandene LineSegments
+	 * werden nicht erneut eingef&uuml;gt.
 	 * @param vertex1 Index des ersten Vertex
 	 * @param vertex2 Index des zweiten Vertex
 	 * @throws org.n52.v3d.triturus.core.T3dException
-	 * 
-	 * TODO Implementierung zu "Naiv"....
 	 */
 	public void addLineSegment(int vertex1, int vertex2) throws T3dException {
-		try {
-			if (!areConnected(vertex1, vertex2)) {
-				mLineSegments.add(
-					new GmLineSegment(getPoint(vertex1), getPoint(vertex2)));
-				mNumberOfLineSegments++;
-				adjMatrix[vertex1][vertex2] = true; //markiert als verbunden
-				adjMatrix[vertex2][vertex1] = true; //markiert als verbunden
-				adjMatrix[vertex1][vertex1] = true; //markiert als verbunden
-				adjMatrix[vertex2][vertex2] = true; //markiert als verbunden
-			}
-			else
-				doppelCount++;
+		this.checkVertexIndex(vertex1);
+		this.checkVertexIndex(vertex2);
+		if (vertex1 == vertex2) {
+			return; // degenerated line-segment
+		}
+		int e = mEdgeSet.putIfAbsent(T3dLongIntHashMap.key(vertex1, vertex2), mNumberOfLineSegments);
+		if (e != T3dLongIntHashMap.cNoEntry) {
+			doppelCount++;
+			return;
 		}
-		catch (T3dException e) {
+		if (2 * mNumberOfLineSegments == mLineSegments.length) {
+			mLineSegments = T3dArrays.copyOf(mLineSegments, 2 * mLineSegments.length);
 		}
+		mLineSegments[2 * mNumberOfLineSegments] = vertex1;
+		mLineSegments[2 * mNumberOfLineSegments + 1] = vertex2;
+		mNumberOfLineSegments++;
+		mAdjStart = null;
+		mAdj = null;
 	}
 
 	/**
      * returns the information whether two vertices inside the mesh are connected by a line-segment.<br /><br />
      * <i>German:</i> liefert Aussage dar&uuml;ber, ob zwei Vertizes im Netz mit einem
-	 * LineSegment verbunden sind.
+	 * LineSegment verbunden sind (Aufwand O(1)).
 	 * Es ist stets die Bedingung <i>0 &lt;= vertex1 &lt; this.getNumberOfPoints()</i>
 	 * und <i>0 &lt;= vertex2 &lt; this.getNumberOfPoints()</i>  einzuhalten;
 	 * anderenfalls wird eine <i>T3dException</i> geworfen.
@@ -110,68 +129,106 @@ public class GmSimpleMesh extends VgMesh {
 	 * @return <b><i>true</i></b> fals der LineSegment enthalten  ist,
 	 *         <b><i>false</i></b> sonst
 	 * @throws T3dException
-	 *
-	 * TODO 1. vielleicht ein int[] als Parameter
-	 * TODO 2. andere Namensgebung?????????
 	 */
 	public boolean areConnected(int vertex1, int vertex2) throws T3dException {
-		boolean result = false;
-//				try {
-//					VgPoint sPoint = getPoint(vertex1);
-//					VgPoint ePoint = getPoint(vertex2);
-//					GmLineSegment ls = new GmLineSegment(sPoint, ePoint);
-//					if (mLineSegments.contains(ls)) {
-//						result = true;
-//						//TODO muss raus
-//						//doppelCount++;
-//					}
-//				}
-//				catch (T3dException e) {
-//					// TODO Auto-generated catch block
-//					e.printStackTrace();
-//				}
-
-		try {
-			if (adjMatrix[vertex1][vertex2] || adjMatrix[vertex2][vertex1]) {
-				result = true;
-				//doppelCount++;
-			}
+		this.checkVertexIndex(vertex1);
+		this.checkVertexIndex(vertex2);
+		return mEdgeSet.get(T3dLongIntHashMap.key(vertex1, vertex2)) != T3dLongIntHashMap.cNoEntry;
+	}
+
+	/**
+	 * returns the index of the line-segment that connects two vertices.
+	 * @param vertex1 Index of the first vertex
+	 * @param vertex2 Index of the second vertex
+	 * @return Line-segment index, or -1 if the vertices are not connected
+	 */
+	public int getLineSegmentIndex(int vertex1, int vertex2) {
+		return mEdgeSet.get(T3dLongIntHashMap.key(vertex1, vertex2));
+	}
+
+	/**
+	 * returns the number of vertices that are connected to the given vertex by a line-segment.
+	 * @param pVertex Vertex index
+	 * @return Number of neighbours
+	 * @see #getNeighbor(int, int)
+	 */
+	public int getNumberOfNeighbors(int pVertex) throws T3dException {
+		this.checkVertexIndex(pVertex);
+		this.provideAdjacency();
+		return mAdjStart[pVertex + 1] - mAdjStart[pVertex];
+	}
+
+	/**
+	 * returns the k-th neighbour of the given vertex. Together with 
+	 * {@link #getNumberOfNeighbors(int)}, this method allows to iterate over a vertex's neighbours
+	 * without object creation:
+	 * <pre>
+	 * for (int k = 0; k &lt; mesh.getNumberOfNeighbors(v); k++) {
+	 *     int w = mesh.getNeighbor(v, k);
+	 *     ...
+	 * }
+	 * </pre>
+	 * @param pVertex Vertex index
+	 * @param k Neighbour number (0 &lt;= k &lt; <tt>this.getNumberOfNeighbors(pVertex)</tt>)
+	 * @return Vertex index of the neighbour
+	 */
+	public int getNeighbor(int pVertex, int k) {
+		this.provideAdjacency();
+		return mAdj[mAdjStart[pVertex] + k];
+	}
+
+	// sets up the adjacency in compressed sparse row format (counting sort by vertex)
+	private void provideAdjacency() {
+		if (mAdjStart != null) {
+			return;
+		}
+		int[] start = new int[mNumberOfPoints + 1];
+		for (int k = 0; k < 2 * mNumberOfLineSegments; k++) {
+			start[mLineSegments[k] + 1]++;
+		}
+		for (int i = 0; i < mNumberOfPoints; i++) {
+			start[i + 1] += start[i];
 		}
-		catch (T3dException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		int[] adj = new int[2 * mNumberOfLineSegments];
+		int[] pos = T3dArrays.copyOf(start, mNumberOfPoints);
+		for (int e = 0; e < mNumberOfLineSegments; e++) {
+			int a = mLineSegments[2 * e], b = mLineSegments[2 * e + 1];
+			adj[pos[a]++] = b;
+			adj[pos[b]++] = a;
 		}
-		return result;
+		mAdj = adj;
+		mAdjStart = start;
 	}
 
-	/* (non-Javadoc)
-	 * @see org.n52.v3d.triturus.vgis.VgMesh#getLineIndexArray()
+	/**
+	 * returns an array holding all line-segments' vertex indices, one pair per line-segment.
+	 * @return Array of length <tt>2 * this.getNumberOfLineSegments()</tt>
 	 */
 	public int[] getLineIndexArray() {
-		// TODO Auto-generated method stub
-		return null;
+		return T3dArrays.copyOf(mLineSegments, 2 * mNumberOfLineSegments);
 	}
 
 	/* (non-Javadoc)
 	 * @see org.n52.v3d.triturus.vgis.VgMesh#getLineSegment(int)
 	 */
 	public VgLineSegment getLineSegment(int i) throws T3dException {
-		// TODO Auto-generated method stub
-		return (VgLineSegment) mLineSegments.get(i);
+		this.checkLineSegmentIndex(i);
+		return new GmLineSegment(
+			this.getPoint(mLineSegments[2 * i]), this.getPoint(mLineSegments[2 * i + 1]));
 	}
 
 	/* (non-Javadoc)
 	 * @see org.n52.v3d.triturus.vgis.VgMesh#getLineSegmentVertexIndices(int)
 	 */
 	public int[] getLineSegmentVertexIndices(int i) throws T3dException {
-		return null;
+		this.checkLineSegmentIndex(i);
+		return new int[] { mLineSegments[2 * i], mLineSegments[2 * i + 1] };
 	}
 
 	/* (non-Javadoc)
 	 * @see org.n52.v3d.triturus.vgis.VgMesh#getNumberOfLineSegments()
 	 */
 	public int getNumberOfLineSegments() {
-		// TODO Auto-generated method stub
 		return mNumberOfLineSegments;
 	}
 
@@ -179,7 +236,6 @@ public class GmSimpleMesh extends VgMesh {
 	 * @see org.n52.v3d.triturus.vgis.VgMesh#getNumberOfPoints()
 	 */
 	public int getNumberOfPoints() {
-		// TODO Auto-generated method stub
 		return mNumberOfPoints;
 	}
 
@@ -187,7 +243,7 @@ public class GmSimpleMesh extends VgMesh {
 	 * @see org.n52.v3d.triturus.vgis.VgMesh#getPoint(int)
 	 */
 	public VgPoint getPoint(int i) throws T3dException {
-		// TODO Auto-generated method stub
+		this.checkVertexIndex(i);
 		return mPoints[i];
 	}
 
@@ -202,9 +258,18 @@ public class GmSimpleMesh extends VgMesh {
 	private void allocateStorage() {
 		for (int i = 0; i < mNumberOfPoints; i++) {
 			mPoints[i] = new GmPoint(0., 0., 0.);
-			for (int j = 0; j < mNumberOfPoints; j++) {
-				adjMatrix[i][j] = false;
-			}
+		}
+	}
+
+	private void checkVertexIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfPoints) {
+			throw new T3dException("Vertex index out of bounds: " + i);
+		}
+	}
+
+	private void checkLineSegmentIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfLineSegments) {
+			throw new T3dException("Line-segment index out of bounds: " + i);
 		}
 	}
 
@@ -216,12 +281,8 @@ public class GmSimpleMesh extends VgMesh {
 	 * @throws T3dException
 	 */
 	public void setPoint(int i, VgPoint pPnt) throws T3dException {
-		try {
-			mPoints[i].set(pPnt);
-		}
-		catch (T3dException e) {
-			throw e;
-		}
+		this.checkVertexIndex(i);
+		mPoints[i].set(pPnt);
 	}
 	
 	public void setPoints(VgPoint[] pointArray){
@@ -237,7 +298,22 @@ public class GmSimpleMesh extends VgMesh {
 		return doppelCount;
 	}
 	
+	/**
+	 * returns the mesh's adjacency matrix. Note that the matrix will be generated on each call, 
+	 * which requires quadratic memory with respect to the number of points.
+	 * @deprecated Use {@link #areConnected(int, int)} or {@link #getNeighbor(int, int)} instead.
+	 * @return Adjacency matrix
+	 */
+	@Deprecated
 	public boolean[][] getAdjMatrix(){
+		boolean[][] adjMatrix = new boolean[mNumberOfPoints][mNumberOfPoints];
+		for (int e = 0; e < mNumberOfLineSegments; e++) {
+			int a = mLineSegments[2 * e], b = mLineSegments[2 * e + 1];
+			adjMatrix[a][b] = true;
+			adjMatrix[b][a] = true;
+			adjMatrix[a][a] = true;
+			adjMatrix[b][b] = true;
+		}
 		return adjMatrix;
 	}
 
@@ -37,16 +37,19 @@ import org.n52.v3d.triturus.vgis.*;
 
 /**
  * Class to hold a TIN-geometry that is static in its size.<br /><br />
- * <i>German:</i> Klasse zur Verwaltung einer in ihrer Gr&ouml;&szlig;e statischen TIN-Geometrie.
+ * <i>German:</i> Klasse zur Verwaltung einer in ihrer Gr&ouml;&szlig;e statischen TIN-Geometrie.<br /><br />
+ * The vertex coordinates and the triangles' vertex indices are held in primitive arrays. For large
+ * TINs, the allocation-free accessors (e.g. {@link #getX(int)}, {@link #getTriangleVertexIndices(int, int[])})
+ * or the direct array access ({@link #getXYZArray()}, {@link #getTriangleArray()}) should be used.
  * <b>TODO: Die Bounding-Box-Berechnung ist noch nicht optimiert; siehe ggf. Coorg.n52.v3d.</b>
  * @author Benno Schmidt, Ilya Abramov
  */
 public class GmSimpleTINGeometry extends VgIndexedTIN
 {
 	private int mNumberOfPoints;
-	private VgPoint[] mPoints;
+	private double[] mXYZ; // x_0, y_0, z_0, x_1, y_1, z_1, ...
 	private int mNumberOfTriangles;
-	private int mTriangles[][];
+	private int[] mTri; // 3 vertex indices per triangle
 	private GmEnvelope mEnv;
 	private GmSimpleMesh mMesh;
 
@@ -59,20 +62,37 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	 */
 	public GmSimpleTINGeometry(int pNumberOfPoints, int pNumberOfTriangles)
     {
-		mNumberOfTriangles = pNumberOfTriangles;
-		mPoints = new GmPoint[mNumberOfPoints];
-		this.allocateStorage();
-
 		mNumberOfPoints = pNumberOfPoints;
-		mTriangles = new int[mNumberOfTriangles][3];
+		mNumberOfTriangles = pNumberOfTriangles;
+		mXYZ = new double[3 * mNumberOfPoints];
+		mTri = new int[3 * mNumberOfTriangles];
 
 		mEnv = null;
 	}
 
-	private void allocateStorage() {
-		for (int i = 0; i < mNumberOfPoints; i++) {
-			mPoints[i] = new GmPoint(0., 0., 0.);
+	/**
+	 * Constructor. The TIN geometry will be backed by the given arrays, i.e. the arrays are not
+	 * copied. Later changes by <tt>this.setPoint()</tt> or <tt>this.setTriangle()</tt> are written
+	 * through to these arrays (and vice versa). The arrays may be longer than necessary.
+	 * @param pXYZ Vertex coordinates given as <i>x<sub>0</sub>, y<sub>0</sub>, z<sub>0</sub>, x<sub>1</sub>, ...</i>
+	 * @param pNumberOfPoints Number of points of the TIN
+	 * @param pTri Vertex indices, three consecutive entries per triangle
+	 * @param pNumberOfTriangles Number of triangles of the TIN
+	 * @throws T3dException if the arrays are too short
+	 */
+	public GmSimpleTINGeometry(double[] pXYZ, int pNumberOfPoints, int[] pTri, int pNumberOfTriangles)
+		throws T3dException
+	{
+		if (pNumberOfPoints < 0 || pNumberOfTriangles < 0
+			|| pXYZ.length < 3 * pNumberOfPoints || pTri.length < 3 * pNumberOfTriangles) {
+			throw new T3dException("Insufficient TIN array size.");
 		}
+		mNumberOfPoints = pNumberOfPoints;
+		mNumberOfTriangles = pNumberOfTriangles;
+		mXYZ = pXYZ;
+		mTri = pTri;
+
+		mEnv = null;
 	}
 
 	public int numberOfPoints() {
@@ -83,13 +103,16 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 		return mNumberOfTriangles;
 	}
 
+	/**
+	 * returns the i-th point (vertex) of the TIN structure. Note that a new point object will be
+	 * created on every call; changes to this object will not affect the TIN geometry.
+	 * @param i Point index
+	 */
 	public VgPoint getPoint(int i) throws T3dException {
-		try {
-			return mPoints[i];
-		}
-		catch (Exception e) {
-			throw new T3dException(e.getMessage());
-		}
+		this.checkPointIndex(i);
+		GmPoint lPnt = new GmPoint(mXYZ[3 * i], mXYZ[3 * i + 1], mXYZ[3 * i + 2]);
+		lPnt.setSRS(this.getSRS());
+		return lPnt;
 	}
 
     /**
@@ -100,29 +123,21 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
      * @param i Point index
 	 */
 	public void setPoint(int i, VgPoint pPnt) throws T3dException {
-		try {
-			if (mCalculated) {
-				VgPoint lOldPoint = mPoints[i];
-				this.updateBounds(lOldPoint, pPnt);
-			}
-
-			mPoints[i].set(pPnt);
-		}
-		catch (T3dException e) {
-			throw e;
+		this.checkPointIndex(i);
+		if (mCalculated) {
+			this.updateBounds(this.getPoint(i), pPnt);
 		}
+		mXYZ[3 * i] = pPnt.getX();
+		mXYZ[3 * i + 1] = pPnt.getY();
+		mXYZ[3 * i + 2] = pPnt.getZ();
 	}
 
 	public VgTriangle getTriangle(int i) throws T3dException {
-		try {
-			return new GmTriangle(
-				mPoints[mTriangles[i][0]],
-				mPoints[mTriangles[i][1]],
-				mPoints[mTriangles[i][2]]);
-		}
-		catch (Exception e) {
-			throw new T3dException(e.getMessage());
-		}
+		this.checkTriangleIndex(i);
+		return new GmTriangle(
+			this.getPoint(mTri[3 * i]),
+			this.getPoint(mTri[3 * i + 1]),
+			this.getPoint(mTri[3 * i + 2]));
 	}
 
 	/**
@@ -134,22 +149,151 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	 */
     public void setTriangle(int i, int pPntIdx1, int pPntIdx2, int pPntIdx3)
 		throws T3dException {
-		try {
-			mTriangles[i][0] = pPntIdx1;
-			mTriangles[i][1] = pPntIdx2;
-			mTriangles[i][2] = pPntIdx3;
-		}
-		catch (Exception e) {
-			throw new T3dException(e.getMessage());
-		}
+		this.checkTriangleIndex(i);
+		mTri[3 * i] = pPntIdx1;
+		mTri[3 * i + 1] = pPntIdx2;
+		mTri[3 * i + 2] = pPntIdx3;
 	}
 
 	public int[] getTriangleVertexIndices(int i) throws T3dException {
-		try {
-			return new int[] { mTriangles[i][0], mTriangles[i][1], mTriangles[i][2] };
+		this.checkTriangleIndex(i);
+		return new int[] { mTri[3 * i], mTri[3 * i + 1], mTri[3 * i + 2] };
+	}
+
+	/**
+	 * copies the vertex-indices of the i-th triangle into the given array, i.e. no array will be
+	 * allocated.
+	 * @param i Triangle index
+	 * @param pIdx Destination array of length 3 at least
+	 * @return <tt>pIdx</tt>
+	 * @throws T3dException
+	 */
+	public int[] getTriangleVertexIndices(int i, int[] pIdx) throws T3dException {
+		this.checkTriangleIndex(i);
+		pIdx[0] = mTri[3 * i];
+		pIdx[1] = mTri[3 * i + 1];
+		pIdx[2] = mTri[3 * i + 2];
+		return pIdx;
+	}
+
+	/**
+	 * returns a single vertex-index of the i-th triangle.
+	 * @param i Triangle index
+	 * @param pCorner Corner number (0, 1 or 2)
+	 * @return Vertex-index
+	 */
+	public int getTriangleVertexIndex(int i, int pCorner) {
+		return mTri[3 * i + pCorner];
+	}
+
+	/**
+	 * returns the x-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return x-coordinate
+	 */
+	public double getX(int i) {
+		return mXYZ[3 * i];
+	}
+
+	/**
+	 * returns the y-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return y-coordinate
+	 */
+	public double getY(int i) {
+		return mXYZ[3 * i + 1];
+	}
+
+	/**
+	 * returns the z-coordinate of the i-th point (vertex).
+	 * @param i Point index
+	 * @return z-coordinate
+	 */
+	public double getZ(int i) {
+		return mXYZ[3 * i + 2];
+	}
+
+	/**
+	 * copies the coordinates of the i-th point (vertex) into the given point object, i.e. no point
+	 * object will be allocated.
+	 * @param i Point index
+	 * @param pPnt Destination point
+	 * @return <tt>pPnt</tt>
+	 * @throws T3dException
+	 */
+	public VgPoint getPoint(int i, VgPoint pPnt) throws T3dException {
+		this.checkPointIndex(i);
+		pPnt.setX(mXYZ[3 * i]);
+		pPnt.setY(mXYZ[3 * i + 1]);
+		pPnt.setZ(mXYZ[3 * i + 2]);
+		return pPnt;
+	}
+
+	/**
+	 * sets the coordinates of the i-th point (vertex).
+	 * @param i Point index
+	 * @param pX x-coordinate
+	 * @param pY y-coordinate
+	 * @param pZ z-coordinate
+	 * @throws T3dException
+	 */
+	public void setPoint(int i, double pX, double pY, double pZ) throws T3dException {
+		this.checkPointIndex(i);
+		mXYZ[3 * i] = pX;
+		mXYZ[3 * i + 1] = pY;
+		mXYZ[3 * i + 2] = pZ;
+		mCalculated = false;
+	}
+
+	/**
+	 * copies the corner coordinates of the i-th triangle into the given array as
+	 * <i>x<sub>0</sub>, y<sub>0</sub>, z<sub>0</sub>, ..., x<sub>2</sub>, y<sub>2</sub>, z<sub>2</sub></i>,
+	 * i.e. no objects will be allocated.
+	 * @param i Triangle index
+	 * @param pXYZ Destination array of length 9 at least
+	 * @return <tt>pXYZ</tt>
+	 * @throws T3dException
+	 */
+	public double[] getTriangleCoordinates(int i, double[] pXYZ) throws T3dException {
+		this.checkTriangleIndex(i);
+		for (int c = 0; c < 3; c++) {
+			System.arraycopy(mXYZ, 3 * mTri[3 * i + c], pXYZ, 3 * c, 3);
 		}
-		catch (Exception e) {
-			throw new T3dException(e.getMessage());
+		return pXYZ;
+	}
+
+	/**
+	 * provides direct access to the vertex coordinates given as <i>x<sub>0</sub>, y<sub>0</sub>,
+	 * z<sub>0</sub>, x<sub>1</sub>, y<sub>1</sub>, z<sub>1</sub>, ...</i> The returned array is the
+	 * TIN's internal storage, i.e. it will not be copied, and it might be longer than
+	 * <tt>3 * this.numberOfPoints()</tt>. If the coordinates are modified, 
+	 * <tt>this.setBoundsInvalid()</tt> has to be called.
+	 * @return Coordinate array
+	 */
+	public double[] getXYZArray() {
+		return mXYZ;
+	}
+
+	/**
+	 * provides direct access to the triangles' vertex-indices; the i-th triangle consists of the 
+	 * entries <i>3 i</i>, <i>3 i + 1</i> and <i>3 i + 2</i>. The returned array is the TIN's internal 
+	 * storage, i.e. it will not be copied, and it might be longer than 
+	 * <tt>3 * this.numberOfTriangles()</tt>.
+	 * @return Index array
+	 */
+	public int[] getTriangleArray() {
+		return mTri;
+	}
+
+	private void checkPointIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfPoints) {
+			throw new T3dException("Point index out of bounds: " + i);
+		}
+	}
+
+	private void checkTriangleIndex(int i) throws T3dException {
+		if (i < 0 || i >= mNumberOfTriangles) {
+			throw new T3dException("Triangle index out of bounds: " + i);
 		}
 	}
 
@@ -161,11 +305,10 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	 */
 	public void newPointList(int pNumberOfPoints) {
 		mNumberOfPoints = pNumberOfPoints;
-		mPoints = new GmPoint[mNumberOfPoints];
-		this.allocateStorage();
+		mXYZ = new double[3 * mNumberOfPoints];
 
 		mNumberOfTriangles = 0;
-		mTriangles = null;
+		mTri = new int[0];
 
 		mEnv = null;
 	}
@@ -177,7 +320,7 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	 */
 	public void newTriangleList(int pNumberOfTriangles) {
 		mNumberOfTriangles = pNumberOfTriangles;
-		mTriangles = new int[mNumberOfTriangles][3];
+		mTri = new int[3 * mNumberOfTriangles];
 	}
 
 	/**
@@ -247,19 +390,16 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 		}
 
 		if (!mCalculated) {
-			mEnv =
-				new GmEnvelope(
-					mPoints[0].getX(),
-					mPoints[0].getX(),
-					mPoints[0].getY(),
-					mPoints[0].getY(),
-					mPoints[0].getZ(),
-					mPoints[0].getZ());
-
-			for (int i = 1; i < mNumberOfPoints; i++) {
-				mEnv.letContainPoint(mPoints[i]);
-
+			double xMin = mXYZ[0], xMax = xMin;
+			double yMin = mXYZ[1], yMax = yMin;
+			double zMin = mXYZ[2], zMax = zMin;
+			for (int i = 1, k = 3; i < mNumberOfPoints; i++, k += 3) {
+				double x = mXYZ[k], y = mXYZ[k + 1], z = mXYZ[k + 2];
+				if (x < xMin) xMin = x; else if (x > xMax) xMax = x;
+				if (y < yMin) yMin = y; else if (y > yMax) yMax = y;
+				if (z < zMin) zMin = z; else if (z > zMax) zMax = z;
 			}
+			mEnv = new GmEnvelope(xMin, xMax, yMin, yMax, zMin, zMax);
 			mCalculated = true;
 		}
 	}
@@ -279,14 +419,9 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	 * @throws T3dException
 	 */
 	public void deleteTriangle(int i) throws T3dException {
-		if (i > this.numberOfTriangles()) {
-			throw new T3dException("Wrong index.");
-		}
-		for (int c = i; c < mTriangles.length; c++) {
-			mTriangles[c][0] = mTriangles[c + 1][0];
-			mTriangles[c][1] = mTriangles[c + 1][1];
-			mTriangles[c][2] = mTriangles[c + 1][2];
-		}
+		this.checkTriangleIndex(i);
+		System.arraycopy(mTri, 3 * (i + 1), mTri, 3 * i, 3 * (mNumberOfTriangles - i - 1));
+		mNumberOfTriangles--;
 	}
 
 	/**
@@ -301,27 +436,31 @@ public class GmSimpleTINGeometry extends VgIndexedTIN
 	}
 
     private GmSimpleMesh generateMesh() {
-		GmSimpleMesh result = new GmSimpleMesh(mNumberOfPoints);
+		GmSimpleMesh result = new GmSimpleMesh(mNumberOfPoints, mNumberOfPoints + mNumberOfTriangles);
 		//	kopiere Vertizes
 		//	for (int i = 0; i < mNumberOfPoints; i++) {
 		//		result.setPoint(i, getPoint(i));
 		//	}
-		result.setPoints(mPoints);
+		result.setPoints(this.getPoints());
 		//durchf�hren  der Vermaschung
-		int[] trVertInd;
-		for (int i = 0; i < mNumberOfTriangles; i++) {
-			trVertInd = getTriangleVertexIndices(i);
-			result.addLineSegment(trVertInd[0], trVertInd[1]);
-			result.addLineSegment(trVertInd[1], trVertInd[2]);
-			result.addLineSegment(trVertInd[2], trVertInd[0]);
+		for (int k = 0; k < 3 * mNumberOfTriangles; k += 3) {
+			result.addLineSegment(mTri[k], mTri[k + 1]);
+			result.addLineSegment(mTri[k + 1], mTri[k + 2]);
+			result.addLineSegment(mTri[k + 2], mTri[k]);
 		}
 		return result;
 	}
 
 	/**
+	 * returns the TIN's vertices. Note that the point objects are created on each call; changes
+	 * to these objects will not affect the TIN geometry.
 	 * @return Vertex-Array (VgPoint!)
 	 */
 	public VgPoint[] getPoints() {
-		return mPoints;
+		VgPoint[] lPoints = new VgPoint[mNumberOfPoints];
+		for (int i = 0; i < mNumberOfPoints; i++) {
+			lPoints[i] = this.getPoint(i);
+		}
+		return lPoints;
 	}
 }
@@ -0,0 +1,441 @@
+/**
+ * Copyright (C) 2007-2015 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * icense version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.Arrays;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.t3dutil.T3dParallelExecutor;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgTIN;
+import org.n52.v3d.triturus.vgis.VgTriangle;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
+
+/**
+ * Spatial index for the triangles of a TIN. The index allows to determine
+ * the triangle containing a given position and the TIN's elevation at this
+ * position without testing every triangle, e.g. to drape markers onto TIN
+ * terrain or to sample profiles.<p>
+ * The triangles are registered in the cells of a uniform bucket grid
+ * covering the TIN's extent (with respect to the x-y-plane); the cell size
+ * is chosen such that a cell holds about two triangles on average. The
+ * bucket contents are held in primitive arrays (compressed sparse row
+ * format). For large TINs, the index may be built by multiple threads.<p>
+ * For <tt>GmSimpleTINGeometry</tt> and <tt>GmHalfEdgeTIN</tt> objects, the
+ * TIN's internal arrays will be referenced; thus, the index has to be
+ * re-built after the TIN geometry has been modified. For other TINs, the
+ * geometry will be copied.
+ *
+ * @author Benno Schmidt
+ */
+public class GmTINSpatialIndex
+{
+    private int mNumberOfTriangles;
+    private double[] mXYZ; // vertex coordinates
+    private int[] mTri; // 3 vertex indices per triangle
+
+    private double mX0, mY0, mInvCellSize;
+    private int mNX, mNY;
+    private int[] mCellStart; // triangles of cell c: mCellTri[mCellStart[c]] ... mCellTri[mCellStart[c + 1] - 1]
+    private int[] mCellTri;
+
+    private int mNumberOfThreads;
+    private int mMinBatchPerThread = 16384;
+
+    /**
+     * Constructor. The index will be built using all available processors.
+     *
+     * @param pTIN TIN
+     * @throws T3dException
+     */
+    public GmTINSpatialIndex(VgTIN pTIN) throws T3dException {
+        this(pTIN, T3dParallelExecutor.availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pTIN TIN
+     * @param pNumberOfThreads Number of threads to be used for index
+     * construction and batch queries
+     * @throws T3dException
+     */
+    public GmTINSpatialIndex(VgTIN pTIN, int pNumberOfThreads)
+        throws T3dException
+    {
+        if (pTIN == null) {
+            throw new T3dException("TIN is missing.");
+        }
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+        this.provideGeometry(pTIN);
+        this.build();
+    }
+
+    private void provideGeometry(VgTIN pTIN)
+    {
+        mNumberOfTriangles = pTIN.numberOfTriangles();
+        if (pTIN instanceof GmSimpleTINGeometry) {
+            mXYZ = ((GmSimpleTINGeometry) pTIN).getXYZArray();
+            mTri = ((GmSimpleTINGeometry) pTIN).getTriangleArray();
+        }
+        else if (pTIN instanceof GmHalfEdgeTIN) {
+            mXYZ = ((GmHalfEdgeTIN) pTIN).getXYZArray();
+            mTri = ((GmHalfEdgeTIN) pTIN).getTriangleArray();
+        }
+        else if (pTIN instanceof VgIndexedTIN) {
+            VgIndexedTIN tin = (VgIndexedTIN) pTIN;
+            int n = tin.numberOfPoints();
+            mXYZ = new double[3 * n];
+            for (int i = 0; i < n; i++) {
+                VgPoint p = tin.getPoint(i);
+                mXYZ[3 * i] = p.getX();
+                mXYZ[3 * i + 1] = p.getY();
+                mXYZ[3 * i + 2] = p.getZ();
+            }
+            mTri = new int[3 * mNumberOfTriangles];
+            for (int t = 0; t < mNumberOfTriangles; t++) {
+                System.arraycopy(
+                    tin.getTriangleVertexIndices(t), 0, mTri, 3 * t, 3);
+            }
+        }
+        else {
+            // No shared vertices, three separate corners per triangle:
+            mXYZ = new double[9 * mNumberOfTriangles];
+            mTri = new int[3 * mNumberOfTriangles];
+            for (int t = 0; t < mNumberOfTriangles; t++) {
+                VgTriangle tri = pTIN.getTriangle(t);
+                VgPoint[] c = tri.getCornerPoints();
+                for (int k = 0; k < 3; k++) {
+                    mXYZ[9 * t + 3 * k] = c[k].getX();
+                    mXYZ[9 * t + 3 * k + 1] = c[k].getY();
+                    mXYZ[9 * t + 3 * k + 2] = c[k].getZ();
+                    mTri[3 * t + k] = 3 * t + k;
+                }
+            }
+        }
+    }
+
+    private void build()
+    {
+        final int nTri = mNumberOfTriangles;
+
+        double xMin = Double.POSITIVE_INFINITY, xMax = Double.NEGATIVE_INFINITY;
+        double yMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < 3 * nTri; k++) {
+            double x = mXYZ[3 * mTri[k]], y = mXYZ[3 * mTri[k] + 1];
+            if (x < xMin) xMin = x;
+            if (x > xMax) xMax = x;
+            if (y < yMin) yMin = y;
+            if (y > yMax) yMax = y;
+        }
+        if (nTri == 0) {
+            xMin = xMax = yMin = yMax = 0.;
+        }
+
+        // Cell size: about two triangles per cell
+        double w = xMax - xMin, h = yMax - yMin;
+        double cs = Math.sqrt(Math.max(w * h, 0.) / Math.max(1., nTri / 2.));
+        if (!(cs > 0.)) {
+            cs = Math.max(Math.max(w, h), 1.);
+        }
+        mNX = (int) Math.min(Math.floor(w / cs) + 1, 1 << 15);
+        mNY = (int) Math.min(Math.floor(h / cs) + 1, 1 << 15);
+        cs = Math.max(cs, Math.max(w / mNX, h / mNY) * (1. + 1e-12));
+        mX0 = xMin;
+        mY0 = yMin;
+        mInvCellSize = 1. / cs;
+
+        final int nCells = mNX * mNY;
+        int nBands = Math.min(
+            mNumberOfThreads, Math.max(1, nTri / mMinBatchPerThread));
+        final int[][] counts = new int[nBands][];
+
+        // 1. Count cell entries per band:
+        T3dParallelExecutor.execute(0, nBands, nBands,
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    for (int b = pFrom; b < pTo; b++) {
+                        int[] cnt = new int[nCells];
+                        forCells(bandStart(b, counts.length),
+                            bandStart(b + 1, counts.length), cnt, null);
+                        counts[b] = cnt;
+                    }
+                }
+            });
+
+        // 2. Prefix sums; counts[b][c] becomes band b's fill position in cell c:
+        mCellStart = new int[nCells + 1];
+        int pos = 0;
+        for (int c = 0; c < nCells; c++) {
+            mCellStart[c] = pos;
+            for (int b = 0; b < nBands; b++) {
+                int n = counts[b][c];
+                counts[b][c] = pos;
+                pos += n;
+            }
+        }
+        mCellStart[nCells] = pos;
+        mCellTri = new int[pos];
+
+        // 3. Fill cells; the triangles of every cell will be sorted by index:
+        T3dParallelExecutor.execute(0, nBands, nBands,
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    for (int b = pFrom; b < pTo; b++) {
+                        forCells(bandStart(b, counts.length),
+                            bandStart(b + 1, counts.length), counts[b], mCellTri);
+                    }
+                }
+            });
+    }
+
+    private int bandStart(int b, int nBands) {
+        return (int) ((long) mNumberOfTriangles * b / nBands);
+    }
+
+    // Registers the triangles pFrom ... pTo - 1 in the cells overlapped by
+    // their bounding-boxes. If pDst is null, the triangles are counted per
+    // cell; otherwise they are written to pDst at the positions given by
+    // pPos.
+    private void forCells(int pFrom, int pTo, int[] pPos, int[] pDst)
+    {
+        for (int t = pFrom; t < pTo; t++) {
+            int k0 = 3 * mTri[3 * t], k1 = 3 * mTri[3 * t + 1], k2 = 3 * mTri[3 * t + 2];
+            int cx0 = this.cellX(Math.min(mXYZ[k0], Math.min(mXYZ[k1], mXYZ[k2])));
+            int cx1 = this.cellX(Math.max(mXYZ[k0], Math.max(mXYZ[k1], mXYZ[k2])));
+            int cy0 = this.cellY(Math.min(mXYZ[k0 + 1], Math.min(mXYZ[k1 + 1], mXYZ[k2 + 1])));
+            int cy1 = this.cellY(Math.max(mXYZ[k0 + 1], Math.max(mXYZ[k1 + 1], mXYZ[k2 + 1])));
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int c = cy * mNX + cx0, c1 = cy * mNX + cx1; c <= c1; c++) {
+                    if (pDst == null)
+                        pPos[c]++;
+                    else
+                        pDst[pPos[c]++] = t;
+                }
+            }
+        }
+    }
+
+    private int cellX(double x) {
+        int cx = (int) Math.floor((x - mX0) * mInvCellSize);
+        return cx < 0 ? 0 : (cx >= mNX ? mNX - 1 : cx);
+    }
+
+    private int cellY(double y) {
+        int cy = (int) Math.floor((y - mY0) * mInvCellSize);
+        return cy < 0 ? 0 : (cy >= mNY ? mNY - 1 : cy);
+    }
+
+    /**
+     * returns the number of indexed triangles.
+     *
+     * @return Number of triangles
+     */
+    public int numberOfTriangles() {
+        return mNumberOfTriangles;
+    }
+
+    /**
+     * returns the edge length of the index cells. Envelope queries of about
+     * this size will touch only a few triangles.
+     *
+     * @return Cell size
+     */
+    public double getCellSize() {
+        return 1. / mInvCellSize;
+    }
+
+    /**
+     * determines the triangle containing the given position (with respect
+     * to the x-y-plane). Positions on a triangle's edges are considered as
+     * inside; if a position lies on an edge shared by two triangles, the
+     * triangle with the lower index will be returned.
+     *
+     * @param pX x-coordinate
+     * @param pY y-coordinate
+     * @return Triangle index, or -1 if the position lies outside the TIN
+     */
+    public int findTriangle(double pX, double pY)
+    {
+        double fx = (pX - mX0) * mInvCellSize, fy = (pY - mY0) * mInvCellSize;
+        if (!(fx >= 0. && fy >= 0. && fx <= mNX && fy <= mNY)) {
+            return -1; // also for NaN coordinates
+        }
+        int c = Math.min((int) fy, mNY - 1) * mNX + Math.min((int) fx, mNX - 1);
+        for (int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+            int t = mCellTri[k];
+            if (this.contains(t, pX, pY)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int t, double pX, double pY)
+    {
+        int k0 = 3 * mTri[3 * t], k1 = 3 * mTri[3 * t + 1], k2 = 3 * mTri[3 * t + 2];
+        double x0 = mXYZ[k0], y0 = mXYZ[k0 + 1];
+        double x1 = mXYZ[k1], y1 = mXYZ[k1 + 1];
+        double x2 = mXYZ[k2], y2 = mXYZ[k2 + 1];
+        double d0 = (x1 - x0) * (pY - y0) - (y1 - y0) * (pX - x0);
+        double d1 = (x2 - x1) * (pY - y1) - (y2 - y1) * (pX - x1);
+        double d2 = (x0 - x2) * (pY - y2) - (y0 - y2) * (pX - x2);
+        double det = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (det > 0.)
+            return d0 >= 0. && d1 >= 0. && d2 >= 0.;
+        if (det < 0.)
+            return d0 <= 0. && d1 <= 0. && d2 <= 0.;
+        return false; // degenerated triangle
+    }
+
+    // linear interpolation inside triangle t
+    private double interpolate(int t, double pX, double pY)
+    {
+        int k0 = 3 * mTri[3 * t], k1 = 3 * mTri[3 * t + 1], k2 = 3 * mTri[3 * t + 2];
+        double x0 = mXYZ[k0], y0 = mXYZ[k0 + 1], z0 = mXYZ[k0 + 2];
+        double dx1 = mXYZ[k1] - x0, dy1 = mXYZ[k1 + 1] - y0;
+        double dx2 = mXYZ[k2] - x0, dy2 = mXYZ[k2 + 1] - y0;
+        double det = dx1 * dy2 - dy1 * dx2;
+        double px = pX - x0, py = pY - y0;
+        double u = (px * dy2 - py * dx2) / det;
+        double v = (dx1 * py - dy1 * px) / det;
+        return z0 + u * (mXYZ[k1 + 2] - z0) + v * (mXYZ[k2 + 2] - z0);
+    }
+
+    /**
+     * returns the TIN's elevation at the given position. The elevation will
+     * be interpolated linearly inside the triangle containing the position.
+     *
+     * @param pX x-coordinate
+     * @param pY y-coordinate
+     * @return Elevation, or <tt>Double.NaN</tt> for positions outside the TIN
+     */
+    public double heightAt(double pX, double pY)
+    {
+        int t = this.findTriangle(pX, pY);
+        return t < 0 ? Double.NaN : this.interpolate(t, pX, pY);
+    }
+
+    /**
+     * determines the TIN's elevations for a batch of positions. For
+     * positions outside the TIN, the result will be <tt>Double.NaN</tt>.
+     * Large batches will be processed by multiple threads.
+     *
+     * @param pXY Packed positions <tt>{x0, y0, x1, y1, ...}</tt>
+     * @param pZ Result array; at least <tt>pXY.length / 2</tt> elements
+     * @throws T3dException
+     */
+    public void heightsAt(final double[] pXY, final double[] pZ)
+        throws T3dException
+    {
+        int n = pXY.length / 2;
+        if (pZ.length < n) {
+            throw new T3dException("Result array too small.");
+        }
+        int nThreads = Math.min(
+            mNumberOfThreads, Math.max(1, n / mMinBatchPerThread));
+        T3dParallelExecutor.execute(0, n, nThreads,
+            new T3dParallelExecutor.RangeTask() {
+                public void process(int pFrom, int pTo) {
+                    for (int k = pFrom; k < pTo; k++) {
+                        pZ[k] = heightAt(pXY[2 * k], pXY[2 * k + 1]);
+                    }
+                }
+            });
+    }
+
+    /**
+     * determines the triangles whose bounding-boxes intersect the given
+     * rectangle (with respect to the x-y-plane).
+     *
+     * @param pXMin Minimal x-coordinate
+     * @param pXMax Maximal x-coordinate
+     * @param pYMin Minimal y-coordinate
+     * @param pYMax Maximal y-coordinate
+     * @return Triangle indices in ascending order
+     */
+    public int[] trianglesInEnvelope(
+        double pXMin, double pXMax, double pYMin, double pYMax)
+    {
+        if (mNumberOfTriangles == 0 || !(pXMin <= pXMax && pYMin <= pYMax)) {
+            return new int[0];
+        }
+        int qx0 = this.cellX(pXMin), qx1 = this.cellX(pXMax);
+        int qy0 = this.cellY(pYMin), qy1 = this.cellY(pYMax);
+
+        int[] res = new int[16];
+        int n = 0;
+        for (int cy = qy0; cy <= qy1; cy++) {
+            for (int cx = qx0; cx <= qx1; cx++) {
+                int c = cy * mNX + cx;
+                for (int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                    int t = mCellTri[k];
+                    int k0 = 3 * mTri[3 * t], k1 = 3 * mTri[3 * t + 1], k2 = 3 * mTri[3 * t + 2];
+                    double txMin = Math.min(mXYZ[k0], Math.min(mXYZ[k1], mXYZ[k2]));
+                    double txMax = Math.max(mXYZ[k0], Math.max(mXYZ[k1], mXYZ[k2]));
+                    double tyMin = Math.min(mXYZ[k0 + 1], Math.min(mXYZ[k1 + 1], mXYZ[k2 + 1]));
+                    double tyMax = Math.max(mXYZ[k0 + 1], Math.max(mXYZ[k1 + 1], mXYZ[k2 + 1]));
+                    if (txMax < pXMin || txMin > pXMax || tyMax < pYMin || tyMin > pYMax) {
+                        continue;
+                    }
+                    // Report each triangle only once, namely for the first
+                    // cell shared by the query range and the triangle:
+                    if (cx != Math.max(qx0, this.cellX(txMin))
+                        || cy != Math.max(qy0, this.cellY(tyMin))) {
+                        continue;
+                    }
+                    if (n == res.length) {
+                        res = T3dArrays.copyOf(res, 2 * n);
+                    }
+                    res[n++] = t;
+                }
+            }
+        }
+        res = T3dArrays.copyOf(res, n);
+        Arrays.sort(res);
+        return res;
+    }
+
+    /**
+     * determines the triangles whose bounding-boxes intersect the given
+     * envelope (with respect to the x-y-plane).
+     *
+     * @param pEnv Envelope
+     * @return Triangle indices in ascending order
+     */
+    public int[] trianglesInEnvelope(VgEnvelope pEnv) {
+        return this.trianglesInEnvelope(
+            pEnv.getXMin(), pEnv.getXMax(), pEnv.getYMin(), pEnv.getYMax());
+    }
+}
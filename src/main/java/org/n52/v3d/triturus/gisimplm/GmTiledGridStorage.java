@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Cell-storage engine that splits an elevation grid into fixed-size tiles. 
+ * Tiles will be loaded on demand from a {@link GmGridTileSource} and kept in 
+ * a size-bounded cache; if the cache is full, the least recently used tile 
+ * will be dropped. Thus, operations that touch only a small part of a large 
+ * elevation grid (e.g. profile extraction or point sampling inside a small 
+ * envelope) will only read the tiles they need.<p>
+ * Modified tiles will be written back to the tile source when they are 
+ * dropped from the cache or when <tt>flush()</tt> is called. Modifications 
+ * are possible only if the tile source is writable.<p>
+ * Note that all accesses are synchronized, so the storage may be used by 
+ * multiple threads.
+ *
+ * @see GmSimpleElevationGrid#GmSimpleElevationGrid(GmSimple2dGridGeometry, GmGridStorage)
+ * @author Benno Schmidt
+ */
+public class GmTiledGridStorage extends GmGridStorage
+{
+    private GmGridTileSource mSource;
+    private int mRows, mCols;
+    private int mTileRows, mTileCols;
+    private int mNumberOfTileCols;
+    private int mMaxTiles;
+
+    private LinkedHashMap<Integer, Tile> mCache;
+    private Tile mLastTile = null; // most recently accessed tile
+
+    private long mHits = 0, mMisses = 0;
+
+    private static class Tile 
+    {
+        int row0, col0, rows, cols;
+        double[] val;
+        boolean dirty = false;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pSource Backing store providing the grid's tiles
+     * @param pTileRows Number of rows per tile
+     * @param pTileCols Number of columns per tile
+     * @param pMaxTiles Maximal number of tiles kept in memory
+     * @throws T3dException if a parameter is illegal
+     */
+    public GmTiledGridStorage(
+        GmGridTileSource pSource, int pTileRows, int pTileCols, int pMaxTiles) 
+        throws T3dException
+    {
+        if (pSource == null) {
+            throw new T3dException("Grid tile source is missing.");
+        }
+        if (pTileRows <= 0 || pTileCols <= 0 || pMaxTiles <= 0) {
+            throw new T3dException("Illegal tile cache parameters.");
+        }
+        if ((long) pTileRows * pTileCols > Integer.MAX_VALUE - 8) {
+            throw new T3dException("Tile size too large.");
+        }
+
+        mSource = pSource;
+        mRows = pSource.numberOfRows();
+        mCols = pSource.numberOfColumns();
+        mTileRows = pTileRows;
+        mTileCols = pTileCols;
+        mNumberOfTileCols = (mCols + mTileCols - 1) / mTileCols;
+        mMaxTiles = pMaxTiles;
+
+        // Access-ordered map, i.e. the eldest entry is the least recently 
+        // used one:
+        mCache = new LinkedHashMap<Integer, Tile>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Integer, Tile> pEldest) 
+            {
+                if (size() > mMaxTiles) {
+                    Tile t = pEldest.getValue();
+                    writeBack(t);
+                    if (t == mLastTile) 
+                        mLastTile = null;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    /**
+     * returns the number of rows per tile.
+     *
+     * @return Tile height
+     */
+    public int getTileRows() {
+        return mTileRows;
+    }
+
+    /**
+     * returns the number of columns per tile.
+     *
+     * @return Tile width
+     */
+    public int getTileColumns() {
+        return mTileCols;
+    }
+
+    public synchronized double get(int pRow, int pCol) 
+    {
+        Tile t = this.tile(pRow, pCol);
+        return t.val[(pRow - t.row0) * t.cols + (pCol - t.col0)];
+    }
+
+    public synchronized void set(int pRow, int pCol, double pZ) 
+        throws T3dException
+    {
+        if (!mSource.isWritable()) {
+            throw new T3dException("Grid tile source is not writable.");
+        }
+        Tile t = this.tile(pRow, pCol);
+        t.val[(pRow - t.row0) * t.cols + (pCol - t.col0)] = pZ;
+        t.dirty = true;
+    }
+
+    public synchronized void getBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+    {
+        super.getBlock(pRow0, pCol0, pRows, pCols, pDst);
+    }
+
+    public synchronized void setBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+        throws T3dException
+    {
+        super.setBlock(pRow0, pCol0, pRows, pCols, pSrc);
+    }
+
+    /**
+     * returns the number of bytes occupied by the currently cached tiles.
+     */
+    public synchronized long byteSize() 
+    {
+        long size = 0;
+        for (Tile t : mCache.values()) {
+            size += 8L * t.val.length;
+        }
+        return size;
+    }
+
+    /**
+     * returns the number of tile accesses that could be served from the 
+     * cache.
+     *
+     * @return Number of cache hits
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * returns the number of tile accesses that required loading a tile from 
+     * the tile source.
+     *
+     * @return Number of cache misses
+     */
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * resets the cache hit and miss counters.
+     */
+    public synchronized void resetStatistics() {
+        mHits = 0;
+        mMisses = 0;
+    }
+
+    /**
+     * returns the number of tiles currently held in the cache.
+     *
+     * @return Number of cached tiles
+     */
+    public synchronized int numberOfCachedTiles() {
+        return mCache.size();
+    }
+
+    /**
+     * writes all modified tiles back to the tile source.
+     */
+    public synchronized void flush() 
+    {
+        for (Tile t : mCache.values()) {
+            this.writeBack(t);
+        }
+    }
+
+    /**
+     * writes all modified tiles back to the tile source and empties the 
+     * cache.
+     */
+    public synchronized void clear() 
+    {
+        Iterator<Tile> it = mCache.values().iterator();
+        while (it.hasNext()) {
+            this.writeBack(it.next());
+            it.remove();
+        }
+        mLastTile = null;
+    }
+
+    // Returns the tile holding the given grid element, loading it if 
+    // necessary:
+    private Tile tile(int pRow, int pCol)
+    {
+        Tile t = mLastTile;
+        if (t != null && 
+            pRow >= t.row0 && pRow < t.row0 + t.rows && 
+            pCol >= t.col0 && pCol < t.col0 + t.cols) 
+        {
+            mHits++;
+            return t;
+        }
+
+        int ti = pRow / mTileRows, tj = pCol / mTileCols;
+        Integer key = Integer.valueOf(ti * mNumberOfTileCols + tj);
+        t = mCache.get(key);
+        if (t != null) {
+            mHits++;
+        } else {
+            mMisses++;
+            t = new Tile();
+            t.row0 = ti * mTileRows;
+            t.col0 = tj * mTileCols;
+            t.rows = Math.min(mTileRows, mRows - t.row0);
+            t.cols = Math.min(mTileCols, mCols - t.col0);
+            t.val = new double[t.rows * t.cols];
+            mSource.readBlock(t.row0, t.col0, t.rows, t.cols, t.val);
+            mCache.put(key, t);
+        }
+        mLastTile = t;
+        return t;
+    }
+
+    private void writeBack(Tile t) 
+    {
+        if (t.dirty) {
+            mSource.writeBlock(t.row0, t.col0, t.rows, t.cols, t.val);
+            t.dirty = false;
+        }
+    }
+}
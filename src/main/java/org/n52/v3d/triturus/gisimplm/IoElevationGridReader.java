@@ -44,6 +44,7 @@ import org.n52.v3d.triturus.core.IoObject;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgPoint;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -70,6 +71,7 @@ public class IoElevationGridReader extends IoObject {
 
     private String mFormat;
     private GmSimpleElevationGrid mElevationGrid = null;
+    private short mStoragePrecision = GmGridStorage.getDefaultPrecision();
 
     /**
      * Identifier to be used to process elevation-grids in ArcInfo ASCII grid
@@ -111,6 +113,46 @@ public class IoElevationGridReader extends IoObject {
         mFormat = pFormat;
     }
 
+    /**
+     * sets the precision of the grid storage used for the elevation-grids 
+     * read. Using <tt>GmGridStorage.cSinglePrecision</tt>, the grids will 
+     * occupy half of the memory. By default, the precision given by 
+     * <tt>GmGridStorage.getDefaultPrecision()</tt> at construction time will 
+     * be used.
+     *
+     * @param pPrecision <tt>GmGridStorage.cDoublePrecision</tt> or 
+     * <tt>GmGridStorage.cSinglePrecision</tt>
+     * @throws T3dException if an illegal value is given
+     * @see GmGridStorage#cSinglePrecision
+     */
+    public void setStoragePrecision(short pPrecision) throws T3dException 
+    {
+        if (pPrecision != GmGridStorage.cDoublePrecision 
+            && pPrecision != GmGridStorage.cSinglePrecision) {
+            throw new T3dException("Illegal grid storage precision.");
+        }
+        mStoragePrecision = pPrecision;
+    }
+
+    /**
+     * returns the precision of the grid storage used for the elevation-grids 
+     * read.
+     *
+     * @return <tt>GmGridStorage.cDoublePrecision</tt> or 
+     * <tt>GmGridStorage.cSinglePrecision</tt>
+     */
+    public short getStoragePrecision() {
+        return mStoragePrecision;
+    }
+
+    private GmSimpleElevationGrid createGrid(
+        int pCols, int pRows, VgPoint pOrigin, double pDeltaX, double pDeltaY) 
+    {
+        return new GmSimpleElevationGrid(
+            new GmSimple2dGridGeometry(pCols, pRows, pOrigin, pDeltaX, pDeltaY),
+            GmGridStorage.create(pRows, pCols, mStoragePrecision));
+    }
+
     /**
      * reads an elevation-grid from a file or URL location.<br /><br />
      *
@@ -228,7 +270,7 @@ public class IoElevationGridReader extends IoObject {
         }
 
         // Konstruktion des Elevation-Grids:
-        mElevationGrid = new GmSimpleElevationGrid(
+        mElevationGrid = this.createGrid(
                 pWidth, pHeight,
                 new GmPoint(pEnv.getXMin(), pEnv.getYMin(), 0), // Ursprungspunkt
                 pEnv.getExtentX() / pWidth, // Gitterweite x-Richtung
@@ -261,7 +303,7 @@ public class IoElevationGridReader extends IoObject {
             double yFrom = yllcorner + cellSize / 2.; // da Lattice, nicht Grid!
 
             // Konstruktion des Elevation-Grids:
-            mElevationGrid = new GmSimpleElevationGrid(
+            mElevationGrid = this.createGrid(
                     nCols, nRows,
                     new GmPoint(xFrom, yFrom, 0.), // Ursprungspunkt
                     cellSize, // Gitterweite x-Richtung
@@ -398,7 +440,7 @@ public class IoElevationGridReader extends IoObject {
             int nRows = this.toInt(tok4);
 
             // Konstruktion des Elevation-Grids:
-            mElevationGrid = new GmSimpleElevationGrid(
+            mElevationGrid = this.createGrid(
                     nCols, nRows,
                     new GmPoint(xFrom, yFrom, 0.), // Ursprungspunkt
                     (xTo - xFrom) / ((double) nCols - 1.), // Gitterweite x-Richtung
@@ -583,7 +625,7 @@ public class IoElevationGridReader extends IoObject {
             }
 
             // Konstruktion des Elevation-Grids:
-            mElevationGrid = new GmSimpleElevationGrid(
+            mElevationGrid = this.createGrid(
                     ((Integer) header.get("nrows")).intValue(), ((Integer) header.get("ncols")).intValue(),
                     new GmPoint(LLx, LLy, 0.), // Ursprungspunkt
                     Dx, // Gitterweite x-Richtung
@@ -704,7 +746,7 @@ public class IoElevationGridReader extends IoObject {
             double xFrom = xllcorner + xSpacing / 2.; // da Lattice, nicht Grid!
             double yFrom = yllcorner + zSpacing / 2.; // da Lattice, nicht Grid!
             
-            mElevationGrid = new GmSimpleElevationGrid(
+            mElevationGrid = this.createGrid(
                     nCols, nRows,
                     new GmPoint(xFrom, yFrom, 0.), // Ursprungspunkt
                     xSpacing, // Gitterweite x-Richtung
@@ -259,10 +259,12 @@ public class IoElevationGridWriter extends IoAbstractWriter
             lDat.newLine();
 
             // Write elevation-values for grid vertices:
+            double[] row = new double[lGeom.numberOfColumns()];
             for (int i = lGeom.numberOfRows() - 1; i >= 0; i--) {
+                pGrid.getRow(i, row);
                 for (int j = 0; j < lGeom.numberOfColumns(); j++) {
-                    if (pGrid.isSet(i, j)) {
-                        lDat.write(dfZ.format(pGrid.getValue(i, j)));
+                    if (!Double.isNaN(row[j])) {
+                        lDat.write(dfZ.format(row[j]));
                     }
                     else {
                         lDat.write(mNoDataValueStr);
@@ -666,9 +668,11 @@ public class IoElevationGridWriter extends IoAbstractWriter
 
             DecimalFormat dfZ = this.getDecimalFormatZ();
 
+            double[] row = new double[lGeom.numberOfColumns()];
             for (int i = lGeom.numberOfRows() - 1; i >= 0; i--) {
+                pGrid.getCompleteRow(i, row);
                 for (int j = 0; j < lGeom.numberOfColumns(); j++) {
-                    lDat.write(dfZ.format(pGrid.getValue(i, j)) + ",");
+                    lDat.write(dfZ.format(row[j]) + ",");
                 }
                 lDat.newLine();
             }
@@ -837,9 +841,11 @@ public class IoElevationGridWriter extends IoAbstractWriter
             DecimalFormat dfZ = this.getDecimalFormatZ();
 
             // Elevation-values:
+            double[] row = new double[lGeom.numberOfColumns()];
             for (int i = lGeom.numberOfRows() - 1; i >= 0; i--) {
+                pGrid.getCompleteRow(i, row);
                 for (int j = 0; j < lGeom.numberOfColumns(); j++) {
-                    lDat.write("" + dfZ.format(pGrid.getValue(i, j)) + " ");
+                    lDat.write("" + dfZ.format(row[j]) + " ");
                 }
             }
             
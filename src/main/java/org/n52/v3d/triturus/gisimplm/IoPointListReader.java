@@ -82,6 +82,22 @@ public class IoPointListReader extends IoObject
         return mLogString;
     }
 
+    /**
+     * Handler that receives the coordinates of the points read in by 
+     * {@link IoPointListReader#readFromFile(String, PointHandler)} one by one.
+     */
+    abstract public static class PointHandler 
+    {
+        /**
+         * processes a single point.
+         * 
+         * @param pX x-coordinate
+         * @param pY y-coordinate
+         * @param pZ z-coordinate
+         */
+        abstract public void handlePoint(double pX, double pY, double pZ);
+    }
+
     /** 
      * sets the format type.
      * 
@@ -103,6 +119,34 @@ public class IoPointListReader extends IoObject
      */
     public ArrayList<VgPoint> readFromFile(String pFilename) 
     		throws T3dException, T3dNotYetImplException
+    {
+        mPointList = new ArrayList<VgPoint>();
+
+        this.readFromFile(pFilename, new PointHandler() {
+            public void handlePoint(double pX, double pY, double pZ) {
+                mPointList.add(new GmPoint(pX, pY, pZ));
+            }
+        });
+
+        return mPointList;
+    }
+
+    /**
+     * reads in a set of 3-d points from a file and passes the coordinates of
+     * each point to the given handler. In contrast to 
+     * {@link #readFromFile(String)}, no point objects will be created and no 
+     * point list will be held in memory, i.e. arbitrarily large files can be 
+     * processed this way. Note that a set spatial filter will be applied.
+     * 
+     * @param pFilename File name (with path optionally)
+     * @param pHandler Handler that receives the point coordinates
+     * @return Number of points that have been passed to the handler
+     * @throws org.n52.v3d.triturus.core.T3dException
+     * @throws org.n52.v3d.triturus.core.T3dNotYetImplException
+     * @see FltPointSet2ElevationGrid#addPoint(double, double, double)
+     */
+    public int readFromFile(String pFilename, PointHandler pHandler) 
+    		throws T3dException, T3dNotYetImplException
     {
         int i = 0;
         if (mFormat.equalsIgnoreCase("Plain")) {
@@ -113,8 +157,7 @@ public class IoPointListReader extends IoObject
         try {
             switch (i) {
                 case 1: 
-                	this.readPlainAscii(pFilename); 
-                	break;
+                	return this.readPlainAscii(pFilename, pHandler); 
                 // --> add more types here...
 
                 default: 
@@ -124,17 +167,14 @@ public class IoPointListReader extends IoObject
         catch (T3dException e) {
             throw e;
         }
-
-        return mPointList;
     }
 
-    private void readPlainAscii(String pFilename) throws T3dException
+    private int readPlainAscii(String pFilename, PointHandler pHandler) throws T3dException
     {
     	// TODO: Keep configurable: Separator, x-y-z order, skip point-identifiers etc.
         String line = "";
         int lineNumber = 0;
-
-        mPointList = new ArrayList<VgPoint>();
+        int ct = 0;
 
         try {
             FileReader lFileRead = new FileReader(pFilename);
@@ -142,7 +182,6 @@ public class IoPointListReader extends IoObject
 
             String tok1, tok2, tok3;
             double x, y, z;
-            VgPoint pt = null;
 
             line = lDatRead.readLine();
             while (line != null) {
@@ -156,13 +195,10 @@ public class IoPointListReader extends IoObject
                 y = this.toDouble(tok2);
                 z = this.toDouble(tok3);
 
-                pt = new GmPoint(x, y, z);
-
-                if (mSpatialFilter != null) {
-                    if (mSpatialFilter.contains(pt))
-                        mPointList.add(pt);
-                } else
-                    mPointList.add(pt);
+                if (mSpatialFilter == null || this.passesFilter(x, y, z)) {
+                    pHandler.handlePoint(x, y, z);
+                    ct++;
+                }
 
                 line = lDatRead.readLine();
                 //if (lineNumber % 1000000 == 0) System.out.println("lineNumber = " + lineNumber);
@@ -182,8 +218,19 @@ public class IoPointListReader extends IoObject
             throw new T3dException("Parser error in \"" + pFilename + "\":" + lineNumber);
         }
         //System.out.println("lineNumber = " + lineNumber);
+        return ct;
     } // readPlainAscii()
 
+    // Spatial filter check, equivalent to mSpatialFilter.contains(), but 
+    // without creating a point object:
+    private boolean passesFilter(double x, double y, double z) 
+    {
+        return 
+            x >= mSpatialFilter.getXMin() && x <= mSpatialFilter.getXMax() &&
+            y >= mSpatialFilter.getYMin() && y <= mSpatialFilter.getYMax() &&
+            z >= mSpatialFilter.getZMin() && z <= mSpatialFilter.getZMax();
+    }
+
     /**
      * defines a spatial filter. Points outside the given envelope will be ignored 
      * when importing points. If no filter shall be used (i.e., import all points from 
@@ -38,11 +38,15 @@ import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.VgProfile;
 import org.n52.v3d.triturus.vgis.VgLineString;
 import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 
 /**
  * Writes cross-section data to a file or stream. Cross-section information, 
  * which inside the Triturus framework is held in {@link VgProfile}-objects, 
- * might be written to ASCII or SVG files. 
+ * might be written to ASCII or SVG files.<p>
+ * For SVG output, the profile path may be decimated with respect to the 
+ * target image resolution (see {@link #setDecimationMode(short)}), so that 
+ * the document size does not depend on the number of t-z-pairs. 
  * 
  * @author Benno Schmidt
  */
@@ -62,6 +66,31 @@ public class IoProfileWriter extends IoAbstractWriter
      */
     public static final String ACGEO = "AcGeo";
 
+    /**
+     * Decimation mode: all t-z-pairs will be written (default).
+     */
+    public static final short cNoDecimation = 0;
+
+    /**
+     * Decimation mode: for every pixel column of the SVG image, the first, 
+     * the last, the lowest and the highest vertex will be written. The 
+     * rendered path is the same as for the undecimated profile.
+     */
+    public static final short cMinMaxPerPixel = 1;
+
+    /**
+     * Decimation mode: Douglas-Peucker simplification of the SVG path with 
+     * a tolerance given in pixels.
+     * @see IoProfileWriter#setPixelTolerance(double)
+     */
+    public static final short cDouglasPeucker = 2;
+
+    private int mImageWidth = 500;
+    private int mImageHeight = 300;
+    private short mDecimation = cNoDecimation;
+    private double mPixelTolerance = 0.5;
+
+    private char[] mNumBuf = new char[32];
     
     /**
      * Constructor. As an input parameter, the target format type identifier 
@@ -93,6 +122,53 @@ public class IoProfileWriter extends IoAbstractWriter
         mFormat = pFormat;
     }
 
+    /**
+     * sets the size of the SVG image to be generated. The default size is 
+     * 500 x 300 pixels.
+     * 
+     * @param pWidth Image width in pixels
+     * @param pHeight Image height in pixels
+     * @throws T3dException if the image is too small to hold the diagram
+     */
+    public void setImageSize(int pWidth, int pHeight) throws T3dException
+    {
+        if (pWidth < 100 || pHeight < 120)
+            throw new T3dException("Invalid image size (" + pWidth + " x " + pHeight + ").");
+        mImageWidth = pWidth;
+        mImageHeight = pHeight;
+    }
+
+    /**
+     * sets the decimation mode for the SVG profile path.
+     * 
+     * @param pMode <tt>cNoDecimation</tt>, <tt>cMinMaxPerPixel</tt> or 
+     * <tt>cDouglasPeucker</tt>
+     * @throws T3dException for unknown modes
+     * @see IoProfileWriter#cNoDecimation
+     * @see IoProfileWriter#cMinMaxPerPixel
+     * @see IoProfileWriter#cDouglasPeucker
+     */
+    public void setDecimationMode(short pMode) throws T3dException
+    {
+        if (pMode != cNoDecimation && pMode != cMinMaxPerPixel && pMode != cDouglasPeucker)
+            throw new T3dException("Unknown decimation mode " + pMode + ".");
+        mDecimation = pMode;
+    }
+
+    /**
+     * sets the tolerance for Douglas-Peucker decimation. The default value 
+     * is 0.5 pixels.
+     * 
+     * @param pTolerance Maximal deviation of the simplified path in pixels
+     * @see IoProfileWriter#cDouglasPeucker
+     */
+    public void setPixelTolerance(double pTolerance) throws T3dException
+    {
+        if (!(pTolerance >= 0.))
+            throw new T3dException("Invalid tolerance (" + pTolerance + ").");
+        mPixelTolerance = pTolerance;
+    }
+
     /**
      * writes cross-section data to a file.
      * 
@@ -108,257 +184,433 @@ public class IoProfileWriter extends IoAbstractWriter
         if (mFormat.equalsIgnoreCase(SVG)) i = 2;
         // --> add more types here...
 
-        try {
-            switch (i) {
-                case 1: this.writeAcadGeoProfile(pProfile, pFilename); break;
-                case 2: this.writeSVG(pProfile, pFilename); break;
-                // --> add more types here...
+        if (i == 0)
+            throw new T3dException("Unsupported file format.");
 
-                default: throw new T3dException("Unsupported file format.");
+        try {
+            BufferedWriter lDat = new BufferedWriter(new FileWriter(pFilename), 1 << 16);
+            try {
+                this.write(pProfile, lDat, i);
+            }
+            finally {
+                lDat.close();
             }
         }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + pFilename + "\".");
+        }
         catch (T3dException e) {
             throw e;
         }
+        catch (Throwable e) {
+            throw new T3dException(e.getMessage());
+        }
     }  
 
-    private void writeAcadGeoProfile(VgProfile pProfile, String pFilename) 
+    /**
+     * writes cross-section data to a stream, e.g. to an HTTP response. The 
+     * data will be written using UTF-8 encoding; the stream will be flushed, 
+     * but not closed.
+     * 
+     * @param pProfile Cross-section to be written
+     * @param pStream Output stream
+     * @throws T3dException for framework-specific errors
+     */
+    public void writeToStream(VgProfile pProfile, OutputStream pStream) 
     	throws T3dException
     {
+        int i = 0;
+        if (mFormat.equalsIgnoreCase(ACGEO)) i = 1;
+        if (mFormat.equalsIgnoreCase(SVG)) i = 2;
+        if (i == 0)
+            throw new T3dException("Unsupported file format.");
+
         try {
-            BufferedWriter lDat = new BufferedWriter(new FileWriter(pFilename));
+            BufferedWriter lDat = new BufferedWriter(new OutputStreamWriter(pStream, "UTF-8"), 1 << 16);
+            this.write(pProfile, lDat, i);
+            lDat.flush();
+        }
+        catch (T3dException e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
 
-            lDat.write("PROFILE:");
-            lDat.newLine();
+    private void write(VgProfile pProfile, BufferedWriter pDat, int pFormat) throws IOException
+    {
+        switch (pFormat) {
+            case 1: this.writeAcadGeoProfile(pProfile, pDat); break;
+            case 2: this.writeSVG(pProfile, pDat); break;
+            // --> add more types here...
+        }
+    }
 
-            // Write the stations:
-            VgLineString pDefLine = (VgLineString) pProfile.getGeometry();
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            lDat.write("STATIONS");
+    private void writeAcadGeoProfile(VgProfile pProfile, BufferedWriter lDat) 
+    	throws IOException
+    {
+        lDat.write("PROFILE:");
+        lDat.newLine();
+
+        // Write the stations:
+        VgLineString pDefLine = (VgLineString) pProfile.getGeometry();
+        DecimalFormat dfXY = this.getDecimalFormatXY();
+        lDat.write("STATIONS");
+        lDat.newLine();
+        if (pDefLine.numberOfVertices() > 0) {
+            double t = 0.;
+            lDat.write(dfXY.format(t));
             lDat.newLine();
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
+            VgPoint last = pDefLine.getVertex(0);
+            for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                VgPoint curr = pDefLine.getVertex(i);
+                t += curr.distanceXY(last);
                 lDat.write(dfXY.format(t));
                 lDat.newLine();
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    lDat.write(dfXY.format(t));
-                    lDat.newLine();
-                    last = pDefLine.getVertex(i);
-                }                
-            }
-
-            // Write the z-values:
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            lDat.write("DATA");
-            lDat.newLine();
-            lDat.write("NAME unnamed");
-            lDat.newLine();
-            for (int i = 0; i < pProfile.numberOfTZPairs(); i++) {
-                lDat.write(dfXY.format((pProfile.getTZPair(i))[0]));
-                lDat.write(" ");
-                lDat.write(dfZ.format((pProfile.getTZPair(i))[1]));
-                lDat.newLine();
-            }
+                last = pDefLine.getVertex(i);
+            }                
+        }
 
-            lDat.write("END");
+        // Write the z-values:
+        DecimalFormat dfZ = this.getDecimalFormatZ();
+        lDat.write("DATA");
+        lDat.newLine();
+        lDat.write("NAME unnamed");
+        lDat.newLine();
+        double[] tz = this.tzArray(pProfile);
+        for (int i = 0; i < tz.length; i += 2) {
+            this.writeNumber(lDat, tz[i], this.getPrecisionXY(), dfXY);
+            lDat.write(' ');
+            this.writeNumber(lDat, tz[i + 1], this.getPrecisionZ(), dfZ);
             lDat.newLine();
-
-            lDat.close();
-        }
-        catch (FileNotFoundException e) {
-            throw new T3dException("Could not access file \"" + pFilename + "\".");
-        }
-        catch (Throwable e) {
-            throw new T3dException(e.getMessage());
         }
+
+        lDat.write("END");
+        lDat.newLine();
     } // writeAcadGeoProfile()
 
-    private void writeSVG(VgProfile pProfile, String pFilename) 
-    	throws T3dException
+    private void writeSVG(VgProfile pProfile, BufferedWriter lDat) 
+    	throws IOException
     {
-        int lImageWidth = 500;      // TODO better set from outside
-        int lImageHeight = 300;     // TODO better set from outside
+        int lImageWidth = mImageWidth;
+        int lImageHeight = mImageHeight;
         int lImageBorder = 10;
         int lAddInfoHeight1 = 30;
         int lAddInfoHeight2 = 20;
         int lZAnnotWidth = 30;
         int lTAnnotHeight = 30;
 
-        try {
-            BufferedWriter lDat = new BufferedWriter(new FileWriter(pFilename));
-
-            lDat.write("<?xml version=\"1.0\" standalone=\"no\"?>");
-            lDat.newLine();
-            lDat.write("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\"");
-            lDat.write(" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">");
-            lDat.newLine();
-            lDat.write("<svg width=\"" + lImageWidth + "px\" height=\"" + lImageHeight + "px\" version=\"1.1\" id=\"Layer_1\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" xml:space=\"preserve\">");
-            lDat.write(" version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\">");
-            lDat.newLine();
-            lDat.write("  <desc>Triturus profile export</desc>");
-            lDat.newLine();
-            lDat.write("  <rect width=\"" + lImageWidth + "\" height=\"" + lImageHeight + "\" style=\"fill:rgb(255,255,255)\"/>");
-            lDat.newLine();
-
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            this.setCanvasPrf( // Profil-Canvas
-                lImageBorder + lZAnnotWidth, // xMin
-                lImageWidth - lImageBorder, // xMax
-                lImageBorder + lAddInfoHeight1, // yMin
-                lImageHeight - lImageBorder - lAddInfoHeight2 - lTAnnotHeight); // yMax
+        lDat.write("<?xml version=\"1.0\" standalone=\"no\"?>");
+        lDat.newLine();
+        lDat.write("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\"");
+        lDat.write(" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">");
+        lDat.newLine();
+        lDat.write("<svg width=\"" + lImageWidth + "px\" height=\"" + lImageHeight + "px\" version=\"1.1\" id=\"Layer_1\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" xml:space=\"preserve\">");
+        lDat.newLine();
+        lDat.write("  <desc>Triturus profile export</desc>");
+        lDat.newLine();
+        lDat.write("  <rect width=\"" + lImageWidth + "\" height=\"" + lImageHeight + "\" style=\"fill:rgb(255,255,255)\"/>");
+        lDat.newLine();
+
+        DecimalFormat dfXY = this.getDecimalFormatXY();
+        DecimalFormat dfZ = this.getDecimalFormatZ();
+
+        this.setCanvasPrf( // Profil-Canvas
+            lImageBorder + lZAnnotWidth, // xMin
+            lImageWidth - lImageBorder, // xMax
+            lImageBorder + lAddInfoHeight1, // yMin
+            lImageHeight - lImageBorder - lAddInfoHeight2 - lTAnnotHeight); // yMax
+        this.setTZRange(
+            pProfile.tStart(), pProfile.tEnd(), pProfile.zMin(), pProfile.zMax());
+
+        double[] zLevels = this.calculateZLevels(mZMin, mZMax);
+        if (zLevels != null)
             this.setTZRange(
-                pProfile.tStart(), pProfile.tEnd(), pProfile.zMin(), pProfile.zMax());
-
-            double[] zLevels = this.calculateZLevels(mZMin, mZMax);
-            if (zLevels != null)
-                this.setTZRange(
-                    pProfile.tStart(), pProfile.tEnd(), zLevels[0], zLevels[zLevels.length - 1]);
-
-            // Box top (headline):
-            lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + lImageBorder + "\" ");
-            lDat.write("width=\"" + (mCanvPrfXMax - lImageBorder) + "\" ");
-            lDat.write("height=\"" + lAddInfoHeight1 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
-            lDat.newLine();
-            lDat.write("  <g style=\"font-family:sans-serif;font-size:14;fill:rgb(0,0,40)\">"); 
-            lDat.newLine();
-            lDat.write("    <text x=\"" + (lImageBorder + 6) + "\" y=\"" + (lImageBorder + 6 + 14) + "\">");
-            lDat.write("Triturus cross-section profile</text>");  // todo von au�en setzbar machen, z. B. sdi.suite terrainServer cross-section profile
-            lDat.newLine();
-            lDat.write("  </g>");
+                pProfile.tStart(), pProfile.tEnd(), zLevels[0], zLevels[zLevels.length - 1]);
+
+        // Box top (headline):
+        lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + lImageBorder + "\" ");
+        lDat.write("width=\"" + (mCanvPrfXMax - lImageBorder) + "\" ");
+        lDat.write("height=\"" + lAddInfoHeight1 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
+        lDat.newLine();
+        lDat.write("  <g style=\"font-family:sans-serif;font-size:14;fill:rgb(0,0,40)\">"); 
+        lDat.newLine();
+        lDat.write("    <text x=\"" + (lImageBorder + 6) + "\" y=\"" + (lImageBorder + 6 + 14) + "\">");
+        lDat.write("Triturus cross-section profile</text>");  // todo von au�en setzbar machen, z. B. sdi.suite terrainServer cross-section profile
+        lDat.newLine();
+        lDat.write("  </g>");
+        lDat.newLine();
+
+        // Box for text annotations:
+        lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + mCanvPrfYMin + "\" ");
+        lDat.write("width=\"" + lZAnnotWidth + "\" ");
+        lDat.write("height=\"" + (mCanvPrfYMax - mCanvPrfYMin) + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
+        lDat.newLine();
+        lDat.write("  <rect x=\"" + mCanvPrfXMin + "\" y=\"" + mCanvPrfYMax + "\" ");
+        lDat.write("width=\"" + (mCanvPrfXMax - mCanvPrfXMin) + "\" ");
+        lDat.write("height=\"" + lTAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
+        lDat.newLine();
+        lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + mCanvPrfYMax + "\" ");
+        lDat.write("width=\"" + lZAnnotWidth + "\" ");
+        lDat.write("height=\"" + lTAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
+        lDat.newLine();
+
+        // Box bottom (copyright):
+        lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + (mCanvPrfYMax + lTAnnotHeight) + "\" ");
+        lDat.write("width=\"" + (mCanvPrfXMax - lImageBorder) + "\" ");
+        lDat.write("height=\"" + lAddInfoHeight2 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
+        lDat.newLine();
+        lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
+        lDat.newLine();
+        lDat.write("    <text x=\"" + (lImageBorder + 6) + "\" y=\"" + (mCanvPrfYMax + lTAnnotHeight + 14) + "\">");
+        lDat.write("Generated by 52N Triturus</text>");
+        lDat.newLine();
+        lDat.write("  </g>");
+        lDat.newLine();
+
+        // Stations (vertical lines):
+        VgLineString pDefLine = (VgLineString) pProfile.getGeometry();
+        if (pDefLine.numberOfVertices() > 0) {
+            double t = 0.;
+            lDat.write("  <line ");
+            lDat.write("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
+            lDat.write("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
+            lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
             lDat.newLine();
+            VgPoint last = pDefLine.getVertex(0);
+            for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                VgPoint curr = pDefLine.getVertex(i);
+                t += curr.distanceXY(last);
+                lDat.write("  <line ");
+                lDat.write("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
+                lDat.write("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
+                lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
+                lDat.newLine();
+                last = pDefLine.getVertex(i);
+            }                
+        }
 
-            // Box for text annotations:
-            lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + mCanvPrfYMin + "\" ");
-            lDat.write("width=\"" + lZAnnotWidth + "\" ");
-            lDat.write("height=\"" + (mCanvPrfYMax - mCanvPrfYMin) + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-            lDat.newLine();
-            lDat.write("  <rect x=\"" + mCanvPrfXMin + "\" y=\"" + mCanvPrfYMax + "\" ");
-            lDat.write("width=\"" + (mCanvPrfXMax - mCanvPrfXMin) + "\" ");
-            lDat.write("height=\"" + lTAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-            lDat.newLine();
-            lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + mCanvPrfYMax + "\" ");
-            lDat.write("width=\"" + lZAnnotWidth + "\" ");
-            lDat.write("height=\"" + lTAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-            lDat.newLine();
+        // Elevation levels (horizontal lines):
+        if (zLevels != null) {
+            for (int i = 0; i < zLevels.length; i++) {
+                lDat.write("  <line ");
+                lDat.write("x1=\"" + mCanvPrfXMin + "\" y1=\"" + this.transformZ(zLevels[i]) + "\" ");
+                lDat.write("x2=\"" + mCanvPrfXMax + "\" y2=\"" + this.transformZ(zLevels[i]) + "\" ");
+                lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
+                lDat.newLine();
+            }
+        }
 
-            // Box bottom (copyright):
-            lDat.write("  <rect x=\"" + lImageBorder + "\" y=\"" + (mCanvPrfYMax + lTAnnotHeight) + "\" ");
-            lDat.write("width=\"" + (mCanvPrfXMax - lImageBorder) + "\" ");
-            lDat.write("height=\"" + lAddInfoHeight2 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
-            lDat.newLine();
+        // Annotation t-axis:
+        if (pDefLine.numberOfVertices() > 0) {
+            double t = 0.;
             lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
             lDat.newLine();
-            lDat.write("    <text x=\"" + (lImageBorder + 6) + "\" y=\"" + (mCanvPrfYMax + lTAnnotHeight + 14) + "\">");
-            lDat.write("Generated by 52N Triturus</text>");
+            lDat.write("    <text writing-mode=\"tb-rl\" x=\"" + (this.transformT(0) + 5) + "\" y=\"" + (mCanvPrfYMax + 3) + "\">");
+            lDat.write("0 m</text>");
             lDat.newLine();
             lDat.write("  </g>");
             lDat.newLine();
-
-            // Stations (vertical lines):
-            VgLineString pDefLine = (VgLineString) pProfile.getGeometry();
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
-                lDat.write("  <line ");
-                lDat.write("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
-                lDat.write("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
-                lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
+            VgPoint last = pDefLine.getVertex(0);
+            for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                VgPoint curr = pDefLine.getVertex(i);
+                t += curr.distanceXY(last);
+                last = pDefLine.getVertex(i);
+                lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
+                lDat.newLine();
+                lDat.write("    <text writing-mode=\"tb-rl\" x=\"" + (this.transformT(t) - 5) + "\" y=\"" + (mCanvPrfYMax + 3) + "\">");
+                lDat.write("" + Math.round(this.transformT(t)) + "</text>");
+                lDat.newLine();
+                lDat.write("  </g>");
                 lDat.newLine();
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    lDat.write("  <line ");
-                    lDat.write("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
-                    lDat.write("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
-                    lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
-                    lDat.newLine();
-                    last = pDefLine.getVertex(i);
-                }                
-            }
-
-            // Elevation levels (horizontal lines):
-            if (zLevels != null) {
-                for (int i = 0; i < zLevels.length; i++) {
-                    lDat.write("  <line ");
-                    lDat.write("x1=\"" + mCanvPrfXMin + "\" y1=\"" + this.transformZ(zLevels[i]) + "\" ");
-                    lDat.write("x2=\"" + mCanvPrfXMax + "\" y2=\"" + this.transformZ(zLevels[i]) + "\" ");
-                    lDat.write("style=\"stroke:rgb(0,255,0);fill:none\"/>");
-                    lDat.newLine();
-                }
             }
+        }
 
-            // Annotation t-axis:
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
+        // Annotations z-axis:
+         if (zLevels != null) {
+            for (int i = 0; i < zLevels.length; i++) {
+                String zText = "" + (int) Math.round((float) zLevels[i]);
                 lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
                 lDat.newLine();
-                lDat.write("    <text writing-mode=\"tb-rl\" x=\"" + (this.transformT(0) + 5) + "\" y=\"" + (mCanvPrfYMax + 3) + "\">");
-                lDat.write("0 m</text>");
+                lDat.write("    <text text-anchor=\"end\" x=\"" + (lImageBorder + lZAnnotWidth - 4) + "\" y=\"" + (this.transformZ(zLevels[i]) + 8) + "\">");
+                lDat.write(zText + "</text>");
                 lDat.newLine();
                 lDat.write("  </g>");
                 lDat.newLine();
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    last = pDefLine.getVertex(i);
-                    lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-                    lDat.newLine();
-                    lDat.write("    <text writing-mode=\"tb-rl\" x=\"" + (this.transformT(t) - 5) + "\" y=\"" + (mCanvPrfYMax + 3) + "\">");
-                    lDat.write("" + Math.round(this.transformT(t)) + "</text>");
-                    lDat.newLine();
-                    lDat.write("  </g>");
-                    lDat.newLine();
-                }
             }
+        }
 
-            // Annotations z-axis:
-             if (zLevels != null) {
-                for (int i = 0; i < zLevels.length; i++) {
-                    String zText = "" + (int) Math.round((float) zLevels[i]);
-                    lDat.write("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-                    lDat.newLine();
-                    lDat.write("    <text text-anchor=\"end\" x=\"" + (lImageBorder + lZAnnotWidth - 4) + "\" y=\"" + (this.transformZ(zLevels[i]) + 8) + "\">");
-                    lDat.write(zText + "</text>");
-                    lDat.newLine();
-                    lDat.write("  </g>");
-                    lDat.newLine();
+        // Profile path z(t):
+        lDat.write("  <path d=\"");
+        lDat.newLine();
+        double[] tz = this.tzArray(pProfile);
+        int n = tz.length / 2;
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = this.transformT(tz[2 * i]);
+            y[i] = this.transformZ(tz[2 * i + 1]);
+        }
+        if (mDecimation == cMinMaxPerPixel)
+            n = this.decimateMinMax(x, y, n);
+        if (mDecimation == cDouglasPeucker)
+            n = this.decimateDouglasPeucker(x, y, n, mPixelTolerance);
+        for (int i = 0; i < n; i++) {
+            lDat.write(i == 0 ? "M" : " L");
+            this.writeNumber(lDat, x[i], this.getPrecisionXY(), dfXY);
+            lDat.write(' ');
+            this.writeNumber(lDat, y[i], this.getPrecisionZ(), dfZ);
+        }
+        lDat.write("\" style=\"stroke:rgb(255,0,0);fill:none\"/>");
+        lDat.newLine();
+
+        lDat.write("</svg>");
+        lDat.newLine();
+    } // writeSVG()
+
+    // Provides the t-z-pairs as packed array {t0, z0, t1, z1, ...}:
+    private double[] tzArray(VgProfile pProfile)
+    {
+        if (pProfile instanceof GmProfile)
+            return ((GmProfile) pProfile).getTZArray();
+        int n = pProfile.numberOfTZPairs();
+        double[] res = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            double[] tz = pProfile.getTZPair(i);
+            res[2 * i] = tz[0];
+            res[2 * i + 1] = tz[1];
+        }
+        return res;
+    }
+
+    // Keeps the first, the last, the lowest and the highest vertex of every 
+    // pixel column (in the original order); returns the new number of 
+    // vertices. The x-values are expected to be ascending.
+    private int decimateMinMax(double[] x, double[] y, int n)
+    {
+        int m = 0, i = 0;
+        while (i < n) {
+            double col = Math.floor(x[i]);
+            int j = i, iMin = i, iMax = i;
+            while (j + 1 < n && Math.floor(x[j + 1]) == col) {
+                j++;
+                if (y[j] < y[iMin]) iMin = j;
+                if (y[j] > y[iMax]) iMax = j;
+            }
+            int lo = Math.min(iMin, iMax), hi = Math.max(iMin, iMax);
+            int[] keep = {i, lo, hi, j};
+            int last = -1;
+            for (int k = 0; k < 4; k++) {
+                if (keep[k] != last) {
+                    x[m] = x[keep[k]];
+                    y[m] = y[keep[k]];
+                    m++;
+                    last = keep[k];
                 }
             }
+            i = j + 1;
+        }
+        return m;
+    }
 
-            // Profile path z(t):
-            lDat.write("  <path d=\"");
-            lDat.newLine();
-            boolean first = true;
-            for (int i = 0; i < pProfile.numberOfTZPairs(); i++) {
-                float x = this.transformT((pProfile.getTZPair(i))[0]);
-                float y = this.transformZ((pProfile.getTZPair(i))[1]);
-                if (first) {
-                    lDat.write("M"); first = false;
-                } else
-                    lDat.write(" L"); 
-                lDat.write("" + dfXY.format(x) + " " + dfZ.format(y)); 
+    // Douglas-Peucker simplification (iterative); returns the new number of 
+    // vertices.
+    private int decimateDouglasPeucker(double[] x, double[] y, int n, double pTol)
+    {
+        if (n <= 2)
+            return n;
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = n - 1;
+        double tol2 = pTol * pTol;
+        while (sp > 0) {
+            int b = stack[--sp], a = stack[--sp];
+            double dx = x[b] - x[a], dy = y[b] - y[a];
+            double len2 = dx * dx + dy * dy;
+            double dMax = -1.;
+            int iMax = -1;
+            for (int i = a + 1; i < b; i++) {
+                double ex = x[i] - x[a], ey = y[i] - y[a];
+                double d;
+                double u = (len2 > 0.) ? (ex * dx + ey * dy) / len2 : 0.;
+                if (u <= 0.)
+                    d = ex * ex + ey * ey;
+                else if (u >= 1.) 
+                    d = (x[i] - x[b]) * (x[i] - x[b]) + (y[i] - y[b]) * (y[i] - y[b]);
+                else {
+                    double c = ex * dy - ey * dx;
+                    d = c * c / len2;
+                }
+                if (d > dMax) {
+                    dMax = d;
+                    iMax = i;
+                }
             }
-            lDat.write("\" style=\"stroke:rgb(255,0,0);fill:none\"/>");
-            lDat.newLine();
+            if (iMax >= 0 && dMax > tol2) {
+                keep[iMax] = true;
+                if (sp + 4 > stack.length)
+                    stack = T3dArrays.copyOf(stack, 2 * stack.length);
+                stack[sp++] = a;
+                stack[sp++] = iMax;
+                stack[sp++] = iMax;
+                stack[sp++] = b;
+            }
+        }
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                x[m] = x[i];
+                y[m] = y[i];
+                m++;
+            }
+        }
+        return m;
+    }
 
-            lDat.write("</svg>");
-            lDat.newLine();
+    private static final double[] cPow10 = 
+        {1., 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
 
-            lDat.close();
+    // Writes a number with the given count of decimal places without 
+    // creating temporary objects. The result is the same as for the given 
+    // DecimalFormat (HALF_EVEN rounding of the exact binary value); this 
+    // DecimalFormat will be used for values close to a rounding tie and 
+    // for special cases.
+    private void writeNumber(Writer pDat, double pVal, int pPrec, DecimalFormat pFallback) 
+        throws IOException
+    {
+        if (pPrec >= cPow10.length || !(Math.abs(pVal) * cPow10[Math.min(pPrec, cPow10.length - 1)] < 1e15)) {
+            pDat.write(pFallback.format(pVal)); // also for NaN and infinite values
+            return;
         }
-        catch (FileNotFoundException e) {
-            throw new T3dException("Could not access file \"" + pFilename + "\".");
+        // The scaled value deviates from the exact product by at most half an 
+        // ulp, so the rounding direction is safe unless it is close to .5:
+        double a = Math.abs(pVal) * cPow10[pPrec];
+        double fl = Math.floor(a), frac = a - fl;
+        if (Math.abs(frac - 0.5) <= 2. * Math.ulp(a)) {
+            pDat.write(pFallback.format(pVal));
+            return;
         }
-        catch (Throwable e) {
-            throw new T3dException(e.getMessage());
+        long v = (long) fl + (frac > 0.5 ? 1 : 0);
+        // Sign as DecimalFormat, e.g. "-0.00" for small negative values and -0.0:
+        boolean lNeg = pVal < 0. || (pVal == 0. && 1. / pVal < 0.);
+        int pos = mNumBuf.length;
+        for (int k = 0; k < pPrec; k++) {
+            mNumBuf[--pos] = (char) ('0' + (int) (v % 10));
+            v /= 10;
         }
-    } // writeSVG()
+        if (pPrec > 0)
+            mNumBuf[--pos] = '.';
+        do {
+            mNumBuf[--pos] = (char) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v > 0);
+        if (lNeg)
+            mNumBuf[--pos] = '-';
+        pDat.write(mNumBuf, pos, mNumBuf.length - pos);
+    }
     
     private double mTMin, mTMax, mZMin, mZMax;
 
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Tile source reading grid blocks from a raw grid file. The file format is 
+ * the same as used by {@link GmMappedGridStorage}, i.e. the file contains 
+ * row-major <tt>float</tt> or <tt>double</tt> values in little-endian byte 
+ * order with <tt>NaN</tt> for unset elements. Blocks are read row by row 
+ * through positioned channel reads, so no part of the file has to be held 
+ * in memory except for the tiles requested.
+ *
+ * @see GmTiledGridStorage
+ * @author Benno Schmidt
+ */
+public class IoRawGridTileSource extends GmGridTileSource
+{
+    private int mRows, mCols;
+    private int mBytesPerValue;
+    private boolean mReadOnly;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private ByteBuffer mBuf = null;
+
+    /**
+     * Constructor. The grid file must exist and hold at least 
+     * <tt>pRows * pCols</tt> values.
+     *
+     * @param pFile Grid file
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pValueType <tt>GmMappedGridStorage.cFloat</tt> or 
+     * <tt>GmMappedGridStorage.cDouble</tt>
+     * @param pReadOnly <i>true</i> for read-only access
+     * @throws T3dException if the file can not be opened
+     */
+    public IoRawGridTileSource(
+        File pFile, 
+        int pRows, int pCols, 
+        short pValueType, 
+        boolean pReadOnly) 
+        throws T3dException
+    {
+        if (pValueType != GmMappedGridStorage.cFloat && 
+            pValueType != GmMappedGridStorage.cDouble) 
+        {
+            throw new T3dException("Unsupported value type " + pValueType + ".");
+        }
+        mRows = pRows;
+        mCols = pCols;
+        mBytesPerValue = (pValueType == GmMappedGridStorage.cFloat) ? 4 : 8;
+        mReadOnly = pReadOnly;
+
+        try {
+            mFile = new RandomAccessFile(pFile, pReadOnly ? "r" : "rw");
+            mChannel = mFile.getChannel();
+            long size = (long) mRows * mCols * mBytesPerValue;
+            if (mChannel.size() < size) {
+                mFile.close();
+                throw new T3dException(
+                    "Grid file \"" + pFile + "\" is too small (" 
+                    + size + " bytes expected).");
+            }
+        }
+        catch (IOException e) {
+            throw new T3dException(
+                "Could not open grid file \"" + pFile + "\": " + e.getMessage());
+        }
+    }
+
+    public int numberOfRows() {
+        return mRows;
+    }
+
+    public int numberOfColumns() {
+        return mCols;
+    }
+
+    public boolean isWritable() {
+        return !mReadOnly;
+    }
+
+    public synchronized void readBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+        throws T3dException
+    {
+        ByteBuffer buf = this.buffer(pCols);
+        int rowSize = pCols * mBytesPerValue;
+        try {
+            for (int i = 0; i < pRows; i++) {
+                buf.clear();
+                buf.limit(rowSize);
+                long pos = 
+                    ((long) (pRow0 + i) * mCols + pCol0) * mBytesPerValue;
+                while (buf.hasRemaining()) {
+                    if (mChannel.read(buf, pos + buf.position()) < 0) 
+                        throw new T3dException("Unexpected end of grid file.");
+                }
+                buf.flip();
+                int k = i * pCols;
+                if (mBytesPerValue == 4) {
+                    for (int j = 0; j < pCols; j++) 
+                        pDst[k + j] = buf.getFloat();
+                } else {
+                    for (int j = 0; j < pCols; j++) 
+                        pDst[k + j] = buf.getDouble();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not read grid tile: " + e.getMessage());
+        }
+    }
+
+    public synchronized void writeBlock(
+        int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+        throws T3dException
+    {
+        if (mReadOnly) {
+            throw new T3dException("Grid tile source is not writable.");
+        }
+        ByteBuffer buf = this.buffer(pCols);
+        int rowSize = pCols * mBytesPerValue;
+        try {
+            for (int i = 0; i < pRows; i++) {
+                buf.clear();
+                buf.limit(rowSize);
+                int k = i * pCols;
+                if (mBytesPerValue == 4) {
+                    for (int j = 0; j < pCols; j++) 
+                        buf.putFloat((float) pSrc[k + j]);
+                } else {
+                    for (int j = 0; j < pCols; j++) 
+                        buf.putDouble(pSrc[k + j]);
+                }
+                buf.flip();
+                long pos = 
+                    ((long) (pRow0 + i) * mCols + pCol0) * mBytesPerValue;
+                while (buf.hasRemaining()) {
+                    mChannel.write(buf, pos + buf.position());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not write grid tile: " + e.getMessage());
+        }
+    }
+
+    /**
+     * closes the grid file.
+     */
+    public synchronized void close()
+    {
+        try {
+            mChannel.close();
+            mFile.close();
+        }
+        catch (IOException e) {
+            throw new T3dException(
+                "Could not close grid file: " + e.getMessage());
+        }
+    }
+
+    // Provides a buffer holding one tile row:
+    private ByteBuffer buffer(int pCols) 
+    {
+        int size = pCols * mBytesPerValue;
+        if (mBuf == null || mBuf.capacity() < size) {
+            mBuf = ByteBuffer.allocate(size);
+            mBuf.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return mBuf;
+    }
+}
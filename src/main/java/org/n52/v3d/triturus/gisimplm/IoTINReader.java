@@ -46,11 +46,11 @@ import java.net.MalformedURLException;
 import org.n52.v3d.triturus.core.IoObject;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.T3dArrays;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.StringTokenizer;
-import java.util.Vector;
 
 /**
  * Reading TINs from a file.<br /><br />
@@ -247,8 +247,7 @@ public class IoTINReader extends IoObject
             // Konstruktion des TINs:
 
             mTIN = new GmSimpleTINFeature();
-            GmSimpleTINGeometry lTINGeom = (GmSimpleTINGeometry) mTIN.getGeometry();
-            lTINGeom.newPointList(nPoints);
+            double[] lXYZ = new double[3 * nPoints];
 
             // Belegen der TIN-Punkte:
 
@@ -264,7 +263,9 @@ public class IoTINReader extends IoObject
                 y = this.toDouble(tok2);
                 tok3 = this.getStrTok(line, 3, " ");
                 z = this.toDouble(tok3);
-                lTINGeom.setPoint(i, new GmPoint( x, y, z ));
+                lXYZ[3 * i] = x;
+                lXYZ[3 * i + 1] = y;
+                lXYZ[3 * i + 2] = z;
             }
 
             line = pDatRead.readLine();
@@ -275,7 +276,7 @@ public class IoTINReader extends IoObject
             tok2 = this.getStrTok(line, 2, " ");
             int nTriangles = this.toInt(tok2);
 
-            lTINGeom.newTriangleList(nTriangles);
+            int[] lTri = new int[3 * nTriangles];
 
             // Dreiecksvermaschung:
 
@@ -290,8 +291,11 @@ public class IoTINReader extends IoObject
                 i2 = this.toInt(tok2);
                 tok3 = this.getStrTok(line, 3, " ");
                 i3 = this.toInt(tok3);
-                lTINGeom.setTriangle(i, i1, i2, i3);
+                lTri[3 * i] = i1;
+                lTri[3 * i + 1] = i2;
+                lTri[3 * i + 2] = i3;
             }
+            mTIN.setGeometry(new GmSimpleTINGeometry(lXYZ, nPoints, lTri, nTriangles));
 
             line = pDatRead.readLine(); // letzte Zeile
             lineNumber++;
@@ -429,19 +433,8 @@ public class IoTINReader extends IoObject
 			if((countO % 3 != 0)||(countI % 3 != 0)) throw new T3dException("Enexpected error." + countO + " " + countI);
 			
 			mTIN = new GmSimpleTINFeature();
-			GmSimpleTINGeometry lTINGeom = (GmSimpleTINGeometry) mTIN.getGeometry();
-			lTINGeom.newPointList(countO/3);
-			
-			//mTIN.setBoundsInvalid(); // Performanz!
-			
-			for (int i=0; i<countO/3; i++) {
-				lTINGeom.setPoint(i, new GmPoint(ordinates[i*3],ordinates[i*3+1],ordinates[i*3+2]));
-			}
-			
-			lTINGeom.newTriangleList(countI/3);
-			for (int i=0; i<countI/3; i++) {
-				lTINGeom.setTriangle(i,indices[i*3],indices[i*3+1],indices[i*3+2]);
-			}
+			// the read buffers will be used as TIN storage directly:
+			mTIN.setGeometry(new GmSimpleTINGeometry(ordinates, countO/3, indices, countI/3));
 			
 		}
         catch (FileNotFoundException e) {
@@ -467,7 +460,6 @@ public class IoTINReader extends IoObject
     {
 		mTIN = new GmSimpleTINFeature();
 //		mTIN.setBoundsInvalid(); // Performanz!  // todo: versuchen, wieder reinzunehmem!
-		GmSimpleTINGeometry lTINGeom = (GmSimpleTINGeometry) mTIN.getGeometry();
 		int vertexCount=0;
 		int triangleCount=0;
 		double xmin=0, ymin=0, zmin=0, xmax=0, ymax=0, zmax=0;
@@ -490,19 +482,15 @@ public class IoTINReader extends IoObject
 			vertexCount = toInt(token.nextToken());
 //			System.out.println("number of vertizes: " + vertexCount);
 
-			lTINGeom.newPointList(vertexCount);
+			double[] lXYZ = new double[3 * vertexCount];
 			for (int i=0; i<vertexCount; i++) {
 				line=lDatRead.readLine();
 				if (line==null || line.startsWith("TRI"))
 					break;
 				token=new StringTokenizer(line);
-				GmPoint point = new GmPoint(
-					toDouble(token.nextToken()),
-					toDouble(token.nextToken()),
-					toDouble(token.nextToken())
-				);
-
-				lTINGeom.setPoint(i, point);
+				lXYZ[3 * i] = toDouble(token.nextToken());
+				lXYZ[3 * i + 1] = toDouble(token.nextToken());
+				lXYZ[3 * i + 2] = toDouble(token.nextToken());
 				
 //				if (i==0) {
 //					xmin = xmax = point.getX();
@@ -528,19 +516,17 @@ public class IoTINReader extends IoObject
 			triangleCount = toInt(token.nextToken());
 //			System.out.println("number of triangles: " + triangleCount);
 
-			lTINGeom.newTriangleList(triangleCount);
+			int[] lTri = new int[3 * triangleCount];
 			for (int i=0; i<triangleCount; i++) {
 				line=lDatRead.readLine();
 				if (line.endsWith("ENDT") )
 					break;
 				token=new StringTokenizer(line);
-				lTINGeom.setTriangle(
-					i,
-					toInt(token.nextToken())-1,
-					toInt(token.nextToken())-1,
-					toInt(token.nextToken())-1
-				);
+				lTri[3 * i] = toInt(token.nextToken())-1;
+				lTri[3 * i + 1] = toInt(token.nextToken())-1;
+				lTri[3 * i + 2] = toInt(token.nextToken())-1;
 			}
+			mTIN.setGeometry(new GmSimpleTINGeometry(lXYZ, vertexCount, lTri, triangleCount));
 
 //		System.out.println("Finished reading file : " + pFilename
 //			+ "\nPoints:"+ lTINGeom.numberOfPoints()
@@ -557,9 +543,10 @@ public class IoTINReader extends IoObject
 	private void readGMTTin(String xyzFilename, String tinFilename) {
 		mTIN = new GmSimpleTINFeature();
 		mTIN.setBoundsInvalid(); // Performanz!
-		GmSimpleTINGeometry lTINGeom = (GmSimpleTINGeometry) mTIN.getGeometry();
-		Vector pointVec = new Vector(2000);
-		Vector indexVec = new Vector(2000);
+		double[] lXYZ = new double[3 * 2000];
+		int lNumberOfPoints = 0;
+		int[] lTri = new int[3 * 2000];
+		int lNumberOfTriangles = 0;
 		
 		FileReader lFileRead;
 		try {
@@ -577,7 +564,13 @@ public class IoTINReader extends IoObject
 				y = lTokRead.nval;
 				lTokRead.nextToken();
 				z = lTokRead.nval;
-				pointVec.add(new GmPoint(x,y,z));
+				if (3 * lNumberOfPoints == lXYZ.length) {
+					lXYZ = T3dArrays.copyOf(lXYZ, 2 * lXYZ.length);
+				}
+				lXYZ[3 * lNumberOfPoints] = x;
+				lXYZ[3 * lNumberOfPoints + 1] = y;
+				lXYZ[3 * lNumberOfPoints + 2] = z;
+				lNumberOfPoints++;
 			}
 						
 			lDatRead.close();
@@ -602,7 +595,13 @@ public class IoTINReader extends IoObject
 				yIndex = (int) lTokRead.nval;
 				lTokRead.nextToken();
 				zIndex = (int) lTokRead.nval;
-				indexVec.add(new int[]{xIndex,yIndex,zIndex});
+				if (3 * lNumberOfTriangles == lTri.length) {
+					lTri = T3dArrays.copyOf(lTri, 2 * lTri.length);
+				}
+				lTri[3 * lNumberOfTriangles] = xIndex;
+				lTri[3 * lNumberOfTriangles + 1] = yIndex;
+				lTri[3 * lNumberOfTriangles + 2] = zIndex;
+				lNumberOfTriangles++;
 			}
 	
 			
@@ -613,16 +612,7 @@ public class IoTINReader extends IoObject
 			e.printStackTrace();
 		}
 
-		System.out.println("Points: " + pointVec.size() + " / " + indexVec.size());
-		lTINGeom.newPointList(pointVec.size());
-		for (int i=0; i<pointVec.size();i++) {
-			lTINGeom.setPoint(i, (GmPoint)pointVec.get(i));
-		}
-		
-		lTINGeom.newTriangleList(indexVec.size());
-		for (int i=0; i<indexVec.size();i++) {
-			int[] triangle = (int[]) indexVec.get(i);
-			lTINGeom.setTriangle(i, triangle[0],triangle[1],triangle[2]);
-		}				
+		System.out.println("Points: " + lNumberOfPoints + " / " + lNumberOfTriangles);
+		mTIN.setGeometry(new GmSimpleTINGeometry(lXYZ, lNumberOfPoints, lTri, lNumberOfTriangles));
 	}
 }
@@ -34,6 +34,7 @@ package org.n52.v3d.triturus.gisimplm;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgPoint;
 
 import java.io.*;
 import java.text.DecimalFormat;
@@ -130,18 +131,21 @@ public class IoTINWriter extends IoAbstractWriter
             DecimalFormat dfXY = this.getDecimalFormatZ();
             DecimalFormat dfZ = this.getDecimalFormatZ();
 
+			double[] lXYZ = this.getXYZArray(lGeom);
+			int[] lTri = this.getTriangleArray(lGeom);
+
 			lDat.write("POINTS "+lGeom.numberOfPoints()+"\n");
-			for (int i = 0; i < lGeom.numberOfPoints(); i++) {
-				lDat.write(dfXY.format(lGeom.getPoint(i).getX()) + " ");
-				lDat.write(dfXY.format(lGeom.getPoint(i).getY()) + " ");
-				lDat.write(dfZ.format(lGeom.getPoint(i).getZ()) + "\n");
+			for (int i = 0; i < 3 * lGeom.numberOfPoints(); i += 3) {
+				lDat.write(dfXY.format(lXYZ[i]) + " ");
+				lDat.write(dfXY.format(lXYZ[i + 1]) + " ");
+				lDat.write(dfZ.format(lXYZ[i + 2]) + "\n");
 			}
 			
 			lDat.write("TRIANGLES "+lGeom.numberOfTriangles()+"\n");
-			for (int i = 0; i < lGeom.numberOfTriangles(); i++) {
-				lDat.write(lGeom.getTriangleVertexIndices(i)[0] + " ");
-				lDat.write(lGeom.getTriangleVertexIndices(i)[1] + " ");
-				lDat.write(lGeom.getTriangleVertexIndices(i)[2] + "\n");
+			for (int i = 0; i < 3 * lGeom.numberOfTriangles(); i += 3) {
+				lDat.write(lTri[i] + " ");
+				lDat.write(lTri[i + 1] + " ");
+				lDat.write(lTri[i + 2] + "\n");
 			}
 			lDat.write("END");
 			lDat.newLine();
@@ -192,9 +196,9 @@ public class IoTINWriter extends IoAbstractWriter
             DecimalFormat dfXY = this.getDecimalFormatZ();
             DecimalFormat dfZ = this.getDecimalFormatZ();
 
-            for (int i = 0; i < lGeom.numberOfPoints(); i++) {
-                GmPoint pt = new GmPoint(lGeom.getPoint(i));
-                lDat.write("        " + dfXY.format(pt.getX()) + " " + dfXY.format(pt.getY()) + " " + dfZ.format(pt.getZ()));
+            double[] lXYZ = lGeom.getXYZArray();
+            for (int i = 0; i < 3 * lGeom.numberOfPoints(); i += 3) {
+                lDat.write("        " + dfXY.format(lXYZ[i]) + " " + dfXY.format(lXYZ[i + 1]) + " " + dfZ.format(lXYZ[i + 2]));
                 lDat.newLine();
             }
 
@@ -207,10 +211,9 @@ public class IoTINWriter extends IoAbstractWriter
             lDat.write("    IndexedFaceSet {"); lDat.newLine();
             lDat.write("      coordIndex ["); lDat.newLine();
 
-            int crn[];
-            for (int i = 0; i <= lGeom.numberOfTriangles(); i++) {
-            	crn = lGeom.getTriangleVertexIndices( i );
-                lDat.write("        " + crn[0] + ", " + crn[1] + ", " + crn[3] + ", -1,"); lDat.newLine();
+            int[] lTri = lGeom.getTriangleArray();
+            for (int i = 0; i < 3 * lGeom.numberOfTriangles(); i += 3) {
+                lDat.write("        " + lTri[i] + ", " + lTri[i + 1] + ", " + lTri[i + 2] + ", -1,"); lDat.newLine();
             }
 
             lDat.write("      ]"); lDat.newLine();
@@ -230,4 +233,33 @@ public class IoTINWriter extends IoAbstractWriter
             throw new T3dException(e.getMessage());
         }
     } // writeSimpleVrml()
+
+    // returns the TIN's vertex coordinates as x_0, y_0, z_0, x_1, ... (without copying, if possible)
+    private double[] getXYZArray(VgIndexedTIN pGeom) 
+    {
+        if (pGeom instanceof GmSimpleTINGeometry) {
+            return ((GmSimpleTINGeometry) pGeom).getXYZArray();
+        }
+        double[] lXYZ = new double[3 * pGeom.numberOfPoints()];
+        for (int i = 0; i < pGeom.numberOfPoints(); i++) {
+            VgPoint lPnt = pGeom.getPoint(i);
+            lXYZ[3 * i] = lPnt.getX();
+            lXYZ[3 * i + 1] = lPnt.getY();
+            lXYZ[3 * i + 2] = lPnt.getZ();
+        }
+        return lXYZ;
+    }
+
+    // returns the TIN's triangle vertex-indices (without copying, if possible)
+    private int[] getTriangleArray(VgIndexedTIN pGeom) 
+    {
+        if (pGeom instanceof GmSimpleTINGeometry) {
+            return ((GmSimpleTINGeometry) pGeom).getTriangleArray();
+        }
+        int[] lTri = new int[3 * pGeom.numberOfTriangles()];
+        for (int i = 0; i < pGeom.numberOfTriangles(); i++) {
+            System.arraycopy(pGeom.getTriangleVertexIndices(i), 0, lTri, 3 * i, 3);
+        }
+        return lTri;
+    }
 }
@@ -31,20 +31,18 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
-import java.util.Vector;
-
 import org.n52.v3d.triturus.core.T3dProcMapper;
 
 /**
- * @deprecated
- * todo: Diese Sachen sollten in die Klasse FltTINPolygonAssembler wandern!
- * Mapper Klasse zur Verschneidung eines TINs mit einem Polygon.
+ * Mapper Klasse zur Verschneidung eines TINs mit einem Polygon. Die eigentliche Verschneidung erfolgt durch die
+ * Klasse <tt>FltTINPolygonAssembler</tt>.
  * @author Martin May, Ilja Abramovic
  */
 public class MpTinPolygon extends T3dProcMapper
 {
 	private GmSimpleTINGeometry tin;
 	private GmPolygon pol;
+	private GmPreparedPolygon prepared = null;
 
 	/**
 	 * Constructor.
@@ -57,8 +55,7 @@ public class MpTinPolygon extends T3dProcMapper
 	}
 
 	public String log() {
-		// TODO Auto-generated method stub
-		return null;
+		return "MpTinPolygon";
 	}
 
 	/**
@@ -66,69 +63,12 @@ public class MpTinPolygon extends T3dProcMapper
 	 * @return TIN-geometry
 	 */
 	public GmSimpleTINGeometry intersect() {
-		GmSimpleTINGeometry result =
-			new GmSimpleTINGeometry(
-				tin.numberOfPoints() + 100,
-				tin.numberOfTriangles() + 300);
-		return result;
-	}
-
-	/**
-	 * Liefert ein Array mit Indizien der Vertices, die im Polygon liegen.
-	 * @return  ^^^^^^^^
-	 */
-	private int[] verticesInPolygonIndices() {
-		int[] result = {};
-		//Create jts polygon:
-//		PrecisionModel pm = new PrecisionModel();
-//		int numPolPoints = pol.numberOfVertices();
-//		Coordinate[] polPoints = new Coordinate[numPolPoints];
-//		for (int i = 0; i < polPoints.length; i++) {
-//			polPoints[i] =
-//				new Coordinate(pol.getVertex(i).getX(), pol.getVertex(i).getY());
-//		}
-//		LinearRing sh = new LinearRing(polPoints, pm, 0);
-//
-//		//Polygon jtsPol = new Polygon(sh, pm, 0);
-//
-//		Vector v = new Vector(); //help var
-//		//
-//		//	create MCPointInRing algorithm
-//		MCPointInRing alg = new MCPointInRing(sh);
-//		//hole ein Vertex aus TIN und pr�fe, ob in Polygon
-//		int numTinPoints = tin.numberOfPoints();
-//		for (int i = 0; i < numTinPoints; i++) {
-//			VgPoint p = tin.getPoint(i);
-//			Coordinate tinPointAsJtsCoord = new Coordinate(p.getX(), p.getY());
-//			if (alg.isInside(tinPointAsJtsCoord))
-//				v.add(new Integer(i));
-//		}
-//		result = new int[v.size()];
-//		for (int i = 0; i < result.length; i++) {
-//			result[i] = ((Integer) v.elementAt(i)).intValue();
-//		}
-		return result;
+		return new FltTINPolygonAssembler().transform(tin, this.preparedPolygon());
 	}
 
-	/**
-	 * liefert ein Vector mit Indizien der Vertices, die die Kanten bilden, die den Polygon schneiden. Ein Element im
-     * Vector ist ein zweielementiges <i>int</i> Array.
-	 * @param vertInPol Array mit Indizien der Vertices, die im Polygon liegen.
-	 * @return
-	 */
-	private Vector involvedEdgesAsVertexPairsIndices(int[] vertInPol) {
-		GmSimpleMesh mesh = tin.getMesh();
-		Vector v = new Vector(); //help var
-		boolean[][] aMatrix = mesh.getAdjMatrix();
-		for (int i = 0; i < vertInPol.length; i++) {//i - index eines inneren Vertex
-			for (int j = 0; j < mesh.getNumberOfPoints(); j++) {
-				if (aMatrix[vertInPol[i]][j] || i!=j) {
-					int[] edge = {i,j};
-					v.add(edge);
-				}
-			}
-		}
-		return v;
+	private GmPreparedPolygon preparedPolygon() {
+		if (prepared == null)
+			prepared = new GmPreparedPolygon(pol);
+		return prepared;
 	}
-
 }
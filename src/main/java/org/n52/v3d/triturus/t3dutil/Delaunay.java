@@ -55,6 +55,13 @@ package org.n52.v3d.triturus.t3dutil;
   * <li> A <q>flip</q> leads to a recursion as the resulting edges are subject
   * to inspection.
   * </ul>
+  * <p>
+  * To locate the triangle containing a new point, the algorithm walks through the
+  * triangulation starting at a triangle found for a nearby point inserted before
+  * (<q>jump-and-walk</q>); to find such a start triangle, a hierarchy of grids over
+  * the points' bounding box is maintained. For spatially coherent input, the walks are
+  * short. Optionally, the points can be inserted along a Hilbert curve, see
+  * {@link #Delaunay(double[], boolean)}.
   *
   * @author Ruppert
   */
@@ -64,17 +71,19 @@ public class Delaunay implements java.io.Serializable {
 	// If a point lies within a 3-degree-angle of an edge, it is considered to be ON the edge
 	static double MIN_LINE_COS_ANGLE = 0.99862953;
 	// cos(3)=0.99862953   cos(1)=0.9998477
+	// Relative error bound for the in-circle determinant used by nonDelaunay()
+	static final double IN_CIRCLE_EPS = 1e-12;
 
-	// The following are initial values
+	// The following are initial values; init() adjusts them to the number of points given
 	// They are doubled each time they are exceeded
 	int maximalNumberOfPoints = 1000;
 	int maximalNumberOfFaces = 1000;
 
-	double[] point = new double[3 * maximalNumberOfPoints];
-	int[] face = new int[3 * maximalNumberOfFaces];
-	int[] neighbor = new int[3 * maximalNumberOfFaces];
+	double[] point;
+	int[] face;
+	int[] neighbor;
 	// A segment is an edge on the boundary - an (almost) untouchable edge
-	boolean[] segment = new boolean[3 * maximalNumberOfFaces];
+	boolean[] segment;
 
 	int numberOfPoints;
 	int numberOfFaces;
@@ -85,12 +94,25 @@ public class Delaunay implements java.io.Serializable {
 	boolean[] obsolete;
 	boolean hasExteriorPoints = true;
 
+	// Point location hints: a hierarchy of grids over the points' bounding box (level l
+	// consists of 2^l x 2^l cells). Every cell holds the face found for the last point
+	// inserted into it; the walk starts at the hint of the finest non-empty cell.
+	int[] cellFace;
+	int cellLevels;
+	double cellX0, cellY0, cellScaleX, cellScaleY;
+	int walkSeed = 1;
+	int[] visited = new int[16];
+
 	// further, we use   f      index for face
 	//                           n     index for face`s neighbor
 	//                           e     edge (e.g. 0 is edge from vertex 1 to 2)
 	//                           ne   neighbor`s edge corresponding to its adjacent edge
 	//                           fp    pointer to face[]-index (e.g. 4 points to vertex 0 of face 1)
 
+	// used by subclasses which set up the arrays themselves
+	Delaunay() {
+	}
+
 	/**
 		 * A Delaunay triangulation for the given points is created.
 		 * @param p the points given as <code>x<sub>1</sub>,y<sub>1</sub>,
@@ -137,6 +159,41 @@ public class Delaunay implements java.io.Serializable {
 		return new Delaunay(p).getIndices();
 	}
 
+	/**
+	 * A Delaunay triangulation for the given points is created. If <code>sort</code>
+	 * is set, the points will be inserted along a Hilbert curve. This improves the 
+	 * memory locality for large point sets. Point indices still refer to the order
+	 * given in <code>p</code>; however, triangles will be numbered differently, and 
+	 * near the convex hull or for degenerated point configurations (e.g. co-circular
+	 * points) the triangulation may differ from the one created by 
+	 * {@link #Delaunay(double[])}.
+	 * @param p the points given as <code>x<sub>1</sub>,y<sub>1</sub>,
+	 * x<sub>2</sub>,y<sub>2</sub>,...</code>
+	 * @param sort <i>true</i> to insert the points in Hilbert curve order
+	 */
+	public Delaunay(final double[] p, final boolean sort) {
+		if (!sort) {
+			init(p);
+			eatExterior();
+			return;
+		}
+
+		final int nip = p.length / 2;
+		final int[] order = hilbertOrder(p, nip);
+		final double[] q = new double[2 * nip];
+		for (int i = 0; i < nip; i++) {
+			q[2 * i] = p[2 * order[i]];
+			q[2 * i + 1] = p[2 * order[i] + 1];
+		}
+		init(q);
+		eatExterior();
+
+		// re-establish the given point order
+		for (int i = 0, fp = 3 * numberOfFaces; i < fp; i++)
+			face[i] = order[face[i]];
+		System.arraycopy(p, 0, point, 0, 2 * nip);
+	}
+
 	/** Every Point lies within a square of side length <code>2*getBound()</code>
 	 *  which is centered about the origin.
 	 */
@@ -204,6 +261,57 @@ public class Delaunay implements java.io.Serializable {
 		return numberOfPoints;
 	}
 
+	/**
+	 * Counts the interior edges that are not locally Delaunay, i.e. edges whose adjacent
+	 * triangle's opposite vertex lies inside the other triangle's circumcircle. Due to the
+	 * on-edge rule (see {@link #MIN_LINE_COS_ANGLE}), the incremental algorithm may leave
+	 * some of these edges.
+	 * @return The number of non-Delaunay edges (0 for a Delaunay triangulation)
+	 */
+	public int getNumNonDelaunayEdges() {
+		int count = 0;
+		for (int f = 0; f < numberOfFaces; f++)
+			for (int e = 0; e < 3; e++)
+				if (neighbor[3 * f + e] > f && nonDelaunay(f, e))
+					count++;
+		return count;
+	}
+
+	// Checks whether the edge e of the face f fails the in-circle test. In contrast to
+	// edgeIllegal(), the test is independent of the exterior points and segments, and only
+	// edges failing beyond the determinant's rounding error are reported.
+	boolean nonDelaunay(final int f, final int e) {
+		final int fp = 3 * f, n = neighbor[fp + e];
+		if (n < 0)
+			return false;
+		final int a = 2 * face[fp], b = 2 * face[fp + 1], c = 2 * face[fp + 2],
+			d = 2 * face[getNeighborPtr(n, f)];
+		return inCircle(point[a], point[a + 1], point[b], point[b + 1], point[c], point[c + 1],
+			point[d], point[d + 1]);
+	}
+
+	// returns true if (dx,dy) lies inside the circumcircle of the triangle a, b, c (of
+	// arbitrary orientation) by more than the rounding error of the in-circle determinant
+	static boolean inCircle(
+		final double ax, final double ay,
+		final double bx, final double by,
+		final double cx, final double cy,
+		final double dx, final double dy) {
+		final double adx = ax - dx, ady = ay - dy, bdx = bx - dx, bdy = by - dy,
+			cdx = cx - dx, cdy = cy - dy;
+		final double al = adx * adx + ady * ady, bl = bdx * bdx + bdy * bdy,
+			cl = cdx * cdx + cdy * cdy;
+		final double det = al * (bdx * cdy - cdx * bdy) + bl * (cdx * ady - adx * cdy)
+			+ cl * (adx * bdy - bdx * ady);
+		final double perm = al * (Math.abs(bdx * cdy) + Math.abs(cdx * bdy))
+			+ bl * (Math.abs(cdx * ady) + Math.abs(adx * cdy))
+			+ cl * (Math.abs(adx * bdy) + Math.abs(bdx * ady));
+		final double orient = (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+		if (orient == 0)
+			return false;
+		return (orient > 0 ? det : -det) > IN_CIRCLE_EPS * perm;
+	}
+
 	void init(final double[] p) {
 		int nip = p.length / 2;
 		double r;
@@ -212,6 +320,15 @@ public class Delaunay implements java.io.Serializable {
 			if ((r = Math.abs(p[i])) > xyBound)
 				xyBound = r;
 
+		// n points (including the 3 exterior points) result in 2n-5 faces
+		maximalNumberOfPoints = nip + 8;
+		maximalNumberOfFaces = 2 * nip + 16;
+		point = new double[2 * maximalNumberOfPoints];
+		face = new int[3 * maximalNumberOfFaces];
+		neighbor = new int[3 * maximalNumberOfFaces];
+		segment = new boolean[3 * maximalNumberOfFaces];
+		initCells(p, nip);
+
 		if (xyBound == 0)
 			xyBound = 1; // to omit crash if ALL points are (0,0)
 
@@ -311,13 +428,209 @@ public class Delaunay implements java.io.Serializable {
 		return (ne + 1) % 3;
 	}
 
+	// Returns the face with the lowest index containing the point, as a linear
+	// search through all faces would do. Thus, the result does not depend on the
+	// path the walk takes.
 	int findTriangle(final double x, final double y) {
+		int f = locate(x, y);
+		if (f >= 0)
+			f = lowestContainingFace(f, x, y);
+		else
+			f = findTriangleLinear(x, y);
+
+		if (f >= 0 && cellFace != null) {
+			final int ci = cellColumn(x), cj = cellRow(y);
+			for (int l = cellLevels; l >= 0; l--)
+				cellFace[cellIndex(l, ci, cj)] = f;
+		}
+		return f;
+	}
+
+	// Returns a face containing the point, or -1 if the walk starting at the point
+	// location hint leaves the triangulation.
+	int locate(final double x, final double y) {
+		int start = 0;
+		if (cellFace != null) {
+			final int ci = cellColumn(x), cj = cellRow(y);
+			for (int l = cellLevels; l >= 0; l--) {
+				final int c = cellFace[cellIndex(l, ci, cj)];
+				if (c >= 0) {
+					start = c;
+					break;
+				}
+			}
+		}
+
+		int f = walk(start, x, y);
+		if (f >= 0 && !checkTriangle(f, x, y)) {
+			// rounding issue: try the neighbors before giving up
+			int g = -1;
+			for (int i = 0, fp = 3 * f; i < 3 && g < 0; i++, fp++) {
+				final int n = neighbor[fp];
+				if (n >= 0 && checkTriangle(n, x, y))
+					g = n;
+			}
+			f = g;
+		}
+		return f;
+	}
+
+	int findTriangleLinear(final double x, final double y) {
 		for (int i = 0, fp = 0; i < numberOfFaces; i++, fp += 3)
 			if (checkTriangle(i, x, y))
 				return i;
 		return -1;
 	}
 
+	// Remembering stochastic walk starting at face f. Returns -1 if the walk leaves
+	// the triangulation (or does not terminate).
+	int walk(int f, final double x, final double y) {
+		if (numberOfFaces == 0)
+			return -1;
+		if (f < 0 || f >= numberOfFaces)
+			f = 0;
+
+		int prev = -1;
+		for (int steps = 0; steps <= numberOfFaces; steps++) {
+			final int fp = 3 * f;
+			walkSeed = walkSeed * 1103515245 + 12345;
+			final int r = (walkSeed >>> 16) % 3;
+			int next = -1;
+			boolean cross = false;
+			for (int k = 0; k < 3; k++) {
+				final int e = (r + k) % 3, n = neighbor[fp + e];
+				if (n >= 0 && n == prev)
+					continue;
+				final int p1 = 2 * face[fp + (e + 1) % 3], p2 = 2 * face[fp + (e + 2) % 3];
+				final double x1 = point[p1], y1 = point[p1 + 1];
+				if ((point[p2] - x1) * (y - y1) - (point[p2 + 1] - y1) * (x - x1) < 0) {
+					next = n;
+					cross = true;
+					break;
+				}
+			}
+			if (!cross)
+				return f;
+			if (next < 0)
+				return -1;
+			prev = f;
+			f = next;
+		}
+		return -1;
+	}
+
+	// Collects the faces adjacent to f which contain the point, too (if it lies on an
+	// edge or vertex) and returns the lowest face index. Afterwards, pointOnEdge refers
+	// to the returned face.
+	int lowestContainingFace(final int f, final double x, final double y) {
+		int best = f, m = 1;
+		visited[0] = f;
+		for (int k = 0; k < m; k++) {
+			final int fp = 3 * visited[k];
+			for (int e = 0; e < 3; e++) {
+				final int n = neighbor[fp + e];
+				if (n < 0)
+					continue;
+				boolean known = false;
+				for (int i = 0; i < m && !known; i++)
+					known = (visited[i] == n);
+				if (known || !checkTriangle(n, x, y))
+					continue;
+				if (m >= visited.length)
+					visited = doubleSize(visited);
+				visited[m++] = n;
+				if (n < best)
+					best = n;
+			}
+		}
+		if (m > 1)
+			checkTriangle(best, x, y); // sets pointOnEdge
+		return best;
+	}
+
+	void initCells(final double[] p, final int nip) {
+		if (nip <= 0)
+			return;
+		double xMin = p[0], xMax = p[0], yMin = p[1], yMax = p[1];
+		for (int i = 1, c = 2; i < nip; i++, c += 2) {
+			final double x = p[c], y = p[c + 1];
+			if (x < xMin) xMin = x;
+			if (x > xMax) xMax = x;
+			if (y < yMin) yMin = y;
+			if (y > yMax) yMax = y;
+		}
+		// about two points per cell on the finest level
+		cellLevels = 0;
+		while (cellLevels < 12 && (2L << (2 * cellLevels)) < nip)
+			cellLevels++;
+		final int side = 1 << cellLevels;
+		cellFace = new int[((1 << (2 * cellLevels + 2)) - 1) / 3]; // all levels
+		for (int i = 0; i < cellFace.length; i++)
+			cellFace[i] = -1;
+		cellX0 = xMin;
+		cellY0 = yMin;
+		cellScaleX = (xMax > xMin) ? side / (xMax - xMin) : 0;
+		cellScaleY = (yMax > yMin) ? side / (yMax - yMin) : 0;
+	}
+
+	int cellColumn(final double x) {
+		final int i = (int) ((x - cellX0) * cellScaleX), side = 1 << cellLevels;
+		return (i < 0) ? 0 : ((i >= side) ? side - 1 : i);
+	}
+
+	int cellRow(final double y) {
+		final int j = (int) ((y - cellY0) * cellScaleY), side = 1 << cellLevels;
+		return (j < 0) ? 0 : ((j >= side) ? side - 1 : j);
+	}
+
+	// index of the cell on level l containing the finest-level cell i,j
+	int cellIndex(final int l, final int i, final int j) {
+		final int shift = cellLevels - l;
+		return ((1 << (2 * l)) - 1) / 3 + ((j >> shift) << l) + (i >> shift);
+	}
+
+	// Returns the point indices sorted along a Hilbert curve
+	static int[] hilbertOrder(final double[] p, final int nip) {
+		final int[] order = new int[nip];
+		if (nip == 0)
+			return order;
+		double xMin = p[0], xMax = p[0], yMin = p[1], yMax = p[1];
+		for (int i = 1, c = 2; i < nip; i++, c += 2) {
+			final double x = p[c], y = p[c + 1];
+			if (x < xMin) xMin = x;
+			if (x > xMax) xMax = x;
+			if (y < yMin) yMin = y;
+			if (y > yMax) yMax = y;
+		}
+		final int bits = 15, side = 1 << bits; // keys must not exceed 31 bits
+		final double sx = (xMax > xMin) ? (side - 1) / (xMax - xMin) : 0,
+			sy = (yMax > yMin) ? (side - 1) / (yMax - yMin) : 0;
+
+		final long[] key = new long[nip];
+		for (int i = 0, c = 0; i < nip; i++, c += 2) {
+			int hx = (int) ((p[c] - xMin) * sx), hy = (int) ((p[c + 1] - yMin) * sy), t;
+			long d = 0;
+			for (int s = side >> 1; s > 0; s >>= 1) {
+				final int rx = (hx & s) > 0 ? 1 : 0, ry = (hy & s) > 0 ? 1 : 0;
+				d += (long) s * s * ((3 * rx) ^ ry);
+				if (ry == 0) { // rotate
+					if (rx == 1) {
+						hx = side - 1 - hx;
+						hy = side - 1 - hy;
+					}
+					t = hx;
+					hx = hy;
+					hy = t;
+				}
+			}
+			key[i] = (d << 32) | i;
+		}
+		java.util.Arrays.sort(key);
+		for (int i = 0; i < nip; i++)
+			order[i] = (int) key[i];
+		return order;
+	}
+
 	int pointOnEdge; // Is set to  -1  if the point is INSIDE triangle
 
 	boolean checkTriangle(final int f, final double x, final double y) {
@@ -728,6 +1041,12 @@ public class Delaunay implements java.io.Serializable {
 		}
 
 		numberOfFaces = newNof;
+
+		// the point location hints have to refer to the remaining faces
+		if (cellFace != null)
+			for (int i = 0; i < cellFace.length; i++)
+				if (cellFace[i] >= 0)
+					cellFace[i] = faceIndex[cellFace[i]];
 	}
 
 	// get rid of the three extra points
@@ -736,7 +1055,7 @@ public class Delaunay implements java.io.Serializable {
 		final int p0 = 3 * numberOfFaces;
 		for (int i = 0; i < p0; i++)
 			face[i] -= 3;
-		final int p1 = 3 * numberOfPoints - 6;
+		final int p1 = 2 * numberOfPoints - 6;
 		System.arraycopy(point, 6, point, 0, p1);
 		numberOfPoints -= 3;
 	}
@@ -40,6 +40,7 @@ import java.io.StreamTokenizer;
 import java.util.ArrayList;
 
 import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgElevationGrid;
 
 /**
  * Klasse zur Ermittlung hypsometrischer Farbwerte. Die Zuordnung basiert auf einer Farbtabelle, die verschiedenen
@@ -143,6 +144,17 @@ public class MpGMTHypsometricColor extends MpHypsometricColor
         mRelMaxElevation = max;        
     }
 
+    /**
+     * sets the range for the relative transformation to the elevation range 
+     * of the given grid. For <tt>GmSimpleElevationGrid</tt>s, the grid's 
+     * cached statistics will be used, so that the grid will not be scanned 
+     * again.
+     * @param pGrid Elevation grid
+     */
+    public void setRelativeMinMax(VgElevationGrid pGrid) {
+        this.setRelativeMinMax(pGrid.minimalElevation(), pGrid.maximalElevation());
+    }
+
     /**
      * todo
      * @param pInterpolationSpace
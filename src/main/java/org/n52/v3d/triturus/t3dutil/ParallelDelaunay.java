@@ -0,0 +1,799 @@
+/**
+ * Copyright (C) 2007-2015 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * icense version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * Contact: Benno Schmidt & Martin May, 52 North Initiative for Geospatial Open Source
+ * Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+/** Parallel computation of Delaunay triangulations for large point sets.
+  * <p>
+  * The point set is divided into rectangular cells holding about the same number of
+  * points. The cells are triangulated concurrently using the incremental algorithm
+  * implemented in {@link Delaunay}. A cell's triangle belongs to the global
+  * triangulation, if its circumcircle lies inside the cell (and no further point lies
+  * on it). The vertices of the remaining triangles, i.e. the seams along the cell
+  * borders, are triangulated once again; the resulting triangles that do not overlap
+  * the cells' triangles close the gaps. Where the seam triangulation does not fit the
+  * cells' triangles exactly, the adjacent cell triangles are added to the seam and the
+  * merge step is repeated. If this fails repeatedly (e.g. for degenerated inputs), the
+  * whole point set will be triangulated sequentially; {@link #getNumCells()} then
+  * returns 1.
+  * <p>
+  * Finally, the result is made a Delaunay triangulation (unique up to co-circular points):
+  * The concavities along the boundary, which the incremental algorithm leaves near the
+  * convex hull, are closed by additional triangles, and Lawson's flip algorithm is applied,
+  * i.e. each interior edge failing the in-circle test is flipped until all edges are
+  * locally Delaunay. In contrast, the incremental algorithm may leave non-Delaunay edges
+  * due to its on-edge rule (see {@link Delaunay#getNumNonDelaunayEdges()}). Thus, the
+  * triangles will be
+  * numbered differently than by {@link Delaunay#Delaunay(double[])}, and even for small
+  * point sets (a single cell) some of them may differ.
+  * <p>
+  * The result is accessible through the methods inherited from {@link Delaunay}; the
+  * face and neighbor arrays are set up in the same manner. The result does not depend on
+  * the number of threads.
+  *
+  * @author Benno Schmidt
+  */
+public class ParallelDelaunay extends Delaunay {
+	private static final long serialVersionUID = 1L;
+
+	// Target number of points per cell
+	static int POINTS_PER_CELL = 150000;
+	// Maximal number of cells per side (i.e. the point set is divided into up to 256 cells)
+	static int MAX_CELLS_PER_SIDE = 16;
+	// Tolerance for the circumcircle tests relative to the point set's extent
+	static double EPS = 1e-9;
+	// Maximal number of merge attempts
+	static int MAX_MERGE_ITERATIONS = 10;
+
+	static final int BINS = 1 << 16;
+	static final int OPEN = -2;
+
+	int numberOfThreads;
+	int numberOfCells = 1;
+	int numberOfFlips;
+
+	// cell layout: k strips in x-direction, each divided into k cells in y-direction
+	int k;
+	double xMin, xScale, yMin;
+	double[] yMinOfStrip, yScale;
+	int[] stripOfBin; // x-bin -> strip
+	int[][] cellOfBin; // strip, y-bin -> cell
+	double[] cellBounds; // x0, x1, y0, y1 for each cell
+	double margin;
+
+	// triangulations of the cells
+	Delaunay[] cellTri;
+	int[][] cellPoints; // cell's point -> global point index
+	boolean[][] cellFinal;
+
+	/**
+	 * A Delaunay triangulation for the given points is created.
+	 * @param p the points given as <code>x<sub>1</sub>,y<sub>1</sub>,
+	 * x<sub>2</sub>,y<sub>2</sub>,...</code>
+	 * @param numberOfThreads the maximal number of threads to be used
+	 * @see T3dParallelExecutor#availableProcessors
+	 */
+	public ParallelDelaunay(final double[] p, final int numberOfThreads) {
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		final int nip = p.length / 2;
+		k = Math.min(MAX_CELLS_PER_SIDE, (int) Math.ceil(Math.sqrt((double) nip / POINTS_PER_CELL)));
+		if (k <= 1)
+			adopt(new Delaunay(p));
+		else if (triangulateCells(p, nip))
+			numberOfCells = k * k;
+		else
+			adopt(new Delaunay(p, true));
+		fillHullPockets();
+		numberOfFlips = flipNonDelaunayEdges();
+
+		// release the helper structures
+		cellTri = null;
+		cellPoints = null;
+		cellFinal = null;
+		stripOfBin = null;
+		cellOfBin = null;
+	}
+
+	/**
+	 * This static methods returns an index set containing a Delaunay triangulation for a
+	 * given set of points.
+	 * @param p the points given as <code>x<sub>1</sub>,y<sub>1</sub>,
+	 * x<sub>2</sub>,y<sub>2</sub>,...</code>
+	 * @param numberOfThreads the maximal number of threads to be used
+	 * @return the index set: <code>p<sub>1</sub> .... p<sub>3n</sub></code>.
+	 * Triangle <code>i</code> consists of points number
+	 *  <code>p<sub>3i</sub>, p<sub>3i+1</sub>, p<sub>3i+2</sub></code>
+	 */
+	public static int[] triangulate(final double[] p, final int numberOfThreads) {
+		return new ParallelDelaunay(p, numberOfThreads).getIndices();
+	}
+
+	/**
+	 * @return The number of cells triangulated concurrently, or 1 if the point set has been
+	 * triangulated sequentially
+	 */
+	public int getNumCells() {
+		return numberOfCells;
+	}
+
+	/**
+	 * @return The number of edges flipped by the final Lawson pass
+	 */
+	public int getNumFlips() {
+		return numberOfFlips;
+	}
+
+	// Closes the concavities of the triangulation's boundary (ear clipping of the pockets
+	// between the boundary and the convex hull), so that the convex hull is covered. The
+	// faces are oriented counter-clockwise, i.e. the boundary edges are traversed with the
+	// triangulation on their left side.
+	void fillHullPockets() {
+		// boundary vertex list: vertex -> slot (next, previous, and the boundary edge's face
+		// pointer to the next vertex)
+		final T3dLongIntHashMap slot = new T3dLongIntHashMap(1024);
+		int[] vertex = new int[64], next = new int[64], fpOfEdge = new int[64];
+		int n = 0;
+		for (int f = 0, fp = 0; f < numberOfFaces; f++, fp += 3)
+			for (int e = 0; e < 3; e++)
+				if (neighbor[fp + e] < 0) {
+					if (n == vertex.length) {
+						vertex = doubleSize(vertex);
+						next = doubleSize(next);
+						fpOfEdge = doubleSize(fpOfEdge);
+					}
+					if (slot.putIfAbsent(face[fp + (e + 1) % 3], n) >= 0)
+						return; // boundary touching itself; leave it as it is
+					vertex[n] = face[fp + (e + 1) % 3];
+					next[n] = face[fp + (e + 2) % 3]; // (vertex index, replaced below)
+					fpOfEdge[n] = fp + e;
+					n++;
+				}
+		if (n < 3)
+			return;
+		final int[] prev = new int[n];
+		for (int i = 0; i < n; i++) {
+			final int j = slot.get(next[i]);
+			if (j < 0)
+				return; // not a closed polygon
+			next[i] = j;
+			prev[j] = i;
+		}
+
+		final boolean[] removed = new boolean[n];
+		final boolean[] queued = new boolean[n];
+		int[] queue = new int[n];
+		int top = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			queue[top++] = i;
+			queued[i] = true;
+		}
+		while (top > 0) {
+			final int ib = queue[--top];
+			queued[ib] = false;
+			if (removed[ib])
+				continue;
+			final int ia = prev[ib], ic = next[ib];
+			if (ia == ic)
+				break;
+			final int a = vertex[ia], b = vertex[ib], c = vertex[ic];
+			if (!reflex(a, b, c) || !earIsEmpty(ia, ib, ic, vertex, next))
+				continue;
+
+			// new face (a, c, b) behind the boundary edges a->b and b->c
+			checkFaceArray();
+			final int g = numberOfFaces++, gp = 3 * g;
+			face[gp] = a;
+			face[gp + 1] = c;
+			face[gp + 2] = b;
+			neighbor[gp] = fpOfEdge[ib] / 3;
+			neighbor[gp + 1] = fpOfEdge[ia] / 3;
+			neighbor[gp + 2] = -1;
+			segment[gp] = segment[gp + 1] = segment[gp + 2] = false;
+			neighbor[fpOfEdge[ib]] = g;
+			neighbor[fpOfEdge[ia]] = g;
+
+			// the boundary edge a->c replaces a->b->c
+			removed[ib] = true;
+			next[ia] = ic;
+			prev[ic] = ia;
+			fpOfEdge[ia] = gp + 2;
+			if (!queued[ia]) {
+				queue[top++] = ia;
+				queued[ia] = true;
+			}
+			if (!queued[ic]) {
+				queue[top++] = ic;
+				queued[ic] = true;
+			}
+		}
+	}
+
+	// returns true if the boundary turns right at b beyond the rounding error
+	boolean reflex(final int a, final int b, final int c) {
+		final double ax = point[2 * a], ay = point[2 * a + 1], bx = point[2 * b], by = point[2 * b + 1],
+			cx = point[2 * c], cy = point[2 * c + 1];
+		final double l = (bx - ax) * (cy - ay), r = (cx - ax) * (by - ay);
+		return l - r < -1e-12 * (Math.abs(l) + Math.abs(r));
+	}
+
+	// checks that no other boundary vertex lies inside or on the triangle (a, c, b) given
+	// by the boundary slots ia, ib, ic
+	boolean earIsEmpty(final int ia, final int ib, final int ic, final int[] vertex,
+		final int[] next) {
+		final int a = 2 * vertex[ia], b = 2 * vertex[ib], c = 2 * vertex[ic];
+		final double ax = point[a], ay = point[a + 1], bx = point[b], by = point[b + 1],
+			cx = point[c], cy = point[c + 1];
+		for (int i = next[ic]; i != ia; i = next[i]) {
+			final double x = point[2 * vertex[i]], y = point[2 * vertex[i] + 1];
+			if ((cx - ax) * (y - ay) - (x - ax) * (cy - ay) >= 0
+				&& (bx - cx) * (y - cy) - (x - cx) * (by - cy) >= 0
+				&& (ax - bx) * (y - by) - (x - bx) * (ay - by) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	// Lawson's flip algorithm: flips the edges failing the in-circle test until all interior
+	// edges are locally Delaunay. The edges to start with are searched concurrently, and
+	// are processed in ascending order, so that the result does not depend on the number of
+	// threads. Returns the number of flips.
+	int flipNonDelaunayEdges() {
+		final int[][] found = new int[1][16];
+		final int[] count = new int[1];
+		T3dParallelExecutor.execute(0, numberOfFaces, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+			public void process(int from, int to) {
+				int[] l = new int[16];
+				int n = 0;
+				for (int f = from; f < to; f++)
+					for (int e = 0; e < 3; e++)
+						if (neighbor[3 * f + e] > f && nonDelaunay(f, e)) {
+							if (n == l.length)
+								l = doubleSize(l);
+							l[n++] = 3 * f + e;
+						}
+				synchronized (found) {
+					while (count[0] + n > found[0].length)
+						found[0] = doubleSize(found[0]);
+					System.arraycopy(l, 0, found[0], count[0], n);
+					count[0] += n;
+				}
+			}
+		});
+		int[] stack = found[0];
+		int top = count[0];
+		java.util.Arrays.sort(stack, 0, top);
+		// (descending on the stack, so that the lowest edge is popped first)
+		for (int i = 0, j = top - 1; i < j; i++, j--) {
+			final int h = stack[i];
+			stack[i] = stack[j];
+			stack[j] = h;
+		}
+
+		int flips = 0;
+		while (top > 0) {
+			final int fe = stack[--top], f = fe / 3, e = fe % 3;
+			if (!nonDelaunay(f, e))
+				continue; // (edge has changed meanwhile)
+			final int n = neighbor[fe];
+			flipEdge(f, e);
+			flips++;
+			// the quadrilateral's outer edges have to be checked again
+			while (top + 6 > stack.length)
+				stack = doubleSize(stack);
+			for (int i = 0; i < 3; i++) {
+				stack[top++] = 3 * f + i;
+				stack[top++] = 3 * n + i;
+			}
+		}
+		return flips;
+	}
+
+	void adopt(final Delaunay d) {
+		point = d.point;
+		face = d.face;
+		neighbor = d.neighbor;
+		segment = d.segment;
+		maximalNumberOfPoints = d.maximalNumberOfPoints;
+		maximalNumberOfFaces = d.maximalNumberOfFaces;
+		numberOfPoints = d.numberOfPoints;
+		numberOfFaces = d.numberOfFaces;
+		xyBound = d.xyBound;
+		hasExteriorPoints = d.hasExteriorPoints;
+		cellFace = d.cellFace;
+		cellLevels = d.cellLevels;
+		cellX0 = d.cellX0;
+		cellY0 = d.cellY0;
+		cellScaleX = d.cellScaleX;
+		cellScaleY = d.cellScaleY;
+	}
+
+	// returns false if the merge step did not succeed
+	boolean triangulateCells(final double[] p, final int nip) {
+		final int nCells = k * k;
+		final int[] cellOfPoint = setUpCells(p, nip);
+
+		// counting sort of the points by cells
+		final int[] count = new int[nCells];
+		for (int i = 0; i < nip; i++)
+			count[cellOfPoint[i]]++;
+		cellPoints = new int[nCells][];
+		for (int c = 0; c < nCells; c++)
+			cellPoints[c] = new int[count[c]];
+		java.util.Arrays.fill(count, 0);
+		for (int i = 0; i < nip; i++) {
+			final int c = cellOfPoint[i];
+			cellPoints[c][count[c]++] = i;
+		}
+
+		// triangulate the cells concurrently and mark the seam points
+		cellTri = new Delaunay[nCells];
+		cellFinal = new boolean[nCells][];
+		final boolean[] seam = new boolean[nip];
+		T3dParallelExecutor.execute(0, nCells, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+			public void process(int from, int to) {
+				for (int c = from; c < to; c++)
+					triangulateCell(c, p, seam);
+			}
+		});
+
+		// merge the cells' triangulations
+		final boolean[] conflict = new boolean[nip];
+		for (int it = 0; it < MAX_MERGE_ITERATIONS; it++) {
+			if (merge(p, nip, seam, conflict))
+				return true;
+
+			// give up the final faces around the conflicting points
+			T3dParallelExecutor.execute(0, nCells, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+				public void process(int from, int to) {
+					for (int c = from; c < to; c++)
+						demote(c, conflict, seam);
+				}
+			});
+			java.util.Arrays.fill(conflict, false);
+		}
+		return false;
+	}
+
+	// Triangulates the seam points and puts the triangulations together. Returns false if
+	// the parts do not fit together; in this case, the points concerned will be marked in
+	// conflict.
+	boolean merge(final double[] p, final int nip, final boolean[] seam, final boolean[] conflict) {
+		final int nCells = k * k;
+
+		// triangulate the seam points
+		int ns = 0;
+		for (int i = 0; i < nip; i++)
+			if (seam[i])
+				ns++;
+		if (ns < 3)
+			return false;
+		final int[] seamPoints = new int[ns];
+		final double[] q = new double[2 * ns];
+		for (int i = 0, j = 0; i < nip; i++)
+			if (seam[i]) {
+				seamPoints[j] = i;
+				q[2 * j] = p[2 * i];
+				q[2 * j + 1] = p[2 * i + 1];
+				j++;
+			}
+		final Delaunay seamTri = new Delaunay(q, true);
+
+		// keep the seam triangles that do not overlap final cell triangles
+		final int nsf = seamTri.numberOfFaces;
+		final boolean[] keep = new boolean[nsf];
+		final int[] cellOfFace = new int[nsf];
+		final int[] seamFaceCount = new int[nCells + 1];
+		for (int f = 0, fp = 0; f < nsf; f++, fp += 3) {
+			final int p0 = 2 * seamTri.face[fp], p1 = 2 * seamTri.face[fp + 1], p2 = 2 * seamTri.face[fp + 2];
+			cellOfFace[f] = cellOf(
+				(q[p0] + q[p1] + q[p2]) / 3., 
+				(q[p0 + 1] + q[p1 + 1] + q[p2 + 1]) / 3.);
+			seamFaceCount[cellOfFace[f] + 1]++;
+		}
+		for (int c = 0; c < nCells; c++)
+			seamFaceCount[c + 1] += seamFaceCount[c];
+		final int[] seamFaces = new int[nsf];
+		final int[] pos = seamFaceCount.clone();
+		for (int f = 0; f < nsf; f++)
+			seamFaces[pos[cellOfFace[f]]++] = f;
+
+		T3dParallelExecutor.execute(0, nCells, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+			public void process(int from, int to) {
+				for (int c = from; c < to; c++) {
+					final Delaunay d = cellTri[c];
+					for (int i = seamFaceCount[c]; i < seamFaceCount[c + 1]; i++) {
+						final int f = seamFaces[i], fp = 3 * f;
+						if (d == null) {
+							keep[f] = true;
+							continue;
+						}
+						final int p0 = 2 * seamTri.face[fp], p1 = 2 * seamTri.face[fp + 1], p2 = 2 * seamTri.face[fp + 2];
+						final int lf = d.locate(
+							(q[p0] + q[p1] + q[p2]) / 3.,
+							(q[p0 + 1] + q[p1 + 1] + q[p2 + 1]) / 3.);
+						keep[f] = (lf < 0 || !cellFinal[c][lf]);
+					}
+				}
+			}
+		});
+
+		return assemble(p, nip, seamTri, seamPoints, keep, conflict);
+	}
+
+	// determines the cell layout and returns the cell index for each point
+	int[] setUpCells(final double[] p, final int nip) {
+		double xMax = p[0], yMax = p[1];
+		xMin = p[0];
+		yMin = p[1];
+		for (int i = 1, c = 2; i < nip; i++, c += 2) {
+			final double x = p[c], y = p[c + 1];
+			if (x < xMin) xMin = x;
+			if (x > xMax) xMax = x;
+			if (y < yMin) yMin = y;
+			if (y > yMax) yMax = y;
+		}
+		margin = EPS * Math.max(Math.max(xMax - xMin, yMax - yMin), Math.max(
+			Math.max(Math.abs(xMin), Math.abs(xMax)), Math.max(Math.abs(yMin), Math.abs(yMax))));
+		xScale = (xMax > xMin) ? BINS / (xMax - xMin) : 0;
+
+		// strips of equal point counts
+		final int[] hist = new int[BINS];
+		final int[] bin = new int[nip];
+		for (int i = 0, c = 0; i < nip; i++, c += 2)
+			hist[bin[i] = bin(p[c], xMin, xScale)]++;
+		stripOfBin = new int[BINS];
+		final double[] xb = new double[k + 1];
+		splitBins(hist, nip, stripOfBin, xb, xMin, xScale);
+
+		final int[] cellOfPoint = new int[nip];
+		for (int i = 0; i < nip; i++)
+			cellOfPoint[i] = stripOfBin[bin[i]];
+
+		// cells of equal point counts inside the strips
+		yScale = new double[k];
+		cellOfBin = new int[k][BINS];
+		cellBounds = new double[4 * k * k];
+		final double[] sMin = new double[k], sMax = new double[k];
+		java.util.Arrays.fill(sMin, Double.POSITIVE_INFINITY);
+		java.util.Arrays.fill(sMax, Double.NEGATIVE_INFINITY);
+		final int[] sCount = new int[k];
+		for (int i = 0; i < nip; i++) {
+			final int s = cellOfPoint[i];
+			final double y = p[2 * i + 1];
+			if (y < sMin[s]) sMin[s] = y;
+			if (y > sMax[s]) sMax[s] = y;
+			sCount[s]++;
+		}
+		final int[][] yHist = new int[k][BINS];
+		for (int s = 0; s < k; s++) {
+			yScale[s] = (sMax[s] > sMin[s]) ? BINS / (sMax[s] - sMin[s]) : 0;
+			if (sCount[s] == 0)
+				sMin[s] = yMin;
+		}
+		for (int i = 0; i < nip; i++) {
+			final int s = cellOfPoint[i];
+			yHist[s][bin[i] = bin(p[2 * i + 1], sMin[s], yScale[s])]++;
+		}
+		final double[] yb = new double[k + 1];
+		for (int s = 0; s < k; s++) {
+			splitBins(yHist[s], sCount[s], cellOfBin[s], yb, sMin[s], yScale[s]);
+			for (int t = 0; t < k; t++) {
+				final int c = s * k + t;
+				cellBounds[4 * c] = xb[s];
+				cellBounds[4 * c + 1] = xb[s + 1];
+				cellBounds[4 * c + 2] = yb[t];
+				cellBounds[4 * c + 3] = yb[t + 1];
+			}
+			for (int b = 0; b < BINS; b++)
+				cellOfBin[s][b] += s * k;
+		}
+		yMinOfStrip = sMin;
+
+		for (int i = 0; i < nip; i++) {
+			final int s = cellOfPoint[i];
+			cellOfPoint[i] = cellOfBin[s][bin[i]];
+		}
+		return cellOfPoint;
+	}
+
+	static int bin(final double v, final double v0, final double scale) {
+		final int b = (int) ((v - v0) * scale);
+		return (b < 0) ? 0 : ((b >= BINS) ? BINS - 1 : b);
+	}
+
+	// assigns the bins to k parts of about equal counts; bounds receives the parts'
+	// borders (the outer borders are infinite)
+	void splitBins(final int[] hist, final int n, final int[] partOfBin, final double[] bounds,
+		final double v0, final double scale) {
+		int part = 0, sum = 0;
+		bounds[0] = Double.NEGATIVE_INFINITY;
+		for (int b = 0; b < BINS; b++) {
+			while (part < k - 1 && sum >= (long) n * (part + 1) / k) {
+				part++;
+				bounds[part] = (scale > 0) ? v0 + b / scale : v0;
+			}
+			partOfBin[b] = part;
+			sum += hist[b];
+		}
+		while (part < k - 1) {
+			part++;
+			bounds[part] = Double.POSITIVE_INFINITY;
+		}
+		bounds[k] = Double.POSITIVE_INFINITY;
+	}
+
+	int cellOf(final double x, final double y) {
+		final int s = stripOfBin[bin(x, xMin, xScale)];
+		return cellOfBin[s][bin(y, yMinOfStrip[s], yScale[s])];
+	}
+
+	// triangulates a cell, determines the final triangles and marks the seam points
+	void triangulateCell(final int c, final double[] p, final boolean[] seam) {
+		final int[] glob = cellPoints[c];
+		final int n = glob.length;
+		if (n < 3) {
+			for (int i = 0; i < n; i++)
+				seam[glob[i]] = true;
+			return;
+		}
+		final double[] q = new double[2 * n];
+		for (int i = 0; i < n; i++) {
+			q[2 * i] = p[2 * glob[i]];
+			q[2 * i + 1] = p[2 * glob[i] + 1];
+		}
+		final Delaunay d = new Delaunay(q, true);
+		final boolean[] fin = new boolean[d.numberOfFaces];
+		final boolean[] used = new boolean[n];
+		final double x0 = cellBounds[4 * c] + margin, x1 = cellBounds[4 * c + 1] - margin,
+			y0 = cellBounds[4 * c + 2] + margin, y1 = cellBounds[4 * c + 3] - margin;
+
+		for (int f = 0, fp = 0; f < d.numberOfFaces; f++, fp += 3) {
+			final int v0 = d.face[fp], v1 = d.face[fp + 1], v2 = d.face[fp + 2];
+			used[v0] = used[v1] = used[v2] = true;
+			boolean ok = d.neighbor[fp] >= 0 && d.neighbor[fp + 1] >= 0 && d.neighbor[fp + 2] >= 0;
+			if (ok) {
+				// the circumcircle has to be inside the cell...
+				d.computeCircumCircle(f);
+				final double cx = d.circleX, cy = d.circleY, r = Math.sqrt(d.circleR);
+				ok = cx - r > x0 && cx + r < x1 && cy - r > y0 && cy + r < y1;
+				// ... and the neighbors' opposite vertices must not lie on it
+				final double rr = (r + margin) * (r + margin);
+				for (int e = 0; e < 3 && ok; e++) {
+					final int v = 2 * d.face[d.getNeighborPtr(d.neighbor[fp + e], f)];
+					final double dx = q[v] - cx, dy = q[v + 1] - cy;
+					ok = dx * dx + dy * dy > rr;
+				}
+			}
+			if (ok)
+				fin[f] = true;
+			else
+				seam[glob[v0]] = seam[glob[v1]] = seam[glob[v2]] = true;
+		}
+		for (int i = 0; i < n; i++)
+			if (!used[i])
+				seam[glob[i]] = true;
+
+		cellTri[c] = d;
+		cellFinal[c] = fin;
+	}
+
+	// demotes the final faces of a cell incident to conflicting points
+	void demote(final int c, final boolean[] conflict, final boolean[] seam) {
+		final Delaunay d = cellTri[c];
+		if (d == null)
+			return;
+		final int[] glob = cellPoints[c];
+		final boolean[] fin = cellFinal[c];
+		for (int f = 0, fp = 0; f < fin.length; f++, fp += 3) {
+			if (!fin[f])
+				continue;
+			final int v0 = glob[d.face[fp]], v1 = glob[d.face[fp + 1]], v2 = glob[d.face[fp + 2]];
+			if (conflict[v0] || conflict[v1] || conflict[v2]) {
+				fin[f] = false;
+				seam[v0] = seam[v1] = seam[v2] = true;
+			}
+		}
+	}
+
+	// Sets up the face and neighbor arrays. Returns false if the parts do not fit together;
+	// in this case, the arrays remain untouched.
+	boolean assemble(final double[] p, final int nip, final Delaunay seamTri, final int[] seamPoints,
+		final boolean[] keep, final boolean[] conflict) {
+		final int nCells = k * k;
+
+		// global face numbering: the cells' final faces, followed by the kept seam faces
+		final int[][] faceMap = new int[nCells][];
+		final int[] offset = new int[nCells + 1];
+		T3dParallelExecutor.execute(0, nCells, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+			public void process(int from, int to) {
+				for (int c = from; c < to; c++) {
+					if (cellTri[c] == null)
+						continue;
+					final boolean[] fin = cellFinal[c];
+					final int[] map = new int[fin.length];
+					int m = 0;
+					for (int f = 0; f < map.length; f++)
+						map[f] = fin[f] ? m++ : -1;
+					faceMap[c] = map;
+					offset[c + 1] = m;
+				}
+			}
+		});
+		for (int c = 0; c < nCells; c++)
+			offset[c + 1] += offset[c];
+		final int nfc = offset[nCells], nsf = seamTri.numberOfFaces;
+		final int[] seamFaceMap = new int[nsf];
+		int nf = nfc;
+		for (int f = 0; f < nsf; f++)
+			seamFaceMap[f] = keep[f] ? nf++ : -1;
+
+		// open edges of the cells' final faces, i.e. edges to non-final faces
+		final T3dLongIntHashMap open = new T3dLongIntHashMap(2 * seamPoints.length);
+		final boolean[] matched = new boolean[3 * nfc];
+		boolean ok = true;
+		for (int c = 0; c < nCells; c++) {
+			final Delaunay d = cellTri[c];
+			if (d == null)
+				continue;
+			final boolean[] fin = cellFinal[c];
+			final int[] glob = cellPoints[c], map = faceMap[c];
+			for (int f = 0, fp = 0; f < fin.length; f++, fp += 3) {
+				if (!fin[f])
+					continue;
+				for (int i = 0; i < 3; i++)
+					if (!fin[d.neighbor[fp + i]]) {
+						final int gp = 3 * (offset[c] + map[f]) + i;
+						if (open.putIfAbsent(edgeKey(glob[d.face[fp + (i + 1) % 3]], glob[d.face[fp + (i + 2) % 3]]), gp) >= 0) {
+							// overlapping faces
+							markConflict(glob[d.face[fp]], glob[d.face[fp + 1]], glob[d.face[fp + 2]], conflict);
+							ok = false;
+						}
+					}
+			}
+		}
+
+		// match them with the seam faces' open edges
+		final T3dLongIntHashMap seamBoundary = new T3dLongIntHashMap(seamPoints.length);
+		final int[] seamNeighbor = new int[3 * nsf];
+		for (int f = 0, fp = 0; f < nsf; f++, fp += 3) {
+			final int a = seamPoints[seamTri.face[fp]], b = seamPoints[seamTri.face[fp + 1]],
+				c = seamPoints[seamTri.face[fp + 2]];
+			for (int i = 0; i < 3; i++) {
+				final int n = seamTri.neighbor[fp + i];
+				final int v1 = (i == 0) ? b : ((i == 1) ? c : a), v2 = (i == 0) ? c : ((i == 1) ? a : b);
+				if (n < 0)
+					seamBoundary.put(edgeKey(v1, v2), 0);
+				if (!keep[f])
+					continue;
+				if (n < 0)
+					seamNeighbor[fp + i] = -1;
+				else if (keep[n])
+					seamNeighbor[fp + i] = seamFaceMap[n];
+				else {
+					final int m = open.get(edgeKey(v2, v1));
+					if (m < 0 || matched[m]) { // gap
+						markConflict(a, b, c, conflict);
+						ok = false;
+					}
+					else {
+						matched[m] = true;
+						seamNeighbor[fp + i] = OPEN - m; // (encodes the cells' face's edge)
+					}
+				}
+			}
+		}
+		// unmatched edges must lie on the seam triangulation's boundary
+		for (int c = 0; c < nCells; c++) {
+			final Delaunay d = cellTri[c];
+			if (d == null)
+				continue;
+			final boolean[] fin = cellFinal[c];
+			final int[] glob = cellPoints[c], map = faceMap[c];
+			for (int f = 0, fp = 0; f < fin.length; f++, fp += 3) {
+				if (!fin[f])
+					continue;
+				for (int i = 0; i < 3; i++) {
+					final int from = glob[d.face[fp + (i + 1) % 3]], to = glob[d.face[fp + (i + 2) % 3]];
+					if (!fin[d.neighbor[fp + i]] && !matched[3 * (offset[c] + map[f]) + i]
+						&& seamBoundary.get(edgeKey(from, to)) < 0) {
+						markConflict(from, to, to, conflict);
+						ok = false;
+					}
+				}
+			}
+		}
+		if (!ok)
+			return false;
+
+		// set up the arrays
+		numberOfPoints = nip;
+		numberOfFaces = nf;
+		maximalNumberOfPoints = nip + 8;
+		maximalNumberOfFaces = nf + 16;
+		point = new double[2 * maximalNumberOfPoints];
+		System.arraycopy(p, 0, point, 0, 2 * nip);
+		face = new int[3 * maximalNumberOfFaces];
+		neighbor = new int[3 * maximalNumberOfFaces];
+		segment = new boolean[3 * maximalNumberOfFaces];
+		hasExteriorPoints = false;
+		xyBound = 0;
+		for (int i = 0; i < 2 * nip; i++)
+			xyBound = Math.max(xyBound, Math.abs(p[i]));
+		if (xyBound == 0)
+			xyBound = 1;
+
+		T3dParallelExecutor.execute(0, nCells, numberOfThreads, new T3dParallelExecutor.RangeTask() {
+			public void process(int from, int to) {
+				for (int c = from; c < to; c++) {
+					final Delaunay d = cellTri[c];
+					if (d == null)
+						continue;
+					final boolean[] fin = cellFinal[c];
+					final int[] glob = cellPoints[c], map = faceMap[c];
+					final int off = offset[c];
+					for (int f = 0, fp = 0; f < fin.length; f++, fp += 3) {
+						if (!fin[f])
+							continue;
+						for (int i = 0, gp = 3 * (off + map[f]); i < 3; i++, gp++) {
+							face[gp] = glob[d.face[fp + i]];
+							final int n = d.neighbor[fp + i];
+							neighbor[gp] = fin[n] ? off + map[n] : -1; // (seam neighbors are set below)
+						}
+					}
+				}
+			}
+		});
+		for (int f = 0, fp = 0; f < nsf; f++, fp += 3) {
+			if (!keep[f])
+				continue;
+			for (int i = 0, gp = 3 * seamFaceMap[f]; i < 3; i++, gp++) {
+				face[gp] = seamPoints[seamTri.face[fp + i]];
+				final int n = seamNeighbor[fp + i];
+				if (n > OPEN)
+					neighbor[gp] = n;
+				else {
+					neighbor[gp] = (OPEN - n) / 3;
+					neighbor[OPEN - n] = seamFaceMap[f];
+				}
+			}
+		}
+		return true;
+	}
+
+	static void markConflict(final int v0, final int v1, final int v2, final boolean[] conflict) {
+		conflict[v0] = conflict[v1] = conflict[v2] = true;
+	}
+
+	// key of the directed edge from a to b
+	static long edgeKey(final int a, final int b) {
+		return ((long) a << 32) | b;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+/**
+ * Helpers to resize primitive arrays. The methods correspond to 
+ * <tt>java.util.Arrays#copyOf</tt> and <tt>#copyOfRange</tt>, which are not 
+ * available for the Java 5 target platform.
+ *
+ * @author Benno Schmidt
+ */
+public class T3dArrays
+{
+    private T3dArrays() {
+    }
+
+    /**
+     * copies the given array, truncating or padding with zeros so that the 
+     * copy has the specified length.
+     * 
+     * @param pSrc Array to be copied
+     * @param pLength Length of the copy
+     * @return Copy of the given array
+     */
+    public static int[] copyOf(int[] pSrc, int pLength) 
+    {
+        int[] res = new int[pLength];
+        System.arraycopy(pSrc, 0, res, 0, Math.min(pSrc.length, pLength));
+        return res;
+    }
+
+    /**
+     * @see T3dArrays#copyOf(int[], int)
+     */
+    public static long[] copyOf(long[] pSrc, int pLength) 
+    {
+        long[] res = new long[pLength];
+        System.arraycopy(pSrc, 0, res, 0, Math.min(pSrc.length, pLength));
+        return res;
+    }
+
+    /**
+     * @see T3dArrays#copyOf(int[], int)
+     */
+    public static float[] copyOf(float[] pSrc, int pLength) 
+    {
+        float[] res = new float[pLength];
+        System.arraycopy(pSrc, 0, res, 0, Math.min(pSrc.length, pLength));
+        return res;
+    }
+
+    /**
+     * @see T3dArrays#copyOf(int[], int)
+     */
+    public static double[] copyOf(double[] pSrc, int pLength) 
+    {
+        double[] res = new double[pLength];
+        System.arraycopy(pSrc, 0, res, 0, Math.min(pSrc.length, pLength));
+        return res;
+    }
+
+    /**
+     * copies the given array, truncating or padding with <i>false</i> so 
+     * that the copy has the specified length.
+     * 
+     * @param pSrc Array to be copied
+     * @param pLength Length of the copy
+     * @return Copy of the given array
+     */
+    public static boolean[] copyOf(boolean[] pSrc, int pLength) 
+    {
+        boolean[] res = new boolean[pLength];
+        System.arraycopy(pSrc, 0, res, 0, Math.min(pSrc.length, pLength));
+        return res;
+    }
+
+    /**
+     * copies the elements <tt>pFrom</tt> (inclusive) to <tt>pTo</tt> 
+     * (exclusive) of the given array.
+     * 
+     * @param pSrc Array to be copied
+     * @param pFrom Start index
+     * @param pTo End index
+     * @return Copy of the given range
+     */
+    public static int[] copyOfRange(int[] pSrc, int pFrom, int pTo) 
+    {
+        int[] res = new int[pTo - pFrom];
+        System.arraycopy(pSrc, pFrom, res, 0, pTo - pFrom);
+        return res;
+    }
+}
@@ -0,0 +1,583 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+import java.util.List;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Static 2-D kd-tree for scattered points. The tree will be built once for 
+ * a given point set; afterwards, nearest-neighbor queries referring to the 
+ * points' x- and y-coordinates can be performed. The z-values are held 
+ * together with the point positions, thus point-based filters (e.g. gridding 
+ * or thinning operations) can use the tree as point store, too.<p>
+ * The points are held in primitive arrays reordered with respect to the tree 
+ * structure. Query results refer to this order (&quot;tree positions&quot;);
+ * the point's index in the input set can be retrieved by 
+ * {@link #getOriginalIndex(int)}.<p>
+ * Queries do not modify the tree; thus, a tree may be queried by multiple 
+ * threads simultaneously, as long as each thread uses its own 
+ * {@link Neighbors} object. Usage example:
+ * <pre>
+ * T3dKdTree tree = new T3dKdTree(xyz, n);
+ * T3dKdTree.Neighbors nb = new T3dKdTree.Neighbors(8);
+ * tree.nearest(x, y, 8, 100., nb);
+ * for (int i = 0; i &lt; nb.size(); i++) {
+ *     double z = tree.getZ(nb.getPosition(i));
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Benno Schmidt
+ */
+public class T3dKdTree
+{
+    private final static int cBucketSize = 8;
+
+    private int mSize;
+    private double[] mX, mY, mZ;
+    private int[] mIndex;
+    private boolean[] mSplitY; // split dimension of the node with median position i
+    private double mXMin, mXMax, mYMin, mYMax; // bounding box
+
+    /**
+     * Result set of a nearest-neighbor query. A <tt>Neighbors</tt> object may 
+     * be reused for subsequent queries, which avoids object creation. Note 
+     * that the neighbors are not given in any particular order.
+     */
+    public static class Neighbors
+    {
+        private int[] mPos;
+        private double[] mDist2;
+        private int[] mCount; // number of entries per sector
+        private int mK, mSectors;
+        private double[] mSectorBounds = null; // pseudo-angles of the sector borders
+
+        /**
+         * Constructor.
+         * 
+         * @param pCapacity Expected maximal number of neighbors
+         */
+        public Neighbors(int pCapacity) {
+            mPos = new int[Math.max(1, pCapacity)];
+            mDist2 = new double[mPos.length];
+            mCount = new int[1];
+        }
+
+        private void reset(int pK, int pSectors) 
+        {
+            mK = pK;
+            mSectors = pSectors;
+            if (mPos.length < pK * pSectors) {
+                mPos = new int[pK * pSectors];
+                mDist2 = new double[pK * pSectors];
+            }
+            if (mCount.length < pSectors)
+                mCount = new int[pSectors];
+            for (int s = 0; s < pSectors; s++)
+                mCount[s] = 0;
+            if (pSectors > 1 && (mSectorBounds == null || mSectorBounds.length != pSectors + 1)) {
+                mSectorBounds = new double[pSectors + 1];
+                for (int s = 0; s < pSectors; s++) {
+                    double a = 2. * Math.PI * s / pSectors;
+                    mSectorBounds[s] = pseudoAngle(Math.cos(a), Math.sin(a));
+                }
+                mSectorBounds[pSectors] = 4.;
+            }
+        }
+
+        // Sector the given pseudo-angle belongs to:
+        private int sector(double pAngle) 
+        {
+            int s = 0;
+            while (s < mSectors - 1 && pAngle >= mSectorBounds[s + 1])
+                s++;
+            return s;
+        }
+
+        // Compaction of the sector-wise heaps:
+        private void compact() 
+        {
+            int n = mCount[0];
+            for (int s = 1; s < mSectors; s++) {
+                for (int i = 0; i < mCount[s]; i++) {
+                    mPos[n] = mPos[s * mK + i];
+                    mDist2[n] = mDist2[s * mK + i];
+                    n++;
+                }
+            }
+            mCount[0] = n;
+            mSectors = 1;
+        }
+
+        /**
+         * returns the number of neighbors found.
+         * 
+         * @return Number of neighbors
+         */
+        public int size() {
+            return mCount[0];
+        }
+
+        /**
+         * returns the tree position of the i-th neighbor.
+         * 
+         * @param i Neighbor index, <tt>0 &lt;= i &lt; size()</tt>
+         * @return Tree position
+         */
+        public int getPosition(int i) {
+            return mPos[i];
+        }
+
+        /**
+         * returns the distance of the i-th neighbor from the query position.
+         * 
+         * @param i Neighbor index, <tt>0 &lt;= i &lt; size()</tt>
+         * @return Distance
+         */
+        public double getDistance(int i) {
+            return Math.sqrt(mDist2[i]);
+        }
+
+        /**
+         * returns the squared distance of the i-th neighbor from the query 
+         * position.
+         * 
+         * @param i Neighbor index, <tt>0 &lt;= i &lt; size()</tt>
+         * @return Squared distance
+         */
+        public double getSquaredDistance(int i) {
+            return mDist2[i];
+        }
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param pXYZ Packed point coordinates <tt>{x0, y0, z0, x1, y1, z1, ...}</tt>
+     * @param pNumberOfPoints Number of points
+     * @throws T3dException if the coordinate array is too small
+     */
+    public T3dKdTree(double[] pXYZ, int pNumberOfPoints) throws T3dException
+    {
+        if (pNumberOfPoints < 0 || 3 * pNumberOfPoints > pXYZ.length) {
+            throw new T3dException("Coordinate array index out of bounds.");
+        }
+        this.allocate(pNumberOfPoints);
+        for (int i = 0, k = 0; i < pNumberOfPoints; i++, k += 3) {
+            mX[i] = pXYZ[k];
+            mY[i] = pXYZ[k + 1];
+            mZ[i] = pXYZ[k + 2];
+        }
+        this.buildTree();
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param pPoints List of <tt>VgPoint</tt>-objects
+     */
+    public T3dKdTree(List<? extends VgPoint> pPoints)
+    {
+        this.allocate(pPoints.size());
+        VgPoint pnt;
+        for (int i = 0; i < mSize; i++) {
+            pnt = pPoints.get(i);
+            mX[i] = pnt.getX();
+            mY[i] = pnt.getY();
+            mZ[i] = pnt.getZ();
+        }
+        this.buildTree();
+    }
+
+    private void buildTree()
+    {
+        if (mSize > 0) {
+            mXMin = mXMax = mX[0];
+            mYMin = mYMax = mY[0];
+            for (int i = 1; i < mSize; i++) {
+                if (mX[i] < mXMin) mXMin = mX[i]; else if (mX[i] > mXMax) mXMax = mX[i];
+                if (mY[i] < mYMin) mYMin = mY[i]; else if (mY[i] > mYMax) mYMax = mY[i];
+            }
+        }
+        this.build(0, mSize);
+    }
+
+    private void allocate(int n)
+    {
+        mSize = n;
+        mX = new double[n];
+        mY = new double[n];
+        mZ = new double[n];
+        mIndex = new int[n];
+        mSplitY = new boolean[n];
+        for (int i = 0; i < n; i++)
+            mIndex[i] = i;
+    }
+
+    /**
+     * returns the number of points held by the tree.
+     * 
+     * @return Number of points
+     */
+    public int numberOfPoints() {
+        return mSize;
+    }
+
+    /**
+     * returns the x-coordinate of the point at the given tree position.
+     * 
+     * @param pPos Tree position
+     * @return x-coordinate
+     */
+    public double getX(int pPos) {
+        return mX[pPos];
+    }
+
+    /**
+     * returns the y-coordinate of the point at the given tree position.
+     * 
+     * @param pPos Tree position
+     * @return y-coordinate
+     */
+    public double getY(int pPos) {
+        return mY[pPos];
+    }
+
+    /**
+     * returns the z-value of the point at the given tree position.
+     * 
+     * @param pPos Tree position
+     * @return z-value
+     */
+    public double getZ(int pPos) {
+        return mZ[pPos];
+    }
+
+    /**
+     * returns the index of the point at the given tree position with respect 
+     * to the point set the tree has been built for.
+     * 
+     * @param pPos Tree position
+     * @return Index inside the input point set
+     */
+    public int getOriginalIndex(int pPos) {
+        return mIndex[pPos];
+    }
+
+    /**
+     * determines the <tt>pK</tt> nearest neighbors of the position 
+     * <tt>(pX, pY)</tt>. For equal distances, the point given first will be 
+     * preferred.
+     * 
+     * @param pX x-coordinate of the query position
+     * @param pY y-coordinate of the query position
+     * @param pK Maximal number of neighbors
+     * @param pMaxDist Maximal distance (or <tt>Double.POSITIVE_INFINITY</tt>)
+     * @param pResult Result set (will be overwritten)
+     * @return Number of neighbors found
+     */
+    public int nearest(double pX, double pY, int pK, double pMaxDist, Neighbors pResult)
+    {
+        return this.nearest(pX, pY, pK, pMaxDist, 1, pResult);
+    }
+
+    /**
+     * determines the nearest neighbors of the position <tt>(pX, pY)</tt> 
+     * applying a sector constraint: The plane around the query position will
+     * be divided into <tt>pSectors</tt> sectors of equal angle (e.g. 4 for a 
+     * quadrant search), and from each sector the <tt>pK</tt> nearest 
+     * neighbors will be taken. Thus, at most <tt>pK * pSectors</tt> neighbors
+     * will be returned. The first sector starts at the direction of the 
+     * positive x-axis; the sectors are arranged counter-clockwise.
+     * 
+     * @param pX x-coordinate of the query position
+     * @param pY y-coordinate of the query position
+     * @param pK Maximal number of neighbors per sector
+     * @param pMaxDist Maximal distance (or <tt>Double.POSITIVE_INFINITY</tt>)
+     * @param pSectors Number of sectors (1 for no sector constraint)
+     * @param pResult Result set (will be overwritten)
+     * @return Number of neighbors found
+     * @throws T3dException for illegal parameters
+     */
+    public int nearest(
+        double pX, double pY, int pK, double pMaxDist, int pSectors, Neighbors pResult) 
+        throws T3dException
+    {
+        if (pK < 1 || pSectors < 1) {
+            throw new T3dException("Illegal nearest-neighbor query parameters.");
+        }
+        pResult.reset(pK, pSectors);
+        if (mSize > 0 && pMaxDist >= 0.) {
+            this.search(0, mSize, mXMin, mXMax, mYMin, mYMax, 
+                pX, pY, pMaxDist * pMaxDist, pResult);
+            if (pSectors > 1)
+                pResult.compact();
+        }
+        return pResult.size();
+    }
+
+    // Construction of the sub-tree holding the positions pLo (inclusive) to 
+    // pHi (exclusive). The node's splitting point will be placed at the 
+    // median position; the split dimension is given by the larger extent.
+    private void build(int pLo, int pHi)
+    {
+        while (pHi - pLo > cBucketSize) 
+        {
+            double xMin = mX[pLo], xMax = xMin, yMin = mY[pLo], yMax = yMin;
+            for (int i = pLo + 1; i < pHi; i++) {
+                if (mX[i] < xMin) xMin = mX[i]; else if (mX[i] > xMax) xMax = mX[i];
+                if (mY[i] < yMin) yMin = mY[i]; else if (mY[i] > yMax) yMax = mY[i];
+            }
+            boolean splitY = (yMax - yMin) > (xMax - xMin);
+            int mid = (pLo + pHi) >>> 1;
+            this.select(pLo, pHi - 1, mid, splitY);
+            mSplitY[mid] = splitY;
+
+            this.build(pLo, mid);
+            pLo = mid + 1; // tail recursion for the upper part
+        }
+    }
+
+    // Partial sorting (quickselect) such that position pK holds the element 
+    // that would be there after sorting the positions pLo to pHi (inclusive)
+    // with respect to the given dimension:
+    private void select(int pLo, int pHi, int pK, boolean pSplitY)
+    {
+        final double[] v = pSplitY ? mY : mX;
+        
+        while (pHi > pLo) 
+        {
+            // median of three as pivot:
+            int m = (pLo + pHi) >>> 1;
+            if (v[m] < v[pLo]) this.swap(m, pLo);
+            if (v[pHi] < v[pLo]) this.swap(pHi, pLo);
+            if (v[pHi] < v[m]) this.swap(pHi, m);
+            double pivot = v[m];
+
+            int i = pLo, j = pHi;
+            while (i <= j) {
+                while (v[i] < pivot) i++;
+                while (v[j] > pivot) j--;
+                if (i <= j) {
+                    this.swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (pK <= j) 
+                pHi = j;
+            else if (pK >= i) 
+                pLo = i;
+            else 
+                return;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        double t = mX[i]; mX[i] = mX[j]; mX[j] = t;
+        t = mY[i]; mY[i] = mY[j]; mY[j] = t;
+        t = mZ[i]; mZ[i] = mZ[j]; mZ[j] = t;
+        int k = mIndex[i]; mIndex[i] = mIndex[j]; mIndex[j] = k;
+    }
+
+    // Recursive search in the sub-tree holding the positions pLo to pHi. The
+    // sub-tree's points are located inside the box given by pXMin, ..., pYMax.
+    private void search(
+        int pLo, int pHi, 
+        double pXMin, double pXMax, double pYMin, double pYMax, 
+        double pX, double pY, double pMaxDist2, Neighbors pRes)
+    {
+        if (!this.relevant(pXMin, pXMax, pYMin, pYMax, pX, pY, pMaxDist2, pRes))
+            return;
+
+        if (pHi - pLo <= cBucketSize) {
+            for (int i = pLo; i < pHi; i++)
+                this.offer(i, pX, pY, pMaxDist2, pRes);
+            return;
+        }
+
+        int mid = (pLo + pHi) >>> 1;
+        this.offer(mid, pX, pY, pMaxDist2, pRes);
+
+        if (mSplitY[mid]) {
+            double v = mY[mid];
+            if (pY < v) {
+                this.search(pLo, mid, pXMin, pXMax, pYMin, v, pX, pY, pMaxDist2, pRes);
+                this.search(mid + 1, pHi, pXMin, pXMax, v, pYMax, pX, pY, pMaxDist2, pRes);
+            } else {
+                this.search(mid + 1, pHi, pXMin, pXMax, v, pYMax, pX, pY, pMaxDist2, pRes);
+                this.search(pLo, mid, pXMin, pXMax, pYMin, v, pX, pY, pMaxDist2, pRes);
+            }
+        } else {
+            double v = mX[mid];
+            if (pX < v) {
+                this.search(pLo, mid, pXMin, v, pYMin, pYMax, pX, pY, pMaxDist2, pRes);
+                this.search(mid + 1, pHi, v, pXMax, pYMin, pYMax, pX, pY, pMaxDist2, pRes);
+            } else {
+                this.search(mid + 1, pHi, v, pXMax, pYMin, pYMax, pX, pY, pMaxDist2, pRes);
+                this.search(pLo, mid, pXMin, v, pYMin, pYMax, pX, pY, pMaxDist2, pRes);
+            }
+        }
+    }
+
+    // Check, if the given box might contain points that would enter the 
+    // result set:
+    private boolean relevant(
+        double pXMin, double pXMax, double pYMin, double pYMax, 
+        double pX, double pY, double pMaxDist2, Neighbors pRes)
+    {
+        double dx = pX < pXMin ? pXMin - pX : (pX > pXMax ? pX - pXMax : 0.);
+        double dy = pY < pYMin ? pYMin - pY : (pY > pYMax ? pY - pYMax : 0.);
+        double d2 = dx * dx + dy * dy;
+        if (d2 > pMaxDist2)
+            return false;
+
+        final int k = pRes.mK, nSec = pRes.mSectors;
+        if (nSec == 1) 
+            return pRes.mCount[0] < k || d2 <= pRes.mDist2[0];
+
+        if (d2 == 0.) {
+            // The box contains the query position, i.e. all sectors are covered:
+            for (int s = 0; s < nSec; s++) {
+                if (pRes.mCount[s] < k || d2 <= pRes.mDist2[s * k])
+                    return true;
+            }
+            return false;
+        }
+
+        // Otherwise, the box covers an angular interval of less than PI (i.e.
+        // a pseudo-angle interval of less than 2) around its center's 
+        // direction:
+        double a0 = pseudoAngle(0.5 * (pXMin + pXMax) - pX, 0.5 * (pYMin + pYMax) - pY);
+        double dMin = 0., dMax = 0., da;
+        for (int c = 0; c < 4; c++) {
+            da = pseudoAngle(
+                ((c & 1) == 0 ? pXMin : pXMax) - pX, 
+                ((c & 2) == 0 ? pYMin : pYMax) - pY) - a0;
+            if (da > 2.) da -= 4.;
+            if (da < -2.) da += 4.;
+            if (da < dMin) dMin = da;
+            if (da > dMax) dMax = da;
+        }
+        double aLo = a0 + dMin;
+        if (aLo < 0.) aLo += 4.;
+        double aHi = aLo + (dMax - dMin);
+        
+        int s = pRes.sector(aLo), ss;
+        for (int m = 0; m < nSec; m++, s++) {
+            ss = s % nSec;
+            if (pRes.mSectorBounds[ss] + (s >= nSec ? 4. : 0.) > aHi)
+                break; // sector beyond the box's interval
+            if (pRes.mCount[ss] < k || d2 <= pRes.mDist2[ss * k])
+                return true;
+        }
+        return false;
+    }
+
+    // Pseudo-angle of the direction (dx, dy), which is a monotonous function
+    // of the angle, but avoids trigonometric function calls. The range is 
+    // [0, 4), where 0 refers to the positive x-axis, 1 to the positive y-axis
+    // etc.
+    private static double pseudoAngle(double dx, double dy)
+    {
+        if (dx == 0. && dy == 0.)
+            return 0.;
+        if (dy >= 0.) 
+            return dx >= 0. ? dy / (dx + dy) : 1. - dx / (dy - dx);
+        else
+            return dx < 0. ? 2. - dy / (-dx - dy) : 3. + dx / (dx - dy);
+    }
+
+    // Insertion of the point at position i into the result set (if it is 
+    // near enough). For each sector, the neighbors are held in a max-heap 
+    // ordered by distance and, for equal distances, by original index, so 
+    // that the points given first win ties: 
+    private void offer(int i, double pX, double pY, double pMaxDist2, Neighbors pRes)
+    {
+        double dx = mX[i] - pX, dy = mY[i] - pY;
+        double d2 = dx * dx + dy * dy;
+        if (d2 > pMaxDist2)
+            return;
+
+        int s = 0;
+        if (pRes.mSectors > 1)
+            s = pRes.sector(pseudoAngle(dx, dy));
+        
+        int k = pRes.mK, base = s * k, n = pRes.mCount[s];
+        int[] pos = pRes.mPos;
+        double[] dist2 = pRes.mDist2;
+
+        if (n < k) {
+            // sift up:
+            int c = n;
+            while (c > 0) {
+                int p = (c - 1) >> 1;
+                if (!this.before(dist2[base + p], pos[base + p], d2, i)) break;
+                pos[base + c] = pos[base + p];
+                dist2[base + c] = dist2[base + p];
+                c = p;
+            }
+            pos[base + c] = i;
+            dist2[base + c] = d2;
+            pRes.mCount[s] = n + 1;
+            return;
+        }
+        if (!this.before(d2, i, dist2[base], pos[base]))
+            return;
+
+        // replace the root and sift down:
+        int c = 0;
+        while (true) {
+            int l = 2 * c + 1;
+            if (l >= k) break;
+            int r = l + 1;
+            int m = (r < k && this.before(dist2[base + l], pos[base + l], dist2[base + r], pos[base + r])) ? r : l;
+            if (!this.before(d2, i, dist2[base + m], pos[base + m])) break;
+            pos[base + c] = pos[base + m];
+            dist2[base + c] = dist2[base + m];
+            c = m;
+        }
+        pos[base + c] = i;
+        dist2[base + c] = d2;
+    }
+
+    // Neighbor order: true, if the point at position i (with squared distance 
+    // pD2i) precedes the point at position j (squared distance pD2j):
+    private boolean before(double pD2i, int i, double pD2j, int j) {
+        return pD2i < pD2j || (pD2i == pD2j && mIndex[i] < mIndex[j]);
+    }
+}
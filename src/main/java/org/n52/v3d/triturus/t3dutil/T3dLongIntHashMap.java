@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+import java.util.Arrays;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Hash map that assigns non-negative <tt>int</tt> values (e.g. element 
+ * indices) to <tt>long</tt> keys. Keys and values are held in primitive 
+ * arrays (open addressing with linear probing), i.e. no objects will be 
+ * created per entry. A typical application is the assignment of edge 
+ * indices to vertex pairs inside a mesh; see {@link #key(int, int)}.<p>
+ * Usage example:
+ * <pre>
+ * T3dLongIntHashMap map = new T3dLongIntHashMap(3 * nTriangles / 2);
+ * int e = map.putIfAbsent(T3dLongIntHashMap.key(v1, v2), nEdges);
+ * if (e &lt; 0) {
+ *     // new edge with index nEdges
+ *     nEdges++;
+ * }
+ * </pre>
+ *
+ * @author Benno Schmidt
+ */
+public class T3dLongIntHashMap
+{
+    /** 
+     * value that indicates a missing entry 
+     */
+    public final static int cNoEntry = -1;
+
+    private long[] mKeys;
+    private int[] mValues; // cNoEntry for empty slots
+    private int mMask;
+    private int mSize = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param pExpectedSize Expected number of entries
+     */
+    public T3dLongIntHashMap(int pExpectedSize) 
+    {
+        int lCapacity = 16;
+        while (lCapacity < 2 * pExpectedSize && lCapacity < (1 << 30))
+            lCapacity <<= 1;
+        this.allocate(lCapacity);
+    }
+
+    /**
+     * returns the key for an unordered pair of non-negative indices, i.e. 
+     * <tt>key(a, b) == key(b, a)</tt>.
+     * 
+     * @param a First index
+     * @param b Second index
+     * @return Key holding the smaller index in the upper 32 bits
+     */
+    public static long key(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * returns the number of entries.
+     * 
+     * @return Number of entries
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * returns the value assigned to the given key.
+     * 
+     * @param pKey Key
+     * @return Value or {@link #cNoEntry}, if the key is not present
+     */
+    public int get(long pKey) {
+        return mValues[this.slot(pKey)];
+    }
+
+    /**
+     * assigns a value to the given key. An existing entry will be replaced.
+     * 
+     * @param pKey Key
+     * @param pValue Non-negative value
+     * @return Previous value or {@link #cNoEntry}, if the key was not present
+     * @throws T3dException if the value is negative
+     */
+    public int put(long pKey, int pValue) throws T3dException
+    {
+        int i = this.insertionSlot(pKey, pValue);
+        int lOld = mValues[i];
+        if (lOld == cNoEntry) {
+            mKeys[i] = pKey;
+            mSize++;
+        }
+        mValues[i] = pValue;
+        return lOld;
+    }
+
+    /**
+     * assigns a value to the given key, if the key is not present yet.
+     * 
+     * @param pKey Key
+     * @param pValue Non-negative value
+     * @return Present value or {@link #cNoEntry}, if the entry has been added
+     * @throws T3dException if the value is negative
+     */
+    public int putIfAbsent(long pKey, int pValue) throws T3dException
+    {
+        int i = this.insertionSlot(pKey, pValue);
+        int lOld = mValues[i];
+        if (lOld == cNoEntry) {
+            mKeys[i] = pKey;
+            mValues[i] = pValue;
+            mSize++;
+        }
+        return lOld;
+    }
+
+    /**
+     * removes all entries. The allocated storage will be kept.
+     */
+    public void clear() {
+        Arrays.fill(mValues, cNoEntry);
+        mSize = 0;
+    }
+
+    private int insertionSlot(long pKey, int pValue) throws T3dException
+    {
+        if (pValue < 0)
+            throw new T3dException("Negative values are not supported.");
+        int i = this.slot(pKey);
+        if (mValues[i] == cNoEntry && 4 * (mSize + 1) > 3 * mKeys.length) {
+            this.rehash(2 * mKeys.length);
+            i = this.slot(pKey);
+        }
+        return i;
+    }
+
+    private int slot(long pKey) 
+    {
+        long h = pKey * 0x9E3779B97F4A7C15L;
+        int i = (int) (h >>> 32) & mMask;
+        while (mValues[i] != cNoEntry && mKeys[i] != pKey)
+            i = (i + 1) & mMask;
+        return i;
+    }
+
+    private void allocate(int pCapacity) 
+    {
+        mKeys = new long[pCapacity];
+        mValues = new int[pCapacity];
+        Arrays.fill(mValues, cNoEntry);
+        mMask = pCapacity - 1;
+    }
+
+    private void rehash(int pCapacity) 
+    {
+        long[] lKeys = mKeys;
+        int[] lValues = mValues;
+        this.allocate(pCapacity);
+        for (int i = 0; i < lKeys.length; i++) {
+            if (lValues[i] != cNoEntry) {
+                int j = this.slot(lKeys[i]);
+                mKeys[j] = lKeys[i];
+                mValues[j] = lValues[i];
+            }
+        }
+    }
+}
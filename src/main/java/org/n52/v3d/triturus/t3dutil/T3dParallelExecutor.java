@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2007-2016 52 North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52 North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Helper class to process index ranges (e.g. grid rows, point batches or 
+ * triangle lists) in parallel. A range <tt>[pFrom, pTo)</tt> will be split 
+ * into contiguous bands that are processed by the threads of a shared 
+ * daemon thread pool; the calling thread processes one of the bands itself 
+ * and returns after all bands have been completed.<p>
+ * Usage example:
+ * <pre>
+ * T3dParallelExecutor.execute(0, nRows, nThreads, 
+ *     new T3dParallelExecutor.RangeTask() {
+ *         public void process(int pFrom, int pTo) {
+ *             for (int i = pFrom; i &lt; pTo; i++) { ... }
+ *         }
+ *     });
+ * </pre>
+ *
+ * @author Benno Schmidt
+ */
+public class T3dParallelExecutor
+{
+    /**
+     * Task processing a contiguous part of an index range.
+     */
+    abstract public static class RangeTask
+    {
+        /**
+         * processes the indices <tt>pFrom</tt> (inclusive) to <tt>pTo</tt> 
+         * (exclusive).
+         *
+         * @param pFrom First index
+         * @param pTo Index following the last index
+         */
+        abstract public void process(int pFrom, int pTo);
+    }
+
+    private static ExecutorService sPool = null;
+
+    private T3dParallelExecutor() {
+    }
+
+    /**
+     * returns the number of processors available to the JVM. This value is 
+     * a reasonable default for the number of threads to be used.
+     *
+     * @return Number of processors
+     */
+    public static int availableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * processes the index range <tt>[pFrom, pTo)</tt> using up to 
+     * <tt>pNumberOfThreads</tt> threads. For a single thread, the task will 
+     * be executed inside the calling thread. Exceptions thrown by the task 
+     * will be passed to the caller.
+     *
+     * @param pFrom First index
+     * @param pTo Index following the last index
+     * @param pNumberOfThreads Maximal number of threads to be used
+     * @param pTask Task to be performed
+     * @throws T3dException
+     */
+    public static void execute(
+        int pFrom, int pTo, int pNumberOfThreads, RangeTask pTask) 
+        throws T3dException
+    {
+        int n = pTo - pFrom;
+        if (n <= 0) 
+            return;
+        int nBands = Math.min(pNumberOfThreads, n);
+        if (nBands <= 1) {
+            pTask.process(pFrom, pTo);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(nBands - 1);
+        ExecutorService pool = pool();
+        for (int b = 1; b < nBands; b++) {
+            final int from = pFrom + (int) ((long) n * b / nBands);
+            final int to = pFrom + (int) ((long) n * (b + 1) / nBands);
+            final RangeTask task = pTask;
+            futures.add(pool.submit(new Runnable() {
+                public void run() {
+                    task.process(from, to);
+                }
+            }));
+        }
+
+        RuntimeException err = null;
+        try {
+            pTask.process(pFrom, pFrom + n / nBands);
+        }
+        catch (RuntimeException e) {
+            err = e;
+        }
+        
+        // Wait for the other bands, even if an error occurred:
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            }
+            catch (ExecutionException e) {
+                if (err == null) {
+                    if (e.getCause() instanceof RuntimeException)
+                        err = (RuntimeException) e.getCause();
+                    else
+                        err = new T3dException(
+                            "Parallel execution failed: " + e.getCause());
+                }
+            }
+            catch (InterruptedException e) {
+                // Restore the interrupt status for the caller; waiting for the
+                // remaining bands would fail immediately anyway:
+                Thread.currentThread().interrupt();
+                if (err == null)
+                    err = new T3dException("Parallel execution interrupted.");
+                break;
+            }
+        }
+        if (err != null) 
+            throw err;
+    }
+
+    private static synchronized ExecutorService pool()
+    {
+        if (sPool == null) {
+            sPool = Executors.newCachedThreadPool(new ThreadFactory() {
+                private int mCount = 0;
+
+                public synchronized Thread newThread(Runnable pRunnable) {
+                    Thread t = new Thread(
+                        pRunnable, "triturus-worker-" + (++mCount));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sPool;
+    }
+}
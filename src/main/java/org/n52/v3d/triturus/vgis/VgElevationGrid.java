@@ -32,6 +32,8 @@
  */
 package org.n52.v3d.triturus.vgis;
 
+import org.n52.v3d.triturus.core.T3dException;
+
 /**
  * Class to manage elevation grids. The grid's elevation values might refer to 
  * the grid geometry's vertices (so-called &quot;lattices&quot;, <i>vertex-based 
@@ -90,6 +92,160 @@ abstract public class VgElevationGrid extends VgFeature
      */
     abstract public double maximalElevation();
 
+    /**
+     * reads the elevation values of the grid row <tt>pRow</tt> into the given 
+     * array. Unset grid elements will be given as <tt>Double.NaN</tt>.
+     *
+     * @param pRow Row index
+     * @param pDst Destination array of length <tt>numberOfColumns()</tt> at least
+     * @see VgElevationGrid#getBlock
+     */
+    public void getRow(int pRow, double[] pDst) {
+        this.getBlock(pRow, 0, 1, this.numberOfColumns(), pDst);
+    }
+
+    /**
+     * reads the elevation values of the grid row <tt>pRow</tt> into the given 
+     * array, requiring all of the row's grid elements to be set. This is 
+     * useful for output formats that do not support &quot;no data&quot; 
+     * values.
+     *
+     * @param pRow Row index
+     * @param pDst Destination array of length <tt>numberOfColumns()</tt> at least
+     * @throws T3dException if the row contains an unset grid element
+     * @see VgElevationGrid#getRow
+     */
+    public void getCompleteRow(int pRow, double[] pDst) throws T3dException
+    {
+        this.getRow(pRow, pDst);
+        for (int j = 0; j < this.numberOfColumns(); j++) {
+            if (Double.isNaN(pDst[j])) {
+                throw new T3dException("Tried to access unset grid element.");
+            }
+        }
+    }
+
+    /**
+     * reads a rectangular block of elevation values into the given array. 
+     * The value for the grid element <tt>(pRow0 + i, pCol0 + j)</tt> will be 
+     * stored at position <tt>i * pCols + j</tt>. Unset grid elements will be 
+     * given as <tt>Double.NaN</tt>. If the block exceeds the grid's extent, a
+     * <tt>T3dException</tt> will be thrown.<p>
+     * Note that this default implementation performs single element 
+     * accesses; implementing classes should override this method to provide 
+     * efficient bulk access.
+     *
+     * @param pRow0 First row index
+     * @param pCol0 First column index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pDst Destination array of length <tt>pRows * pCols</tt> at least
+     * @throws T3dException
+     */
+    public void getBlock(
+    	int pRow0, int pCol0, int pRows, int pCols, double[] pDst) 
+    	throws T3dException
+    {
+    	this.checkBlock(pRow0, pCol0, pRows, pCols, pDst);
+    	int k = 0;
+    	for (int i = pRow0; i < pRow0 + pRows; i++) {
+    		for (int j = pCol0; j < pCol0 + pCols; j++) {
+    			try {
+    				pDst[k] = this.getValue(i, j);
+    			}
+    			catch (T3dException e) {
+    				pDst[k] = Double.NaN; // unset element
+    			}
+    			k++;
+    		}
+    	}
+    }
+
+    /**
+     * assigns a rectangular block of elevation values. The array layout is 
+     * the same as for <tt>getBlock()</tt>. Elements given as 
+     * <tt>Double.NaN</tt> will be treated as &quot;no data&quot;, i.e. these 
+     * elements will be unset if supported by the implementing class, and 
+     * left unchanged otherwise. If the block exceeds the grid's extent, a
+     * <tt>T3dException</tt> will be thrown.
+     *
+     * @param pRow0 First row index
+     * @param pCol0 First column index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pSrc Source array of length <tt>pRows * pCols</tt> at least
+     * @throws T3dException
+     * @see VgElevationGrid#getBlock
+     */
+    public void setBlock(
+    	int pRow0, int pCol0, int pRows, int pCols, double[] pSrc) 
+    	throws T3dException
+    {
+    	this.checkBlock(pRow0, pCol0, pRows, pCols, pSrc);
+    	int k = 0;
+    	for (int i = pRow0; i < pRow0 + pRows; i++) {
+    		for (int j = pCol0; j < pCol0 + pCols; j++) {
+    			if (!Double.isNaN(pSrc[k])) {
+    				this.setValue(i, j, pSrc[k]);
+    			}
+    			k++;
+    		}
+    	}
+    }
+
+    /**
+     * copies all elevation values to the target grid, which must have the 
+     * same number of rows and columns. Unset elements will be transferred as
+     * &quot;no data&quot; (see <tt>setBlock()</tt>). The copy is performed 
+     * row by row.
+     *
+     * @param pTarget Target grid
+     * @throws T3dException if the grid sizes differ
+     */
+    public void copyTo(VgElevationGrid pTarget) throws T3dException
+    {
+    	if (pTarget.numberOfRows() != this.numberOfRows() || 
+    		pTarget.numberOfColumns() != this.numberOfColumns()) 
+    	{
+    		throw new T3dException("Elevation grid sizes differ.");
+    	}
+    	int nCols = this.numberOfColumns();
+    	double[] row = new double[nCols];
+    	for (int i = 0; i < this.numberOfRows(); i++) {
+    		this.getRow(i, row);
+    		pTarget.setBlock(i, 0, 1, nCols, row);
+    	}
+    }
+
+    /**
+     * checks the given block parameters. If the block exceeds the grid's 
+     * extent, or if the given array is too small, a <tt>T3dException</tt> 
+     * will be thrown.
+     *
+     * @param pRow0 First row index
+     * @param pCol0 First column index
+     * @param pRows Number of rows
+     * @param pCols Number of columns
+     * @param pArr Array to be checked
+     * @throws T3dException
+     */
+    protected void checkBlock(
+    	int pRow0, int pCol0, int pRows, int pCols, double[] pArr) 
+    	throws T3dException
+    {
+    	if (pRow0 < 0 || pCol0 < 0 || pRows < 0 || pCols < 0 || 
+    		pRow0 + pRows > this.numberOfRows() || 
+    		pCol0 + pCols > this.numberOfColumns()) 
+    	{
+    		throw new T3dException(
+    			"Grid block (" + pRow0 + ", " + pCol0 + ", " + pRows + ", " 
+    			+ pCols + ") exceeds grid extent.");
+    	}
+    	if (pArr == null || pArr.length < pRows * pCols) {
+    		throw new T3dException("Array too small for grid block.");
+    	}
+    }
+
     /**
      * returns the difference of the maximum and minimum elevation value.
      *
@@ -158,19 +158,21 @@ public class IoElevationGridGIFWriter extends IoObject
             T3dColor col = new T3dColor();
         	
             // Pixel den H�henwerten entsprechend setzen:
+            double[] row = new double[lGeom.numberOfColumns()];
             for (int i = 0; i < lGeom.numberOfRows(); i++) {
+                pGrid.getRow(i, row);
                 for (int j = 0; j < lGeom.numberOfColumns(); j++)
                 {
-                    if (pGrid.isSet(i, j)) 
+                    if (!Double.isNaN(row[j])) 
                     {
                     	if (pPalOrder) {
-                            int palVal = (int) (220. * ((pGrid.getValue(i, j) - zMin) / dz));
+                            int palVal = (int) (220. * ((row[j] - zMin) / dz));
                             if (pal[palVal].getRed() > .98 && pal[palVal].getGreen() > .98 && pal[palVal].getBlue() > .98) palVal++;
                             if (palVal >= 220) palVal = 220; // TODO!!
                             graphics.setColor(pal[palVal]);
                         } 
                         else {
-                            float greyVal = (float) ((pGrid.getValue(i, j) - zMin) / dz);
+                            float greyVal = (float) ((row[j] - zMin) / dz);
                             col.setRGB(greyVal,greyVal,greyVal);
 	                        graphics.setColor(this.transformColor(col));
                         }
@@ -208,9 +208,11 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
 
                 // Write elevations:
                 DecimalFormat dfZ = this.getDecimalFormatZ();
+                double[] row = new double[terrGeom.numberOfColumns()];
                 for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                    terr.getCompleteRow(ii, row);
                     for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                        w(dfZ.format(terr.getValue(ii, jj)) + ",");
+                        w(dfZ.format(row[jj]) + ",");
                     }
                     wl();
                 }
@@ -223,9 +225,10 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
                     wl("            color [");
 
                     for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                        terr.getCompleteRow(ii, row);
                         for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
                             T3dColor col = s.getHypsometricColorMapper().transform(
-                            		terr.getValue(ii, jj));
+                            		row[jj]);
                             wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
                         }
                     }
@@ -445,9 +448,11 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
 
                 // Write elevations:
                 DecimalFormat dfZ = this.getDecimalFormatZ();
+                double[] row = new double[terrGeom.numberOfColumns()];
                 for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                    terr.getCompleteRow(ii, row);
                     for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                        w(dfZ.format(terr.getValue(ii, jj)) + ",");
+                        w(dfZ.format(row[jj]) + ",");
                     }
                     wl();
                 }
@@ -459,8 +464,9 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
                     wl("          <Color color='");
 
                     for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                        terr.getCompleteRow(ii, row);
                         for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                            T3dColor col = s.getHypsometricColorMapper().transform(terr.getValue(ii, jj));
+                            T3dColor col = s.getHypsometricColorMapper().transform(row[jj]);
                             wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
                         }
                     }